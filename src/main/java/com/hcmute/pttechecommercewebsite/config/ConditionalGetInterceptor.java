@@ -0,0 +1,38 @@
+package com.hcmute.pttechecommercewebsite.config;
+
+import com.hcmute.pttechecommercewebsite.util.CollectionVersionTracker;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+// Conditional GET cho các API danh sách: ETag / Last-Modified lấy từ phiên bản các collection liên quan.
+// Nếu client gửi If-None-Match / If-Modified-Since khớp thì trả 304 ngay, controller không chạy (không truy vấn, không dựng DTO).
+public class ConditionalGetInterceptor implements HandlerInterceptor {
+
+    private final CollectionVersionTracker collectionVersionTracker;
+    private final Class<?>[] entityClasses;
+
+    public ConditionalGetInterceptor(CollectionVersionTracker collectionVersionTracker, Class<?>... entityClasses) {
+        this.collectionVersionTracker = collectionVersionTracker;
+        this.entityClasses = entityClasses;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String method = request.getMethod();
+        if (request.getDispatcherType() != DispatcherType.REQUEST
+                || !("GET".equals(method) || "HEAD".equals(method))) {
+            return true;
+        }
+
+        // Client luôn hỏi lại server, nhưng chỉ nhận 304 (không có body) khi dữ liệu chưa đổi
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+        String etag = collectionVersionTracker.etag(entityClasses);
+        long lastModified = collectionVersionTracker.lastModified(entityClasses);
+        return !new ServletWebRequest(request, response).checkNotModified(etag, lastModified);
+    }
+}
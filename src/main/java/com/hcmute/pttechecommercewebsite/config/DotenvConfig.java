@@ -30,5 +30,12 @@ public class DotenvConfig {
         // Facebook OAuth
         System.setProperty("FACEBOOK_CLIENT_ID", dotenv.get("FACEBOOK_CLIENT_ID"));
         System.setProperty("FACEBOOK_CLIENT_SECRET", dotenv.get("FACEBOOK_CLIENT_SECRET"));
+
+        // RabbitMQ (không bắt buộc, mặc định localhost:5672 guest/guest)
+        for (String key : new String[]{"RABBITMQ_HOST", "RABBITMQ_PORT", "RABBITMQ_USERNAME", "RABBITMQ_PASSWORD"}) {
+            if (dotenv.get(key) != null) {
+                System.setProperty(key, dotenv.get(key));
+            }
+        }
     }
 }
\ No newline at end of file
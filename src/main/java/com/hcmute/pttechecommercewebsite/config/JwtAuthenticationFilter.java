@@ -1,5 +1,6 @@
 package com.hcmute.pttechecommercewebsite.config;
 
+import com.hcmute.pttechecommercewebsite.util.JwtClaims;
 import com.hcmute.pttechecommercewebsite.util.JwtUtil;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -12,6 +13,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
@@ -30,9 +32,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         String token = extractToken(request);
 
-        if (token != null && jwtUtil.isTokenValid(token)) {
-            String username = jwtUtil.extractUsername(token);
-            List<String> roles = jwtUtil.extractRoles(token);
+        // Parse và kiểm tra chữ ký một lần cho mỗi request
+        Optional<JwtClaims> claims = jwtUtil.parseToken(token);
+        if (claims.isPresent()) {
+            String username = claims.get().username();
+            List<String> roles = claims.get().roles();
 
             if (username != null && roles != null) {
                 List<SimpleGrantedAuthority> authorities = roles.stream()
@@ -0,0 +1,74 @@
+package com.hcmute.pttechecommercewebsite.config;
+
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Cấu hình hàng đợi email gửi đi trên RabbitMQ:
+// - MAIL_QUEUE: hàng đợi chính (durable), được xử lý theo lô bởi một số lượng worker giới hạn
+// - các hàng đợi retry có TTL tăng dần, hết hạn thì message quay lại MAIL_QUEUE (backoff)
+// - MAIL_DEAD_LETTER_QUEUE: email đã hết lượt thử lại
+@Configuration
+public class MailQueueConfig {
+
+    public static final String MAIL_QUEUE = "pttech.mail.outbound";
+
+    public static final String MAIL_DEAD_LETTER_QUEUE = "pttech.mail.outbound.dlq";
+
+    // Thời gian chờ trước mỗi lần gửi lại (30 giây, 2 phút, 10 phút)
+    public static final long[] RETRY_DELAYS_MS = {30_000L, 120_000L, 600_000L};
+
+    // Số email gửi chung một kết nối SMTP
+    public static final int BATCH_SIZE = 20;
+
+    public static String retryQueue(int attempt) {
+        return MAIL_QUEUE + ".retry." + attempt;
+    }
+
+    @Bean
+    public Declarables mailQueues() {
+        List<Declarable> queues = new ArrayList<>();
+        queues.add(QueueBuilder.durable(MAIL_QUEUE).build());
+        queues.add(QueueBuilder.durable(MAIL_DEAD_LETTER_QUEUE).build());
+        for (int attempt = 0; attempt < RETRY_DELAYS_MS.length; attempt++) {
+            queues.add(QueueBuilder.durable(retryQueue(attempt))
+                    .ttl((int) RETRY_DELAYS_MS[attempt])
+                    .deadLetterExchange("")
+                    .deadLetterRoutingKey(MAIL_QUEUE)
+                    .build());
+        }
+        return new Declarables(queues);
+    }
+
+    @Bean
+    public MessageConverter mailMessageConverter() {
+        return new Jackson2JsonMessageConverter();
+    }
+
+    // Worker pool giới hạn, nhận message theo lô để dùng lại một kết nối SMTP cho cả lô
+    @Bean
+    public SimpleRabbitListenerContainerFactory mailListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(2);
+        factory.setMaxConcurrentConsumers(4);
+        factory.setPrefetchCount(BATCH_SIZE * 2);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(BATCH_SIZE);
+        factory.setReceiveTimeout(1000L);
+        factory.setDefaultRequeueRejected(false);
+        return factory;
+    }
+}
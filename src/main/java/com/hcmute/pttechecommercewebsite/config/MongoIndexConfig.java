@@ -0,0 +1,208 @@
+package com.hcmute.pttechecommercewebsite.config;
+
+import com.hcmute.pttechecommercewebsite.dto.IndexReportDTO;
+import com.hcmute.pttechecommercewebsite.model.*;
+import com.hcmute.pttechecommercewebsite.service.IndexReportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Khai báo tập trung toàn bộ index cho các truy vấn "nóng" của repository và tạo chúng khi ứng dụng khởi động
+@Configuration
+public class MongoIndexConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexConfig.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final IndexReportService indexReportService;
+
+    public MongoIndexConfig(MongoTemplate mongoTemplate, IndexReportService indexReportService) {
+        this.mongoTemplate = mongoTemplate;
+        this.indexReportService = indexReportService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initIndexes() {
+        ensureIndexes();
+
+        // Báo cáo các truy vấn vẫn còn quét toàn bộ collection sau khi tạo index
+        try {
+            indexReportService.generateReport().stream()
+                    .filter(IndexReportDTO::isCollectionScan)
+                    .forEach(report -> logger.warn("Truy vấn {} trên {} vẫn dùng COLLSCAN", report.getName(), report.getCollection()));
+        } catch (Exception e) {
+            logger.warn("Không thể tạo báo cáo explain cho index: {}", e.getMessage());
+        }
+    }
+
+    // Tạo (nếu chưa có) toàn bộ index đã khai báo, lỗi ở một index không chặn các index còn lại
+    public void ensureIndexes() {
+        indexDefinitions().forEach((entityClass, indexes) -> {
+            for (Index index : indexes) {
+                try {
+                    mongoTemplate.indexOps(entityClass).ensureIndex(index);
+                } catch (Exception e) {
+                    logger.warn("Không thể tạo index {} cho {}: {}", index.getIndexOptions().get("name"),
+                            entityClass.getSimpleName(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    // Điều kiện partial dùng chung: chỉ index các document chưa bị xóa mềm
+    private static PartialIndexFilter notDeleted() {
+        return PartialIndexFilter.of(Criteria.where("isDeleted").is(false));
+    }
+
+    // Điều kiện partial cho các job kích hoạt theo lịch (chưa xóa và chưa kích hoạt)
+    private static PartialIndexFilter scheduledInactive() {
+        return PartialIndexFilter.of(Criteria.where("isDeleted").is(false).and("isActive").is(false));
+    }
+
+    private static Index scheduledDateIndex(String prefix) {
+        return new Index().on("scheduledDate", Direction.ASC)
+                .named(prefix + "_scheduledDate").partial(scheduledInactive());
+    }
+
+    static Map<Class<?>, List<Index>> indexDefinitions() {
+        Map<Class<?>, List<Index>> definitions = new LinkedHashMap<>();
+
+        definitions.put(Product.class, List.of(
+                // findByIsDeletedFalseAndStatusNot / findByIsDeletedFalseAndStatus (sắp xếp theo createdAt)
+                new Index().on("status", Direction.ASC).on("createdAt", Direction.DESC)
+                        .named("products_status_createdAt").partial(notDeleted()),
+                // Lọc theo giá và sắp xếp price_asc/price_desc của danh sách sản phẩm hoạt động
+                new Index().on("status", Direction.ASC).on("pricing.current", Direction.ASC)
+                        .named("products_status_price").partial(notDeleted()),
+                new Index().on("brandId", Direction.ASC).on("status", Direction.ASC)
+                        .named("products_brand_status").partial(notDeleted()),
+                new Index().on("categoryId", Direction.ASC).on("status", Direction.ASC)
+                        .named("products_category_status").partial(notDeleted()),
+                new Index().on("productId", Direction.ASC)
+                        .named("products_productId").partial(notDeleted()),
+                new Index().on("variants.stock", Direction.ASC)
+                        .named("products_variants_stock").partial(notDeleted()),
+                new Index().on("totalSold", Direction.DESC)
+                        .named("products_totalSold").partial(notDeleted()),
+                new Index().on("ratings.average", Direction.DESC)
+                        .named("products_ratings_average").partial(notDeleted()),
+                new Index().on("scheduledDate", Direction.ASC)
+                        .named("products_scheduledDate").partial(notDeleted())
+        ));
+
+        definitions.put(Order.class, List.of(
+                new Index().on("userId", Direction.ASC).on("createdAt", Direction.DESC)
+                        .named("orders_user_createdAt").partial(notDeleted()),
+                new Index().on("items.productId", Direction.ASC)
+                        .named("orders_items_productId").partial(notDeleted()),
+                new Index().on("orderId", Direction.ASC)
+                        .named("orders_orderId").partial(notDeleted()),
+                // findByCreatedAtBetween không lọc isDeleted nên dùng index đầy đủ
+                new Index().on("createdAt", Direction.ASC)
+                        .named("orders_createdAt"),
+                // OrderLifecycleService.applyTimedTransitions (chuyển trạng thái đơn hàng theo thời gian)
+                new Index().on("orderStatus", Direction.ASC).on("createdAt", Direction.ASC)
+                        .named("orders_status_createdAt"),
+                // applyTimedTransitions: đếm theo ngày các đơn vừa chuyển (orderStatus mới, mục lịch sử at = thời điểm chạy)
+                new Index().on("orderStatus", Direction.ASC).on("statusHistory.at", Direction.ASC)
+                        .named("orders_status_historyAt"),
+                // getAllOrders: phân trang cursor theo (createdAt, _id)
+                new Index().on("createdAt", Direction.ASC).on("_id", Direction.ASC)
+                        .named("orders_list_createdAt").partial(notDeleted())
+        ));
+
+        definitions.put(User.class, List.of(
+                new Index().on("email", Direction.ASC).named("users_email"),
+                new Index().on("username", Direction.ASC).named("users_username"),
+                new Index().on("verificationToken", Direction.ASC).named("users_verificationToken").sparse(),
+                // Danh bạ người dùng: tìm theo tiền tố và phân trang cursor theo (trường tìm kiếm, _id)
+                new Index().on("usernameSearch", Direction.ASC).on("_id", Direction.ASC)
+                        .named("users_usernameSearch").partial(notDeleted()),
+                new Index().on("emailSearch", Direction.ASC).on("_id", Direction.ASC)
+                        .named("users_emailSearch").partial(notDeleted()),
+                // deleteExpiredUnverifiedUsers (job xóa user chưa xác thực): chỉ index user chưa xác thực
+                new Index().on("verificationExpiry", Direction.ASC).named("users_unverified_verificationExpiry")
+                        .partial(PartialIndexFilter.of(Criteria.where("isVerified").is(false)))
+        ));
+
+        definitions.put(Cart.class, List.of(
+                new Index().on("userId", Direction.ASC)
+                        .named("carts_userId").partial(notDeleted())
+        ));
+
+        definitions.put(Review.class, List.of(
+                new Index().on("productId", Direction.ASC).on("createdAt", Direction.DESC)
+                        .named("reviews_product_createdAt").partial(notDeleted()),
+                new Index().on("userId", Direction.ASC)
+                        .named("reviews_userId").partial(notDeleted()),
+                new Index().on("orderId", Direction.ASC)
+                        .named("reviews_orderId").partial(notDeleted()),
+                new Index().on("createdAt", Direction.ASC)
+                        .named("reviews_createdAt"),
+                // getAllReviews: phân trang cursor theo (createdAt, _id)
+                new Index().on("createdAt", Direction.ASC).on("_id", Direction.ASC)
+                        .named("reviews_list_createdAt").partial(notDeleted())
+        ));
+
+        definitions.put(DiscountCode.class, List.of(
+                // DiscountRuleIndex.reload: mã đang bật, chưa xóa và chưa hết hạn
+                new Index().on("endDate", Direction.ASC)
+                        .named("discountCodes_active_endDate")
+                        .partial(PartialIndexFilter.of(Criteria.where("isDeleted").is(false).and("isActive").is(true))),
+                scheduledDateIndex("discountCodes")
+        ));
+
+        definitions.put(DiscountRedemption.class, List.of(
+                // Mỗi người dùng chỉ dùng một mã một lần: insert trùng bị từ chối ngay tại MongoDB
+                new Index().on("discountCodeId", Direction.ASC).on("userId", Direction.ASC)
+                        .unique().named("discountRedemptions_code_user"),
+                new Index().on("orderId", Direction.ASC).named("discountRedemptions_orderId")
+        ));
+
+        definitions.put(Inventory.class, List.of(
+                new Index().on("products.productId", Direction.ASC)
+                        .named("inventories_products_productId").partial(notDeleted()),
+                // getAllInventories: phân trang cursor theo (receivedDate, _id)
+                new Index().on("receivedDate", Direction.ASC).on("_id", Direction.ASC)
+                        .named("inventories_receivedDate").partial(notDeleted())
+        ));
+
+        definitions.put(Category.class, List.of(
+                new Index().on("parentCategoryId", Direction.ASC)
+                        .named("categories_parentCategoryId").partial(notDeleted()),
+                scheduledDateIndex("categories")
+        ));
+
+        definitions.put(Brand.class, List.of(scheduledDateIndex("brands")));
+        definitions.put(Policy.class, List.of(scheduledDateIndex("policies")));
+        definitions.put(Contact.class, List.of(scheduledDateIndex("contacts")));
+        definitions.put(AdImage.class, List.of(scheduledDateIndex("adImages")));
+
+        definitions.put(QA.class, List.of(
+                new Index().on("productId", Direction.ASC).named("qas_productId"),
+                new Index().on("userId", Direction.ASC).named("qas_userId"),
+                // getAllQAsSorted: phân trang cursor theo (createdAt, _id)
+                new Index().on("createdAt", Direction.ASC).on("_id", Direction.ASC).named("qas_createdAt")
+        ));
+
+        definitions.put(Statistics.class, List.of(
+                new Index().on("date", Direction.ASC).named("statistics_date"),
+                // Mỗi ngày chỉ có một document để upsert cộng dồn không tạo bản trùng
+                new Index().on("dayKey", Direction.ASC).unique().named("statistics_dayKey")
+                        .partial(PartialIndexFilter.of(Criteria.where("dayKey").exists(true)))
+        ));
+
+        return definitions;
+    }
+}
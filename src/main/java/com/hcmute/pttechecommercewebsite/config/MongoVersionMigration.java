@@ -0,0 +1,47 @@
+package com.hcmute.pttechecommercewebsite.config;
+
+import com.hcmute.pttechecommercewebsite.model.Cart;
+import com.hcmute.pttechecommercewebsite.model.DiscountCode;
+import com.hcmute.pttechecommercewebsite.model.Order;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+
+// Gán version = 0 cho các document cũ chưa có trường version trước khi nhận request.
+// Nếu thiếu, Spring Data coi document có version null là document mới và save() sẽ insert trùng _id.
+@Configuration
+public class MongoVersionMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoVersionMigration.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    public MongoVersionMigration(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void initVersions() {
+        for (Class<?> entityClass : List.of(Product.class, Cart.class, Order.class, DiscountCode.class)) {
+            try {
+                long updated = mongoTemplate.updateMulti(
+                        new Query(Criteria.where("version").exists(false)),
+                        new Update().set("version", 0L),
+                        entityClass).getModifiedCount();
+                if (updated > 0) {
+                    logger.info("Đã khởi tạo version cho {} document {}", updated, entityClass.getSimpleName());
+                }
+            } catch (Exception e) {
+                logger.warn("Không thể khởi tạo version cho {}: {}", entityClass.getSimpleName(), e.getMessage());
+            }
+        }
+    }
+}
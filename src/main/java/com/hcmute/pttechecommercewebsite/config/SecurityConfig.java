@@ -1,5 +1,6 @@
 package com.hcmute.pttechecommercewebsite.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -36,6 +37,9 @@ public class SecurityConfig {
         http
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(authorize -> authorize
+                        // Lượt dispatch ASYNC kết thúc response streaming (xuất Excel); request gốc đã được phân quyền
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         // Các API public không cần xác thực
                         .requestMatchers(HttpMethod.GET, "/api/ad-images", "/api/ad-images/no-delete", "/api/ad-images/{id}", "/api/ad-images/search",
                                 "/api/brands", "/api/brands/no-delete", "/api/brands/{id}", "/api/brands/search",
@@ -43,7 +47,7 @@ public class SecurityConfig {
                                 "/api/contacts", "/api/contacts/no-delete", "/api/contacts/{id}",
                                 "/api/discount-codes", "/api/discount-codes/no-delete", "/api/discount-codes/{id}", "/api/discount-codes/search",
                                 "/api/policies", "/api/policies/no-delete", "/api/policies/{id}", "/api/policies/search",
-                                "/api/products", "/api/products/active", "/api/products/search", "/api/products/{id}", "/api/products/by-product-id/{productId}", "/api/users/verify",
+                                "/api/products", "/api/products/active", "/api/products/active/page", "/api/products/search", "/api/search/suggest", "/api/products/{id}", "/api/products/by-product-id/{productId}", "/api/users/verify",
                                 "/api/reviews", "/api/reviews/{id}", "/api/reviews/product/{productId}", "/videos/**", "/images/**",
                                 "/api/qas/product/{productId}", "/api/qas/user/{userId}", "/api/qas", "/api/users/{id}")
                         .permitAll()
@@ -55,7 +59,7 @@ public class SecurityConfig {
                         .hasAnyRole("ADMIN", "MANAGER", "MARKETING", "INVENTORY_MANAGER", "CUSTOMER_SUPPORT", "CUSTOMER")
 
                         .requestMatchers(HttpMethod.GET, "/api/ad-images/export-excel", "/api/discount-codes/export-excel", "/api/statistics",
-                                "/api/statistics/{id}", "/api/statistics/export-excel", "/api/inventories", "/api/inventories/filter", "/api/inventories/sorted",
+                                "/api/statistics/report", "/api/statistics/{id}", "/api/statistics/export-excel", "/api/inventories", "/api/inventories/filter", "/api/inventories/sorted",
                                 "/api/inventories/sorted-by-quantity", "/api/inventories/{id}", "/api/inventories/export-excel",
                                 "/api/brands/export-excel", "/api/categories/export-excel", "/api/contacts/export-excel", "/api/policies/export-excel",
                                 "/api/reviews/user/{userId}", "/api/reviews/product/{productId}", "/api/reviews/order/{orderId}", "/api/carts",
@@ -93,6 +97,8 @@ public class SecurityConfig {
                                 "/api/contacts", "/api/contacts/schedule-create", "/api/policies", "/api/policies/schedule-create",
                                 "/api/reviews/reply/{id}", "/api/users/send-notification", "/api/qas/{qaId}/answer", "/api/orders/{orderId}/complete-return")
                         .hasAnyRole("ADMIN", "MANAGER", "CUSTOMER_SUPPORT")
+                        .requestMatchers(HttpMethod.GET, "/api/email-campaigns", "/api/email-campaigns/{id}")
+                        .hasAnyRole("ADMIN", "MANAGER", "CUSTOMER_SUPPORT")
                         .requestMatchers(HttpMethod.PUT, "/api/brands/{id}", "/api/brands/hide/{id}", "/api/brands/show/{id}",
                                 "/api/categories/{id}", "/api/categories/hide/{id}", "/api/categories/show/{id}",
                                 "/api/contacts/{id}", "/api/contacts/hide/{id}", "/api/contacts/show/{id}",
@@ -122,6 +128,8 @@ public class SecurityConfig {
 
                         // Phân quyền cho Role Admin
                         .requestMatchers(HttpMethod.POST, "/api/users")
+                        .hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/api/admin/indexes/report", "/api/admin/monitoring/**")
                         .hasRole("ADMIN")
                             .requestMatchers(HttpMethod.PUT, "/api/qas/{id}")
                         .hasRole("ADMIN")
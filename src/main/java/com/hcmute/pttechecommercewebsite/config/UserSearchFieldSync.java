@@ -0,0 +1,86 @@
+package com.hcmute.pttechecommercewebsite.config;
+
+import com.hcmute.pttechecommercewebsite.model.User;
+import com.hcmute.pttechecommercewebsite.util.VietnameseTextNormalizer;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.stream.Stream;
+
+// Giữ các trường tìm kiếm usernameSearch / emailSearch (chữ thường, username bỏ dấu) đồng bộ với username / email
+// để danh bạ người dùng tìm theo tiền tố bằng index thay vì regex không phân biệt hoa thường (quét toàn bộ index)
+@Component
+public class UserSearchFieldSync implements BeforeConvertCallback<User> {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSearchFieldSync.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+
+    public UserSearchFieldSync(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public static String normalizeUsername(String username) {
+        return username == null ? null : VietnameseTextNormalizer.fold(username.trim());
+    }
+
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Mọi save() qua repository / MongoTemplate đều đi qua callback này
+    @Override
+    public User onBeforeConvert(User user, String collection) {
+        user.setUsernameSearch(normalizeUsername(user.getUsername()));
+        user.setEmailSearch(normalizeEmail(user.getEmail()));
+        return user;
+    }
+
+    // Điền trường tìm kiếm cho các user cũ, chỉ đọc username / email và cập nhật theo lô
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            Query query = new Query(Criteria.where("usernameSearch").exists(false));
+            query.fields().include("_id").include("username").include("email");
+            long updated = 0;
+            BulkOperations bulk = null;
+            int pending = 0;
+            try (Stream<Document> users = mongoTemplate.stream(query, Document.class, mongoTemplate.getCollectionName(User.class))) {
+                for (Document user : (Iterable<Document>) users::iterator) {
+                    if (bulk == null) {
+                        bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+                    }
+                    bulk.updateOne(new Query(Criteria.where("_id").is(user.get("_id"))), new Update()
+                            .set("usernameSearch", normalizeUsername(user.getString("username")))
+                            .set("emailSearch", normalizeEmail(user.getString("email"))));
+                    if (++pending == BATCH_SIZE) {
+                        updated += bulk.execute().getModifiedCount();
+                        bulk = null;
+                        pending = 0;
+                    }
+                }
+            }
+            if (bulk != null) {
+                updated += bulk.execute().getModifiedCount();
+            }
+            if (updated > 0) {
+                logger.info("Đã khởi tạo trường tìm kiếm cho {} người dùng", updated);
+            }
+        } catch (Exception e) {
+            logger.warn("Không thể khởi tạo trường tìm kiếm cho người dùng: {}", e.getMessage());
+        }
+    }
+}
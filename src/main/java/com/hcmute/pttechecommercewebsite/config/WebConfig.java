@@ -1,13 +1,51 @@
 package com.hcmute.pttechecommercewebsite.config;
 
+import com.hcmute.pttechecommercewebsite.model.AdImage;
+import com.hcmute.pttechecommercewebsite.model.Brand;
+import com.hcmute.pttechecommercewebsite.model.Category;
+import com.hcmute.pttechecommercewebsite.model.Policy;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.util.CollectionVersionTracker;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.web.config.EnableSpringDataWebSupport;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
+@EnableSpringDataWebSupport(pageSerializationMode = EnableSpringDataWebSupport.PageSerializationMode.VIA_DTO)
 public class WebConfig implements WebMvcConfigurer {
 
+    private final CollectionVersionTracker collectionVersionTracker;
+
+    public WebConfig(CollectionVersionTracker collectionVersionTracker) {
+        this.collectionVersionTracker = collectionVersionTracker;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // ETag / 304 cho các API danh sách sản phẩm; kết quả tìm kiếm còn phụ thuộc tên thương hiệu / danh mục.
+        // Chi tiết sản phẩm (/{id}, /by-product-id) đã có ETag theo nội dung trong ProductController
+        registry.addInterceptor(new ConditionalGetInterceptor(collectionVersionTracker, Product.class, Brand.class, Category.class))
+                .addPathPatterns("/api/products", "/api/products/active", "/api/products/active/page", "/api/products/inactive",
+                        "/api/products/top-selling", "/api/products/top-rated", "/api/products/low-stock", "/api/products/search");
+
+        // ETag / 304 cho thương hiệu, danh mục, chính sách, ảnh quảng cáo (trừ xuất Excel)
+        registry.addInterceptor(new ConditionalGetInterceptor(collectionVersionTracker, Category.class))
+                .addPathPatterns("/api/categories", "/api/categories/**")
+                .excludePathPatterns("/api/categories/export-excel");
+        registry.addInterceptor(new ConditionalGetInterceptor(collectionVersionTracker, Brand.class))
+                .addPathPatterns("/api/brands", "/api/brands/**")
+                .excludePathPatterns("/api/brands/export-excel");
+        registry.addInterceptor(new ConditionalGetInterceptor(collectionVersionTracker, Policy.class))
+                .addPathPatterns("/api/policies", "/api/policies/**")
+                .excludePathPatterns("/api/policies/export-excel");
+        registry.addInterceptor(new ConditionalGetInterceptor(collectionVersionTracker, AdImage.class))
+                .addPathPatterns("/api/ad-images", "/api/ad-images/**")
+                .excludePathPatterns("/api/ad-images/export-excel");
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         // Thư mục ad-images
@@ -4,6 +4,7 @@ import com.hcmute.pttechecommercewebsite.dto.AdImageDTO;
 import com.hcmute.pttechecommercewebsite.exception.MessageResponse;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.service.AdImageService;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -11,8 +12,8 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
 
@@ -150,18 +151,14 @@ public class AdImageController {
 
     // API xuất quảng cáo ra file Excel
     @GetMapping("/export-excel")
-    public ResponseEntity<byte[]> exportAdImagesToExcel() {
-        try {
-            ByteArrayOutputStream outputStream = adImageService.exportAdImagesToExcel();
+    public ResponseEntity<StreamingResponseBody> exportAdImagesToExcel() {
+        // Ghi file Excel trực tiếp vào response: dữ liệu đọc theo cursor, không tạo mảng byte trung gian
+        StreamingResponseBody body = outputStream -> adImageService.exportAdImagesToExcel(outputStream);
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=adImages.xlsx");
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=adImages.xlsx");
+        headers.add(HttpHeaders.CONTENT_TYPE, ExcelStreamWriter.CONTENT_TYPE);
 
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Lỗi khi xuất file Excel: " + e.getMessage()).getBytes());
-        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
\ No newline at end of file
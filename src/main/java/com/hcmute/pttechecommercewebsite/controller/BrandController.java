@@ -4,6 +4,7 @@ import com.hcmute.pttechecommercewebsite.dto.BrandDTO;
 import com.hcmute.pttechecommercewebsite.exception.MessageResponse;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.service.BrandService;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
@@ -11,8 +12,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
 
@@ -156,18 +157,14 @@ public class BrandController {
 
     // API xuất tất cả thương hiệu ra file Excel
     @GetMapping("/export-excel")
-    public ResponseEntity<byte[]> exportBrandsToExcel() {
-        try {
-            ByteArrayOutputStream outputStream = brandService.exportBrandsToExcel();
+    public ResponseEntity<StreamingResponseBody> exportBrandsToExcel() {
+        // Ghi file Excel trực tiếp vào response: dữ liệu đọc theo cursor, không tạo mảng byte trung gian
+        StreamingResponseBody body = outputStream -> brandService.exportBrandsToExcel(outputStream);
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=brands.xlsx");
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=brands.xlsx");
+        headers.add(HttpHeaders.CONTENT_TYPE, ExcelStreamWriter.CONTENT_TYPE);
 
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Lỗi khi xuất file Excel: " + e.getMessage()).getBytes());
-        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
\ No newline at end of file
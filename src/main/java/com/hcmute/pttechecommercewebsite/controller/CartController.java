@@ -1,9 +1,12 @@
 package com.hcmute.pttechecommercewebsite.controller;
 
 import com.hcmute.pttechecommercewebsite.dto.CartDTO;
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
+import com.hcmute.pttechecommercewebsite.dto.DiscountPreviewDTO;
 import com.hcmute.pttechecommercewebsite.service.CartService;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -18,8 +21,9 @@ public class CartController {
 
     // API lấy tất cả giỏ hàng
     @GetMapping("")
-    public List<CartDTO> getAllCarts() {
-        return cartService.getAllCarts();
+    public CursorPageDTO<CartDTO> getAllCarts(@RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) Integer limit) {
+        return cartService.getAllCarts(cursor, limit);
     }
 
     // Lấy giỏ hàng theo cartId
@@ -29,6 +33,15 @@ public class CartController {
         return ResponseEntity.ok(cartDTO);
     }
 
+    // Xem trước các mã giảm giá áp dụng được cho giỏ hàng (400 nếu cartId sai định dạng, 404 nếu không có giỏ hàng)
+    @GetMapping("/{cartId}/discount-preview")
+    public ResponseEntity<List<DiscountPreviewDTO>> previewDiscounts(@PathVariable String cartId) {
+        if (!ObjectId.isValid(cartId)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+        return ResponseEntity.ok(cartService.previewDiscounts(cartId));
+    }
+
     // Lấy giỏ hàng theo userId
     @GetMapping("/user/{userId}")
     public ResponseEntity<CartDTO> getCartByUserId(@PathVariable String userId) {
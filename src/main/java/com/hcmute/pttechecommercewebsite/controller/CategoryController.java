@@ -4,14 +4,15 @@ import com.hcmute.pttechecommercewebsite.dto.CategoryDTO;
 import com.hcmute.pttechecommercewebsite.exception.MessageResponse;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.service.CategoryService;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
 
@@ -156,21 +157,16 @@ public class CategoryController {
 
     // API xuất danh mục ra file Excel
     @GetMapping("/export-excel")
-    public ResponseEntity<byte[]> exportCategoriesToExcel(
+    public ResponseEntity<StreamingResponseBody> exportCategoriesToExcel(
             @RequestParam(value = "sortBy", defaultValue = "name") String sortBy,
             @RequestParam(value = "sortOrder", defaultValue = "desc") String sortOrder) {
+        // Ghi file Excel trực tiếp vào response: dữ liệu đọc theo cursor, không tạo mảng byte trung gian
+        StreamingResponseBody body = outputStream -> categoryService.exportCategoriesToExcel(sortBy, sortOrder, outputStream);
 
-        try {
-            ByteArrayOutputStream outputStream = categoryService.exportCategoriesToExcel(sortBy, sortOrder);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=categories.xlsx");
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=categories.xlsx");
+        headers.add(HttpHeaders.CONTENT_TYPE, ExcelStreamWriter.CONTENT_TYPE);
 
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Lỗi khi xuất file Excel: " + e.getMessage()).getBytes());
-        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
\ No newline at end of file
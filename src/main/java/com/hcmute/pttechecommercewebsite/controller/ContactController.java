@@ -4,14 +4,14 @@ import com.hcmute.pttechecommercewebsite.dto.ContactDTO;
 import com.hcmute.pttechecommercewebsite.exception.MessageResponse;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.service.ContactService;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -110,21 +110,16 @@ public class ContactController {
     }
 
     @GetMapping("/export-excel")
-    public ResponseEntity<byte[]> exportContactsToExcel(
+    public ResponseEntity<StreamingResponseBody> exportContactsToExcel(
             @RequestParam(value = "sortBy", defaultValue = "companyName") String sortBy,
             @RequestParam(value = "sortOrder", defaultValue = "desc") String sortOrder) {
+        // Ghi file Excel trực tiếp vào response: dữ liệu đọc theo cursor, không tạo mảng byte trung gian
+        StreamingResponseBody body = outputStream -> contactService.exportContactsToExcel(sortBy, sortOrder, outputStream);
 
-        try {
-            ByteArrayOutputStream outputStream = contactService.exportContactsToExcel(sortBy, sortOrder);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=contacts.xlsx");
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=contacts.xlsx");
+        headers.add(HttpHeaders.CONTENT_TYPE, ExcelStreamWriter.CONTENT_TYPE);
 
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Lỗi khi xuất file Excel: " + e.getMessage()).getBytes());
-        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
\ No newline at end of file
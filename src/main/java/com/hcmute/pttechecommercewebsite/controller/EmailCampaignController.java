@@ -0,0 +1,29 @@
+package com.hcmute.pttechecommercewebsite.controller;
+
+import com.hcmute.pttechecommercewebsite.dto.EmailCampaignDTO;
+import com.hcmute.pttechecommercewebsite.service.EmailCampaignService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/email-campaigns")
+public class EmailCampaignController {
+
+    @Autowired
+    private EmailCampaignService emailCampaignService;
+
+    // API lấy các chiến dịch email gần đây kèm tiến độ
+    @GetMapping
+    public ResponseEntity<List<EmailCampaignDTO>> getRecentCampaigns() {
+        return ResponseEntity.ok(emailCampaignService.getRecentCampaigns());
+    }
+
+    // API xem tiến độ của một chiến dịch email
+    @GetMapping("/{id}")
+    public ResponseEntity<EmailCampaignDTO> getCampaignById(@PathVariable String id) {
+        return ResponseEntity.ok(emailCampaignService.getCampaignById(id));
+    }
+}
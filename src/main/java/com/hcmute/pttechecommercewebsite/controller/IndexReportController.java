@@ -0,0 +1,33 @@
+package com.hcmute.pttechecommercewebsite.controller;
+
+import com.hcmute.pttechecommercewebsite.dto.IndexReportDTO;
+import com.hcmute.pttechecommercewebsite.service.IndexReportService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/indexes")
+public class IndexReportController {
+
+    private final IndexReportService indexReportService;
+
+    public IndexReportController(IndexReportService indexReportService) {
+        this.indexReportService = indexReportService;
+    }
+
+    // API chạy explain() cho các truy vấn repository và báo cáo truy vấn còn COLLSCAN
+    @GetMapping("/report")
+    public ResponseEntity<List<IndexReportDTO>> getIndexReport(
+            @RequestParam(defaultValue = "false") boolean onlyCollectionScans) {
+        List<IndexReportDTO> reports = indexReportService.generateReport();
+        if (onlyCollectionScans) {
+            reports = reports.stream().filter(IndexReportDTO::isCollectionScan).toList();
+        }
+        return ResponseEntity.ok(reports);
+    }
+}
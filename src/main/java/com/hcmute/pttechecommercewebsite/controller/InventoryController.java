@@ -1,16 +1,17 @@
 package com.hcmute.pttechecommercewebsite.controller;
 
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
 import com.hcmute.pttechecommercewebsite.dto.InventoryDTO;
 import com.hcmute.pttechecommercewebsite.model.Inventory;
 import com.hcmute.pttechecommercewebsite.service.InventoryService;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,9 +24,11 @@ public class InventoryController {
 
     // API xem tất cả thông tin trong kho, có thể sắp xếp theo thời gian
     @GetMapping
-    public ResponseEntity<List<InventoryDTO>> getAllInventories(@RequestParam(required = false, defaultValue = "desc") String sort) {
+    public ResponseEntity<CursorPageDTO<InventoryDTO>> getAllInventories(@RequestParam(required = false, defaultValue = "desc") String sort,
+                                                                         @RequestParam(required = false) String cursor,
+                                                                         @RequestParam(required = false) Integer limit) {
         // sort: "asc" cho cũ nhất, "desc" cho mới nhất
-        List<InventoryDTO> inventories = inventoryService.getAllInventories(sort);
+        CursorPageDTO<InventoryDTO> inventories = inventoryService.getAllInventories(sort, cursor, limit);
         return new ResponseEntity<>(inventories, HttpStatus.OK);
     }
 
@@ -74,23 +77,15 @@ public class InventoryController {
     }
 
     @GetMapping("/export-excel")
-    public ResponseEntity<byte[]> exportInventoriesToExcel(@RequestParam(required = false, defaultValue = "desc") String sort) {
-        try {
-            // Gọi service để xuất danh sách nhập kho
-            ByteArrayOutputStream outputStream = inventoryService.exportInventoriesToExcel(sort);
+    public ResponseEntity<StreamingResponseBody> exportInventoriesToExcel(@RequestParam(required = false, defaultValue = "desc") String sort) {
+        // Ghi file Excel trực tiếp vào response: dữ liệu đọc theo cursor, không tạo mảng byte trung gian
+        StreamingResponseBody body = outputStream -> inventoryService.exportInventoriesToExcel(sort, outputStream);
 
-            // Thiết lập các header cho response (để trình duyệt tải file Excel)
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=inventories.xlsx");
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=inventories.xlsx");
+        headers.add(HttpHeaders.CONTENT_TYPE, ExcelStreamWriter.CONTENT_TYPE);
 
-            // Trả về file Excel dưới dạng byte array
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
-        } catch (IOException e) {
-            // Nếu có lỗi xảy ra trong quá trình xuất file Excel
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Lỗi khi xuất file Excel: " + e.getMessage()).getBytes());
-        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 
 }
\ No newline at end of file
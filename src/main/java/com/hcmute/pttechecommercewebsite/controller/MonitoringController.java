@@ -0,0 +1,55 @@
+package com.hcmute.pttechecommercewebsite.controller;
+
+import com.hcmute.pttechecommercewebsite.dto.BatchJobResultDTO;
+import com.hcmute.pttechecommercewebsite.dto.CacheMetricsDTO;
+import com.hcmute.pttechecommercewebsite.dto.ConflictMetricsDTO;
+import com.hcmute.pttechecommercewebsite.service.ProductDetailCache;
+import com.hcmute.pttechecommercewebsite.util.BatchJobRunner;
+import com.hcmute.pttechecommercewebsite.util.OptimisticRetryExecutor;
+import com.hcmute.pttechecommercewebsite.util.ReferenceDataCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/monitoring")
+public class MonitoringController {
+
+    private final OptimisticRetryExecutor optimisticRetryExecutor;
+    private final ReferenceDataCache referenceDataCache;
+    private final ProductDetailCache productDetailCache;
+    private final BatchJobRunner batchJobRunner;
+
+    public MonitoringController(OptimisticRetryExecutor optimisticRetryExecutor, ReferenceDataCache referenceDataCache,
+                                ProductDetailCache productDetailCache, BatchJobRunner batchJobRunner) {
+        this.optimisticRetryExecutor = optimisticRetryExecutor;
+        this.referenceDataCache = referenceDataCache;
+        this.productDetailCache = productDetailCache;
+        this.batchJobRunner = batchJobRunner;
+    }
+
+    // API xem số lần xung đột optimistic locking theo từng phương thức service
+    @GetMapping("/conflicts")
+    public ResponseEntity<List<ConflictMetricsDTO>> getConflictMetrics() {
+        return ResponseEntity.ok(optimisticRetryExecutor.getMetrics());
+    }
+
+    // API xem hit / miss của cache dữ liệu danh mục (thương hiệu, danh mục, chính sách, liên hệ, ảnh quảng cáo)
+    // và cache chi tiết sản phẩm
+    @GetMapping("/caches")
+    public ResponseEntity<List<CacheMetricsDTO>> getCacheMetrics() {
+        List<CacheMetricsDTO> metrics = new ArrayList<>(referenceDataCache.getMetrics());
+        metrics.add(productDetailCache.getMetrics());
+        return ResponseEntity.ok(metrics);
+    }
+
+    // API xem kết quả lần chạy gần nhất của các job xử lý hàng loạt (số document thay đổi, thời gian chạy)
+    @GetMapping("/batch-jobs")
+    public ResponseEntity<List<BatchJobResultDTO>> getBatchJobResults() {
+        return ResponseEntity.ok(batchJobRunner.getLastResults());
+    }
+}
@@ -2,17 +2,19 @@ package com.hcmute.pttechecommercewebsite.controller;
 
 import com.hcmute.pttechecommercewebsite.config.VNPayConfig;
 import com.hcmute.pttechecommercewebsite.util.VNPayUtil;
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
+import com.hcmute.pttechecommercewebsite.dto.DiscountPreviewDTO;
 import com.hcmute.pttechecommercewebsite.dto.OrderDTO;
 import com.hcmute.pttechecommercewebsite.service.OrderService;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -28,12 +30,14 @@ public class OrderController {
 
     // Lấy tất cả đơn hàng (có thể lọc theo các điều kiện)
     @GetMapping
-    public List<OrderDTO> getAllOrders(@RequestParam(required = false) String paymentMethod,
-                                       @RequestParam(required = false) String paymentStatus,
-                                       @RequestParam(required = false) String orderStatus,
-                                       @RequestParam(required = false) String shippingMethod,
-                                       @RequestParam(required = false, defaultValue = "latest") String sortBy) {
-        return orderService.getAllOrders(paymentMethod, paymentStatus, orderStatus, shippingMethod, sortBy);
+    public CursorPageDTO<OrderDTO> getAllOrders(@RequestParam(required = false) String paymentMethod,
+                                                @RequestParam(required = false) String paymentStatus,
+                                                @RequestParam(required = false) String orderStatus,
+                                                @RequestParam(required = false) String shippingMethod,
+                                                @RequestParam(required = false, defaultValue = "latest") String sortBy,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer limit) {
+        return orderService.getAllOrders(paymentMethod, paymentStatus, orderStatus, shippingMethod, sortBy, cursor, limit);
     }
 
     // Lấy đơn hàng theo ID
@@ -78,6 +82,16 @@ public class OrderController {
         return orderService.createOrder(orderDTO);
     }
 
+    // Xem trước các mã giảm giá áp dụng được cho đơn hàng sắp đặt (không ghi gì vào MongoDB)
+    @PostMapping("/discount-preview")
+    public ResponseEntity<List<DiscountPreviewDTO>> previewDiscounts(@RequestBody OrderDTO orderDTO) {
+        try {
+            return ResponseEntity.ok(orderService.previewDiscounts(orderDTO));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
+        }
+    }
+
     @PutMapping("/{orderId}")
     public ResponseEntity<OrderDTO> updateOrder(@PathVariable String orderId, @RequestBody OrderDTO updatedOrderDTO) {
         try {
@@ -183,25 +197,18 @@ public class OrderController {
 
     // API xuất danh sách đơn hàng ra file Excel
     @GetMapping("/export-excel")
-    public ResponseEntity<byte[]> exportOrdersToExcel(@RequestParam(required = false) String paymentMethod,
-                                                      @RequestParam(required = false) String paymentStatus,
-                                                      @RequestParam(required = false) String orderStatus,
-                                                      @RequestParam(required = false) String shippingMethod,
-                                                      @RequestParam(required = false, defaultValue = "latest") String sortBy) {
-        try {
-            // Gọi service để lấy danh sách đơn hàng và xuất ra file Excel
-            ByteArrayOutputStream outputStream = orderService.exportOrdersToExcel(paymentMethod, paymentStatus, orderStatus, shippingMethod, sortBy);
-
-            // Thiết lập các header HTTP cho response
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=orders.xlsx");
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-
-            // Trả về response chứa dữ liệu file Excel
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Lỗi khi xuất file Excel: " + e.getMessage()).getBytes());
-        }
+    public ResponseEntity<StreamingResponseBody> exportOrdersToExcel(@RequestParam(required = false) String paymentMethod,
+                                                                     @RequestParam(required = false) String paymentStatus,
+                                                                     @RequestParam(required = false) String orderStatus,
+                                                                     @RequestParam(required = false) String shippingMethod,
+                                                                     @RequestParam(required = false, defaultValue = "latest") String sortBy) {
+        // Ghi file Excel trực tiếp vào response: dữ liệu đọc theo cursor, không tạo mảng byte trung gian
+        StreamingResponseBody body = outputStream -> orderService.exportOrdersToExcel(paymentMethod, paymentStatus, orderStatus, shippingMethod, sortBy, outputStream);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=orders.xlsx");
+        headers.add(HttpHeaders.CONTENT_TYPE, ExcelStreamWriter.CONTENT_TYPE);
+
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
\ No newline at end of file
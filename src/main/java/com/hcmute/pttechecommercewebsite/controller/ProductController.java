@@ -2,14 +2,20 @@ package com.hcmute.pttechecommercewebsite.controller;
 
 import com.hcmute.pttechecommercewebsite.dto.ProductDTO;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
+import com.hcmute.pttechecommercewebsite.service.ProductDetailCache;
 import com.hcmute.pttechecommercewebsite.service.ProductService;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
+import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
@@ -49,6 +55,29 @@ public class ProductController {
         return ResponseEntity.ok(result);
     }
 
+    // API lấy sản phẩm hoạt động theo trang (lọc, sắp xếp và phân trang trên MongoDB)
+    @GetMapping("/active/page")
+    public ResponseEntity<Page<ProductDTO>> getActiveProductsPage(
+            @RequestParam(required = false) String sortBy,
+            @RequestParam(required = false) String sortOrder,
+            @RequestParam(required = false) List<String> brandName,
+            @RequestParam(required = false) List<String> categoryName,
+            @RequestParam(required = false) List<String> visibilityType,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        try {
+            Page<ProductDTO> result = productService.getActiveProductsPage(
+                    sortBy, sortOrder, brandName, categoryName, visibilityType, minPrice, maxPrice, page, size
+            );
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     // API lấy tất cả sản phẩm không hoạt động
     @GetMapping("/inactive")
     public ResponseEntity<List<ProductDTO>> getAllInactiveProducts(
@@ -85,17 +114,34 @@ public class ProductController {
         return ResponseEntity.ok(products);
     }
 
-    // API lấy sản phẩm theo ID
+    // API lấy sản phẩm theo ID (hỗ trợ If-None-Match: trả 304 nếu client đã có bản mới nhất)
     @GetMapping("/{id}")
-    public ResponseEntity<ProductDTO> getProductById(@PathVariable String id) {
-        Optional<ProductDTO> productDTO = productService.getProductById(id);
-        return productDTO.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    public ResponseEntity<byte[]> getProductById(@PathVariable String id, WebRequest webRequest) {
+        return toDetailResponse(productService.getProductById(id), webRequest);
     }
 
     @GetMapping("/by-product-id/{productId}")
-    public ResponseEntity<ProductDTO> getProductByProductId(@PathVariable String productId) {
-        Optional<ProductDTO> productDTO = productService.getProductByProductId(productId);
-        return productDTO.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    public ResponseEntity<byte[]> getProductByProductId(@PathVariable String productId, WebRequest webRequest) {
+        return toDetailResponse(productService.getProductByProductId(productId), webRequest);
+    }
+
+    // Trả JSON đã serialize sẵn trong cache kèm ETag; client phải hỏi lại server (no-cache) nhưng chỉ nhận 304 khi không đổi
+    private ResponseEntity<byte[]> toDetailResponse(Optional<ProductDetailCache.ProductDetail> detail, WebRequest webRequest) {
+        if (detail.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String etag = detail.get().etag();
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(detail.get().json());
     }
 
     // API tạo mới sản phẩm
@@ -195,21 +241,16 @@ public class ProductController {
 
     // API xuất danh sách sản phẩm ra file Excel
     @GetMapping("/export-excel")
-    public ResponseEntity<byte[]> exportProductsToExcel(
+    public ResponseEntity<StreamingResponseBody> exportProductsToExcel(
             @RequestParam(value = "sortBy", defaultValue = "createdAt") String sortBy,
             @RequestParam(value = "sortOrder", defaultValue = "desc") String sortOrder) {
+        // Ghi file Excel trực tiếp vào response: dữ liệu đọc theo cursor, không tạo mảng byte trung gian
+        StreamingResponseBody body = outputStream -> productService.exportProductsToExcel(sortBy, sortOrder, outputStream);
 
-        try {
-            ByteArrayOutputStream outputStream = productService.exportProductsToExcel(sortBy, sortOrder);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=products.xlsx");
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=products.xlsx");
+        headers.add(HttpHeaders.CONTENT_TYPE, ExcelStreamWriter.CONTENT_TYPE);
 
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Lỗi khi xuất file Excel: " + e.getMessage()).getBytes());
-        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
\ No newline at end of file
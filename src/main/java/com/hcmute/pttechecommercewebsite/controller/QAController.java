@@ -1,5 +1,6 @@
 package com.hcmute.pttechecommercewebsite.controller;
 
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
 import com.hcmute.pttechecommercewebsite.dto.QADTO;
 import com.hcmute.pttechecommercewebsite.model.QA;
 import com.hcmute.pttechecommercewebsite.service.QAService;
@@ -20,8 +21,10 @@ public class QAController {
 
     // Lấy tất cả QA và sắp xếp theo thứ tự mới nhất hoặc cũ nhất
     @GetMapping("")
-    public ResponseEntity<List<QADTO>> getAllQAs(@RequestParam(defaultValue = "desc") String sortOrder) {
-        List<QADTO> qaList = qaService.getAllQAsSorted(sortOrder);
+    public ResponseEntity<CursorPageDTO<QADTO>> getAllQAs(@RequestParam(defaultValue = "desc") String sortOrder,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(required = false) Integer limit) {
+        CursorPageDTO<QADTO> qaList = qaService.getAllQAsSorted(sortOrder, cursor, limit);
         return new ResponseEntity<>(qaList, HttpStatus.OK);
     }
 
@@ -1,5 +1,6 @@
 package com.hcmute.pttechecommercewebsite.controller;
 
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
 import com.hcmute.pttechecommercewebsite.dto.ReviewDTO;
 import com.hcmute.pttechecommercewebsite.model.Review;
 import com.hcmute.pttechecommercewebsite.service.ReviewService;
@@ -21,8 +22,9 @@ public class ReviewController {
 
     // Xem tất cả đánh giá chưa bị xóa
     @GetMapping
-    public ResponseEntity<List<ReviewDTO>> getAllReviews() {
-        List<ReviewDTO> reviews = reviewService.getAllReviews();
+    public ResponseEntity<CursorPageDTO<ReviewDTO>> getAllReviews(@RequestParam(required = false) String cursor,
+                                                                  @RequestParam(required = false) Integer limit) {
+        CursorPageDTO<ReviewDTO> reviews = reviewService.getAllReviews(cursor, limit);
         return ResponseEntity.ok(reviews);
     }
 
@@ -0,0 +1,31 @@
+package com.hcmute.pttechecommercewebsite.controller;
+
+import com.hcmute.pttechecommercewebsite.dto.SearchSuggestionDTO;
+import com.hcmute.pttechecommercewebsite.service.SearchSuggestionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+
+    @Autowired
+    private SearchSuggestionService searchSuggestionService;
+
+    // API gợi ý tìm kiếm khi người dùng đang gõ (sản phẩm, thương hiệu, danh mục, tag)
+    @GetMapping("/suggest")
+    public ResponseEntity<List<SearchSuggestionDTO>> suggest(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        if (limit < 1 || limit > SearchSuggestionService.MAX_SUGGESTIONS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(searchSuggestionService.suggest(query, limit));
+    }
+}
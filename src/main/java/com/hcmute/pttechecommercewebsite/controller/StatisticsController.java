@@ -1,15 +1,19 @@
 package com.hcmute.pttechecommercewebsite.controller;
 
 import com.hcmute.pttechecommercewebsite.dto.StatisticsDTO;
+import com.hcmute.pttechecommercewebsite.dto.StatisticsReportDTO;
+import com.hcmute.pttechecommercewebsite.service.StatisticsReportService;
 import com.hcmute.pttechecommercewebsite.service.StatisticsService;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.List;
 
@@ -20,6 +24,9 @@ public class StatisticsController {
     @Autowired
     private StatisticsService statisticsService;
 
+    @Autowired
+    private StatisticsReportService statisticsReportService;
+
     // API để lấy tất cả thống kê
     @GetMapping
     public List<StatisticsDTO> getAllStatistics(
@@ -29,6 +36,22 @@ public class StatisticsController {
         return statisticsService.getAllStatistics(sortBy, period);
     }
 
+    // API báo cáo thống kê theo tuần / tháng / năm hoặc khoảng ngày, có thể chia theo giờ / ngày / tuần / tháng
+    @GetMapping("/report")
+    public ResponseEntity<StatisticsReportDTO> getStatisticsReport(
+            @RequestParam(name = "period", required = false) String period,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "granularity", required = false) String granularity,
+            @RequestParam(name = "topLimit", required = false) Integer topLimit) {
+
+        try {
+            return ResponseEntity.ok(statisticsReportService.getReport(period, from, to, granularity, topLimit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     // API để lấy chi tiết thống kê theo ID
     @GetMapping("/{id}")
     public StatisticsDTO getStatisticsById(@PathVariable String id) {
@@ -36,21 +59,16 @@ public class StatisticsController {
     }
 
     @GetMapping("/export-excel")
-    public ResponseEntity<byte[]> exportStatisticsToExcel(
+    public ResponseEntity<StreamingResponseBody> exportStatisticsToExcel(
             @RequestParam(name = "sortBy", defaultValue = "latest") String sortBy,
             @RequestParam(name = "period", required = false) String period) {
+        // Ghi file Excel trực tiếp vào response: dữ liệu đọc theo cursor, không tạo mảng byte trung gian
+        StreamingResponseBody body = outputStream -> statisticsService.exportStatisticsToExcel(sortBy, period, outputStream);
 
-        try {
-            ByteArrayOutputStream outputStream = statisticsService.exportStatisticsToExcel(sortBy, period);
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=statistics.xlsx");
+        headers.add(HttpHeaders.CONTENT_TYPE, ExcelStreamWriter.CONTENT_TYPE);
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=statistics.xlsx");
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Lỗi khi xuất file Excel: " + e.getMessage()).getBytes());
-        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
@@ -1,19 +1,22 @@
 package com.hcmute.pttechecommercewebsite.controller;
 
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
 import com.hcmute.pttechecommercewebsite.dto.UserDTO;
 import com.hcmute.pttechecommercewebsite.exception.MessageResponse;
 import com.hcmute.pttechecommercewebsite.model.User;
 import com.hcmute.pttechecommercewebsite.service.EmailTemplateService;
 import com.hcmute.pttechecommercewebsite.service.UserService;
+import com.hcmute.pttechecommercewebsite.util.JwtClaims;
 import com.hcmute.pttechecommercewebsite.util.JwtUtil;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
@@ -32,10 +35,16 @@ public class UserController {
     @Autowired
     private JwtUtil jwtUtil;
 
-    // Lấy tất cả người dùng
+    // Lấy danh sách người dùng (tìm theo tiền tố username / email, lọc và phân trang bằng cursor)
     @GetMapping
-    public ResponseEntity<List<UserDTO>> getAllUsers() {
-        List<UserDTO> users = userService.getAllUsers();
+    public ResponseEntity<CursorPageDTO<UserDTO>> getAllUsers(@RequestParam(required = false) String keyword,
+                                                              @RequestParam(defaultValue = "username") String searchBy,
+                                                              @RequestParam(required = false) String role,
+                                                              @RequestParam(required = false) Boolean blocked,
+                                                              @RequestParam(required = false) Boolean verified,
+                                                              @RequestParam(required = false) String cursor,
+                                                              @RequestParam(required = false) Integer limit) {
+        CursorPageDTO<UserDTO> users = userService.getAllUsers(keyword, searchBy, role, blocked, verified, cursor, limit);
         return ResponseEntity.ok(users);
     }
 
@@ -49,8 +58,10 @@ public class UserController {
 
     // Tìm kiếm người dùng theo tên (username)
     @GetMapping("/search")
-    public ResponseEntity<List<UserDTO>> searchUsersByUsername(@RequestParam String username) {
-        List<UserDTO> users = userService.searchUsersByUsername(username);
+    public ResponseEntity<CursorPageDTO<UserDTO>> searchUsersByUsername(@RequestParam String username,
+                                                                        @RequestParam(required = false) String cursor,
+                                                                        @RequestParam(required = false) Integer limit) {
+        CursorPageDTO<UserDTO> users = userService.searchUsersByUsername(username, cursor, limit);
         return ResponseEntity.ok(users);
     }
 
@@ -188,11 +199,10 @@ public class UserController {
     @PostMapping("/refresh-token")
     public ResponseEntity<?> refreshToken(@RequestParam String refreshToken) {
         try {
-            String username = jwtUtil.extractUsername(refreshToken);
+            Optional<JwtClaims> claims = jwtUtil.parseToken(refreshToken);
 
-            if (username != null && jwtUtil.isTokenValid(refreshToken)) {
-                List<String> roles = jwtUtil.extractRoles(refreshToken);
-                String newAccessToken = jwtUtil.generateToken("userId", username, roles);
+            if (claims.isPresent() && claims.get().username() != null) {
+                String newAccessToken = jwtUtil.generateToken(claims.get().userId(), claims.get().username(), claims.get().roles());
                 return ResponseEntity.ok(newAccessToken);
             } else {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Refresh token không hợp lệ.");
@@ -228,20 +238,15 @@ public class UserController {
 
     // API xuất danh sách người dùng ra file Excel
     @GetMapping("/export-excel")
-    public ResponseEntity<byte[]> exportUsersToExcel(@RequestParam(value = "sortBy", defaultValue = "createdAt") String sortBy,
-                                                     @RequestParam(value = "sortOrder", defaultValue = "desc") String sortOrder) {
+    public ResponseEntity<StreamingResponseBody> exportUsersToExcel(@RequestParam(value = "sortBy", defaultValue = "createdAt") String sortBy,
+                                                                    @RequestParam(value = "sortOrder", defaultValue = "desc") String sortOrder) {
+        // Ghi file Excel trực tiếp vào response: dữ liệu đọc theo cursor, không tạo mảng byte trung gian
+        StreamingResponseBody body = outputStream -> userService.exportUsersToExcel(sortBy, sortOrder, outputStream);
 
-        try {
-            ByteArrayOutputStream outputStream = userService.exportUsersToExcel(sortBy, sortOrder);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users.xlsx");
-            headers.add(HttpHeaders.CONTENT_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users.xlsx");
+        headers.add(HttpHeaders.CONTENT_TYPE, ExcelStreamWriter.CONTENT_TYPE);
 
-            return new ResponseEntity<>(outputStream.toByteArray(), headers, HttpStatus.OK);
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(("Lỗi khi xuất file Excel: " + e.getMessage()).getBytes());
-        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchJobResultDTO {
+
+    private String jobName;              // Tên job (ví dụ: "ProductService.updateVisibilityTypeForAllProducts").
+    private Date startedAt;              // Thời điểm bắt đầu lần chạy gần nhất.
+    private long durationMs;             // Thời gian chạy (ms).
+    private long documentsChanged;       // Số document đã thay đổi.
+    private long totalDocumentsChanged;  // Tổng số document đã thay đổi qua các lần chạy từ khi khởi động.
+    private boolean success;             // Lần chạy có thành công không.
+    private String error;                // Thông báo lỗi nếu thất bại.
+}
@@ -0,0 +1,21 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CacheMetricsDTO {
+
+    private String region;               // Tên vùng cache (ví dụ: "brands", "categories").
+    private int size;                    // Số mục đang lưu.
+    private long hits;                   // Số lần đọc trúng cache.
+    private long misses;                 // Số lần phải truy vấn MongoDB.
+    private double hitRatio;             // hits / (hits + misses).
+    private long evictions;              // Số mục bị loại do vượt giới hạn hoặc hết hạn.
+    private long invalidations;          // Số lần xóa vùng do dữ liệu thay đổi.
+}
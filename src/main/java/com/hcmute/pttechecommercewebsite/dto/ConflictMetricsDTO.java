@@ -0,0 +1,18 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ConflictMetricsDTO {
+
+    private String operation;            // Tên phương thức service (ví dụ: "ProductService.updateProduct").
+    private long invocations;            // Số lần gọi.
+    private long conflicts;              // Số lần gặp xung đột version và phải thử lại.
+    private long exhausted;              // Số lần thất bại sau khi đã thử lại tối đa.
+}
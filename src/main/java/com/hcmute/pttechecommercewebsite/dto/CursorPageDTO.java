@@ -0,0 +1,20 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CursorPageDTO<T> {
+
+    private List<T> items;               // Các phần tử của trang hiện tại.
+    private String nextCursor;           // Cursor để lấy trang kế tiếp (null nếu đã hết).
+    private boolean hasMore;             // Còn trang kế tiếp hay không.
+    private int limit;                   // Số phần tử tối đa của một trang (sau khi áp giới hạn).
+}
@@ -0,0 +1,23 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DiscountPreviewDTO {
+
+    private String code;                 // Mã giảm giá.
+    private String description;          // Mô tả về mã giảm giá.
+    private String discountType;         // Loại giảm giá: "percentage" hoặc "fixed".
+    private Double discountValue;        // Giá trị giảm giá (phần trăm hoặc số tiền).
+    private String appliesTo;            // Loại áp dụng: "products", "shipping" hoặc "both".
+    private Date endDate;                // Ngày hết hạn.
+    private double discountAmount;       // Số tiền được giảm nếu dùng mã cho giỏ hàng / đơn hàng này.
+}
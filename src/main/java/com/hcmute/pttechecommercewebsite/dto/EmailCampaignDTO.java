@@ -0,0 +1,26 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EmailCampaignDTO {
+
+    private String id;                      // ID chiến dịch
+    private String subject;                 // Tiêu đề email
+    private int totalRecipients;            // Tổng số người nhận
+    private int sentCount;                  // Số email đã gửi thành công
+    private int failedCount;                // Số email gửi thất bại
+    private int pendingCount;               // Số email đang chờ gửi / thử lại
+    private double progressPercent;         // Tiến độ (%)
+    private String status;                  // Trạng thái chiến dịch
+    private Date createdAt;                 // Thời gian tạo
+    private Date completedAt;               // Thời gian hoàn tất
+}
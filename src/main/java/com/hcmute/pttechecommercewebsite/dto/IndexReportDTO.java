@@ -0,0 +1,20 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IndexReportDTO {
+
+    private String name;                 // Tên truy vấn của repository được kiểm tra.
+    private String collection;           // Collection được truy vấn.
+    private String filter;               // Điều kiện lọc dùng để chạy explain().
+    private String winningStage;         // Stage gốc của kế hoạch thực thi được chọn.
+    private String indexName;            // Index được sử dụng (nếu có).
+    private boolean collectionScan;      // true nếu kế hoạch thực thi còn COLLSCAN.
+}
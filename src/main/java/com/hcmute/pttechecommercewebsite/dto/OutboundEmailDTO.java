@@ -0,0 +1,19 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboundEmailDTO {
+
+    private String to;                  // Địa chỉ người nhận
+    private String subject;             // Tiêu đề email
+    private String htmlContent;         // Nội dung HTML
+    private String campaignId;          // ID chiến dịch (null nếu là email giao dịch)
+    private int attempt;                // Số lần đã thử gửi lại
+}
@@ -92,6 +92,7 @@ public class ProductDTO {
     public static class RatingsDTO {
         private double average;              // Điểm trung bình.
         private int totalReviews;            // Tổng số đánh giá.
+        private Map<String, Integer> histogram; // Số lượt đánh giá theo số sao ("1" đến "5").
     }
 
     @Data
@@ -0,0 +1,17 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SearchSuggestionDTO {
+
+    private String text;                    // Nội dung gợi ý hiển thị
+    private String type;                    // Loại gợi ý: product, brand, category, tag
+    private String id;                      // ID sản phẩm / thương hiệu / danh mục (null với tag)
+}
@@ -0,0 +1,53 @@
+package com.hcmute.pttechecommercewebsite.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StatisticsReportDTO {
+
+    private Date from;                                  // Thời điểm bắt đầu (bao gồm)
+    private Date to;                                    // Thời điểm kết thúc (không bao gồm)
+    private String granularity;                         // Độ chia thời gian: hour, day, week, month (null nếu không chia)
+
+    private int totalOrders;                            // Tổng số đơn hàng
+    private int totalItemsSold;                         // Tổng số sản phẩm đã bán
+    private double totalRevenue;                        // Tổng doanh thu
+    private double totalDiscounts;                      // Tổng số tiền giảm giá
+    private double totalShippingCosts;                  // Tổng chi phí vận chuyển
+    private double averageOrderValue;                   // Giá trị trung bình của đơn hàng
+    private double highestOrderValue;                   // Giá trị đơn hàng cao nhất
+    private double lowestOrderValue;                    // Giá trị đơn hàng thấp nhất
+    private int totalReturnedItems;                     // Tổng số sản phẩm trả lại
+    private double totalRevenueFromReturns;             // Doanh thu từ các đơn hàng trả lại
+
+    private Map<String, Integer> totalOrdersByPaymentMethod;  // Phân loại theo phương thức thanh toán
+    private Map<String, Integer> totalOrdersByStatus;         // Phân loại theo trạng thái đơn hàng
+    private Map<String, Integer> totalOrdersByShippingMethod; // Phân loại theo phương thức vận chuyển
+
+    private List<StatisticsDTO.ProductSalesDTO> topSellingProducts;  // Sản phẩm bán chạy
+    private StatisticsDTO.CustomerFeedbackDTO customerFeedback;      // Đánh giá của khách hàng
+
+    private List<BucketDTO> buckets;                    // Số liệu theo từng khoảng thời gian
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class BucketDTO {
+        private String bucket;              // Nhãn khoảng thời gian (vd: 2025-01-31, 2025-01-31T09:00)
+        private int totalOrders;            // Số đơn hàng
+        private int totalItemsSold;         // Số sản phẩm đã bán
+        private double totalRevenue;        // Doanh thu
+        private double averageOrderValue;   // Giá trị trung bình của đơn hàng
+    }
+}
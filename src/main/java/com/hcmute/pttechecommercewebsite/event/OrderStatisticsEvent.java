@@ -0,0 +1,40 @@
+package com.hcmute.pttechecommercewebsite.event;
+
+import com.hcmute.pttechecommercewebsite.model.Order;
+import org.bson.types.ObjectId;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Sự kiện phát ra mỗi khi đơn hàng được tạo hoặc thay đổi, dùng để cộng dồn thống kê theo ngày.
+// before = null nghĩa là đơn hàng vừa được tạo.
+public record OrderStatisticsEvent(Snapshot before, Snapshot after) {
+
+    public static OrderStatisticsEvent created(Order order) {
+        return new OrderStatisticsEvent(null, Snapshot.of(order));
+    }
+
+    public static OrderStatisticsEvent changed(Snapshot before, Order after) {
+        return new OrderStatisticsEvent(before, Snapshot.of(after));
+    }
+
+    // Bản chụp các giá trị của đơn hàng có ảnh hưởng đến thống kê
+    public record Snapshot(ObjectId userId, Date createdAt, double finalPrice, double shippingPrice,
+                           double discountAmount, int totalItems, String paymentMethod,
+                           String shippingMethod, String orderStatus, List<ItemLine> items) {
+
+        public static Snapshot of(Order order) {
+            List<ItemLine> items = order.getItems() == null ? List.of() : order.getItems().stream()
+                    .map(item -> new ItemLine(item.getProductId(), item.getProductName(), item.getQuantity(),
+                            item.getDiscountPrice() * item.getQuantity()))
+                    .collect(Collectors.toList());
+            return new Snapshot(order.getUserId(), order.getCreatedAt(), order.getFinalPrice(), order.getShippingPrice(),
+                    order.getDiscountAmount(), order.getTotalItems(), order.getPaymentMethod(),
+                    order.getShippingMethod(), order.getOrderStatus(), items);
+        }
+    }
+
+    public record ItemLine(ObjectId productId, String productName, int quantity, double revenue) {
+    }
+}
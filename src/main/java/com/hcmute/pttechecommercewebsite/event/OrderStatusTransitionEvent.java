@@ -0,0 +1,9 @@
+package com.hcmute.pttechecommercewebsite.event;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+// Sự kiện phát ra khi nhiều đơn hàng được chuyển trạng thái cùng lúc bằng một lệnh updateMany
+// (chuyển trạng thái theo thời gian); ordersByDay: số đơn đã chuyển theo ngày tạo đơn
+public record OrderStatusTransitionEvent(String fromStatus, String toStatus, Map<LocalDate, Long> ordersByDay) {
+}
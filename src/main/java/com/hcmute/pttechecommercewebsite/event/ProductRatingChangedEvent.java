@@ -0,0 +1,7 @@
+package com.hcmute.pttechecommercewebsite.event;
+
+import com.hcmute.pttechecommercewebsite.model.Product;
+
+// Sự kiện phát ra khi ratings của sản phẩm được cập nhật trực tiếp (findAndModify / bulk), không qua save()
+public record ProductRatingChangedEvent(Product product) {
+}
@@ -0,0 +1,7 @@
+package com.hcmute.pttechecommercewebsite.event;
+
+import java.util.Date;
+
+// Sự kiện phát ra khi đánh giá được tạo (oldRating = null) hoặc đổi điểm
+public record ReviewStatisticsEvent(Date createdAt, Double oldRating, Double newRating) {
+}
@@ -5,6 +5,7 @@ import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -29,6 +30,9 @@ public class Cart {
 
     private boolean isDeleted;                    // Trạng thái xóa mềm (true: đã xóa, false: chưa xóa).
 
+    @Version
+    private Long version;                         // Phiên bản document (optimistic locking).
+
     @CreatedDate
     private Date createdAt;                       // Ngày tạo giỏ hàng.
 
@@ -5,6 +5,7 @@ import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import jakarta.validation.constraints.NotNull;
@@ -61,6 +62,9 @@ public class DiscountCode {
 
     private Date scheduledDate;
 
+    @Version
+    private Long version;                    // Phiên bản document (optimistic locking).
+
     @CreatedDate
     private Date createdAt;                  // Thời gian tạo mã giảm giá
 
@@ -0,0 +1,34 @@
+package com.hcmute.pttechecommercewebsite.model;
+
+import lombok.*;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Sổ ghi lượt sử dụng mã giảm giá: mỗi người dùng chỉ có một bản ghi cho mỗi mã (unique index discountCodeId + userId)
+@Document(collection = "DiscountRedemptions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DiscountRedemption {
+
+    @Id
+    private String id;                       // ID duy nhất của lượt sử dụng.
+
+    private ObjectId discountCodeId;         // ID tham chiếu đến mã giảm giá.
+
+    private String code;                     // Mã giảm giá đã dùng.
+
+    private ObjectId userId;                 // ID người dùng đã dùng mã.
+
+    private String orderId;                  // Mã đơn hàng (orderId) áp dụng mã giảm giá.
+
+    private double discountAmount;           // Số tiền đã giảm.
+
+    @CreatedDate
+    private Date createdAt;                  // Thời điểm sử dụng mã.
+}
@@ -0,0 +1,38 @@
+package com.hcmute.pttechecommercewebsite.model;
+
+import lombok.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document(collection = "EmailCampaigns")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EmailCampaign {
+
+    @Id
+    private String id;                      // ID duy nhất của chiến dịch email.
+
+    private String subject;                 // Tiêu đề email thông báo.
+
+    private int totalRecipients;            // Tổng số người nhận đã xếp hàng.
+
+    private int sentCount;                  // Số email đã gửi thành công.
+
+    private int failedCount;                // Số email gửi thất bại sau khi hết lượt thử lại.
+
+    private String status;                  // Trạng thái chiến dịch ("Đang gửi", "Hoàn tất").
+
+    @CreatedDate
+    private Date createdAt;                 // Thời gian tạo chiến dịch.
+
+    @LastModifiedDate
+    private Date updatedAt;                 // Thời gian cập nhật tiến độ gần nhất.
+
+    private Date completedAt;               // Thời gian hoàn tất chiến dịch.
+}
@@ -5,6 +5,7 @@ import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -50,6 +51,9 @@ public class Order {
 
     private String shippingMethod;                // Phương thức giao hàng.
 
+    @Version
+    private Long version;                         // Phiên bản document (optimistic locking).
+
     @CreatedDate
     private Date createdAt;                       // Thời gian tạo đơn hàng.
 
@@ -68,6 +72,8 @@ public class Order {
 
     private String returnRejectionReason;
 
+    private List<StatusTransition> statusHistory; // Lịch sử chuyển trạng thái đơn hàng.
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -98,6 +104,17 @@ public class Order {
         private Date updatedAt;                     // Ngày sản phẩm được cập nhật trong đơn hàng.
     }
 
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class StatusTransition {
+        private String from;                        // Trạng thái trước khi chuyển.
+        private String to;                          // Trạng thái sau khi chuyển.
+        private Date at;                            // Thời điểm chuyển trạng thái.
+        private String source;                      // Nguồn chuyển trạng thái ("api" hoặc "scheduler").
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -5,6 +5,7 @@ import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import jakarta.validation.constraints.NotNull;
@@ -55,6 +56,9 @@ public class Product {
 
     private Date scheduledDate;
 
+    @Version
+    private Long version;                    // Phiên bản document (optimistic locking).
+
     @CreatedDate
     private Date createdAt;                  // Ngày tạo sản phẩm.
 
@@ -112,8 +116,10 @@ public class Product {
     @AllArgsConstructor
     @Builder
     public static class Ratings {
-        private double average;              // Điểm trung bình của các đánh giá.
+        private double average;              // Điểm trung bình của các đánh giá (= sum / totalReviews).
         private int totalReviews;            // Tổng số lượt đánh giá.
+        private Double sum;                  // Tổng điểm của các đánh giá.
+        private Map<String, Integer> histogram; // Số lượt đánh giá theo số sao ("1" đến "5").
     }
 
     @Data
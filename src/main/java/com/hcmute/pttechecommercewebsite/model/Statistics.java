@@ -23,6 +23,8 @@ public class Statistics {
 
     private Date date;                              // Ngày thống kê
 
+    private String dayKey;                          // Khóa ngày (yyyy-MM-dd), duy nhất cho mỗi document
+
     private int totalOrders;                        // Tổng số đơn hàng trong ngày
     private int totalItemsSold;                     // Tổng số sản phẩm đã bán
     private double totalRevenue;                    // Tổng doanh thu
@@ -31,7 +33,9 @@ public class Statistics {
     private double totalShippingCosts;              // Tổng chi phí vận chuyển
     private double totalPaymentFees;                // Tổng phí thanh toán
 
-    private List<ProductSales> topSellingProducts;   // Danh sách sản phẩm bán chạy
+    private List<ProductSales> topSellingProducts;   // Danh sách sản phẩm bán chạy (dữ liệu cũ)
+
+    private Map<String, ProductSales> productSales;  // Doanh số theo sản phẩm (key = productId), cộng dồn bằng $inc
 
     private int newCustomers;                       // Số khách hàng mới
     private int totalCustomers;                     // Tổng số khách hàng đã mua hàng
@@ -77,5 +81,6 @@ public class Statistics {
         private int totalReviews;        // Tổng số đánh giá
         private int positiveReviews;     // Số đánh giá tích cực
         private int negativeReviews;     // Số đánh giá tiêu cực
+        private double totalRating;      // Tổng điểm đánh giá (để tính trung bình khi cộng dồn)
     }
 }
\ No newline at end of file
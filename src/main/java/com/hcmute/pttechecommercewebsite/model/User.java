@@ -26,6 +26,9 @@ public class User {
     private String phoneNumber;                 // Số điện thoại của người dùng.
     private String avatar;                      // URL ảnh đại diện của người dùng.
 
+    private String usernameSearch;              // Username chữ thường, bỏ dấu (tìm kiếm theo tiền tố, tự cập nhật khi lưu).
+    private String emailSearch;                 // Email chữ thường (tìm kiếm theo tiền tố, tự cập nhật khi lưu).
+
     private Address address;                    // Địa chỉ của người dùng.
     private boolean isVerified;                 // Trạng thái xác thực email.
     private String verificationToken;           // Token xác thực gửi qua email.
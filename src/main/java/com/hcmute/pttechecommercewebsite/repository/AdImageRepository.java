@@ -5,9 +5,9 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface AdImageRepository extends MongoRepository<AdImage, String> {
@@ -21,11 +21,11 @@ public interface AdImageRepository extends MongoRepository<AdImage, String> {
     // Tìm tất cả quảng cáo không bị xóa
     List<AdImage> findByIsDeletedFalse(Sort sort);
 
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<AdImage> streamByIsDeletedFalse(Sort sort);
+
     Optional<AdImage> findByIdAndIsDeletedFalse(String id);
 
     // Tìm quảng cáo theo tiêu đề (không phân biệt chữ hoa/thường)
     List<AdImage> findByTitleContainingIgnoreCaseAndIsDeletedFalse(String title);
-
-    // Tìm tất cả quảng cáo có thời gian lên lịch nhỏ hơn hoặc bằng thời gian hiện tại và chưa kích hoạt
-    List<AdImage> findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(Date now);
 }
\ No newline at end of file
@@ -6,9 +6,9 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface BrandRepository extends MongoRepository<Brand, String> {
@@ -22,13 +22,13 @@ public interface BrandRepository extends MongoRepository<Brand, String> {
     // Tìm tất cả thương hiệu mà không bị xóa (isDeleted == false)
     List<Brand> findByIsDeletedFalse(Sort sort);
 
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<Brand> streamByIsDeletedFalse(Sort sort);
+
     Optional<Brand> findByIdAndIsDeletedFalse(String id);
 
     @Query("{ 'name': { $regex: ?0, $options: 'i' }, 'isDeleted': false, 'isVisible': true }")
     List<Brand> findByNameContaining(String keyword);
 
-    // Tìm tất cả thương hiệu có thời gian lên lịch nhỏ hơn hoặc bằng thời gian hiện tại và chưa kích hoạt
-    List<Brand> findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(Date now);
-
     List<Brand> findByNameInIgnoreCase(List<String> names);
 }
\ No newline at end of file
@@ -6,9 +6,9 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.bson.types.ObjectId;
 
 @Repository
@@ -23,6 +23,9 @@ public interface CategoryRepository extends MongoRepository<Category, String> {
     // Tìm tất cả danh mục mà không bị xóa (isDeleted == false)
     List<Category> findByIsDeletedFalse(Sort sort);
 
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<Category> streamByIsDeletedFalse(Sort sort);
+
     Optional<Category> findByIdAndIsDeletedFalse(String id);
 
     // Tìm tất cả danh mục con thuộc danh mục cha mà không bị xóa (isDeleted == false) và hiển thị (isVisible == true)
@@ -31,8 +34,5 @@ public interface CategoryRepository extends MongoRepository<Category, String> {
     @Query("{ 'name': { $regex: ?0, $options: 'i' }, 'isDeleted': false, 'isVisible': true }")
     List<Category> findByNameContaining(String keyword);
 
-    // Tìm tất cả danh mục có thời gian lên lịch nhỏ hơn hoặc bằng thời gian hiện tại và chưa kích hoạt
-    List<Category> findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(Date now);
-
     List<Category> findByNameInIgnoreCase(List<String> names);
 }
\ No newline at end of file
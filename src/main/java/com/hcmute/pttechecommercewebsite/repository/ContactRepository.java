@@ -6,9 +6,9 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ContactRepository extends MongoRepository<Contact, String> {
@@ -19,6 +19,6 @@ public interface ContactRepository extends MongoRepository<Contact, String> {
 
     List<Contact> findByIsDeletedFalse(Sort sort);
 
-    // Tìm tất cả liên hệ có thời gian lên lịch nhỏ hơn hoặc bằng thời gian hiện tại và chưa kích hoạt
-    List<Contact> findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(Date now);
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<Contact> streamByIsDeletedFalse(Sort sort);
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.hcmute.pttechecommercewebsite.repository;
+
+import com.hcmute.pttechecommercewebsite.model.DiscountRedemption;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface DiscountRedemptionRepository extends MongoRepository<DiscountRedemption, String> {
+
+    // Các lượt sử dụng mã giảm giá của một đơn hàng
+    List<DiscountRedemption> findByOrderId(String orderId);
+}
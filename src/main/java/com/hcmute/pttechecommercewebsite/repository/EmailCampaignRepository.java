@@ -0,0 +1,14 @@
+package com.hcmute.pttechecommercewebsite.repository;
+
+import com.hcmute.pttechecommercewebsite.model.EmailCampaign;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface EmailCampaignRepository extends MongoRepository<EmailCampaign, String> {
+
+    // Lấy các chiến dịch mới nhất
+    List<EmailCampaign> findTop50ByOrderByCreatedAtDesc();
+}
@@ -7,11 +7,15 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface InventoryRepository extends MongoRepository<Inventory, String> {
     List<Inventory> findByIsDeletedFalse(Sort sort);
 
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<Inventory> streamByIsDeletedFalse(Sort sort);
+
     // Phương thức để lọc nhập kho theo danh sách Product ID
     List<Inventory> findByIsDeletedFalseAndProducts_ProductIdIn(List<ObjectId> productIds);
 }
\ No newline at end of file
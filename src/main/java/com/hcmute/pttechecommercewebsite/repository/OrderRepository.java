@@ -9,12 +9,21 @@ import org.springframework.stereotype.Repository;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface OrderRepository extends MongoRepository<Order, String> {
 
-    // Tìm tất cả đơn hàng không bị xóa
-    List<Order> findByIsDeletedFalse();
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<Order> streamByIsDeletedFalse(Sort sort);
+
+    Stream<Order> streamByPaymentMethodAndIsDeletedFalse(String paymentMethod, Sort sort);
+
+    Stream<Order> streamByPaymentStatusAndIsDeletedFalse(String paymentStatus, Sort sort);
+
+    Stream<Order> streamByOrderStatusAndIsDeletedFalse(String orderStatus, Sort sort);
+
+    Stream<Order> streamByShippingMethodAndIsDeletedFalse(String shippingMethod, Sort sort);
 
     // Tìm đơn hàng theo ID và chỉ lấy đơn hàng chưa bị xóa
     Optional<Order> findByIdAndIsDeletedFalse(String id);
@@ -25,6 +34,9 @@ public interface OrderRepository extends MongoRepository<Order, String> {
     // Tìm tất cả đơn hàng theo userId và chỉ lấy đơn hàng chưa bị xóa
     List<Order> findByUserIdAndIsDeletedFalse(ObjectId userId);
 
+    // Kiểm tra người dùng đã có đơn hàng (chưa xóa) trước một thời điểm hay chưa
+    boolean existsByUserIdAndCreatedAtBeforeAndIsDeletedFalse(ObjectId userId, Date createdAt);
+
     // Tìm đơn hàng chứa sản phẩm với productId và chỉ lấy đơn hàng chưa bị xóa
     List<Order> findByItemsProductIdAndIsDeletedFalse(ObjectId productId);
 
@@ -34,15 +46,6 @@ public interface OrderRepository extends MongoRepository<Order, String> {
     // Tìm top 10 đơn hàng có finalPrice cao nhất và chỉ lấy đơn hàng chưa bị xóa
     List<Order> findTop10ByIsDeletedFalseOrderByFinalPriceDesc();
 
-    // Tìm đơn hàng có trạng thái "Chờ xác nhận" và thời gian tạo trước một thời điểm nhất định
-    List<Order> findByOrderStatusAndCreatedAtBefore(String orderStatus, Date createdAt);
-
     // Tìm đơn hàng trong một khoảng thời gian
     List<Order> findByCreatedAtBetween(Date startDate, Date endDate);
-
-    // Tìm đơn hàng theo các tiêu chí lọc và chỉ lấy đơn hàng chưa bị xóa
-    List<Order> findByPaymentMethodAndIsDeletedFalse(String paymentMethod);
-    List<Order> findByPaymentStatusAndIsDeletedFalse(String paymentStatus);
-    List<Order> findByOrderStatusAndIsDeletedFalse(String orderStatus);
-    List<Order> findByShippingMethodAndIsDeletedFalse(String shippingMethod);
 }
\ No newline at end of file
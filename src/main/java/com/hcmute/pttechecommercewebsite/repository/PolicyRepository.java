@@ -6,9 +6,9 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PolicyRepository extends MongoRepository<Policy, String> {
@@ -19,9 +19,9 @@ public interface PolicyRepository extends MongoRepository<Policy, String> {
 
     List<Policy> findByIsDeletedFalse(Sort sort);
 
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<Policy> streamByIsDeletedFalse(Sort sort);
+
     @Query("{ 'title': { $regex: ?0, $options: 'i' }, 'isDeleted': false }")
     List<Policy> findByTitleContaining(String keyword);
-
-    // Tìm tất cả chính sách có thời gian lên lịch nhỏ hơn hoặc bằng thời gian hiện tại và chưa kích hoạt
-    List<Policy> findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(Date now);
 }
\ No newline at end of file
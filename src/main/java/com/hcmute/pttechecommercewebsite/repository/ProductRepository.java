@@ -6,12 +6,12 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface ProductRepository extends MongoRepository<Product, String> {
+public interface ProductRepository extends MongoRepository<Product, String>, ProductRepositoryCustom {
 
     // Tìm tất cả sản phẩm không bị xóa
     List<Product> findByIsDeletedFalse(Sort sort);
@@ -22,6 +22,9 @@ public interface ProductRepository extends MongoRepository<Product, String> {
     // Tìm tất cả sản phẩm không bị xóa và có trạng thái "inactive"
     List<Product> findByIsDeletedFalseAndStatus(String status, Sort sort);
 
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<Product> streamByIsDeletedFalseAndStatus(String status, Sort sort);
+
     // Tìm sản phẩm theo tên
     List<Product> findByNameContaining(String name);
 
@@ -33,9 +36,6 @@ public interface ProductRepository extends MongoRepository<Product, String> {
     // Tìm tất cả sản phẩm không bị xóa
     List<Product> findByIsDeletedFalse();
 
-    // Tìm sản phẩm đã lên lịch và có thời gian lên lịch trước ngày hiện tại
-    List<Product> findByScheduledDateBeforeAndIsDeletedFalse(Date scheduledDate);
-
     // Tìm sản phẩm theo ID mà không bị xóa
     Optional<Product> findById(String id);
 
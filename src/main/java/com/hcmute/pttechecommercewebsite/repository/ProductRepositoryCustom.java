@@ -0,0 +1,21 @@
+package com.hcmute.pttechecommercewebsite.repository;
+
+import com.hcmute.pttechecommercewebsite.model.Product;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Date;
+import java.util.List;
+
+public interface ProductRepositoryCustom {
+
+    // Lọc, sắp xếp và phân trang sản phẩm đang hoạt động trực tiếp trên MongoDB
+    Page<Product> findActiveProducts(List<ObjectId> brandIds, List<ObjectId> categoryIds,
+                                     List<String> visibilityTypes, Double minPrice, Double maxPrice,
+                                     Pageable pageable);
+
+    // Gán visibilityType cho các sản phẩm có totalSold trong [minSold, maxSoldExclusive) bằng một lệnh updateMany;
+    // chỉ cập nhật document đang có giá trị khác. minSold / maxSoldExclusive = null: không giới hạn. Trả về số document thay đổi
+    long updateVisibilityType(Integer minSold, Integer maxSoldExclusive, String visibilityType, Date now);
+}
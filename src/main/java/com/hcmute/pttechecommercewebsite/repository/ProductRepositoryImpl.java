@@ -0,0 +1,92 @@
+package com.hcmute.pttechecommercewebsite.repository;
+
+import com.hcmute.pttechecommercewebsite.model.Product;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.Date;
+import java.util.List;
+
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public ProductRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Page<Product> findActiveProducts(List<ObjectId> brandIds, List<ObjectId> categoryIds,
+                                            List<String> visibilityTypes, Double minPrice, Double maxPrice,
+                                            Pageable pageable) {
+        Criteria criteria = Criteria.where("isDeleted").is(false).and("status").ne("inactive");
+
+        if (brandIds != null) {
+            criteria.and("brandId").in(brandIds);
+        }
+
+        if (categoryIds != null) {
+            criteria.and("categoryId").in(categoryIds);
+        }
+
+        if (visibilityTypes != null && !visibilityTypes.isEmpty()) {
+            criteria.and("visibilityType").in(visibilityTypes);
+        }
+
+        // Khoảng giá được gộp vào cùng một điều kiện trên pricing.current
+        if (minPrice != null && maxPrice != null) {
+            criteria.and("pricing.current").gte(minPrice).lte(maxPrice);
+        } else if (minPrice != null) {
+            criteria.and("pricing.current").gte(minPrice);
+        } else if (maxPrice != null) {
+            criteria.and("pricing.current").lte(maxPrice);
+        }
+
+        Query query = new Query(criteria);
+
+        // Thêm _id làm khóa phụ để thứ tự giữa các trang luôn ổn định
+        Sort sort = pageable.getSort();
+        if (sort.getOrderFor("_id") == null && sort.getOrderFor("id") == null) {
+            sort = sort.and(Sort.by(Sort.Direction.ASC, "_id"));
+        }
+        query.with(sort);
+
+        if (pageable.isPaged()) {
+            query.skip(pageable.getOffset()).limit(pageable.getPageSize());
+        }
+
+        List<Product> products = mongoTemplate.find(query, Product.class);
+
+        // Chỉ đếm tổng số bản ghi khi thật sự cần (tránh count thừa ở trang cuối)
+        return PageableExecutionUtils.getPage(products, pageable,
+                () -> mongoTemplate.count(new Query(criteria), Product.class));
+    }
+
+    @Override
+    public long updateVisibilityType(Integer minSold, Integer maxSoldExclusive, String visibilityType, Date now) {
+        Criteria criteria = Criteria.where("isDeleted").is(false).and("visibilityType").ne(visibilityType);
+        if (minSold != null && maxSoldExclusive != null) {
+            criteria.and("totalSold").gte(minSold).lt(maxSoldExclusive);
+        } else if (minSold != null) {
+            criteria.and("totalSold").gte(minSold);
+        } else if (maxSoldExclusive != null) {
+            criteria.and("totalSold").lt(maxSoldExclusive);
+        }
+
+        // Tăng version để các lần save() từ bản Product cũ bị phát hiện xung đột thay vì ghi đè
+        Update update = new Update()
+                .set("visibilityType", visibilityType)
+                .set("updatedAt", now)
+                .inc("version", 1);
+        return mongoTemplate.updateMulti(new Query(criteria), update, Product.class).getModifiedCount();
+    }
+}
@@ -13,8 +13,6 @@ import java.util.Optional;
 @Repository
 public interface ReviewRepository extends MongoRepository<Review, String> {
 
-    List<Review> findByIsDeletedFalse();  // Lấy tất cả đánh giá chưa bị xóa.
-
     List<Review> findByUserIdAndIsDeletedFalse(ObjectId userId);  // Lấy tất cả đánh giá của người dùng.
 
     List<Review> findByProductIdAndIsDeletedFalse(ObjectId productId);  // Lấy tất cả đánh giá của sản phẩm.
@@ -1,14 +1,23 @@
 package com.hcmute.pttechecommercewebsite.repository;
 
 import com.hcmute.pttechecommercewebsite.model.Statistics;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface StatisticsRepository extends MongoRepository<Statistics, String> {
     // Tìm thống kê theo ngày (bỏ qua giờ, phút, giây)
     Optional<Statistics> findByDateBetween(Date startOfDay, Date endOfDay);
+
+    // Lọc và sắp xếp thống kê ngay trong MongoDB (dùng index statistics_date)
+    List<Statistics> findByDateAfter(Date date, Sort sort);
+
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<Statistics> streamByDateAfter(Date date, Sort sort);
 }
@@ -1,11 +1,14 @@
 package com.hcmute.pttechecommercewebsite.repository;
 
 import com.hcmute.pttechecommercewebsite.model.User;
+import org.springframework.data.mongodb.repository.DeleteQuery;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends MongoRepository<User, String> {
@@ -13,6 +16,9 @@ public interface UserRepository extends MongoRepository<User, String> {
     // Tìm kiếm tất cả user không bị xóa
     List<User> findAllByIsDeletedFalse();
 
+    // Đọc theo cursor (dùng cho xuất Excel, không tải toàn bộ vào bộ nhớ)
+    Stream<User> streamAllByIsDeletedFalse();
+
     // Tìm kiếm user theo tên (username)
     Optional<User> findByUsername(String username);
 
@@ -21,4 +27,8 @@ public interface UserRepository extends MongoRepository<User, String> {
 
     // Tìm người dùng theo verificationToken
     Optional<User> findByVerificationToken(String verificationToken);
+
+    // Xóa các user chưa xác thực có token xác thực đã hết hạn bằng một lệnh deleteMany (dùng index users_unverified_verificationExpiry)
+    @DeleteQuery("{ 'isVerified': false, 'verificationToken': { $ne: null }, 'verificationExpiry': { $lt: ?0 } }")
+    long deleteExpiredUnverifiedUsers(Date now);
 }
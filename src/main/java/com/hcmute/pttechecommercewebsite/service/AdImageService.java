@@ -4,19 +4,17 @@ import com.hcmute.pttechecommercewebsite.dto.AdImageDTO;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.model.AdImage;
 import com.hcmute.pttechecommercewebsite.repository.AdImageRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.*;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
+import com.hcmute.pttechecommercewebsite.util.ReferenceDataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -25,6 +23,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Validated
@@ -32,6 +31,10 @@ public class AdImageService {
 
     private final AdImageRepository adImageRepository;
 
+    private final ReferenceDataCache referenceDataCache;
+
+    private final ScheduledActivationService scheduledActivationService;
+
     // Thư mục lưu trữ hình ảnh
     private String uploadDir = "upload-images/ad-images";
 
@@ -39,8 +42,10 @@ public class AdImageService {
     private String uploadUrl = "http://localhost:8081/images/ad-images";
 
     @Autowired
-    public AdImageService(AdImageRepository adImageRepository) {
+    public AdImageService(AdImageRepository adImageRepository, ReferenceDataCache referenceDataCache, ScheduledActivationService scheduledActivationService) {
         this.adImageRepository = adImageRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.scheduledActivationService = scheduledActivationService;
     }
 
     // Chuyển từ Entity sang DTO
@@ -62,34 +67,40 @@ public class AdImageService {
 
     // Lấy tất cả quảng cáo đang hoạt động
     public List<AdImageDTO> getAllActiveAdImages(String sortOrder) {
-        List<AdImage> adImages;
-        if ("desc".equalsIgnoreCase(sortOrder)) {
-            adImages = adImageRepository.findByIsActiveTrueAndIsDeletedFalse(Sort.by(Sort.Order.desc("createdAt")));
-        } else {
-            adImages = adImageRepository.findByIsActiveTrueAndIsDeletedFalse(Sort.by(Sort.Order.asc("createdAt")));
-        }
-        return adImages.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        boolean descending = "desc".equalsIgnoreCase(sortOrder);
+        return referenceDataCache.get(ReferenceDataCache.AD_IMAGES, "active:" + (descending ? "desc" : "asc"), () -> {
+            List<AdImage> adImages;
+            if (descending) {
+                adImages = adImageRepository.findByIsActiveTrueAndIsDeletedFalse(Sort.by(Sort.Order.desc("createdAt")));
+            } else {
+                adImages = adImageRepository.findByIsActiveTrueAndIsDeletedFalse(Sort.by(Sort.Order.asc("createdAt")));
+            }
+            return adImages.stream()
+                    .map(this::convertToDTO)
+                    .toList();
+        });
     }
 
     // Lấy tất cả quảng cáo khong bi xoa
     public List<AdImageDTO> getAllAdImages(String sortOrder) {
-        List<AdImage> adImages;
-        if ("desc".equalsIgnoreCase(sortOrder)) {
-            adImages = adImageRepository.findByIsDeletedFalse(Sort.by(Sort.Order.desc("createdAt")));
-        } else {
-            adImages = adImageRepository.findByIsDeletedFalse(Sort.by(Sort.Order.asc("createdAt")));
-        }
-        return adImages.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        boolean descending = "desc".equalsIgnoreCase(sortOrder);
+        return referenceDataCache.get(ReferenceDataCache.AD_IMAGES, "all:" + (descending ? "desc" : "asc"), () -> {
+            List<AdImage> adImages;
+            if (descending) {
+                adImages = adImageRepository.findByIsDeletedFalse(Sort.by(Sort.Order.desc("createdAt")));
+            } else {
+                adImages = adImageRepository.findByIsDeletedFalse(Sort.by(Sort.Order.asc("createdAt")));
+            }
+            return adImages.stream()
+                    .map(this::convertToDTO)
+                    .toList();
+        });
     }
 
     // Lấy quảng cáo theo ID
     public Optional<AdImageDTO> getAdImageById(String id) {
-        Optional<AdImage> adImage = adImageRepository.findById(id);
-        return adImage.map(this::convertToDTO);
+        return referenceDataCache.get(ReferenceDataCache.AD_IMAGES, "id:" + id, () ->
+                adImageRepository.findById(id).map(this::convertToDTO));
     }
 
     // Tìm kiếm quảng cáo theo tiêu đề
@@ -117,6 +128,7 @@ public class AdImageService {
                 .build();
 
         AdImage savedAdImage = adImageRepository.save(adImage);
+        referenceDataCache.invalidate(ReferenceDataCache.AD_IMAGES);
         return convertToDTO(savedAdImage);
     }
 
@@ -153,26 +165,12 @@ public class AdImageService {
         } catch (Exception e) {
             throw new RuntimeException("Lỗi khi lưu quảng cáo vào cơ sở dữ liệu", e);
         }
+        referenceDataCache.invalidate(ReferenceDataCache.AD_IMAGES);
 
+        scheduledActivationService.schedule(AdImage.class, newAdImage.getId(), newAdImage.getScheduledDate());
         return convertToDTO(newAdImage);
     }
 
-    // Kiểm tra và kích hoạt quảng cáo khi đến thời gian lên lịch
-    @Scheduled(fixedRate = 60000)
-    @Transactional
-    public void checkAndActivateScheduledAdImages() {
-        Date now = new Date();
-
-        List<AdImage> scheduledAdImages = adImageRepository.findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(now);
-
-        for (AdImage adImage : scheduledAdImages) {
-            adImage.setActive(true);
-            adImage.setScheduledDate(null);
-            adImage.setUpdatedAt(now);
-            adImageRepository.save(adImage);
-        }
-    }
-
     // Tạo một tên tệp duy nhất cho ảnh và lưu vào thư mục
     public String uploadAdImage(MultipartFile file) throws IOException {
         String fileName = UUID.randomUUID().toString() + "-" + file.getOriginalFilename();
@@ -227,6 +225,7 @@ public class AdImageService {
             adImage.setUpdatedAt(new Date());
 
             AdImage updatedAdImage = adImageRepository.save(adImage);
+            referenceDataCache.invalidate(ReferenceDataCache.AD_IMAGES);
             return convertToDTO(updatedAdImage);
         } else {
             throw new ResourceNotFoundException("Quảng cáo với ID " + id + " không tồn tại");
@@ -244,6 +243,7 @@ public class AdImageService {
         adImage.setActive(false);  // Ẩn quảng cáo
         adImage.setUpdatedAt(new Date());
         adImage = adImageRepository.save(adImage);
+        referenceDataCache.invalidate(ReferenceDataCache.AD_IMAGES);
         return convertToDTO(adImage);
     }
 
@@ -258,6 +258,7 @@ public class AdImageService {
         adImage.setActive(true);  // Hiện quảng cáo
         adImage.setUpdatedAt(new Date());
         adImage = adImageRepository.save(adImage);
+        referenceDataCache.invalidate(ReferenceDataCache.AD_IMAGES);
         return convertToDTO(adImage);
     }
 
@@ -268,102 +269,32 @@ public class AdImageService {
             AdImage existingAdImage = adImage.get();
             existingAdImage.setDeleted(true);
             adImageRepository.save(existingAdImage);
+            referenceDataCache.invalidate(ReferenceDataCache.AD_IMAGES);
         } else {
             throw new ResourceNotFoundException("Quảng cáo với ID " + id + " không tồn tại");
         }
     }
 
     // Phương thức xuất tất cả quảng cáo ra file Excel
-    public ByteArrayOutputStream exportAdImagesToExcel() throws IOException {
-        // Lấy tất cả quảng cáo không bị xóa
-        List<AdImage> adImages = adImageRepository.findByIsDeletedFalse(Sort.by(Sort.Order.asc("createdAt")));
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        XSSFSheet sheet = workbook.createSheet("Ad Images");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        XSSFFont headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        XSSFRow headerRow = sheet.createRow(0);
+    public void exportAdImagesToExcel(OutputStream outputStream) throws IOException {
         String[] columns = {"ID", "Tiêu đề", "Hình ảnh", "Liên kết", "Mô tả", "Ngày bắt đầu", "Ngày kết thúc", "Trạng thái hiển thị", "Trạng thái xóa", "Thời gian lên lịch"};
-        for (int i = 0; i < columns.length; i++) {
-            XSSFCell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
-        }
-
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu quảng cáo vào file Excel
-        int rowNum = 1;
-        for (AdImage adImage : adImages) {
-            XSSFRow row = sheet.createRow(rowNum++);
-
-            // Cột ID
-            row.createCell(0).setCellValue(adImage.getId());
-            row.getCell(0).setCellStyle(dataStyle);
-
-            // Cột Tiêu đề
-            row.createCell(1).setCellValue(adImage.getTitle());
-            row.getCell(1).setCellStyle(dataStyle);
-
-            // Cột Hình ảnh (URL hoặc đường dẫn)
-            row.createCell(2).setCellValue(adImage.getImage());
-            row.getCell(2).setCellStyle(dataStyle);
-
-            // Cột Liên kết
-            row.createCell(3).setCellValue(adImage.getLink());
-            row.getCell(3).setCellStyle(dataStyle);
 
-            // Cột Mô tả
-            row.createCell(4).setCellValue(adImage.getDescription());
-            row.getCell(4).setCellStyle(dataStyle);
-
-            // Cột Ngày bắt đầu
-            row.createCell(5).setCellValue(adImage.getStartDate() != null ? adImage.getStartDate().toString() : "");
-            row.getCell(5).setCellStyle(dataStyle);
-
-            // Cột Ngày kết thúc
-            row.createCell(6).setCellValue(adImage.getEndDate() != null ? adImage.getEndDate().toString() : "");
-            row.getCell(6).setCellStyle(dataStyle);
-
-            // Cột Trạng thái hiển thị
-            row.createCell(7).setCellValue(adImage.isActive() ? "Đang hiển thị" : "Ẩn");
-            row.getCell(7).setCellStyle(dataStyle);
-
-            // Cột Trạng thái xóa
-            row.createCell(8).setCellValue(adImage.isDeleted() ? "Đã xóa" : "Đang hiển thị");
-            row.getCell(8).setCellStyle(dataStyle);
-
-            // Cột Thời gian lên lịch
-            row.createCell(9).setCellValue(adImage.getScheduledDate() != null ? adImage.getScheduledDate().toString() : "");
-            row.getCell(9).setCellStyle(dataStyle);
+        // Đọc tất cả quảng cáo không bị xóa theo cursor và ghi từng dòng vào file Excel
+        try (Stream<AdImage> adImages = adImageRepository.streamByIsDeletedFalse(Sort.by(Sort.Order.asc("createdAt")));
+             ExcelStreamWriter writer = new ExcelStreamWriter("Ad Images", columns)) {
+            adImages.forEach(adImage -> writer.writeRow(
+                    adImage.getId(),
+                    adImage.getTitle(),
+                    adImage.getImage(),
+                    adImage.getLink(),
+                    adImage.getDescription(),
+                    adImage.getStartDate() != null ? adImage.getStartDate().toString() : "",
+                    adImage.getEndDate() != null ? adImage.getEndDate().toString() : "",
+                    adImage.isActive() ? "Đang hiển thị" : "Ẩn",
+                    adImage.isDeleted() ? "Đã xóa" : "Đang hiển thị",
+                    adImage.getScheduledDate() != null ? adImage.getScheduledDate().toString() : ""));
+
+            writer.writeTo(outputStream);
         }
-
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
-        }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
     }
 }
\ No newline at end of file
@@ -4,19 +4,17 @@ import com.hcmute.pttechecommercewebsite.dto.BrandDTO;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.model.Brand;
 import com.hcmute.pttechecommercewebsite.repository.BrandRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.*;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
+import com.hcmute.pttechecommercewebsite.util.ReferenceDataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -25,6 +23,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Validated
@@ -32,6 +31,10 @@ public class BrandService {
 
     private final BrandRepository brandRepository;
 
+    private final ReferenceDataCache referenceDataCache;
+
+    private final ScheduledActivationService scheduledActivationService;
+
     // Thư mục lưu trữ hình ảnh
     private String uploadDir = "upload-images/brands";
 
@@ -39,8 +42,10 @@ public class BrandService {
     private String uploadUrl = "http://localhost:8081/images/brands";
 
     @Autowired
-    public BrandService(BrandRepository brandRepository) {
+    public BrandService(BrandRepository brandRepository, ReferenceDataCache referenceDataCache, ScheduledActivationService scheduledActivationService) {
         this.brandRepository = brandRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.scheduledActivationService = scheduledActivationService;
     }
 
     // Chuyển Entity thành DTO
@@ -60,24 +65,24 @@ public class BrandService {
 
     // Lấy tất cả thương hiệu không bị xóa và đang hiển thị
     public List<BrandDTO> getAllBrands(Sort sort) {
-        List<Brand> brands = brandRepository.findByIsDeletedFalseAndIsActiveTrue(sort);
-        return brands.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return referenceDataCache.get(ReferenceDataCache.BRANDS, "active:" + sort, () ->
+                brandRepository.findByIsDeletedFalseAndIsActiveTrue(sort).stream()
+                        .map(this::convertToDTO)
+                        .toList());
     }
 
     // Lấy tất cả thương hiệu không bị xóa
     public List<BrandDTO> getAllBrandsWithDeletedFalse(Sort sort) {
-        List<Brand> brands = brandRepository.findByIsDeletedFalse(sort);
-        return brands.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return referenceDataCache.get(ReferenceDataCache.BRANDS, "all:" + sort, () ->
+                brandRepository.findByIsDeletedFalse(sort).stream()
+                        .map(this::convertToDTO)
+                        .toList());
     }
 
     // Lấy thương hiệu theo ID
     public Optional<BrandDTO> getBrandById(String id) {
-        Optional<Brand> brand = brandRepository.findByIdAndIsDeletedFalse(id);
-        return brand.map(this::convertToDTO);
+        return referenceDataCache.get(ReferenceDataCache.BRANDS, "id:" + id, () ->
+                brandRepository.findByIdAndIsDeletedFalse(id).map(this::convertToDTO));
     }
 
     // Tìm kiếm theo tên thương hiệu
@@ -103,6 +108,7 @@ public class BrandService {
                 .build();
 
         newBrand = brandRepository.save(newBrand);
+        referenceDataCache.invalidate(ReferenceDataCache.BRANDS);
         return convertToDTO(newBrand);
     }
 
@@ -137,26 +143,12 @@ public class BrandService {
         } catch (Exception e) {
             throw new RuntimeException("Lỗi khi lưu thương hiệu vào cơ sở dữ liệu", e);
         }
+        referenceDataCache.invalidate(ReferenceDataCache.BRANDS);
 
+        scheduledActivationService.schedule(Brand.class, newBrand.getId(), newBrand.getScheduledDate());
         return convertToDTO(newBrand);
     }
 
-    // Kiểm tra và kích hoạt thương hiệu khi đến thời gian lên lịch
-    @Scheduled(fixedRate = 60000) // Kiểm tra mỗi phút
-    @Transactional
-    public void checkAndCreateScheduledBrands() {
-        Date now = new Date();
-
-        List<Brand> scheduledBrands = brandRepository.findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(now);
-
-        for (Brand brand : scheduledBrands) {
-            brand.setActive(true);
-            brand.setScheduledDate(null);
-            brand.setUpdatedAt(now);
-            brandRepository.save(brand);
-        }
-    }
-
     // Tạo một tên tệp duy nhất cho ảnh và lưu vào thư mục
     public String uploadImage(MultipartFile file) throws IOException {
         String fileName = UUID.randomUUID().toString() + "-" + file.getOriginalFilename();
@@ -217,6 +209,7 @@ public class BrandService {
         brand.setUpdatedAt(new Date());
 
         brand = brandRepository.save(brand);
+        referenceDataCache.invalidate(ReferenceDataCache.BRANDS);
 
         return convertToDTO(brand);
     }
@@ -232,6 +225,7 @@ public class BrandService {
         brand.setActive(false);
         brand.setUpdatedAt(new Date());
         brand = brandRepository.save(brand);
+        referenceDataCache.invalidate(ReferenceDataCache.BRANDS);
         return convertToDTO(brand);
     }
 
@@ -246,6 +240,7 @@ public class BrandService {
         brand.setActive(true);
         brand.setUpdatedAt(new Date());
         brand = brandRepository.save(brand);
+        referenceDataCache.invalidate(ReferenceDataCache.BRANDS);
         return convertToDTO(brand);
     }
 
@@ -260,90 +255,27 @@ public class BrandService {
         brand.setDeleted(true);
         brand.setUpdatedAt(new Date());
         brandRepository.save(brand);
+        referenceDataCache.invalidate(ReferenceDataCache.BRANDS);
     }
 
     // Phương thức xuất tất cả thương hiệu ra file Excel
-    public ByteArrayOutputStream exportBrandsToExcel() throws IOException {
-        List<BrandDTO> brands = getAllBrandsWithDeletedFalse(Sort.by("name"));
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        XSSFSheet sheet = workbook.createSheet("Brands");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        XSSFFont headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        XSSFRow headerRow = sheet.createRow(0);
+    public void exportBrandsToExcel(OutputStream outputStream) throws IOException {
         String[] columns = {"ID", "Tên", "Mô tả", "Logo", "Quốc gia", "Website", "Trạng thái hiển thị", "Trạng thái xóa"};
-        for (int i = 0; i < columns.length; i++) {
-            XSSFCell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
-        }
 
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu thương hiệu vào file Excel
-        int rowNum = 1;
-        for (BrandDTO brand : brands) {
-            XSSFRow row = sheet.createRow(rowNum++);
-
-            // Cột ID
-            row.createCell(0).setCellValue(brand.getId());
-            row.getCell(0).setCellStyle(dataStyle);
-
-            // Cột Tên
-            row.createCell(1).setCellValue(brand.getName());
-            row.getCell(1).setCellStyle(dataStyle);
-
-            // Cột Mô tả
-            row.createCell(2).setCellValue(brand.getDescription());
-            row.getCell(2).setCellStyle(dataStyle);
-
-            // Cột Logo
-            row.createCell(3).setCellValue(brand.getLogo());
-            row.getCell(3).setCellStyle(dataStyle);
-
-            // Cột Quốc gia
-            row.createCell(4).setCellValue(brand.getCountry());
-            row.getCell(4).setCellStyle(dataStyle);
-
-            // Cột Website
-            row.createCell(5).setCellValue(brand.getWebsite());
-            row.getCell(5).setCellStyle(dataStyle);
-
-            // Cột Trạng thái hiển thị
-            row.createCell(6).setCellValue(brand.isActive() ? "Đang hiển thị" : "Ẩn");
-            row.getCell(6).setCellStyle(dataStyle);
-
-            // Cột Trạng thái xóa
-            row.createCell(7).setCellValue(brand.isDeleted() ? "Đã xóa" : "Đang hiển thị");
-            row.getCell(7).setCellStyle(dataStyle);
-        }
-
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
+        // Đọc thương hiệu theo cursor và ghi từng dòng vào file Excel
+        try (Stream<Brand> brands = brandRepository.streamByIsDeletedFalse(Sort.by("name"));
+             ExcelStreamWriter writer = new ExcelStreamWriter("Brands", columns)) {
+            brands.map(this::convertToDTO).forEach(brand -> writer.writeRow(
+                    brand.getId(),
+                    brand.getName(),
+                    brand.getDescription(),
+                    brand.getLogo(),
+                    brand.getCountry(),
+                    brand.getWebsite(),
+                    brand.isActive() ? "Đang hiển thị" : "Ẩn",
+                    brand.isDeleted() ? "Đã xóa" : "Đang hiển thị"));
+
+            writer.writeTo(outputStream);
         }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
     }
 }
\ No newline at end of file
@@ -1,23 +1,48 @@
 package com.hcmute.pttechecommercewebsite.service;
 
 import com.hcmute.pttechecommercewebsite.dto.CartDTO;
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
+import com.hcmute.pttechecommercewebsite.dto.DiscountPreviewDTO;
+import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.model.Cart;
 import com.hcmute.pttechecommercewebsite.repository.CartRepository;
+import com.hcmute.pttechecommercewebsite.util.CursorPaginator;
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.TypeInformation;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 public class CartService {
 
+    // Mảng items hiện tại trong biểu thức pipeline (giỏ hàng cũ có thể chưa có items)
+    private static final Document CURRENT_ITEMS = new Document("$ifNull", List.of("$items", List.of()));
+
     @Autowired
     private CartRepository cartRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CursorPaginator cursorPaginator;
+
+    @Autowired
+    private DiscountRuleIndex discountRuleIndex;
+
     // Chuyển đổi từ CartDTO sang Cart (Model)
     private Cart toModel(CartDTO cartDTO) {
         Cart cart = Cart.builder()
@@ -101,12 +126,10 @@ public class CartService {
     }
 
     // Lấy tất cả giỏ hàng
-    public List<CartDTO> getAllCarts() {
-        List<Cart> carts = cartRepository.findAll();  // Lấy tất cả các giỏ hàng
-        return carts.stream()
-                .filter(cart -> !cart.isDeleted())  // Chỉ lấy giỏ hàng không bị xóa
-                .map(this::toDTO)
-                .collect(Collectors.toList());
+    public CursorPageDTO<CartDTO> getAllCarts(String cursor, Integer limit) {
+        // Chỉ lấy giỏ hàng không bị xóa, mới tạo trước (theo _id)
+        return cursorPaginator.page(Cart.class, Criteria.where("isDeleted").is(false),
+                CursorPaginator.CursorSort.byId(Sort.Direction.DESC, Cart::getId), cursor, limit, this::toDTO);
     }
 
     // Lấy thông tin giỏ hàng theo id
@@ -119,6 +142,19 @@ public class CartService {
         }
     }
 
+    // Các mã giảm giá áp dụng được cho giỏ hàng (đánh giá trong bộ nhớ bằng DiscountRuleIndex)
+    public List<DiscountPreviewDTO> previewDiscounts(String cartId) {
+        Cart cart = cartRepository.findByIdAndIsDeletedFalse(cartId)
+                .orElseThrow(() -> new ResourceNotFoundException("Giỏ hàng không tồn tại hoặc đã bị xóa."));
+        List<DiscountRuleIndex.PreviewLine> lines = new ArrayList<>();
+        if (cart.getItems() != null) {
+            for (Cart.Item item : cart.getItems()) {
+                lines.add(new DiscountRuleIndex.PreviewLine(item.getProductId(), item.getCategoryId(), item.getTotalPrice()));
+            }
+        }
+        return discountRuleIndex.preview(lines);
+    }
+
     // Lấy giỏ hàng của người dùng
     public CartDTO getCartByUserId(ObjectId userId) {
         Optional<Cart> cartOpt = cartRepository.findByUserIdAndIsDeletedFalse(userId);
@@ -136,126 +172,116 @@ public class CartService {
         return toDTO(savedCart);
     }
 
-    // Thêm sản phẩm vào giỏ hàng
+    // Thêm sản phẩm vào giỏ hàng: cộng dồn số lượng nếu đã có, ngược lại thêm dòng mới
     public CartDTO addItemToCart(String cartId, CartDTO.ItemDTO itemDTO) {
-        Optional<Cart> cartOpt = cartRepository.findByIdAndIsDeletedFalse(cartId);
-        if (cartOpt.isPresent()) {
-            Cart cart = cartOpt.get();
-
-            // Kiểm tra xem sản phẩm đã có trong giỏ hàng chưa
-            Cart.Item existingItem = findItem(cart, itemDTO.getProductId(), itemDTO.getVariantId());
-            if (existingItem != null) {
-                existingItem.setQuantity(existingItem.getQuantity() + itemDTO.getQuantity());
-                existingItem.setTotalPrice(existingItem.getQuantity() * existingItem.getDiscountPrice());
-            } else {
-                Cart.Item newItem = toModelItem(itemDTO);
-                newItem.setTotalPrice(newItem.getQuantity() * newItem.getDiscountPrice());
-                cart.getItems().add(newItem);
-            }
-
-            // Cập nhật tổng số sản phẩm và tổng giá trị của giỏ hàng
-            cart.setTotalItems(cart.getItems().size());
-            cart.setTotalPrice(cart.getItems().stream().mapToDouble(Cart.Item::getTotalPrice).sum());
+        Cart.Item newItem = toModelItem(itemDTO);
+        // Dòng mới được ghi nguyên văn: tổng giá của dòng phải có trước để bước tính totalPrice của giỏ hàng cộng đúng
+        newItem.setTotalPrice(newItem.getQuantity() * newItem.getDiscountPrice());
+        // Kiểu khai báo Cart.Item: không ghi thêm _class, giống các dòng được lưu qua repository
+        Object newItemDocument = mongoTemplate.getConverter().convertToMongoType(newItem, TypeInformation.of(Cart.Item.class));
 
-            try {
-                Cart updatedCart = cartRepository.save(cart);
-                return toDTO(updatedCart);
-            } catch (Exception e) {
-                throw new RuntimeException("Lỗi khi lưu giỏ hàng vào cơ sở dữ liệu: " + e.getMessage());
-            }
-        } else {
-            throw new RuntimeException("Giỏ hàng không tồn tại hoặc đã bị xóa.");
-        }
+        Document match = itemMatch(newItem.getProductId(), newItem.getVariantId());
+        Document items = cond(
+                new Document("$anyElementTrue", List.of(new Document("$map", new Document("input", CURRENT_ITEMS)
+                        .append("as", "i").append("in", match)))),
+                mapItems(match, changeQuantity(new Document("$add", List.of("$$i.quantity", newItem.getQuantity())))),
+                // $literal: giá trị chuỗi của sản phẩm (tên, ảnh...) không bị hiểu là biểu thức
+                new Document("$concatArrays", List.of(CURRENT_ITEMS, List.of(new Document("$literal", newItemDocument)))));
+        return modifyItems(cartId, null, items);
     }
 
     // Xóa sản phẩm khỏi giỏ hàng
     public CartDTO removeItemFromCart(String cartId, String productId, String variantId) {
-        Optional<Cart> cartOpt = cartRepository.findByIdAndIsDeletedFalse(cartId);
-        if (cartOpt.isPresent()) {
-            Cart cart = cartOpt.get();
-            Cart.Item itemToRemove = findItem(cart, productId, variantId);
-            if (itemToRemove != null) {
-                cart.getItems().remove(itemToRemove);
-
-                // Cập nhật tổng số sản phẩm và tổng giá trị của giỏ hàng
-                cart.setTotalItems(cart.getItems().size());
-                cart.setTotalPrice(cart.getItems().stream().mapToDouble(Cart.Item::getTotalPrice).sum());
-
-                Cart updatedCart = cartRepository.save(cart);
-                return toDTO(updatedCart);
-            } else {
-                throw new RuntimeException("Sản phẩm không tồn tại trong giỏ hàng.");
-            }
-        } else {
-            throw new RuntimeException("Giỏ hàng không tồn tại hoặc đã bị xóa.");
-        }
+        ObjectId product = new ObjectId(productId);
+        ObjectId variant = new ObjectId(variantId);
+        Document items = new Document("$filter", new Document("input", CURRENT_ITEMS).append("as", "i")
+                .append("cond", new Document("$not", List.of(itemMatch(product, variant)))));
+        return modifyItems(cartId, itemCriteria(product, variant), items);
     }
 
     // Tăng số lượng sản phẩm trong giỏ hàng
     public CartDTO increaseItemQuantity(String cartId, String productId, String variantId) {
-        Optional<Cart> cartOpt = cartRepository.findByIdAndIsDeletedFalse(cartId);
-        if (cartOpt.isPresent()) {
-            Cart cart = cartOpt.get();
-            Cart.Item item = findItem(cart, productId, variantId);
+        ObjectId product = new ObjectId(productId);
+        ObjectId variant = new ObjectId(variantId);
+        Document items = mapItems(itemMatch(product, variant),
+                changeQuantity(new Document("$add", List.of("$$i.quantity", 1))));
+        return modifyItems(cartId, itemCriteria(product, variant), items);
+    }
 
-            // Tăng số lượng và tính lại tổng giá trị
-            item.setQuantity(item.getQuantity() + 1);
-            item.setTotalPrice(item.getQuantity() * item.getDiscountPrice());
+    // Giảm số lượng sản phẩm trong giỏ hàng (không giảm dưới 1)
+    public CartDTO decreaseItemQuantity(String cartId, String productId, String variantId) {
+        ObjectId product = new ObjectId(productId);
+        ObjectId variant = new ObjectId(variantId);
+        Document items = mapItems(itemMatch(product, variant),
+                changeQuantity(new Document("$max", List.of(1, new Document("$subtract", List.of("$$i.quantity", 1))))));
+        return modifyItems(cartId, itemCriteria(product, variant), items);
+    }
 
-            // Cập nhật lại tổng số sản phẩm và tổng giá trị của giỏ hàng
-            cart.setTotalItems(cart.getItems().size());
-            cart.setTotalPrice(cart.getItems().stream().mapToDouble(Cart.Item::getTotalPrice).sum());
+    // Thay đổi biến thể sản phẩm trong giỏ hàng
+    public CartDTO changeItemVariant(String cartId, String productId, String oldVariantId, String newVariantId) {
+        ObjectId product = new ObjectId(productId);
+        ObjectId oldVariant = new ObjectId(oldVariantId);
+        Document items = mapItems(itemMatch(product, oldVariant),
+                new Document("$mergeObjects", List.of("$$i", new Document("variantId", new ObjectId(newVariantId)))));
+        return modifyItems(cartId, itemCriteria(product, oldVariant), items);
+    }
 
-            cartRepository.save(cart);
-            return toDTO(cart);
-        } else {
-            throw new RuntimeException("Giỏ hàng không tồn tại hoặc đã bị xóa.");
+    // Cập nhật giỏ hàng bằng một lệnh findAndModify dạng pipeline: bước đầu thay mảng items bằng biểu thức items,
+    // bước sau tính lại totalItems / totalPrice ngay trên MongoDB, rồi trả về giỏ hàng sau khi cập nhật.
+    // Không đọc - sửa - ghi cả giỏ hàng nên các tab của cùng người dùng không ghi đè lẫn nhau.
+    // item: điều kiện sản phẩm phải có trong giỏ hàng (null nếu không cần)
+    private CartDTO modifyItems(String cartId, Criteria item, Document items) {
+        Criteria criteria = Criteria.where("_id").is(cartId).and("isDeleted").is(false);
+        if (item != null) {
+            criteria = criteria.and("items").elemMatch(item);
+        }
+        Date now = new Date();
+        AggregationUpdate update = AggregationUpdate.from(List.of(
+                stage(new Document("items", items).append("updatedAt", now)),
+                stage(new Document("totalItems", new Document("$size", "$items"))
+                        .append("totalPrice", new Document("$sum", "$items.totalPrice"))
+                        .append("version", new Document("$add", List.of(new Document("$ifNull", List.of("$version", 0)), 1))))));
+        Cart updatedCart = mongoTemplate.findAndModify(new Query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), Cart.class);
+        if (updatedCart == null) {
+            // Chỉ đọc thêm khi thất bại để phân biệt giỏ hàng không tồn tại với sản phẩm không có trong giỏ hàng
+            if (cartRepository.findByIdAndIsDeletedFalse(cartId).isEmpty()) {
+                throw new RuntimeException("Giỏ hàng không tồn tại hoặc đã bị xóa.");
+            }
+            throw new RuntimeException("Sản phẩm không tồn tại trong giỏ hàng.");
         }
+        return toDTO(updatedCart);
     }
 
-    // Giảm số lượng sản phẩm trong giỏ hàng
-    public CartDTO decreaseItemQuantity(String cartId, String productId, String variantId) {
-        Optional<Cart> cartOpt = cartRepository.findByIdAndIsDeletedFalse(cartId);
-        if (cartOpt.isPresent()) {
-            Cart cart = cartOpt.get();
-            Cart.Item item = findItem(cart, productId, variantId);
+    private static Criteria itemCriteria(ObjectId productId, ObjectId variantId) {
+        return Criteria.where("productId").is(productId).and("variantId").is(variantId);
+    }
 
-            // Giảm số lượng và tính lại tổng giá trị
-            if (item.getQuantity() > 1) {
-                item.setQuantity(item.getQuantity() - 1);
-                item.setTotalPrice(item.getQuantity() * item.getDiscountPrice());
-            }
+    // Biểu thức so khớp dòng sản phẩm "$$i" theo productId và variantId
+    private static Document itemMatch(ObjectId productId, ObjectId variantId) {
+        return new Document("$and", List.of(
+                new Document("$eq", List.of("$$i.productId", productId)),
+                new Document("$eq", List.of("$$i.variantId", variantId))));
+    }
 
-            // Cập nhật lại tổng số sản phẩm và tổng giá trị của giỏ hàng
-            cart.setTotalItems(cart.getItems().size());
-            cart.setTotalPrice(cart.getItems().stream().mapToDouble(Cart.Item::getTotalPrice).sum());
+    // Thay dòng sản phẩm khớp match bằng biểu thức replacement, giữ nguyên các dòng khác
+    private static Document mapItems(Document match, Document replacement) {
+        return new Document("$map", new Document("input", CURRENT_ITEMS).append("as", "i")
+                .append("in", cond(match, replacement, "$$i")));
+    }
 
-            cartRepository.save(cart);
-            return toDTO(cart);
-        } else {
-            throw new RuntimeException("Giỏ hàng không tồn tại hoặc đã bị xóa.");
-        }
+    // Đặt số lượng mới cho dòng "$$i" và tính lại tổng giá của dòng (quantity * discountPrice)
+    private static Document changeQuantity(Document quantity) {
+        return new Document("$mergeObjects", List.of("$$i", new Document("quantity", quantity)
+                .append("totalPrice", new Document("$multiply", List.of(quantity, "$$i.discountPrice")))));
     }
 
-    private Cart.Item findItem(Cart cart, String productId, String variantId) {
-        return cart.getItems().stream()
-                .filter(item -> item.getProductId().toString().equals(productId) && item.getVariantId().toString().equals(variantId))
-                .findFirst()
-                .orElse(null);
+    private static Document cond(Object condition, Object then, Object otherwise) {
+        return new Document("$cond", List.of(condition, then, otherwise));
     }
 
-    // Thay đổi biến thể sản phẩm trong giỏ hàng
-    public CartDTO changeItemVariant(String cartId, String productId, String oldVariantId, String newVariantId) {
-        Optional<Cart> cartOpt = cartRepository.findByIdAndIsDeletedFalse(cartId);
-        if (cartOpt.isPresent()) {
-            Cart cart = cartOpt.get();
-            Cart.Item item = findItem(cart, productId, oldVariantId);
-            item.setVariantId(new ObjectId(newVariantId));
-            cartRepository.save(cart);
-            return toDTO(cart);
-        } else {
-            throw new RuntimeException("Giỏ hàng không tồn tại hoặc đã bị xóa.");
-        }
+    private static AggregationOperation stage(Document set) {
+        return context -> new Document("$set", set);
     }
 
     // Xóa giỏ hàng (xóa mềm)
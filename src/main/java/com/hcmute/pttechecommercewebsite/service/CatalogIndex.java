@@ -0,0 +1,189 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.event.ProductRatingChangedEvent;
+import com.hcmute.pttechecommercewebsite.model.Brand;
+import com.hcmute.pttechecommercewebsite.model.Category;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.repository.BrandRepository;
+import com.hcmute.pttechecommercewebsite.repository.CategoryRepository;
+import com.hcmute.pttechecommercewebsite.repository.ProductRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// Khung chung của các chỉ mục trong bộ nhớ dựng từ Products / Brands / Categories (tìm kiếm, gợi ý tìm kiếm):
+// - rebuild() dựng trạng thái mới ngoài khóa rồi thay một lần; những gì được lưu / xóa trong lúc dựng được ghi lại
+//   và đọc lại bản mới nhất từ MongoDB sau khi thay, nên không mất cập nhật
+// - cập nhật từng phần theo sự kiện lưu / xóa của MongoDB và ProductRatingChangedEvent, dưới write lock
+// Lớp con tạo trạng thái rỗng và áp dụng thay đổi của từng sản phẩm / thương hiệu / danh mục lên một trạng thái
+public abstract class CatalogIndex<S> {
+
+    private static final String PRODUCT_KEY = "product:";
+    private static final String BRAND_KEY = "brand:";
+    private static final String CATEGORY_KEY = "category:";
+
+    @Autowired
+    protected MongoTemplate mongoTemplate;
+
+    @Autowired
+    protected ProductRepository productRepository;
+
+    @Autowired
+    protected BrandRepository brandRepository;
+
+    @Autowired
+    protected CategoryRepository categoryRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private S state;
+
+    // Sản phẩm / thương hiệu / danh mục thay đổi trong lúc đang dựng lại, sẽ được cập nhật lại sau khi dựng xong
+    private Set<String> changedDuringRebuild;
+
+    protected CatalogIndex(S emptyState) {
+        this.state = emptyState;
+    }
+
+    // Trạng thái rỗng cho một lần dựng lại
+    protected abstract S newState();
+
+    protected abstract void applyProduct(S target, Product product);
+
+    protected abstract void removeProduct(S target, String productId);
+
+    protected abstract void applyBrand(S target, Brand brand);
+
+    protected abstract void applyCategory(S target, Category category);
+
+    // Hoàn tất trạng thái vừa dựng trước khi thay (ví dụ tính các giá trị tổng hợp một lần)
+    protected void completeBuild(S built) {
+    }
+
+    // Sau khi thay trạng thái và cập nhật lại các thay đổi trong lúc dựng
+    protected abstract void onRebuilt(S rebuilt, long elapsedMs);
+
+    // Lớp con gắn lịch chạy (khởi động, định kỳ) rồi gọi lại phương thức này
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        S built = newState();
+        brandRepository.findAll().forEach(brand -> applyBrand(built, brand));
+        categoryRepository.findAll().forEach(category -> applyCategory(built, category));
+        try (Stream<Product> products = mongoTemplate.stream(new Query(Criteria.where("isDeleted").is(false)), Product.class)) {
+            products.forEach(product -> applyProduct(built, product));
+        }
+        completeBuild(built);
+
+        Set<String> changed;
+        lock.writeLock().lock();
+        try {
+            state = built;
+            changed = changedDuringRebuild;
+            changedDuringRebuild = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Đọc lại bản mới nhất của những gì được lưu trong lúc dựng
+        for (String changedKey : changed) {
+            String id = changedKey.substring(changedKey.indexOf(':') + 1);
+            if (changedKey.startsWith(PRODUCT_KEY)) {
+                productRepository.findById(id).ifPresentOrElse(this::onProductChanged, () -> onProductDeleted(id));
+            } else if (changedKey.startsWith(BRAND_KEY)) {
+                brandRepository.findById(id).ifPresent(this::onBrandChanged);
+            } else if (changedKey.startsWith(CATEGORY_KEY)) {
+                categoryRepository.findById(id).ifPresent(this::onCategoryChanged);
+            }
+        }
+
+        onRebuilt(built, System.currentTimeMillis() - start);
+    }
+
+    // Đọc trạng thái hiện tại dưới read lock
+    protected <T> T read(Function<S, T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(state);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        Object source = event.getSource();
+        if (source instanceof Product product) {
+            onProductChanged(product);
+        } else if (source instanceof Brand brand) {
+            onBrandChanged(brand);
+        } else if (source instanceof Category category) {
+            onCategoryChanged(category);
+        }
+    }
+
+    @EventListener
+    public void onAfterDelete(AfterDeleteEvent<?> event) {
+        if (event.getType() != Product.class) {
+            return;
+        }
+        Object id = event.getDocument() != null ? event.getDocument().get("_id") : null;
+        if (id instanceof String || id instanceof ObjectId) {
+            onProductDeleted(id.toString());
+        } else {
+            // Xóa theo điều kiện khác _id: không biết sản phẩm nào bị xóa nên dựng lại toàn bộ
+            rebuild();
+        }
+    }
+
+    // ProductRatingAggregator cập nhật ratings trực tiếp nên không có AfterSaveEvent
+    @EventListener
+    public void onProductRatingChanged(ProductRatingChangedEvent event) {
+        onProductChanged(event.product());
+    }
+
+    private void onProductChanged(Product product) {
+        withWriteLock(PRODUCT_KEY + product.getId(), current -> applyProduct(current, product));
+    }
+
+    private void onProductDeleted(String productId) {
+        withWriteLock(PRODUCT_KEY + productId, current -> removeProduct(current, productId));
+    }
+
+    private void onBrandChanged(Brand brand) {
+        withWriteLock(BRAND_KEY + brand.getId(), current -> applyBrand(current, brand));
+    }
+
+    private void onCategoryChanged(Category category) {
+        withWriteLock(CATEGORY_KEY + category.getId(), current -> applyCategory(current, category));
+    }
+
+    private void withWriteLock(String changedKey, Consumer<S> update) {
+        lock.writeLock().lock();
+        try {
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.add(changedKey);
+            }
+            update.accept(state);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -4,18 +4,16 @@ import com.hcmute.pttechecommercewebsite.dto.CategoryDTO;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.model.Category;
 import com.hcmute.pttechecommercewebsite.repository.CategoryRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.*;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
+import com.hcmute.pttechecommercewebsite.util.ReferenceDataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -24,6 +22,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.bson.types.ObjectId;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -33,6 +32,10 @@ public class CategoryService {
 
     private final CategoryRepository categoryRepository;
 
+    private final ReferenceDataCache referenceDataCache;
+
+    private final ScheduledActivationService scheduledActivationService;
+
     // Thư mục lưu trữ hình ảnh
     private String uploadDir = "upload-images/categories";
 
@@ -40,8 +43,10 @@ public class CategoryService {
     private String uploadUrl = "http://localhost:8081/images/categories";
 
     @Autowired
-    public CategoryService(CategoryRepository categoryRepository) {
+    public CategoryService(CategoryRepository categoryRepository, ReferenceDataCache referenceDataCache, ScheduledActivationService scheduledActivationService) {
         this.categoryRepository = categoryRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.scheduledActivationService = scheduledActivationService;
     }
 
     // Chuyển Entity thành DTO
@@ -66,10 +71,11 @@ public class CategoryService {
         }
 
         // Sử dụng findByIsDeletedFalseAndIsActiveTrue với Sort
-        List<Category> categories = categoryRepository.findByIsDeletedFalseAndIsActiveTrue(sort);
-        return categories.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        Sort finalSort = sort;
+        return referenceDataCache.get(ReferenceDataCache.CATEGORIES, "active:" + sort, () ->
+                categoryRepository.findByIsDeletedFalseAndIsActiveTrue(finalSort).stream()
+                        .map(this::convertToDTO)
+                        .toList());
     }
 
     // Lấy tất cả danh mục không bị xóa
@@ -80,30 +86,33 @@ public class CategoryService {
         }
 
         // Sử dụng findByIsDeletedFalseAndIsActiveTrue với Sort
-        List<Category> categories = categoryRepository.findByIsDeletedFalse(sort);
-        return categories.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        Sort finalSort = sort;
+        return referenceDataCache.get(ReferenceDataCache.CATEGORIES, "all:" + sort, () ->
+                categoryRepository.findByIsDeletedFalse(finalSort).stream()
+                        .map(this::convertToDTO)
+                        .toList());
     }
 
     // Lấy danh mục theo ID
     public Optional<CategoryDTO> getCategoryById(String id) {
-        Optional<Category> category = categoryRepository.findById(id);
-        return category.map(cat -> {
-            if (!cat.isDeleted()) {
-                return convertToDTO(cat);
-            }
-            return null;
+        return referenceDataCache.get(ReferenceDataCache.CATEGORIES, "id:" + id, () -> {
+            Optional<Category> category = categoryRepository.findById(id);
+            return category.map(cat -> {
+                if (!cat.isDeleted()) {
+                    return convertToDTO(cat);
+                }
+                return null;
+            });
         });
     }
 
     // Lấy tất cả danh mục con theo parentCategoryId
     public List<CategoryDTO> getCategoriesByParentId(String parentCategoryId) {
         ObjectId parentId = new ObjectId(parentCategoryId);
-        List<Category> categories = categoryRepository.findByParentCategoryIdAndIsDeletedFalseAndIsActiveTrue(parentId);
-        return categories.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return referenceDataCache.get(ReferenceDataCache.CATEGORIES, "parent:" + parentId.toHexString(), () ->
+                categoryRepository.findByParentCategoryIdAndIsDeletedFalseAndIsActiveTrue(parentId).stream()
+                        .map(this::convertToDTO)
+                        .toList());
     }
 
     // Tìm kiếm theo tên danh mục
@@ -126,6 +135,7 @@ public class CategoryService {
                 .isActive(true)
                 .build();
         Category savedCategory = categoryRepository.save(category);
+        referenceDataCache.invalidate(ReferenceDataCache.CATEGORIES);
         return convertToDTO(savedCategory);
     }
 
@@ -159,26 +169,12 @@ public class CategoryService {
         } catch (Exception e) {
             throw new RuntimeException("Lỗi khi lưu danh mục vào cơ sở dữ liệu", e);
         }
+        referenceDataCache.invalidate(ReferenceDataCache.CATEGORIES);
 
+        scheduledActivationService.schedule(Category.class, newCategory.getId(), newCategory.getScheduledDate());
         return convertToDTO(newCategory);
     }
 
-    // Kiểm tra và kích hoạt danh mục khi đến thời gian lên lịch
-    @Scheduled(fixedRate = 60000)
-    @Transactional
-    public void checkAndActivateScheduledCategories() {
-        Date now = new Date();
-
-        List<Category> scheduledCategories = categoryRepository.findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(now);
-
-        for (Category category : scheduledCategories) {
-            category.setActive(true);
-            category.setScheduledDate(null);
-            category.setUpdatedAt(now);
-            categoryRepository.save(category);
-        }
-    }
-
     // Tạo một tên tệp duy nhất cho ảnh và lưu vào thư mục
     public String uploadImage(MultipartFile file) throws IOException {
         String fileName = UUID.randomUUID().toString() + "-" + file.getOriginalFilename();
@@ -220,7 +216,6 @@ public class CategoryService {
         }
     }
 
-
     // Chỉnh sửa danh mục
     public CategoryDTO updateCategory(String id, CategoryDTO categoryDTO) {
         Optional<Category> existingCategory = categoryRepository.findById(id);
@@ -234,6 +229,7 @@ public class CategoryService {
             category.setUpdatedAt(new Date());
 
             Category updatedCategory = categoryRepository.save(category);
+            referenceDataCache.invalidate(ReferenceDataCache.CATEGORIES);
             return convertToDTO(updatedCategory);
         } else {
             throw new ResourceNotFoundException("Danh mục với ID " + id + " không tồn tại");
@@ -251,6 +247,7 @@ public class CategoryService {
         category.setActive(false);
         category.setUpdatedAt(new Date());
         category = categoryRepository.save(category);
+        referenceDataCache.invalidate(ReferenceDataCache.CATEGORIES);
         return convertToDTO(category);
     }
 
@@ -265,6 +262,7 @@ public class CategoryService {
         category.setActive(true);
         category.setUpdatedAt(new Date());
         category = categoryRepository.save(category);
+        referenceDataCache.invalidate(ReferenceDataCache.CATEGORIES);
         return convertToDTO(category);
     }
 
@@ -275,94 +273,35 @@ public class CategoryService {
             Category existingCategory = category.get();
             existingCategory.setDeleted(true);  // Xóa mềm
             categoryRepository.save(existingCategory);
+            referenceDataCache.invalidate(ReferenceDataCache.CATEGORIES);
         } else {
             throw new ResourceNotFoundException("Danh mục với ID " + id + " không tồn tại");
         }
     }
 
     // Phương thức xuất tất cả danh mục ra file Excel
-    public ByteArrayOutputStream exportCategoriesToExcel(String sortBy, String sortOrder) throws IOException {
-        // Lấy danh mục từ service với sắp xếp
-        List<CategoryDTO> categories = getAllCategoriesWithDeletedFalse(sortBy, sortOrder);
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        XSSFSheet sheet = workbook.createSheet("Categories");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        XSSFFont headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        XSSFRow headerRow = sheet.createRow(0);
-        String[] columns = {"ID", "Tên danh mục", "Mô tả", "ID Danh mục cha", "Ảnh", "Tags", "Trạng thái hiển thị", "Trạng thái xóa"};
-        for (int i = 0; i < columns.length; i++) {
-            XSSFCell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
+    public void exportCategoriesToExcel(String sortBy, String sortOrder, OutputStream outputStream) throws IOException {
+        Sort sort = Sort.by(Sort.Order.by(sortBy));
+        if ("desc".equalsIgnoreCase(sortOrder)) {
+            sort = sort.descending();
         }
 
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu danh mục vào file Excel
-        int rowNum = 1;
-        for (CategoryDTO category : categories) {
-            XSSFRow row = sheet.createRow(rowNum++);
-
-            // Cột ID
-            row.createCell(0).setCellValue(category.getId());
-            row.getCell(0).setCellStyle(dataStyle);
-
-            // Cột Tên danh mục
-            row.createCell(1).setCellValue(category.getName());
-            row.getCell(1).setCellStyle(dataStyle);
-
-            // Cột Mô tả
-            row.createCell(2).setCellValue(category.getDescription());
-            row.getCell(2).setCellStyle(dataStyle);
-
-            // Cột ID Danh mục cha
-            row.createCell(3).setCellValue(category.getParentCategoryId() != null ? category.getParentCategoryId() : "Không có");
-            row.getCell(3).setCellStyle(dataStyle);
-
-            // Cột Ảnh
-            row.createCell(4).setCellValue(category.getImage() != null ? category.getImage() : "Không có ảnh");
-            row.getCell(4).setCellStyle(dataStyle);
-
-            // Cột Tags
-            row.createCell(5).setCellValue(category.getTags() != null ? String.join(", ", category.getTags()) : "Không có");
-            row.getCell(5).setCellStyle(dataStyle);
-
-            // Cột Trạng thái hiển thị
-            row.createCell(6).setCellValue(category.isActive() ? "Đang hiển thị" : "Ẩn");
-            row.getCell(6).setCellStyle(dataStyle);
-
-            // Cột Trạng thái xóa
-            row.createCell(7).setCellValue(category.isDeleted() ? "Đã xóa" : "Đang hiển thị");
-            row.getCell(7).setCellStyle(dataStyle);
-        }
+        String[] columns = {"ID", "Tên danh mục", "Mô tả", "ID Danh mục cha", "Ảnh", "Tags", "Trạng thái hiển thị", "Trạng thái xóa"};
 
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
+        // Đọc danh mục theo cursor và ghi từng dòng vào file Excel
+        try (Stream<Category> categories = categoryRepository.streamByIsDeletedFalse(sort);
+             ExcelStreamWriter writer = new ExcelStreamWriter("Categories", columns)) {
+            categories.map(this::convertToDTO).forEach(category -> writer.writeRow(
+                    category.getId(),
+                    category.getName(),
+                    category.getDescription(),
+                    category.getParentCategoryId() != null ? category.getParentCategoryId() : "Không có",
+                    category.getImage() != null ? category.getImage() : "Không có ảnh",
+                    category.getTags() != null ? String.join(", ", category.getTags()) : "Không có",
+                    category.isActive() ? "Đang hiển thị" : "Ẩn",
+                    category.isDeleted() ? "Đã xóa" : "Đang hiển thị"));
+
+            writer.writeTo(outputStream);
         }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
     }
 }
\ No newline at end of file
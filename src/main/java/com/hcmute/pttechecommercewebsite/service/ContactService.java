@@ -4,21 +4,20 @@ import com.hcmute.pttechecommercewebsite.dto.ContactDTO;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.model.Contact;
 import com.hcmute.pttechecommercewebsite.repository.ContactRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.*;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
+import com.hcmute.pttechecommercewebsite.util.ReferenceDataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Validated
@@ -26,9 +25,15 @@ public class ContactService {
 
     private final ContactRepository contactRepository;
 
+    private final ReferenceDataCache referenceDataCache;
+
+    private final ScheduledActivationService scheduledActivationService;
+
     @Autowired
-    public ContactService(ContactRepository contactRepository) {
+    public ContactService(ContactRepository contactRepository, ReferenceDataCache referenceDataCache, ScheduledActivationService scheduledActivationService) {
         this.contactRepository = contactRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.scheduledActivationService = scheduledActivationService;
     }
 
     // Chuyển từ Entity sang DTO
@@ -66,10 +71,12 @@ public class ContactService {
             sort = sort.descending();
         }
 
-        return contactRepository.findByIsDeletedFalseAndIsActiveTrue(sort)
-                .stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        Sort finalSort = sort;
+        return referenceDataCache.get(ReferenceDataCache.CONTACTS, "active:" + sort, () ->
+                contactRepository.findByIsDeletedFalseAndIsActiveTrue(finalSort)
+                        .stream()
+                        .map(this::convertToDTO)
+                        .toList());
     }
 
     // Lấy tất cả thông tin liên hệ không bị xóa
@@ -79,16 +86,19 @@ public class ContactService {
             sort = sort.descending();
         }
 
-        return contactRepository.findByIsDeletedFalse(sort)
-                .stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        Sort finalSort = sort;
+        return referenceDataCache.get(ReferenceDataCache.CONTACTS, "all:" + sort, () ->
+                contactRepository.findByIsDeletedFalse(finalSort)
+                        .stream()
+                        .map(this::convertToDTO)
+                        .toList());
     }
 
     // Lấy thông tin liên hệ theo ID
     public Optional<ContactDTO> getContactById(String id) {
-        return contactRepository.findByIdAndIsDeletedFalse(id)
-                .map(this::convertToDTO);
+        return referenceDataCache.get(ReferenceDataCache.CONTACTS, "id:" + id, () ->
+                contactRepository.findByIdAndIsDeletedFalse(id)
+                        .map(this::convertToDTO));
     }
 
     // Thêm mới thông tin liên hệ
@@ -107,6 +117,7 @@ public class ContactService {
                 .build();
 
         Contact savedContact = contactRepository.save(contact);
+        referenceDataCache.invalidate(ReferenceDataCache.CONTACTS);
         return convertToDTO(savedContact);
     }
 
@@ -132,24 +143,11 @@ public class ContactService {
                 .build();
 
         Contact savedContact = contactRepository.save(contact);
+        referenceDataCache.invalidate(ReferenceDataCache.CONTACTS);
+        scheduledActivationService.schedule(Contact.class, savedContact.getId(), savedContact.getScheduledDate());
         return convertToDTO(savedContact);
     }
 
-    @Scheduled(fixedRate = 60000)
-    @Transactional
-    public void checkAndActivateScheduledContacts() {
-        Date now = new Date();
-
-        List<Contact> scheduledContacts = contactRepository.findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(now);
-
-        for (Contact contact : scheduledContacts) {
-            contact.setActive(true);
-            contact.setScheduledDate(null);
-            contact.setUpdatedAt(now);
-            contactRepository.save(contact);
-        }
-    }
-
     // Chỉnh sửa thông tin liên hệ
     public ContactDTO updateContact(String id, ContactDTO contactDTO) {
         Optional<Contact> existingContact = contactRepository.findByIdAndIsDeletedFalse(id);
@@ -164,6 +162,7 @@ public class ContactService {
             contact.setUpdatedAt(new Date());
 
             Contact updatedContact = contactRepository.save(contact);
+            referenceDataCache.invalidate(ReferenceDataCache.CONTACTS);
             return convertToDTO(updatedContact);
         } else {
             throw new ResourceNotFoundException("Thông tin liên hệ với ID " + id + " không tồn tại hoặc đã bị ẩn");
@@ -181,6 +180,7 @@ public class ContactService {
         contact.setActive(false);
         contact.setUpdatedAt(new Date());
         contact = contactRepository.save(contact);
+        referenceDataCache.invalidate(ReferenceDataCache.CONTACTS);
         return convertToDTO(contact);
     }
 
@@ -195,6 +195,7 @@ public class ContactService {
         contact.setActive(true);
         contact.setUpdatedAt(new Date());
         contact = contactRepository.save(contact);
+        referenceDataCache.invalidate(ReferenceDataCache.CONTACTS);
         return convertToDTO(contact);
     }
 
@@ -206,114 +207,40 @@ public class ContactService {
             existingContact.setDeleted(true);
             existingContact.setUpdatedAt(new Date());
             contactRepository.save(existingContact);
+            referenceDataCache.invalidate(ReferenceDataCache.CONTACTS);
         } else {
             throw new ResourceNotFoundException("Thông tin liên hệ với ID " + id + " không tồn tại hoặc đã bị xóa");
         }
     }
 
     // Phương thức xuất tất cả thông tin liên hệ ra file Excel
-    public ByteArrayOutputStream exportContactsToExcel(String sortBy, String sortOrder) throws IOException {
-        // Lấy tất cả liên hệ từ repository với sắp xếp
-        List<ContactDTO> contacts = getAllContactsWithDeletedFalse(sortBy, sortOrder);
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Contacts");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        Row headerRow = sheet.createRow(0);
-        String[] columns = {"ID", "Tên công ty", "Email", "Số điện thoại", "Địa chỉ", "Facebook", "Instagram", "Twitter", "Zalo", "Giờ hỗ trợ (Ngày trong tuần)", "Giờ hỗ trợ (Cuối tuần)", "Trạng thái hiển thị", "Trạng thái xóa"};
-        for (int i = 0; i < columns.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
+    public void exportContactsToExcel(String sortBy, String sortOrder, OutputStream outputStream) throws IOException {
+        Sort sort = Sort.by(Sort.Order.by(sortBy));
+        if ("desc".equalsIgnoreCase(sortOrder)) {
+            sort = sort.descending();
         }
 
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu liên hệ vào file Excel
-        int rowNum = 1;
-        for (ContactDTO contact : contacts) {
-            Row row = sheet.createRow(rowNum++);
-
-            // Cột ID
-            row.createCell(0).setCellValue(contact.getId());
-            row.getCell(0).setCellStyle(dataStyle);
-
-            // Cột Tên công ty
-            row.createCell(1).setCellValue(contact.getCompanyName());
-            row.getCell(1).setCellStyle(dataStyle);
-
-            // Cột Email
-            row.createCell(2).setCellValue(contact.getEmail());
-            row.getCell(2).setCellStyle(dataStyle);
-
-            // Cột Số điện thoại
-            row.createCell(3).setCellValue(contact.getPhoneNumber());
-            row.getCell(3).setCellStyle(dataStyle);
-
-            // Cột Địa chỉ
-            row.createCell(4).setCellValue(contact.getAddress().getStreet() + ", " + contact.getAddress().getCity() + ", " + contact.getAddress().getDistrict() + ", " + contact.getAddress().getCountry());
-            row.getCell(4).setCellStyle(dataStyle);
-
-            // Cột Facebook
-            row.createCell(5).setCellValue(contact.getSocialMedia().getFacebook() != null ? contact.getSocialMedia().getFacebook() : "Không có");
-            row.getCell(5).setCellStyle(dataStyle);
-
-            // Cột Instagram
-            row.createCell(6).setCellValue(contact.getSocialMedia().getInstagram() != null ? contact.getSocialMedia().getInstagram() : "Không có");
-            row.getCell(6).setCellStyle(dataStyle);
-
-            // Cột Twitter
-            row.createCell(7).setCellValue(contact.getSocialMedia().getTwitter() != null ? contact.getSocialMedia().getTwitter() : "Không có");
-            row.getCell(7).setCellStyle(dataStyle);
-
-            // Cột Zalo
-            row.createCell(8).setCellValue(contact.getSocialMedia().getZalo() != null ? contact.getSocialMedia().getZalo() : "Không có");
-            row.getCell(8).setCellStyle(dataStyle);
-
-            // Cột Giờ hỗ trợ (Ngày trong tuần)
-            row.createCell(9).setCellValue(contact.getSupportHours().getWeekdays());
-            row.getCell(9).setCellStyle(dataStyle);
-
-            // Cột Giờ hỗ trợ (Cuối tuần)
-            row.createCell(10).setCellValue(contact.getSupportHours().getWeekends());
-            row.getCell(10).setCellStyle(dataStyle);
-
-            // Cột Trạng thái hiển thị
-            row.createCell(11).setCellValue(contact.isActive() ? "Đang hiển thị" : "Ẩn");
-            row.getCell(11).setCellStyle(dataStyle);
-
-            // Cột Trạng thái xóa
-            row.createCell(12).setCellValue(contact.isDeleted() ? "Đã xóa" : "Đang hiển thị");
-            row.getCell(12).setCellStyle(dataStyle);
-        }
+        String[] columns = {"ID", "Tên công ty", "Email", "Số điện thoại", "Địa chỉ", "Facebook", "Instagram", "Twitter", "Zalo", "Giờ hỗ trợ (Ngày trong tuần)", "Giờ hỗ trợ (Cuối tuần)", "Trạng thái hiển thị", "Trạng thái xóa"};
 
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
+        // Đọc liên hệ theo cursor và ghi từng dòng vào file Excel
+        try (Stream<Contact> contacts = contactRepository.streamByIsDeletedFalse(sort);
+             ExcelStreamWriter writer = new ExcelStreamWriter("Contacts", columns)) {
+            contacts.map(this::convertToDTO).forEach(contact -> writer.writeRow(
+                    contact.getId(),
+                    contact.getCompanyName(),
+                    contact.getEmail(),
+                    contact.getPhoneNumber(),
+                    contact.getAddress().getStreet() + ", " + contact.getAddress().getCity() + ", " + contact.getAddress().getDistrict() + ", " + contact.getAddress().getCountry(),
+                    contact.getSocialMedia().getFacebook() != null ? contact.getSocialMedia().getFacebook() : "Không có",
+                    contact.getSocialMedia().getInstagram() != null ? contact.getSocialMedia().getInstagram() : "Không có",
+                    contact.getSocialMedia().getTwitter() != null ? contact.getSocialMedia().getTwitter() : "Không có",
+                    contact.getSocialMedia().getZalo() != null ? contact.getSocialMedia().getZalo() : "Không có",
+                    contact.getSupportHours().getWeekdays(),
+                    contact.getSupportHours().getWeekends(),
+                    contact.isActive() ? "Đang hiển thị" : "Ẩn",
+                    contact.isDeleted() ? "Đã xóa" : "Đang hiển thị"));
+
+            writer.writeTo(outputStream);
         }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
     }
 }
\ No newline at end of file
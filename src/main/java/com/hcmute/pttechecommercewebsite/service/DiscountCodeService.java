@@ -4,22 +4,21 @@ import com.hcmute.pttechecommercewebsite.dto.DiscountCodeDTO;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.model.DiscountCode;
 import com.hcmute.pttechecommercewebsite.repository.DiscountCodeRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.*;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
+import com.hcmute.pttechecommercewebsite.util.OptimisticRetryExecutor;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Validated
@@ -27,9 +26,16 @@ public class DiscountCodeService {
 
     private final DiscountCodeRepository discountCodeRepository;
 
+    private final ScheduledActivationService scheduledActivationService;
+
+    private final OptimisticRetryExecutor optimisticRetryExecutor;
+
     @Autowired
-    public DiscountCodeService(DiscountCodeRepository discountCodeRepository) {
+    public DiscountCodeService(DiscountCodeRepository discountCodeRepository, ScheduledActivationService scheduledActivationService,
+                               OptimisticRetryExecutor optimisticRetryExecutor) {
         this.discountCodeRepository = discountCodeRepository;
+        this.scheduledActivationService = scheduledActivationService;
+        this.optimisticRetryExecutor = optimisticRetryExecutor;
     }
 
     // Chuyển Entity thành DTO
@@ -186,224 +192,131 @@ public class DiscountCodeService {
                 .build();
 
         DiscountCode savedDiscountCode = discountCodeRepository.save(discountCode);
+        scheduledActivationService.schedule(DiscountCode.class, savedDiscountCode.getId(), savedDiscountCode.getScheduledDate());
         return convertToDTO(savedDiscountCode);
     }
 
-    @Scheduled(fixedRate = 60000)
-    @Transactional
-    public void checkAndActivateScheduledDiscountCodes() {
-        Date now = new Date();
-
-        List<DiscountCode> scheduledDiscountCodes = discountCodeRepository.findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(now);
-
-        for (DiscountCode discountCode : scheduledDiscountCodes) {
-            discountCode.setActive(true);
-            discountCode.setScheduledDate(null);
-            discountCode.setUpdatedAt(now);
-            discountCodeRepository.save(discountCode);
-        }
-    }
-
-    // Chỉnh sửa mã giảm giá
+    // Chỉnh sửa mã giảm giá (đọc lại và thử lại nếu mã bị cập nhật đồng thời, ví dụ khi đang được sử dụng)
     public DiscountCodeDTO updateDiscountCode(String id, DiscountCodeDTO discountCodeDTO) {
-        Optional<DiscountCode> existingDiscountCode = discountCodeRepository.findById(id);
-        if (existingDiscountCode.isPresent()) {
-            DiscountCode discountCode = existingDiscountCode.get();
-            discountCode.setCode(discountCodeDTO.getCode());
-            discountCode.setDescription(discountCodeDTO.getDescription());
-            discountCode.setDiscountType(discountCodeDTO.getDiscountType());
-            discountCode.setDiscountValue(discountCodeDTO.getDiscountValue());
-            discountCode.setMinimumPurchaseAmount(discountCodeDTO.getMinimumPurchaseAmount());
-            discountCode.setAppliesTo(discountCodeDTO.getAppliesTo());
-            discountCode.setStartDate(discountCodeDTO.getStartDate());
-            discountCode.setEndDate(discountCodeDTO.getEndDate());
-            discountCode.setUsageLimit(discountCodeDTO.getUsageLimit());
-            discountCode.setUsageCount(discountCodeDTO.getUsageCount());
-
-            if (discountCodeDTO.getUsedByUsers() != null) {
-                List<ObjectId> usedByUsers = discountCodeDTO.getUsedByUsers().stream()
-                        .map(ObjectId::new)
-                        .collect(Collectors.toList());
-                discountCode.setUsedByUsers(usedByUsers);
-            }
-
-            if (discountCodeDTO.getApplicableCategories() != null) {
-                List<ObjectId> applicableCategories = discountCodeDTO.getApplicableCategories().stream()
-                        .map(ObjectId::new)
-                        .collect(Collectors.toList());
-                discountCode.setApplicableCategories(applicableCategories);
+        return optimisticRetryExecutor.execute("DiscountCodeService.updateDiscountCode", () -> {
+            Optional<DiscountCode> existingDiscountCode = discountCodeRepository.findById(id);
+            if (existingDiscountCode.isPresent()) {
+                DiscountCode discountCode = existingDiscountCode.get();
+                discountCode.setCode(discountCodeDTO.getCode());
+                discountCode.setDescription(discountCodeDTO.getDescription());
+                discountCode.setDiscountType(discountCodeDTO.getDiscountType());
+                discountCode.setDiscountValue(discountCodeDTO.getDiscountValue());
+                discountCode.setMinimumPurchaseAmount(discountCodeDTO.getMinimumPurchaseAmount());
+                discountCode.setAppliesTo(discountCodeDTO.getAppliesTo());
+                discountCode.setStartDate(discountCodeDTO.getStartDate());
+                discountCode.setEndDate(discountCodeDTO.getEndDate());
+                discountCode.setUsageLimit(discountCodeDTO.getUsageLimit());
+                // usageCount / usedByUsers do DiscountRedemptionService quản lý (ledger + findAndModify có điều kiện),
+                // không ghi đè từ form quản trị
+
+                if (discountCodeDTO.getApplicableCategories() != null) {
+                    List<ObjectId> applicableCategories = discountCodeDTO.getApplicableCategories().stream()
+                            .map(ObjectId::new)
+                            .collect(Collectors.toList());
+                    discountCode.setApplicableCategories(applicableCategories);
+                }
+
+                if (discountCodeDTO.getApplicableProducts() != null) {
+                    List<ObjectId> applicableProducts = discountCodeDTO.getApplicableProducts().stream()
+                            .map(ObjectId::new)
+                            .collect(Collectors.toList());
+                    discountCode.setApplicableProducts(applicableProducts);
+                }
+
+                discountCode.setUpdatedAt(new Date());
+
+                DiscountCode updatedDiscountCode = discountCodeRepository.save(discountCode);
+                return convertToDTO(updatedDiscountCode);
+            } else {
+                throw new ResourceNotFoundException("Mã giảm giá với ID " + id + " không tồn tại");
             }
-
-            if (discountCodeDTO.getApplicableProducts() != null) {
-                List<ObjectId> applicableProducts = discountCodeDTO.getApplicableProducts().stream()
-                        .map(ObjectId::new)
-                        .collect(Collectors.toList());
-                discountCode.setApplicableProducts(applicableProducts);
-            }
-
-            discountCode.setUpdatedAt(new Date());
-
-            DiscountCode updatedDiscountCode = discountCodeRepository.save(discountCode);
-            return convertToDTO(updatedDiscountCode);
-        } else {
-            throw new ResourceNotFoundException("Mã giảm giá với ID " + id + " không tồn tại");
-        }
+        });
     }
 
     // Hide discount code
     public DiscountCodeDTO hideDiscountCode(String id) {
-        Optional<DiscountCode> optionalDiscountCode = discountCodeRepository.findById(id);
-        if (!optionalDiscountCode.isPresent()) {
-            throw new ResourceNotFoundException("Mã giảm giá có ID " + id + " không tìm thấy");
-        }
+        return optimisticRetryExecutor.execute("DiscountCodeService.hideDiscountCode", () -> {
+            Optional<DiscountCode> optionalDiscountCode = discountCodeRepository.findById(id);
+            if (!optionalDiscountCode.isPresent()) {
+                throw new ResourceNotFoundException("Mã giảm giá có ID " + id + " không tìm thấy");
+            }
 
-        DiscountCode discountCode = optionalDiscountCode.get();
-        discountCode.setActive(false);
-        discountCode.setUpdatedAt(new Date());
-        discountCode = discountCodeRepository.save(discountCode);
-        return convertToDTO(discountCode);
+            DiscountCode discountCode = optionalDiscountCode.get();
+            discountCode.setActive(false);
+            discountCode.setUpdatedAt(new Date());
+            discountCode = discountCodeRepository.save(discountCode);
+            return convertToDTO(discountCode);
+        });
     }
 
     // Show discount code
     public DiscountCodeDTO showDiscountCode(String id) {
-        Optional<DiscountCode> optionalDiscountCode = discountCodeRepository.findById(id);
-        if (!optionalDiscountCode.isPresent()) {
-            throw new ResourceNotFoundException("Mã giảm giá có ID " + id + " không tìm thấy");
-        }
+        return optimisticRetryExecutor.execute("DiscountCodeService.showDiscountCode", () -> {
+            Optional<DiscountCode> optionalDiscountCode = discountCodeRepository.findById(id);
+            if (!optionalDiscountCode.isPresent()) {
+                throw new ResourceNotFoundException("Mã giảm giá có ID " + id + " không tìm thấy");
+            }
 
-        DiscountCode discountCode = optionalDiscountCode.get();
-        discountCode.setActive(true);
-        discountCode.setUpdatedAt(new Date());
-        discountCode = discountCodeRepository.save(discountCode);
-        return convertToDTO(discountCode);
+            DiscountCode discountCode = optionalDiscountCode.get();
+            discountCode.setActive(true);
+            discountCode.setUpdatedAt(new Date());
+            discountCode = discountCodeRepository.save(discountCode);
+            return convertToDTO(discountCode);
+        });
     }
 
     // Xóa mã giảm giá (xóa mềm)
     public void deleteDiscountCode(String id) {
-        Optional<DiscountCode> discountCode = discountCodeRepository.findById(id);
-        if (discountCode.isPresent()) {
-            DiscountCode existingDiscountCode = discountCode.get();
-            existingDiscountCode.setDeleted(true);
-            discountCodeRepository.save(existingDiscountCode);
-        } else {
-            throw new ResourceNotFoundException("Mã giảm giá với ID " + id + " không tồn tại");
-        }
+        optimisticRetryExecutor.execute("DiscountCodeService.deleteDiscountCode", () -> {
+            Optional<DiscountCode> discountCode = discountCodeRepository.findById(id);
+            if (discountCode.isPresent()) {
+                DiscountCode existingDiscountCode = discountCode.get();
+                existingDiscountCode.setDeleted(true);
+                discountCodeRepository.save(existingDiscountCode);
+            } else {
+                throw new ResourceNotFoundException("Mã giảm giá với ID " + id + " không tồn tại");
+            }
+            return null;
+        });
     }
 
     // Phương thức xuất tất cả mã giảm giá ra file Excel
-    public ByteArrayOutputStream exportDiscountCodesToExcel(String sortBy, String sortOrder) throws IOException {
-        // Lấy danh sách các mã giảm giá
-        List<DiscountCodeDTO> discountCodes = getAllActiveDiscountCodesWithDeletedFalse(sortBy, sortOrder);
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("DiscountCodes");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        Row headerRow = sheet.createRow(0);
-        String[] columns = {"ID", "Mã giảm giá", "Mô tả", "Loại giảm giá", "Giá trị giảm", "Số tiền mua tối thiểu", "Ngày bắt đầu", "Ngày kết thúc", "Số lượt sử dụng", "Số lượt đã dùng", "Danh mục áp dụng", "Sản phẩm áp dụng", "Người dùng đã sử dụng", "Trạng thái hoạt động", "Trạng thái xóa"};
-        for (int i = 0; i < columns.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
+    public void exportDiscountCodesToExcel(String sortBy, String sortOrder, OutputStream outputStream) throws IOException {
+        Sort sort = Sort.by(Sort.Order.by(sortBy));
+        if ("desc".equalsIgnoreCase(sortOrder)) {
+            sort = sort.descending();  // Sắp xếp giảm dần
+        } else {
+            sort = sort.ascending();  // Sắp xếp tăng dần
         }
 
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu mã giảm giá vào file Excel
-        int rowNum = 1;
-        for (DiscountCodeDTO discountCode : discountCodes) {
-            Row row = sheet.createRow(rowNum++);
-
-            // Cột ID
-            row.createCell(0).setCellValue(discountCode.getId());
-            row.getCell(0).setCellStyle(dataStyle);
-
-            // Cột Mã giảm giá
-            row.createCell(1).setCellValue(discountCode.getCode());
-            row.getCell(1).setCellStyle(dataStyle);
-
-            // Cột Mô tả
-            row.createCell(2).setCellValue(discountCode.getDescription() != null ? discountCode.getDescription() : "Không có");
-            row.getCell(2).setCellStyle(dataStyle);
-
-            // Cột Loại giảm giá
-            row.createCell(3).setCellValue(discountCode.getDiscountType() != null ? discountCode.getDiscountType() : "Không có");
-            row.getCell(3).setCellStyle(dataStyle);
-
-            // Cột Giá trị giảm
-            row.createCell(4).setCellValue(discountCode.getDiscountValue());
-            row.getCell(4).setCellStyle(dataStyle);
-
-            // Cột Số tiền mua tối thiểu
-            row.createCell(5).setCellValue(discountCode.getMinimumPurchaseAmount() != null ? discountCode.getMinimumPurchaseAmount() : 0);
-            row.getCell(5).setCellStyle(dataStyle);
-
-            // Cột Ngày bắt đầu
-            row.createCell(6).setCellValue(discountCode.getStartDate() != null ? discountCode.getStartDate().toString() : "Không có");
-            row.getCell(6).setCellStyle(dataStyle);
-
-            // Cột Ngày kết thúc
-            row.createCell(7).setCellValue(discountCode.getEndDate() != null ? discountCode.getEndDate().toString() : "Không có");
-            row.getCell(7).setCellStyle(dataStyle);
-
-            // Cột Số lượt sử dụng
-            row.createCell(8).setCellValue(discountCode.getUsageLimit());
-            row.getCell(8).setCellStyle(dataStyle);
-
-            // Cột Số lượt đã dùng
-            row.createCell(9).setCellValue(discountCode.getUsageCount());
-            row.getCell(9).setCellStyle(dataStyle);
-
-            // Cột Danh mục áp dụng (Applicable Categories)
-            String applicableCategories = discountCode.getApplicableCategories() != null ? String.join(", ", discountCode.getApplicableCategories()) : "Không có";
-            row.createCell(10).setCellValue(applicableCategories);
-            row.getCell(10).setCellStyle(dataStyle);
-
-            // Cột Sản phẩm áp dụng (Applicable Products)
-            String applicableProducts = discountCode.getApplicableProducts() != null ? String.join(", ", discountCode.getApplicableProducts()) : "Không có";
-            row.createCell(11).setCellValue(applicableProducts);
-            row.getCell(11).setCellStyle(dataStyle);
-
-            // Cột Người dùng đã sử dụng (Used By Users)
-            String usedByUsers = discountCode.getUsedByUsers() != null ? String.join(", ", discountCode.getUsedByUsers()) : "Không có";
-            row.createCell(12).setCellValue(usedByUsers);
-            row.getCell(12).setCellStyle(dataStyle);
-
-            // Cột Trạng thái hoạt động
-            row.createCell(13).setCellValue(discountCode.isActive() ? "Đang hoạt động" : "Không hoạt động");
-            row.getCell(10).setCellStyle(dataStyle);
-
-            // Cột Trạng thái xóa
-            row.createCell(14).setCellValue(discountCode.isDeleted() ? "Đã xóa" : "Đang hiển thị");
-            row.getCell(11).setCellStyle(dataStyle);
-        }
+        String[] columns = {"ID", "Mã giảm giá", "Mô tả", "Loại giảm giá", "Giá trị giảm", "Số tiền mua tối thiểu", "Ngày bắt đầu", "Ngày kết thúc", "Số lượt sử dụng", "Số lượt đã dùng", "Danh mục áp dụng", "Sản phẩm áp dụng", "Người dùng đã sử dụng", "Trạng thái hoạt động", "Trạng thái xóa"};
 
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
+        // Đọc mã giảm giá theo cursor và ghi từng dòng vào file Excel
+        try (Stream<DiscountCode> discountCodes = discountCodeRepository.streamByIsDeletedFalse(sort);
+             ExcelStreamWriter writer = new ExcelStreamWriter("DiscountCodes", columns)) {
+            discountCodes.map(this::convertToDTO).forEach(discountCode -> writer.writeRow(
+                    discountCode.getId(),
+                    discountCode.getCode(),
+                    discountCode.getDescription() != null ? discountCode.getDescription() : "Không có",
+                    discountCode.getDiscountType() != null ? discountCode.getDiscountType() : "Không có",
+                    discountCode.getDiscountValue(),
+                    discountCode.getMinimumPurchaseAmount() != null ? discountCode.getMinimumPurchaseAmount() : 0,
+                    discountCode.getStartDate() != null ? discountCode.getStartDate().toString() : "Không có",
+                    discountCode.getEndDate() != null ? discountCode.getEndDate().toString() : "Không có",
+                    discountCode.getUsageLimit(),
+                    discountCode.getUsageCount(),
+                    discountCode.getApplicableCategories() != null ? String.join(", ", discountCode.getApplicableCategories()) : "Không có",
+                    discountCode.getApplicableProducts() != null ? String.join(", ", discountCode.getApplicableProducts()) : "Không có",
+                    discountCode.getUsedByUsers() != null ? String.join(", ", discountCode.getUsedByUsers()) : "Không có",
+                    discountCode.isActive() ? "Đang hoạt động" : "Không hoạt động",
+                    discountCode.isDeleted() ? "Đã xóa" : "Đang hiển thị"));
+
+            writer.writeTo(outputStream);
         }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
     }
 }
\ No newline at end of file
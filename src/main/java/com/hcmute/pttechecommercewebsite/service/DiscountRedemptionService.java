@@ -0,0 +1,135 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.model.DiscountCode;
+import com.hcmute.pttechecommercewebsite.model.DiscountRedemption;
+import com.hcmute.pttechecommercewebsite.repository.DiscountCodeRepository;
+import com.hcmute.pttechecommercewebsite.repository.DiscountRedemptionRepository;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+
+// Sử dụng mã giảm giá nguyên tử:
+// - ghi lượt sử dụng vào collection DiscountRedemptions trước (unique index discountCodeId + userId chặn dùng lại)
+// - rồi tăng usageCount bằng một lệnh findAndModify có điều kiện usageCount < usageLimit,
+//   nên hai đơn hàng đồng thời không thể cùng dùng lượt cuối của mã
+// - nếu không tăng được thì xóa lượt sử dụng vừa ghi
+@Service
+public class DiscountRedemptionService {
+
+    private final MongoTemplate mongoTemplate;
+    private final DiscountCodeRepository discountCodeRepository;
+    private final DiscountRedemptionRepository discountRedemptionRepository;
+    private final DiscountRuleIndex discountRuleIndex;
+
+    public DiscountRedemptionService(MongoTemplate mongoTemplate, DiscountCodeRepository discountCodeRepository,
+                                     DiscountRedemptionRepository discountRedemptionRepository,
+                                     DiscountRuleIndex discountRuleIndex) {
+        this.mongoTemplate = mongoTemplate;
+        this.discountCodeRepository = discountCodeRepository;
+        this.discountRedemptionRepository = discountRedemptionRepository;
+        this.discountRuleIndex = discountRuleIndex;
+    }
+
+    // Dùng mã giảm giá cho đơn hàng orderId; trả về số tiền giảm (0 nếu mã không hợp lệ hoặc chưa đạt mức mua tối thiểu)
+    public double redeem(String code, String userId, String orderId, double totalPrice) {
+        Date now = new Date();
+        // Tra mã trong bộ nhớ; findAndModify bên dưới vẫn kiểm tra lại hiệu lực và lượt sử dụng ở MongoDB
+        DiscountCode discount = discountRuleIndex.find(code, now).map(DiscountRuleIndex.DiscountRule::discount)
+                .orElse(null);
+        if (discount == null || !meetsMinimumPurchase(discount, totalPrice)) {
+            return 0.0;
+        }
+
+        ObjectId user = new ObjectId(userId);
+        double discountAmount = computeDiscount(discount, totalPrice);
+        DiscountRedemption redemption = DiscountRedemption.builder()
+                .discountCodeId(new ObjectId(discount.getId()))
+                .code(discount.getCode())
+                .userId(user)
+                .orderId(orderId)
+                .discountAmount(discountAmount)
+                .createdAt(now)
+                .build();
+        try {
+            redemption = discountRedemptionRepository.insert(redemption);
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("Mã giảm giá này đã được sử dụng bởi bạn trước đó.");
+        }
+
+        // usedByUsers: danh sách cũ (không còn được ghi thêm) vẫn được tôn trọng
+        Query query = new Query(new Criteria().andOperator(
+                Criteria.where("_id").is(discount.getId()),
+                Criteria.where("isActive").is(true).and("isDeleted").is(false)
+                        .and("startDate").lte(now).and("endDate").gte(now),
+                Criteria.where("usedByUsers").ne(user),
+                new Criteria().orOperator(
+                        Criteria.where("usageLimit").is(null),
+                        Criteria.expr(ComparisonOperators.valueOf("usageCount").lessThan("usageLimit")))));
+        DiscountCode updated;
+        try {
+            updated = mongoTemplate.findAndModify(query, new Update().inc("usageCount", 1).inc("version", 1),
+                    FindAndModifyOptions.options().returnNew(true), DiscountCode.class);
+        } catch (RuntimeException e) {
+            discountRedemptionRepository.delete(redemption);
+            throw e;
+        }
+        if (updated == null) {
+            discountRedemptionRepository.delete(redemption);
+            DiscountCode current = discountCodeRepository.findById(discount.getId()).orElse(null);
+            if (current != null && current.getUsedByUsers() != null && current.getUsedByUsers().contains(user)) {
+                throw new RuntimeException("Mã giảm giá này đã được sử dụng bởi bạn trước đó.");
+            }
+            throw new RuntimeException("Mã giảm giá đã hết lượt sử dụng hoặc không còn hiệu lực.");
+        }
+        discountRuleIndex.refresh(updated);
+        return discountAmount;
+    }
+
+    // Tính lại số tiền giảm của mã đã dùng (khi cập nhật đơn hàng), không ghi thêm lượt sử dụng
+    public double quote(String code, double totalPrice) {
+        return discountRuleIndex.find(code, new Date())
+                .map(DiscountRuleIndex.DiscountRule::discount)
+                .filter(discount -> meetsMinimumPurchase(discount, totalPrice))
+                .map(discount -> computeDiscount(discount, totalPrice))
+                .orElse(0.0);
+    }
+
+    // Hoàn lại lượt sử dụng mã của đơn hàng (tạo đơn thất bại hoặc đơn hàng đổi sang mã khác)
+    // code được so khớp sau khi chuẩn hóa: ledger lưu mã gốc, người dùng có thể nhập khác hoa / thường
+    public void release(String orderId, String code) {
+        for (DiscountRedemption redemption : discountRedemptionRepository.findByOrderId(orderId)) {
+            if (!DiscountRuleIndex.sameCode(redemption.getCode(), code)) {
+                continue;
+            }
+            discountRedemptionRepository.delete(redemption);
+            DiscountCode updated = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(redemption.getDiscountCodeId()).and("usageCount").gt(0)),
+                    new Update().inc("usageCount", -1).inc("version", 1),
+                    FindAndModifyOptions.options().returnNew(true), DiscountCode.class);
+            discountRuleIndex.refresh(updated);
+        }
+    }
+
+    public static boolean meetsMinimumPurchase(DiscountCode discount, double totalPrice) {
+        return discount.getMinimumPurchaseAmount() == null || totalPrice >= discount.getMinimumPurchaseAmount();
+    }
+
+    // Số tiền giảm theo loại giảm giá, không vượt quá giá trị đơn hàng
+    public static double computeDiscount(DiscountCode discount, double totalPrice) {
+        double discountAmount = 0;
+        if ("percentage".equals(discount.getDiscountType())) {
+            discountAmount = totalPrice * (discount.getDiscountValue() / 100);
+        } else if ("fixed".equals(discount.getDiscountType())) {
+            discountAmount = discount.getDiscountValue();
+        }
+        return Math.min(discountAmount, totalPrice);
+    }
+}
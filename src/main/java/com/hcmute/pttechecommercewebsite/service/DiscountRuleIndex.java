@@ -0,0 +1,263 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.dto.DiscountPreviewDTO;
+import com.hcmute.pttechecommercewebsite.model.DiscountCode;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+
+// Chỉ mục mã giảm giá trong bộ nhớ cho thanh toán và xem trước giá:
+// - giữ mọi mã đang bật, chưa xóa và chưa hết hạn (kể cả mã chưa tới startDate), khóa theo mã đã chuẩn hóa
+// - điều kiện applicableCategories / applicableProducts / appliesTo / minimumPurchaseAmount được dựng sẵn thành các Set
+// - cập nhật theo sự kiện lưu / xóa mã (thêm, sửa, ẩn, hiện, kích hoạt theo lịch), không cần truy vấn lại MongoDB
+// - một tác vụ hẹn giờ tại mốc startDate / endDate gần nhất dựng lại danh sách mã đang hiệu lực; nạp lại toàn bộ mỗi giờ
+//   để bắt các thay đổi ghi trực tiếp vào MongoDB
+// Lượt sử dụng vẫn được kiểm tra nguyên tử ở MongoDB (DiscountRedemptionService); usageCount ở đây chỉ dùng để xem trước
+@Service
+public class DiscountRuleIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiscountRuleIndex.class);
+
+    private static final String APPLIES_TO_SHIPPING = "shipping";
+
+    private final MongoTemplate mongoTemplate;
+    private final TaskScheduler taskScheduler;
+
+    // Điều kiện áp dụng của một mã đã được dựng sẵn; products / categories rỗng nghĩa là áp dụng cho mọi sản phẩm
+    public record DiscountRule(DiscountCode discount, Set<ObjectId> products, Set<ObjectId> categories,
+                               boolean shippingOnly, double minimumPurchase, long startsAt, long endsAt) {
+
+        public boolean isValidAt(long now) {
+            return startsAt <= now && now <= endsAt;
+        }
+
+        public boolean isExhausted() {
+            Integer limit = discount.getUsageLimit();
+            return limit != null && discount.getUsageCount() != null && discount.getUsageCount() >= limit;
+        }
+
+        public boolean meetsMinimumPurchase(double totalPrice) {
+            return totalPrice >= minimumPurchase;
+        }
+
+        // Mã giảm giá theo sản phẩm / danh mục chỉ áp dụng khi có ít nhất một sản phẩm phù hợp
+        public boolean appliesTo(List<PreviewLine> lines) {
+            if (shippingOnly || (products.isEmpty() && categories.isEmpty())) {
+                return true;
+            }
+            for (PreviewLine line : lines) {
+                if (products.contains(line.productId()) || categories.contains(line.categoryId())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Một dòng sản phẩm trong giỏ hàng / đơn hàng cần xem trước mã giảm giá
+    public record PreviewLine(ObjectId productId, ObjectId categoryId, double totalPrice) {
+    }
+
+    // Sao chép khi ghi: các lần đọc dùng bản chụp hiện tại, không cần khóa
+    private volatile Map<String, DiscountRule> byCode = Map.of();
+    private final Map<String, DiscountRule> byId = new HashMap<>();
+
+    private ScheduledFuture<?> nextBoundary;
+    private long nextBoundaryAt = Long.MAX_VALUE;
+
+    public DiscountRuleIndex(MongoTemplate mongoTemplate, TaskScheduler taskScheduler) {
+        this.mongoTemplate = mongoTemplate;
+        this.taskScheduler = taskScheduler;
+    }
+
+    public static String normalize(String code) {
+        return code == null ? null : code.trim().toUpperCase(Locale.ROOT);
+    }
+
+    // Hai mã giống nhau sau khi chuẩn hóa; mã rỗng được coi như không có mã
+    public static boolean sameCode(String first, String second) {
+        String a = first == null || first.isBlank() ? null : normalize(first);
+        String b = second == null || second.isBlank() ? null : normalize(second);
+        return Objects.equals(a, b);
+    }
+
+    // Mã đang bật, chưa xóa và startDate <= now <= endDate
+    public Optional<DiscountRule> find(String code, Date now) {
+        if (code == null) {
+            return Optional.empty();
+        }
+        DiscountRule rule = byCode.get(normalize(code));
+        return rule != null && rule.isValidAt(now.getTime()) ? Optional.of(rule) : Optional.empty();
+    }
+
+    // Tất cả mã áp dụng được cho các dòng sản phẩm, sắp theo số tiền giảm giảm dần
+    public List<DiscountPreviewDTO> preview(List<PreviewLine> lines) {
+        double totalPrice = lines.stream().mapToDouble(PreviewLine::totalPrice).sum();
+        long now = System.currentTimeMillis();
+        List<DiscountPreviewDTO> previews = new ArrayList<>();
+        for (DiscountRule rule : byCode.values()) {
+            if (!rule.isValidAt(now) || rule.isExhausted()
+                    || !rule.meetsMinimumPurchase(totalPrice) || !rule.appliesTo(lines)) {
+                continue;
+            }
+            DiscountCode discount = rule.discount();
+            previews.add(DiscountPreviewDTO.builder()
+                    .code(discount.getCode())
+                    .description(discount.getDescription())
+                    .discountType(discount.getDiscountType())
+                    .discountValue(discount.getDiscountValue())
+                    .appliesTo(discount.getAppliesTo())
+                    .endDate(discount.getEndDate())
+                    .discountAmount(DiscountRedemptionService.computeDiscount(discount, totalPrice))
+                    .build());
+        }
+        previews.sort(Comparator.comparingDouble(DiscountPreviewDTO::getDiscountAmount).reversed());
+        return previews;
+    }
+
+    // Nạp toàn bộ khi khởi động và mỗi giờ
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 30 * * * *")
+    public void reload() {
+        Query query = new Query(Criteria.where("isDeleted").is(false).and("isActive").is(true)
+                .and("endDate").gte(new Date()));
+        List<DiscountCode> discounts = mongoTemplate.find(query, DiscountCode.class);
+        synchronized (this) {
+            byId.clear();
+            for (DiscountCode discount : discounts) {
+                DiscountRule rule = compile(discount);
+                if (rule != null) {
+                    byId.put(discount.getId(), rule);
+                }
+            }
+            publish();
+        }
+        logger.info("Đã nạp {} mã giảm giá vào chỉ mục", discounts.size());
+    }
+
+    // Cập nhật một mã sau khi được ghi (save hoặc findAndModify trả về bản mới)
+    public synchronized void refresh(DiscountCode discount) {
+        if (discount == null || discount.getId() == null) {
+            return;
+        }
+        DiscountRule rule = compile(discount);
+        if (rule != null) {
+            byId.put(discount.getId(), rule);
+        } else if (byId.remove(discount.getId()) == null) {
+            return;
+        }
+        publish();
+    }
+
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        if (event.getSource() instanceof DiscountCode discount) {
+            refresh(discount);
+        }
+    }
+
+    @EventListener
+    public void onAfterDelete(AfterDeleteEvent<?> event) {
+        if (event.getType() != DiscountCode.class) {
+            return;
+        }
+        Object id = event.getDocument() != null ? event.getDocument().get("_id") : null;
+        if (id instanceof String || id instanceof ObjectId) {
+            synchronized (this) {
+                if (byId.remove(id.toString()) != null) {
+                    publish();
+                }
+            }
+        } else {
+            reload();
+        }
+    }
+
+    public int size() {
+        return byCode.size();
+    }
+
+    // null nếu mã không cần giữ trong chỉ mục (đã tắt, đã xóa, đã hết hạn hoặc thiếu dữ liệu)
+    private static DiscountRule compile(DiscountCode discount) {
+        if (!discount.isActive() || discount.isDeleted() || discount.getCode() == null
+                || discount.getStartDate() == null || discount.getEndDate() == null
+                || discount.getEndDate().getTime() < System.currentTimeMillis()) {
+            return null;
+        }
+        return new DiscountRule(discount,
+                toSet(discount.getApplicableProducts()),
+                toSet(discount.getApplicableCategories()),
+                APPLIES_TO_SHIPPING.equals(discount.getAppliesTo()),
+                discount.getMinimumPurchaseAmount() != null ? discount.getMinimumPurchaseAmount() : 0,
+                discount.getStartDate().getTime(),
+                discount.getEndDate().getTime());
+    }
+
+    private static Set<ObjectId> toSet(List<ObjectId> ids) {
+        return ids == null || ids.isEmpty() ? Set.of() : Set.copyOf(ids.stream().filter(Objects::nonNull).toList());
+    }
+
+    // Dựng lại bản chụp theo mã chuẩn hóa (bỏ mã đã hết hạn) rồi hẹn giờ cho mốc startDate / endDate gần nhất.
+    // Nếu nhiều mã trùng nhau sau khi chuẩn hóa thì giữ mã đang hiệu lực, cập nhật gần nhất
+    private void publish() {
+        long now = System.currentTimeMillis();
+        byId.values().removeIf(rule -> rule.endsAt() < now);
+        Map<String, DiscountRule> snapshot = new HashMap<>();
+        long boundary = Long.MAX_VALUE;
+        for (DiscountRule rule : byId.values()) {
+            snapshot.merge(normalize(rule.discount().getCode()), rule, (current, candidate) -> preferred(current, candidate, now));
+            if (rule.startsAt() > now) {
+                boundary = Math.min(boundary, rule.startsAt());
+            }
+            boundary = Math.min(boundary, rule.endsAt() + 1);
+        }
+        byCode = Map.copyOf(snapshot);
+        armTimer(boundary);
+    }
+
+    private static DiscountRule preferred(DiscountRule current, DiscountRule candidate, long now) {
+        if (current.isValidAt(now) != candidate.isValidAt(now)) {
+            return current.isValidAt(now) ? current : candidate;
+        }
+        Date currentUpdated = current.discount().getUpdatedAt();
+        Date candidateUpdated = candidate.discount().getUpdatedAt();
+        if (currentUpdated == null) {
+            return candidate;
+        }
+        return candidateUpdated != null && candidateUpdated.after(currentUpdated) ? candidate : current;
+    }
+
+    private void armTimer(long boundary) {
+        if (nextBoundary != null && nextBoundaryAt == boundary) {
+            return;
+        }
+        if (nextBoundary != null) {
+            nextBoundary.cancel(false);
+            nextBoundary = null;
+        }
+        nextBoundaryAt = boundary;
+        if (boundary != Long.MAX_VALUE) {
+            nextBoundary = taskScheduler.schedule(this::onBoundary, Instant.ofEpochMilli(boundary));
+        }
+    }
+
+    private synchronized void onBoundary() {
+        nextBoundary = null;
+        nextBoundaryAt = Long.MAX_VALUE;
+        publish();
+    }
+}
@@ -0,0 +1,90 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.dto.EmailCampaignDTO;
+import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
+import com.hcmute.pttechecommercewebsite.model.EmailCampaign;
+import com.hcmute.pttechecommercewebsite.repository.EmailCampaignRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+public class EmailCampaignService {
+
+    public static final String STATUS_SENDING = "Đang gửi";
+    public static final String STATUS_COMPLETED = "Hoàn tất";
+
+    @Autowired
+    private EmailCampaignRepository emailCampaignRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Tạo chiến dịch mới trước khi xếp hàng các email
+    public EmailCampaign createCampaign(String subject, int totalRecipients) {
+        EmailCampaign campaign = EmailCampaign.builder()
+                .subject(subject)
+                .totalRecipients(totalRecipients)
+                .status(totalRecipients > 0 ? STATUS_SENDING : STATUS_COMPLETED)
+                .createdAt(new Date())
+                .updatedAt(new Date())
+                .completedAt(totalRecipients > 0 ? null : new Date())
+                .build();
+        return emailCampaignRepository.save(campaign);
+    }
+
+    // Ghi nhận kết quả gửi một email của chiến dịch (cộng dồn nguyên tử)
+    public void recordResult(String campaignId, boolean delivered) {
+        Query query = new Query(Criteria.where("_id").is(campaignId));
+        Update update = new Update()
+                .inc(delivered ? "sentCount" : "failedCount", 1)
+                .set("updatedAt", new Date());
+        EmailCampaign campaign = mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().returnNew(true), EmailCampaign.class);
+
+        // Email cuối cùng của chiến dịch: chuyển sang hoàn tất
+        if (campaign != null && campaign.getSentCount() + campaign.getFailedCount() >= campaign.getTotalRecipients()) {
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(campaignId).and("status").is(STATUS_SENDING)),
+                    new Update().set("status", STATUS_COMPLETED).set("completedAt", new Date()),
+                    EmailCampaign.class);
+        }
+    }
+
+    public List<EmailCampaignDTO> getRecentCampaigns() {
+        return emailCampaignRepository.findTop50ByOrderByCreatedAtDesc().stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    public EmailCampaignDTO getCampaignById(String id) {
+        return emailCampaignRepository.findById(id)
+                .map(this::convertToDTO)
+                .orElseThrow(() -> new ResourceNotFoundException("Không tìm thấy chiến dịch email với ID: " + id));
+    }
+
+    private EmailCampaignDTO convertToDTO(EmailCampaign campaign) {
+        int processed = campaign.getSentCount() + campaign.getFailedCount();
+        return EmailCampaignDTO.builder()
+                .id(campaign.getId())
+                .subject(campaign.getSubject())
+                .totalRecipients(campaign.getTotalRecipients())
+                .sentCount(campaign.getSentCount())
+                .failedCount(campaign.getFailedCount())
+                .pendingCount(Math.max(0, campaign.getTotalRecipients() - processed))
+                .progressPercent(campaign.getTotalRecipients() > 0
+                        ? Math.min(100.0, processed * 100.0 / campaign.getTotalRecipients()) : 100.0)
+                .status(campaign.getStatus())
+                .createdAt(campaign.getCreatedAt())
+                .completedAt(campaign.getCompletedAt())
+                .build();
+    }
+}
@@ -4,11 +4,7 @@ import com.hcmute.pttechecommercewebsite.model.Order;
 import com.hcmute.pttechecommercewebsite.model.Review;
 import com.hcmute.pttechecommercewebsite.model.User;
 import com.hcmute.pttechecommercewebsite.repository.UserRepository;
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -17,7 +13,7 @@ import java.util.Optional;
 public class EmailService {
 
     @Autowired
-    private JavaMailSender mailSender;
+    private MailQueueService mailQueueService;
 
     @Autowired
     private UserRepository userRepository;
@@ -58,16 +54,7 @@ public class EmailService {
                 "</body>" +
                 "</html>";
 
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-            helper.setTo(user.getEmail());
-            helper.setSubject(subject);
-            helper.setText(emailContent, true);
-            mailSender.send(mimeMessage);
-        } catch (MessagingException e) {
-            e.printStackTrace();
-        }
+        mailQueueService.enqueue(user.getEmail(), subject, emailContent);
     }
 
     public void sendPasswordResetEmail(User user, boolean isAdmin, boolean isMobile) {
@@ -120,20 +107,16 @@ public class EmailService {
                 "</body>" +
                 "</html>";
 
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-            helper.setTo(user.getEmail());
-            helper.setSubject(subject);
-            helper.setText(emailContent, true);
-            mailSender.send(mimeMessage);
-        } catch (MessagingException e) {
-            e.printStackTrace();
-        }
+        mailQueueService.enqueue(user.getEmail(), subject, emailContent);
     }
 
     // Gửi email thông báo
     public void sendNotificationEmail(String subject, String content, String userEmail) {
+        sendNotificationEmail(subject, content, userEmail, null);
+    }
+
+    // Gửi email thông báo thuộc một chiến dịch (theo dõi tiến độ qua campaignId)
+    public void sendNotificationEmail(String subject, String content, String userEmail, String campaignId) {
         String emailContent = "<html>" +
                 "<head>" +
                 "<style>" +
@@ -162,16 +145,7 @@ public class EmailService {
                 "</body>" +
                 "</html>";
 
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-            helper.setTo(userEmail);
-            helper.setSubject(subject);
-            helper.setText(emailContent, true);
-            mailSender.send(mimeMessage);
-        } catch (MessagingException e) {
-            e.printStackTrace();
-        }
+        mailQueueService.enqueue(userEmail, subject, emailContent, campaignId);
     }
 
     // Gửi email cảm ơn
@@ -219,16 +193,7 @@ public class EmailService {
                     "</body>" +
                     "</html>";
 
-            try {
-                MimeMessage mimeMessage = mailSender.createMimeMessage();
-                MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-                helper.setTo(userEmail);
-                helper.setSubject(subject);
-                helper.setText(emailContent, true);
-                mailSender.send(mimeMessage);
-            } catch (MessagingException e) {
-                e.printStackTrace();
-            }
+            mailQueueService.enqueue(userEmail, subject, emailContent);
         }
     }
 
@@ -277,16 +242,7 @@ public class EmailService {
                 "</html>";
 
         // Gửi email
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-            helper.setTo(user.getEmail());
-            helper.setSubject(subject);
-            helper.setText(emailContent, true);
-            mailSender.send(mimeMessage);
-        } catch (MessagingException e) {
-            e.printStackTrace();
-        }
+        mailQueueService.enqueue(user.getEmail(), subject, emailContent);
     }
 
     // Gửi email cảm ơn khi đăng ký nhận thông báo
@@ -327,16 +283,7 @@ public class EmailService {
                 "</body>" +
                 "</html>";
 
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-            helper.setTo(user.getEmail());
-            helper.setSubject(subject);
-            helper.setText(emailContent, true);
-            mailSender.send(mimeMessage);
-        } catch (MessagingException e) {
-            e.printStackTrace();
-        }
+        mailQueueService.enqueue(user.getEmail(), subject, emailContent);
     }
 
     // Gửi email thông báo hoàn tất trả hàng
@@ -389,16 +336,7 @@ public class EmailService {
                     "</body>" +
                     "</html>";
 
-            try {
-                MimeMessage mimeMessage = mailSender.createMimeMessage();
-                MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-                helper.setTo(userEmail);
-                helper.setSubject(subject);
-                helper.setText(emailContent, true);
-                mailSender.send(mimeMessage);
-            } catch (MessagingException e) {
-                e.printStackTrace();
-            }
+            mailQueueService.enqueue(userEmail, subject, emailContent);
         }
     }
 
@@ -450,16 +388,7 @@ public class EmailService {
                     "</body>" +
                     "</html>";
 
-            try {
-                MimeMessage mimeMessage = mailSender.createMimeMessage();
-                MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-                helper.setTo(userEmail);
-                helper.setSubject(subject);
-                helper.setText(emailContent, true);
-                mailSender.send(mimeMessage);
-            } catch (MessagingException e) {
-                e.printStackTrace();
-            }
+            mailQueueService.enqueue(userEmail, subject, emailContent);
         }
     }
 }
\ No newline at end of file
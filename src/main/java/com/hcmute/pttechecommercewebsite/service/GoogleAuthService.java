@@ -1,36 +1,62 @@
 package com.hcmute.pttechecommercewebsite.service;
 
-import com.nimbusds.jose.jwk.JWK;
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.jwk.RSAKey;
-import com.nimbusds.jwt.JWT;
-import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 public class GoogleAuthService {
 
-    private static final String GOOGLE_JWK_SET_URI = "https://www.googleapis.com/oauth2/v3/certs";
+    private final GoogleJwksKeyProvider googleJwksKeyProvider;
+
+    // Token phải được cấp cho ứng dụng này (aud) bởi Google (iss)
+    private final String clientId;
+
+    private final Set<String> issuers;
+
+    public GoogleAuthService(GoogleJwksKeyProvider googleJwksKeyProvider,
+                             @Value("${spring.security.oauth2.client.registration.google.client-id}") String clientId,
+                             @Value("${google.auth.issuers:https://accounts.google.com,accounts.google.com}") String[] issuers) {
+        this.googleJwksKeyProvider = googleJwksKeyProvider;
+        this.clientId = clientId;
+        this.issuers = Set.of(issuers);
+    }
 
     public Map<String, Object> getUserInfoFromToken(String tokenId) throws Exception {
-        RestTemplate restTemplate = new RestTemplate();
-        String jwkSetJson = restTemplate.getForObject(GOOGLE_JWK_SET_URI, String.class);
-        JWKSet jwkSet = JWKSet.parse(jwkSetJson);
-        JWT jwt = JWTParser.parse(tokenId);
-        String kid = (String) jwt.getHeader().toJSONObject().get("kid");
-        JWK jwk = jwkSet.getKeyByKeyId(kid);
-        if (jwk == null) {
-            throw new Exception("Không tìm thấy key tương ứng với kid: " + kid);
+        SignedJWT jwt = SignedJWT.parse(tokenId);
+        String kid = jwt.getHeader().getKeyID();
+
+        // Public key lấy từ cache JWKS, không tải lại chứng chỉ của Google mỗi lần đăng nhập
+        RSAPublicKey publicKey = googleJwksKeyProvider.getKey(kid);
+        if (!jwt.verify(new RSASSAVerifier(publicKey))) {
+            throw new Exception("Chữ ký token Google không hợp lệ");
         }
-        RSAKey rsaKey = (RSAKey) jwk;
-        RSAPublicKey publicKey = rsaKey.toRSAPublicKey();
+
         JWTClaimsSet claims = jwt.getJWTClaimsSet();
+        if (claims.getExpirationTime() == null || claims.getExpirationTime().before(new Date())) {
+            throw new Exception("Token Google đã hết hạn");
+        }
+        if (claims.getIssuer() == null || !issuers.contains(claims.getIssuer())) {
+            throw new Exception("Token Google không do Google cấp: " + claims.getIssuer());
+        }
+        // Chữ ký hợp lệ chưa đủ: token Google cấp cho ứng dụng khác cũng được ký bằng cùng key
+        List<String> audience = claims.getAudience();
+        if (audience == null || !audience.contains(clientId)) {
+            throw new Exception("Token Google không được cấp cho ứng dụng này");
+        }
+        String authorizedParty = claims.getStringClaim("azp");
+        if (audience.size() > 1 && !clientId.equals(authorizedParty)) {
+            throw new Exception("Token Google không được cấp cho ứng dụng này");
+        }
         Map<String, Object> userInfo = claims.getClaims();
         return userInfo;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.security.interfaces.RSAPublicKey;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Giữ các public key (JWKS) của Google trong bộ nhớ:
+// - hạn cache theo Cache-Control max-age của Google
+// - job nền làm mới trước khi hết hạn để đăng nhập không phải chờ tải lại
+// - chỉ tải lại ngay khi gặp kid chưa biết (có giới hạn tần suất)
+@Component
+public class GoogleJwksKeyProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(GoogleJwksKeyProvider.class);
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofHours(1);
+
+    // Làm mới nền khi còn ít hơn khoảng này trước khi hết hạn
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(5);
+
+    // Khoảng cách tối thiểu giữa hai lần tải lại do kid lạ (tránh bị spam token giả)
+    private static final Duration MIN_REFETCH_INTERVAL = Duration.ofSeconds(30);
+
+    private final String jwkSetUri;
+
+    private final RestTemplate restTemplate;
+
+    private volatile CachedKeys cachedKeys;
+
+    private record CachedKeys(Map<String, RSAPublicKey> keys, Instant fetchedAt, Instant expiresAt) {
+    }
+
+    public GoogleJwksKeyProvider(
+            @Value("${spring.security.oauth2.client.provider.google.jwk-set-uri:https://www.googleapis.com/oauth2/v3/certs}") String jwkSetUri) {
+        this.jwkSetUri = jwkSetUri;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout((int) Duration.ofSeconds(5).toMillis());
+        requestFactory.setReadTimeout((int) Duration.ofSeconds(5).toMillis());
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    // Lấy public key theo kid; chỉ gọi Google khi cache trống / hết hạn hoặc kid chưa biết
+    public RSAPublicKey getKey(String kid) throws Exception {
+        CachedKeys current = cachedKeys;
+        if (current == null || Instant.now().isAfter(current.expiresAt())) {
+            current = refresh(current);
+        }
+
+        RSAPublicKey key = current.keys().get(kid);
+        if (key == null && Instant.now().isAfter(current.fetchedAt().plus(MIN_REFETCH_INTERVAL))) {
+            // Google có thể đã xoay vòng key trước khi cache hết hạn
+            current = refresh(current);
+            key = current.keys().get(kid);
+        }
+        if (key == null) {
+            throw new Exception("Không tìm thấy key tương ứng với kid: " + kid);
+        }
+        return key;
+    }
+
+    // Làm mới nền trước khi cache hết hạn
+    @Scheduled(fixedDelay = 60000)
+    public void refreshInBackground() {
+        CachedKeys current = cachedKeys;
+        if (current != null && Instant.now().isAfter(current.expiresAt().minus(REFRESH_AHEAD))) {
+            try {
+                refresh(current);
+            } catch (Exception e) {
+                logger.warn("Không thể làm mới JWKS của Google: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Tải JWKS; chỉ một thread tải tại một thời điểm, các thread khác dùng kết quả vừa tải
+    private synchronized CachedKeys refresh(CachedKeys seen) throws Exception {
+        if (cachedKeys != seen) {
+            return cachedKeys;
+        }
+        try {
+            ResponseEntity<String> response = restTemplate.getForEntity(jwkSetUri, String.class);
+            Map<String, RSAPublicKey> keys = parseKeys(response.getBody());
+            Instant now = Instant.now();
+            cachedKeys = new CachedKeys(keys, now, now.plus(maxAge(response.getHeaders().getCacheControl())));
+            return cachedKeys;
+        } catch (RuntimeException | ParseException | JOSEException e) {
+            if (seen != null) {
+                // Giữ key cũ nếu Google tạm thời không phản hồi; thử lại sau MIN_REFETCH_INTERVAL
+                logger.warn("Không thể tải JWKS của Google, tiếp tục dùng key đã cache: {}", e.getMessage());
+                cachedKeys = new CachedKeys(seen.keys(), Instant.now(), Instant.now().plus(MIN_REFETCH_INTERVAL));
+                return cachedKeys;
+            }
+            throw new Exception("Không thể tải public key của Google: " + e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, RSAPublicKey> parseKeys(String jwkSetJson) throws ParseException, JOSEException {
+        Map<String, RSAPublicKey> keys = new HashMap<>();
+        for (JWK jwk : JWKSet.parse(jwkSetJson).getKeys()) {
+            if (jwk instanceof RSAKey rsaKey && jwk.getKeyID() != null) {
+                keys.put(jwk.getKeyID(), rsaKey.toRSAPublicKey());
+            }
+        }
+        return Map.copyOf(keys);
+    }
+
+    private static Duration maxAge(String cacheControl) {
+        if (cacheControl != null) {
+            Matcher matcher = MAX_AGE.matcher(cacheControl);
+            if (matcher.find()) {
+                return Duration.ofSeconds(Long.parseLong(matcher.group(1)));
+            }
+        }
+        return DEFAULT_MAX_AGE;
+    }
+}
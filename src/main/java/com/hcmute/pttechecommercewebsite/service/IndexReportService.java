@@ -0,0 +1,182 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.dto.IndexReportDTO;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@Service
+public class IndexReportService {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public IndexReportService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // Truy vấn mẫu tương ứng với các phương thức repository cần kiểm tra
+    private record QueryProbe(String name, String collection, Document filter, Document sort) {
+    }
+
+    private List<QueryProbe> queryProbes() {
+        Date now = new Date();
+        Date yesterday = new Date(now.getTime() - 24L * 60 * 60 * 1000);
+        ObjectId sampleId = new ObjectId();
+
+        List<QueryProbe> probes = new ArrayList<>();
+        probes.add(new QueryProbe("ProductRepository.findByIsDeletedFalseAndStatusNot", "Products",
+                new Document("isDeleted", false).append("status", new Document("$ne", "inactive")),
+                new Document("createdAt", -1)));
+        probes.add(new QueryProbe("ProductRepository.findByIsDeletedFalseAndStatus", "Products",
+                new Document("isDeleted", false).append("status", "inactive"),
+                new Document("createdAt", -1)));
+        probes.add(new QueryProbe("ProductRepository.findByProductIdAndIsDeletedFalse", "Products",
+                new Document("productId", "SP-0001").append("isDeleted", false), null));
+        probes.add(new QueryProbe("ProductRepository.findByVariantsStockLessThanAndIsDeletedFalse", "Products",
+                new Document("variants.stock", new Document("$lt", 10)).append("isDeleted", false), null));
+        probes.add(new QueryProbe("ScheduledActivationService.loadPendingActivations", "Products",
+                new Document("isDeleted", false).append("scheduledDate", new Document("$ne", null)), null));
+        probes.add(new QueryProbe("OrderRepository.findByUserIdAndIsDeletedFalse", "Orders",
+                new Document("userId", sampleId).append("isDeleted", false), null));
+        probes.add(new QueryProbe("OrderRepository.findByItemsProductIdAndIsDeletedFalse", "Orders",
+                new Document("items.productId", sampleId).append("isDeleted", false), null));
+        probes.add(new QueryProbe("OrderRepository.findByOrderIdAndIsDeletedFalse", "Orders",
+                new Document("orderId", "ORD-00000000").append("isDeleted", false), null));
+        probes.add(new QueryProbe("OrderRepository.findByCreatedAtBetween", "Orders",
+                new Document("createdAt", new Document("$gt", yesterday).append("$lt", now)), null));
+        probes.add(new QueryProbe("OrderService.getAllOrders", "Orders",
+                new Document("isDeleted", false), new Document("createdAt", -1).append("_id", -1)));
+        probes.add(new QueryProbe("OrderLifecycleService.applyTimedTransitions", "Orders",
+                new Document("orderStatus", "Chờ xác nhận").append("createdAt", new Document("$lt", now)), null));
+        // $match đầu pipeline đếm theo ngày của applyTimedTransitions được lập kế hoạch như truy vấn find cùng bộ lọc
+        probes.add(new QueryProbe("OrderLifecycleService.applyTimedTransitions (đếm theo ngày)", "Orders",
+                new Document("orderStatus", "Chờ lấy hàng").append("statusHistory.at", now)
+                        .append("createdAt", new Document("$lt", now))
+                        .append("statusHistory", new Document("$elemMatch", new Document("from", "Chờ xác nhận")
+                                .append("to", "Chờ lấy hàng").append("at", now).append("source", "scheduler"))), null));
+        probes.add(new QueryProbe("UserRepository.findByEmail", "Users",
+                new Document("email", "probe@example.com"), null));
+        probes.add(new QueryProbe("UserRepository.findByUsername", "Users",
+                new Document("username", "probe"), null));
+        probes.add(new QueryProbe("UserRepository.findByVerificationToken", "Users",
+                new Document("verificationToken", "probe"), null));
+        probes.add(new QueryProbe("UserService.getAllUsers (username)", "Users",
+                new Document("isDeleted", false).append("usernameSearch", new Document("$regex", "^probe")),
+                new Document("usernameSearch", 1).append("_id", 1)));
+        probes.add(new QueryProbe("UserService.getAllUsers (email)", "Users",
+                new Document("isDeleted", false).append("emailSearch", new Document("$regex", "^probe")),
+                new Document("emailSearch", 1).append("_id", 1)));
+        probes.add(new QueryProbe("UserRepository.deleteExpiredUnverifiedUsers", "Users",
+                new Document("isVerified", false).append("verificationToken", new Document("$ne", null))
+                        .append("verificationExpiry", new Document("$lt", now)), null));
+        probes.add(new QueryProbe("CartRepository.findByUserIdAndIsDeletedFalse", "Carts",
+                new Document("userId", sampleId).append("isDeleted", false), null));
+        probes.add(new QueryProbe("ReviewRepository.findByProductIdAndIsDeletedFalse", "Reviews",
+                new Document("productId", sampleId).append("isDeleted", false), null));
+        probes.add(new QueryProbe("ReviewRepository.findByUserIdAndIsDeletedFalse", "Reviews",
+                new Document("userId", sampleId).append("isDeleted", false), null));
+        probes.add(new QueryProbe("ReviewRepository.findByCreatedAtBetween", "Reviews",
+                new Document("createdAt", new Document("$gt", yesterday).append("$lt", now)), null));
+        probes.add(new QueryProbe("ReviewService.getAllReviews", "Reviews",
+                new Document("isDeleted", false), new Document("createdAt", -1).append("_id", -1)));
+        probes.add(new QueryProbe("DiscountRuleIndex.reload", "DiscountCodes",
+                new Document("isDeleted", false).append("isActive", true)
+                        .append("endDate", new Document("$gte", now)), null));
+        probes.add(new QueryProbe("InventoryRepository.findByIsDeletedFalseAndProducts_ProductIdIn", "Inventories",
+                new Document("isDeleted", false).append("products.productId", new Document("$in", List.of(sampleId))), null));
+        probes.add(new QueryProbe("StatisticsRepository.findByDateBetween", "Statistics",
+                new Document("date", new Document("$gt", yesterday).append("$lt", now)), null));
+
+        // Nạp các lần kích hoạt theo lịch đang chờ (cùng một dạng truy vấn cho các collection)
+        for (String collection : List.of("Brands", "Categories", "Policies", "Contacts", "AdImages", "DiscountCodes")) {
+            probes.add(new QueryProbe("ScheduledActivationService.loadPendingActivations", collection,
+                    new Document("isDeleted", false).append("isActive", false)
+                            .append("scheduledDate", new Document("$ne", null)), null));
+        }
+
+        return probes;
+    }
+
+    // Chạy explain() cho từng truy vấn mẫu và đánh dấu các truy vấn còn quét toàn bộ collection
+    public List<IndexReportDTO> generateReport() {
+        List<IndexReportDTO> reports = new ArrayList<>();
+
+        for (QueryProbe probe : queryProbes()) {
+            Document find = new Document("find", probe.collection()).append("filter", probe.filter());
+            if (probe.sort() != null) {
+                find.append("sort", probe.sort());
+            }
+
+            Document explain = mongoTemplate.getDb().runCommand(
+                    new Document("explain", find).append("verbosity", "queryPlanner"));
+
+            Document queryPlanner = explain.get("queryPlanner", Document.class);
+            Document winningPlan = queryPlanner != null ? queryPlanner.get("winningPlan", Document.class) : null;
+            // MongoDB 7+ (SBE) lồng kế hoạch vào trường queryPlan
+            if (winningPlan != null && winningPlan.containsKey("queryPlan")) {
+                winningPlan = winningPlan.get("queryPlan", Document.class);
+            }
+
+            reports.add(IndexReportDTO.builder()
+                    .name(probe.name())
+                    .collection(probe.collection())
+                    .filter(probe.filter().toJson())
+                    .winningStage(winningPlan != null ? winningPlan.getString("stage") : null)
+                    .indexName(findIndexName(winningPlan))
+                    .collectionScan(containsStage(winningPlan, "COLLSCAN"))
+                    .build());
+        }
+
+        return reports;
+    }
+
+    // Duyệt đệ quy cây kế hoạch thực thi để tìm stage cần kiểm tra
+    private boolean containsStage(Object node, String stage) {
+        if (node instanceof Document document) {
+            if (stage.equals(document.get("stage"))) {
+                return true;
+            }
+            for (Object value : document.values()) {
+                if (containsStage(value, stage)) {
+                    return true;
+                }
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object value : list) {
+                if (containsStage(value, stage)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String findIndexName(Object node) {
+        if (node instanceof Document document) {
+            if (document.get("indexName") instanceof String indexName) {
+                return indexName;
+            }
+            for (Object value : document.values()) {
+                String indexName = findIndexName(value);
+                if (indexName != null) {
+                    return indexName;
+                }
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object value : list) {
+                String indexName = findIndexName(value);
+                if (indexName != null) {
+                    return indexName;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -1,23 +1,27 @@
 package com.hcmute.pttechecommercewebsite.service;
 
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
 import com.hcmute.pttechecommercewebsite.dto.InventoryDTO;
 import com.hcmute.pttechecommercewebsite.model.Inventory;
 import com.hcmute.pttechecommercewebsite.model.Product;
 import com.hcmute.pttechecommercewebsite.repository.InventoryRepository;
 import com.hcmute.pttechecommercewebsite.repository.ProductRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.hcmute.pttechecommercewebsite.util.CursorPaginator;
+import com.hcmute.pttechecommercewebsite.util.OptimisticRetryExecutor;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class InventoryService {
@@ -28,17 +32,18 @@ public class InventoryService {
     @Autowired
     private ProductRepository productRepository;
 
-    // Trong InventoryService, sửa phương thức getAllInventories
-    public List<InventoryDTO> getAllInventories(String sortOrder) {
-        Sort sort = Sort.by(Sort.Order.desc("receivedDate"));
-        if ("asc".equals(sortOrder)) {
-            sort = Sort.by(Sort.Order.asc("receivedDate"));
-        }
+    @Autowired
+    private OptimisticRetryExecutor optimisticRetryExecutor;
 
-        List<Inventory> inventories = inventoryRepository.findByIsDeletedFalse(sort);
-        return inventories.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    @Autowired
+    private CursorPaginator cursorPaginator;
+
+    // Trong InventoryService, sửa phương thức getAllInventories
+    public CursorPageDTO<InventoryDTO> getAllInventories(String sortOrder, String cursor, Integer limit) {
+        Sort.Direction direction = "asc".equals(sortOrder) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        return cursorPaginator.page(Inventory.class, Criteria.where("isDeleted").is(false),
+                new CursorPaginator.CursorSort<>("receivedDate", direction, Inventory::getReceivedDate, Inventory::getId),
+                cursor, limit, this::convertToDTO);
     }
 
     // Lọc nhập kho theo Product ID
@@ -80,31 +85,37 @@ public class InventoryService {
         int totalQuantity = 0;
 
         for (InventoryDTO.ProductEntryDTO productEntryDTO : inventoryDTO.getProducts()) {
-            // Truy vấn sản phẩm dựa trên productId
-            Optional<Product> productOptional = productRepository.findByIdAndIsDeletedFalse(productEntryDTO.getProductId());
-            if (productOptional.isPresent()) {
-                Product product = productOptional.get();
-                productEntryDTO.setProductName(product.getName());
-
-                // Duyệt qua các biến thể của sản phẩm
-                for (InventoryDTO.ProductEntryDTO.ProductVariantEntryDTO variantEntryDTO : productEntryDTO.getProductVariants()) {
-                    product.getVariants().stream()
-                            .filter(variant -> variant.getVariantId().toString().equals(variantEntryDTO.getProductVariantId()))
-                            .findFirst()
-                            .ifPresent(variant -> {
-                                variantEntryDTO.setColor(variant.getColor());
-                                variantEntryDTO.setSize(variant.getSize());
-                                variantEntryDTO.setRam(variant.getRam());
-                                variantEntryDTO.setStorage(variant.getStorage());
-                                variantEntryDTO.setStockBeforeUpdate(variant.getStock());
-                                variantEntryDTO.setStockAfterUpdate(variant.getStock() + variantEntryDTO.getQuantity());
-
-                                // Cập nhật số lượng tồn kho cho biến thể trong sản phẩm
-                                variant.setStock(variant.getStock() + variantEntryDTO.getQuantity());
-                                productRepository.save(product);
-                            });
+            // Cập nhật tồn kho của sản phẩm, đọc lại và thử lại nếu sản phẩm bị cập nhật đồng thời
+            optimisticRetryExecutor.execute("InventoryService.createInventory", () -> {
+                // Truy vấn sản phẩm dựa trên productId
+                Optional<Product> productOptional = productRepository.findByIdAndIsDeletedFalse(productEntryDTO.getProductId());
+                if (productOptional.isPresent()) {
+                    Product product = productOptional.get();
+                    productEntryDTO.setProductName(product.getName());
+
+                    // Duyệt qua các biến thể của sản phẩm
+                    for (InventoryDTO.ProductEntryDTO.ProductVariantEntryDTO variantEntryDTO : productEntryDTO.getProductVariants()) {
+                        product.getVariants().stream()
+                                .filter(variant -> variant.getVariantId().toString().equals(variantEntryDTO.getProductVariantId()))
+                                .findFirst()
+                                .ifPresent(variant -> {
+                                    variantEntryDTO.setColor(variant.getColor());
+                                    variantEntryDTO.setSize(variant.getSize());
+                                    variantEntryDTO.setRam(variant.getRam());
+                                    variantEntryDTO.setStorage(variant.getStorage());
+                                    variantEntryDTO.setStockBeforeUpdate(variant.getStock());
+                                    variantEntryDTO.setStockAfterUpdate(variant.getStock() + variantEntryDTO.getQuantity());
+
+                                    // Cập nhật số lượng tồn kho cho biến thể trong sản phẩm
+                                    variant.setStock(variant.getStock() + variantEntryDTO.getQuantity());
+                                });
+                    }
+
+                    // Lưu một lần cho tất cả biến thể của sản phẩm
+                    productRepository.save(product);
                 }
-            }
+                return null;
+            });
 
             // Tính toán tổng giá trị và số lượng
             for (InventoryDTO.ProductEntryDTO.ProductVariantEntryDTO variantEntryDTO : productEntryDTO.getProductVariants()) {
@@ -165,139 +176,49 @@ public class InventoryService {
         return false;
     }
 
-    public ByteArrayOutputStream exportInventoriesToExcel(String sort) throws IOException {
-        List<InventoryDTO> inventories = getAllInventories(sort);
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Inventories");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        Row headerRow = sheet.createRow(0);
+    public void exportInventoriesToExcel(String sortOrder, OutputStream outputStream) throws IOException {
+        Sort sort = Sort.by(Sort.Order.desc("receivedDate"));
+        if ("asc".equals(sortOrder)) {
+            sort = Sort.by(Sort.Order.asc("receivedDate"));
+        }
+
         String[] columns = {
                 "ID", "Tên nhà cung cấp", "Tổng giá trị", "Tổng số lượng", "Ngày nhập kho", "Ghi chú", "Trạng thái xóa",
                 "ID Sản phẩm", "Tên sản phẩm", "Màu sắc", "Kích thước", "RAM", "Storage", "Số lượng", "Đơn giá", "Giá trị tổng",
                 "Tồn kho trước", "Tồn kho sau"
         };
 
-        // Thêm các cột tiêu đề
-        for (int i = 0; i < columns.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
-        }
-
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu vào Excel
-        int rowNum = 1;
-        for (InventoryDTO inventory : inventories) {
-            // Đối với mỗi inventory, tạo một dòng dữ liệu chính
-            for (InventoryDTO.ProductEntryDTO productEntry : inventory.getProducts()) {
-                for (InventoryDTO.ProductEntryDTO.ProductVariantEntryDTO variant : productEntry.getProductVariants()) {
-                    Row row = sheet.createRow(rowNum++);
-
-                    // Cột ID
-                    row.createCell(0).setCellValue(inventory.getId());
-                    row.getCell(0).setCellStyle(dataStyle);
-
-                    // Cột Tên nhà cung cấp
-                    row.createCell(1).setCellValue(inventory.getSupplier() != null ? inventory.getSupplier().getName() : "N/A");
-                    row.getCell(1).setCellStyle(dataStyle);
-
-                    // Cột Tổng giá trị
-                    row.createCell(2).setCellValue(inventory.getTotalAmount());
-                    row.getCell(2).setCellStyle(dataStyle);
-
-                    // Cột Tổng số lượng
-                    row.createCell(3).setCellValue(inventory.getTotalQuantity());
-                    row.getCell(3).setCellStyle(dataStyle);
-
-                    // Cột Ngày nhập kho
-                    row.createCell(4).setCellValue(inventory.getReceivedDate() != null ? inventory.getReceivedDate().toString() : "N/A");
-                    row.getCell(4).setCellStyle(dataStyle);
-
-                    // Cột Ghi chú
-                    row.createCell(5).setCellValue(inventory.getNotes() != null ? inventory.getNotes() : "N/A");
-                    row.getCell(5).setCellStyle(dataStyle);
-
-                    // Cột Trạng thái xóa
-                    row.createCell(6).setCellValue(inventory.isDeleted() ? "Đã xóa" : "Chưa xóa");
-                    row.getCell(6).setCellStyle(dataStyle);
-
-                    // Cột ID sản phẩm
-                    row.createCell(7).setCellValue(productEntry.getProductId());
-                    row.getCell(7).setCellStyle(dataStyle);
-
-                    // Cột Tên sản phẩm
-                    row.createCell(8).setCellValue(productEntry.getProductName());
-                    row.getCell(8).setCellStyle(dataStyle);
-
-                    // Cột Màu sắc
-                    row.createCell(9).setCellValue(variant.getColor() != null ? variant.getColor() : "N/A");
-                    row.getCell(9).setCellStyle(dataStyle);
-
-                    // Cột Kích thước
-                    row.createCell(10).setCellValue(variant.getSize() != null ? variant.getSize() : "N/A");
-                    row.getCell(10).setCellStyle(dataStyle);
-
-                    // Cột RAM
-                    row.createCell(11).setCellValue(variant.getRam() != null ? variant.getRam() : "N/A");
-                    row.getCell(11).setCellStyle(dataStyle);
-
-                    // Cột Storage
-                    row.createCell(12).setCellValue(variant.getStorage() != null ? variant.getStorage() : "N/A");
-                    row.getCell(12).setCellStyle(dataStyle);
-
-                    // Cột Số lượng
-                    row.createCell(13).setCellValue(variant.getQuantity());
-                    row.getCell(13).setCellStyle(dataStyle);
-
-                    // Cột Đơn giá
-                    row.createCell(14).setCellValue(variant.getUnitPrice());
-                    row.getCell(14).setCellStyle(dataStyle);
-
-                    // Cột Giá trị tổng
-                    row.createCell(15).setCellValue(variant.getTotalValue());
-                    row.getCell(15).setCellStyle(dataStyle);
-
-                    // Cột Tồn kho trước
-                    row.createCell(16).setCellValue(variant.getStockBeforeUpdate());
-                    row.getCell(16).setCellStyle(dataStyle);
-
-                    // Cột Tồn kho sau
-                    row.createCell(17).setCellValue(variant.getStockAfterUpdate());
-                    row.getCell(17).setCellStyle(dataStyle);
+        // Đọc phiếu nhập kho theo cursor, mỗi biến thể sản phẩm là một dòng
+        try (Stream<Inventory> inventories = inventoryRepository.streamByIsDeletedFalse(sort);
+             ExcelStreamWriter writer = new ExcelStreamWriter("Inventories", columns)) {
+            inventories.map(this::convertToDTO).forEach(inventory -> {
+                for (InventoryDTO.ProductEntryDTO productEntry : inventory.getProducts()) {
+                    for (InventoryDTO.ProductEntryDTO.ProductVariantEntryDTO variant : productEntry.getProductVariants()) {
+                        writer.writeRow(
+                                inventory.getId(),
+                                inventory.getSupplier() != null ? inventory.getSupplier().getName() : "N/A",
+                                inventory.getTotalAmount(),
+                                inventory.getTotalQuantity(),
+                                inventory.getReceivedDate() != null ? inventory.getReceivedDate().toString() : "N/A",
+                                inventory.getNotes() != null ? inventory.getNotes() : "N/A",
+                                inventory.isDeleted() ? "Đã xóa" : "Chưa xóa",
+                                productEntry.getProductId(),
+                                productEntry.getProductName(),
+                                variant.getColor() != null ? variant.getColor() : "N/A",
+                                variant.getSize() != null ? variant.getSize() : "N/A",
+                                variant.getRam() != null ? variant.getRam() : "N/A",
+                                variant.getStorage() != null ? variant.getStorage() : "N/A",
+                                variant.getQuantity(),
+                                variant.getUnitPrice(),
+                                variant.getTotalValue(),
+                                variant.getStockBeforeUpdate(),
+                                variant.getStockAfterUpdate());
+                    }
                 }
-            }
-        }
+            });
 
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
+            writer.writeTo(outputStream);
         }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
     }
 
     // Chuyển đổi từ Inventory model sang DTO
@@ -0,0 +1,156 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.config.MailQueueConfig;
+import com.hcmute.pttechecommercewebsite.dto.OutboundEmailDTO;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Gửi email bất đồng bộ qua hàng đợi RabbitMQ: request chỉ xếp hàng message,
+// worker gửi theo lô trên một kết nối SMTP và thử lại từng người nhận với backoff.
+@Service
+public class MailQueueService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailQueueService.class);
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Autowired
+    private EmailCampaignService emailCampaignService;
+
+    // Dự phòng khi không kết nối được RabbitMQ: gửi trên pool nhỏ, không chặn request.
+    // Pool đầy thì từ chối (AbortPolicy) để bỏ email và ghi log ở enqueue(), không gửi SMTP trên luồng request
+    private final ThreadPoolExecutor fallbackExecutor = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(500), new ThreadPoolExecutor.AbortPolicy());
+
+    // Xếp hàng email giao dịch
+    public void enqueue(String to, String subject, String htmlContent) {
+        enqueue(to, subject, htmlContent, null);
+    }
+
+    // Xếp hàng email (có thể thuộc một chiến dịch)
+    public void enqueue(String to, String subject, String htmlContent, String campaignId) {
+        OutboundEmailDTO email = OutboundEmailDTO.builder()
+                .to(to)
+                .subject(subject)
+                .htmlContent(htmlContent)
+                .campaignId(campaignId)
+                .attempt(0)
+                .build();
+        try {
+            rabbitTemplate.convertAndSend(MailQueueConfig.MAIL_QUEUE, email);
+        } catch (AmqpException e) {
+            logger.warn("Không thể xếp hàng email tới {}, gửi trực tiếp: {}", to, e.getMessage());
+            try {
+                fallbackExecutor.execute(() -> deliver(List.of(email)));
+            } catch (RejectedExecutionException rejected) {
+                logger.error("Hàng đợi gửi dự phòng đã đầy, bỏ email tới {} (tiêu đề: {})", to, subject);
+                recordFailure(email);
+            }
+        }
+    }
+
+    // Worker: nhận tối đa BATCH_SIZE email và gửi chung một kết nối SMTP
+    @RabbitListener(queues = MailQueueConfig.MAIL_QUEUE, containerFactory = "mailListenerContainerFactory")
+    public void deliver(List<OutboundEmailDTO> emails) {
+        Map<MimeMessage, OutboundEmailDTO> messages = new LinkedHashMap<>();
+        for (OutboundEmailDTO email : emails) {
+            try {
+                MimeMessage mimeMessage = mailSender.createMimeMessage();
+                MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
+                helper.setTo(email.getTo());
+                helper.setSubject(email.getSubject());
+                helper.setText(email.getHtmlContent(), true);
+                messages.put(mimeMessage, email);
+            } catch (MessagingException e) {
+                // Địa chỉ / nội dung không hợp lệ: thử lại cũng không thành công
+                logger.error("Email tới {} không hợp lệ: {}", email.getTo(), e.getMessage());
+                giveUp(email);
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        Set<MimeMessage> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            // Chỉ những người nhận lỗi mới phải gửi lại
+            e.getFailedMessages().keySet().forEach(message -> failed.add((MimeMessage) message));
+            if (failed.isEmpty()) {
+                failed.addAll(messages.keySet());
+            }
+            logger.warn("Gửi {} / {} email thất bại: {}", failed.size(), messages.size(), e.getMessage());
+        } catch (MailException e) {
+            failed.addAll(messages.keySet());
+            logger.warn("Không thể gửi lô {} email: {}", messages.size(), e.getMessage());
+        }
+
+        messages.forEach((message, email) -> {
+            if (failed.contains(message)) {
+                scheduleRetry(email);
+            } else if (email.getCampaignId() != null) {
+                emailCampaignService.recordResult(email.getCampaignId(), true);
+            }
+        });
+    }
+
+    // Đưa email vào hàng đợi retry tương ứng với số lần đã thử (backoff tăng dần)
+    private void scheduleRetry(OutboundEmailDTO email) {
+        int attempt = email.getAttempt();
+        if (attempt >= MailQueueConfig.RETRY_DELAYS_MS.length) {
+            giveUp(email);
+            return;
+        }
+        email.setAttempt(attempt + 1);
+        try {
+            rabbitTemplate.convertAndSend(MailQueueConfig.retryQueue(attempt), email);
+        } catch (AmqpException e) {
+            logger.error("Không thể xếp lịch gửi lại email tới {}: {}", email.getTo(), e.getMessage());
+            recordFailure(email);
+        }
+    }
+
+    // Hết lượt thử lại: chuyển vào dead-letter queue để kiểm tra thủ công
+    private void giveUp(OutboundEmailDTO email) {
+        try {
+            rabbitTemplate.convertAndSend(MailQueueConfig.MAIL_DEAD_LETTER_QUEUE, email);
+        } catch (AmqpException e) {
+            logger.error("Email tới {} thất bại và không thể lưu vào dead-letter queue: {}", email.getTo(), e.getMessage());
+        }
+        recordFailure(email);
+    }
+
+    private void recordFailure(OutboundEmailDTO email) {
+        if (email.getCampaignId() != null) {
+            emailCampaignService.recordResult(email.getCampaignId(), false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fallbackExecutor.shutdown();
+    }
+}
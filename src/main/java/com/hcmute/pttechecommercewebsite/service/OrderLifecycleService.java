@@ -0,0 +1,136 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.dto.BatchJobResultDTO;
+import com.hcmute.pttechecommercewebsite.event.OrderStatusTransitionEvent;
+import com.hcmute.pttechecommercewebsite.model.Order;
+import com.hcmute.pttechecommercewebsite.util.BatchJobRunner;
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+// Vòng đời đơn hàng: máy trạng thái khai báo các bước chuyển hợp lệ, ghi lịch sử chuyển trạng thái vào đơn hàng
+// và áp dụng các bước chuyển theo thời gian bằng một lệnh updateMany cho mỗi quy tắc
+@Service
+public class OrderLifecycleService {
+
+    public static final String PENDING = "Chờ xác nhận";
+    public static final String AWAITING_PICKUP = "Chờ lấy hàng";
+    public static final String DELIVERED = "Đã giao";
+    public static final String RECEIVED = "Đã nhận hàng";
+    public static final String CANCELLED = "Đã hủy";
+    public static final String RETURN_REQUESTED = "Yêu cầu trả hàng";
+    public static final String RETURNED = "Đã trả hàng";
+
+    // Nguồn của một lần chuyển trạng thái (lưu trong lịch sử)
+    public static final String SOURCE_API = "api";
+    public static final String SOURCE_SCHEDULER = "scheduler";
+
+    // Các bước chuyển hợp lệ từ mỗi trạng thái
+    private static final Map<String, Set<String>> TRANSITIONS = Map.of(
+            PENDING, Set.of(AWAITING_PICKUP, CANCELLED),
+            AWAITING_PICKUP, Set.of(DELIVERED),
+            DELIVERED, Set.of(RECEIVED, RETURN_REQUESTED),
+            RETURN_REQUESTED, Set.of(RETURNED, DELIVERED),
+            RECEIVED, Set.of(),
+            CANCELLED, Set.of(),
+            RETURNED, Set.of());
+
+    // Chuyển trạng thái tự động sau một khoảng thời gian kể từ lúc tạo đơn
+    private record TimedTransition(String from, String to, Duration after) {
+    }
+
+    private static final List<TimedTransition> TIMED_TRANSITIONS = List.of(
+            new TimedTransition(PENDING, AWAITING_PICKUP, Duration.ofMinutes(30)));
+
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BatchJobRunner batchJobRunner;
+
+    public OrderLifecycleService(MongoTemplate mongoTemplate, ApplicationEventPublisher eventPublisher, BatchJobRunner batchJobRunner) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.batchJobRunner = batchJobRunner;
+    }
+
+    public boolean canTransition(String from, String to) {
+        return TRANSITIONS.getOrDefault(from, Set.of()).contains(to);
+    }
+
+    // Đổi trạng thái đơn hàng (chưa lưu) và ghi lại bước chuyển vào lịch sử
+    public void apply(Order order, String to, String source) {
+        Date now = new Date();
+        if (order.getStatusHistory() == null) {
+            order.setStatusHistory(new ArrayList<>());
+        }
+        order.getStatusHistory().add(new Order.StatusTransition(order.getOrderStatus(), to, now, source));
+        order.setOrderStatus(to);
+        order.setUpdatedAt(now);
+    }
+
+    // Mỗi quy tắc là một lệnh updateMany có index (orderStatus, createdAt) và một aggregate đếm số đơn theo ngày
+    // để cập nhật thống kê, nên số round trip không phụ thuộc vào số đơn hàng đang chờ
+    @Scheduled(fixedRate = 1800000) // Chạy mỗi 30 phút (1800000 ms)
+    public BatchJobResultDTO applyTimedTransitions() {
+        return batchJobRunner.run("OrderLifecycleService.applyTimedTransitions", () -> {
+            long changed = 0;
+            for (TimedTransition transition : TIMED_TRANSITIONS) {
+                changed += applyTimedTransition(transition);
+            }
+            return changed;
+        });
+    }
+
+    private long applyTimedTransition(TimedTransition transition) {
+        Date now = new Date();
+        Date cutoff = new Date(now.getTime() - transition.after().toMillis());
+
+        Query query = new Query(Criteria.where("orderStatus").is(transition.from()).and("createdAt").lt(cutoff));
+        Update update = new Update()
+                .set("orderStatus", transition.to())
+                .set("updatedAt", now)
+                .push("statusHistory", new Order.StatusTransition(transition.from(), transition.to(), now, SOURCE_SCHEDULER))
+                .inc("version", 1);
+        long changed = mongoTemplate.updateMulti(query, update, Order.class).getModifiedCount();
+        if (changed == 0) {
+            return 0;
+        }
+
+        // Đếm theo ngày tạo đơn (cùng múi giờ với thống kê)
+        Aggregation countByDay = Aggregation.newAggregation(
+                Aggregation.match(movedByTimedTransition(transition, cutoff, now)),
+                Aggregation.project().and(DateOperators.dateOf("createdAt")
+                        .withTimezone(DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId()))
+                        .toString("%Y-%m-%d")).as("day"),
+                Aggregation.group("day").count().as("count"));
+        Map<LocalDate, Long> ordersByDay = new HashMap<>();
+        for (Document day : mongoTemplate.aggregate(countByDay, Order.class, Document.class)) {
+            LocalDate date = day.getString("_id") != null ? LocalDate.parse(day.getString("_id")) : LocalDate.now();
+            ordersByDay.merge(date, ((Number) day.get("count")).longValue(), Long::sum);
+        }
+        eventPublisher.publishEvent(new OrderStatusTransitionEvent(transition.from(), transition.to(), ordersByDay));
+        return changed;
+    }
+
+    // Các đơn vừa chuyển là các đơn có đúng mục lịch sử vừa push (from, to, at = now, scheduler):
+    // updatedAt có thể đã bị một lần cập nhật khác ghi đè, còn mục lịch sử thì không.
+    // orderStatus và statusHistory.at để index orders_status_historyAt giới hạn phạm vi quét vào các đơn của lần chạy này
+    private static Criteria movedByTimedTransition(TimedTransition transition, Date cutoff, Date now) {
+        return Criteria.where("orderStatus").is(transition.to())
+                .and("statusHistory.at").is(now)
+                .and("createdAt").lt(cutoff)
+                .and("statusHistory").elemMatch(Criteria.where("from").is(transition.from())
+                        .and("to").is(transition.to()).and("at").is(now).and("source").is(SOURCE_SCHEDULER));
+    }
+}
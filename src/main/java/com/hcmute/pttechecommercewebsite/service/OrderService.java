@@ -1,23 +1,26 @@
 package com.hcmute.pttechecommercewebsite.service;
 
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
+import com.hcmute.pttechecommercewebsite.dto.DiscountPreviewDTO;
 import com.hcmute.pttechecommercewebsite.dto.OrderDTO;
-import com.hcmute.pttechecommercewebsite.model.DiscountCode;
+import com.hcmute.pttechecommercewebsite.event.OrderStatisticsEvent;
 import com.hcmute.pttechecommercewebsite.model.Order;
-import com.hcmute.pttechecommercewebsite.model.Product;
-import com.hcmute.pttechecommercewebsite.repository.DiscountCodeRepository;
 import com.hcmute.pttechecommercewebsite.repository.OrderRepository;
-import com.hcmute.pttechecommercewebsite.repository.ProductRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.hcmute.pttechecommercewebsite.util.CursorPaginator;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
+import com.hcmute.pttechecommercewebsite.util.OptimisticRetryExecutor;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class OrderService {
@@ -26,40 +29,52 @@ public class OrderService {
     private OrderRepository orderRepository;
 
     @Autowired
-    private DiscountCodeRepository discountCodeRepository;
+    private DiscountRedemptionService discountRedemptionService;
 
     @Autowired
-    private ProductRepository productRepository;
+    private DiscountRuleIndex discountRuleIndex;
 
     @Autowired
     private EmailService emailService;
 
-    // Lấy tất cả đơn hàng (có thể lọc theo các điều kiện)
-    public List<OrderDTO> getAllOrders(String paymentMethod, String paymentStatus, String orderStatus, String shippingMethod, String sortBy) {
-        List<Order> orders;
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private CursorPaginator cursorPaginator;
+
+    @Autowired
+    private OrderLifecycleService orderLifecycleService;
+
+    @Autowired
+    private OptimisticRetryExecutor optimisticRetryExecutor;
 
+    // Lấy tất cả đơn hàng (có thể lọc theo các điều kiện)
+    public CursorPageDTO<OrderDTO> getAllOrders(String paymentMethod, String paymentStatus, String orderStatus, String shippingMethod,
+                                                String sortBy, String cursor, Integer limit) {
         // Xử lý lọc theo các tiêu chí
+        Criteria criteria = Criteria.where("isDeleted").is(false);
         if (paymentMethod != null) {
-            orders = orderRepository.findByPaymentMethodAndIsDeletedFalse(paymentMethod);
-        } else if (paymentStatus != null) {
-            orders = orderRepository.findByPaymentStatusAndIsDeletedFalse(paymentStatus);
-        } else if (orderStatus != null) {
-            orders = orderRepository.findByOrderStatusAndIsDeletedFalse(orderStatus);
-        } else if (shippingMethod != null) {
-            orders = orderRepository.findByShippingMethodAndIsDeletedFalse(shippingMethod);
-        } else {
-            orders = orderRepository.findByIsDeletedFalse();
+            criteria.and("paymentMethod").is(paymentMethod);
         }
-
-        // Sort by (nếu có)
-        if ("latest".equals(sortBy)) {
-            orders.sort((o1, o2) -> o2.getCreatedAt().compareTo(o1.getCreatedAt()));
-        } else if ("oldest".equals(sortBy)) {
-            orders.sort((o1, o2) -> o1.getCreatedAt().compareTo(o2.getCreatedAt()));
+        if (paymentStatus != null) {
+            criteria.and("paymentStatus").is(paymentStatus);
+        }
+        if (orderStatus != null) {
+            criteria.and("orderStatus").is(orderStatus);
+        }
+        if (shippingMethod != null) {
+            criteria.and("shippingMethod").is(shippingMethod);
         }
 
-        // Chuyển từ model sang DTO
-        return orders.stream().map(this::convertToDTO).collect(Collectors.toList());
+        // Sort by: "oldest" hoặc mặc định mới nhất
+        Sort.Direction direction = "oldest".equals(sortBy) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        CursorPaginator.CursorSort<Order> sort = new CursorPaginator.CursorSort<>("createdAt", direction, Order::getCreatedAt, Order::getId);
+
+        return cursorPaginator.page(Order.class, criteria, sort, cursor, limit, this::convertToDTO);
     }
 
     // Lấy đơn hàng theo ID
@@ -100,145 +115,102 @@ public class OrderService {
         return orders.stream().map(this::convertToDTO).collect(Collectors.toList());
     }
 
-    public OrderDTO createOrder(OrderDTO orderDTO) {
-        // Tính toán giá trị tổng quan của đơn hàng
-        double totalPrice = 0;
-        Set<ObjectId> uniqueVariantProductIds = new HashSet<>();
-        for (OrderDTO.ItemDTO itemDTO : orderDTO.getItems()) {
-            totalPrice += itemDTO.getDiscountPrice() * itemDTO.getQuantity();
-            uniqueVariantProductIds.add(new ObjectId(itemDTO.getVariantId()));
-        }
-
-        // Tính số lượng loại sản phẩm (distinct product types)
-        int totalItems = uniqueVariantProductIds.size();
-
-        // Tính số tiền giảm giá (nếu có)
-        double discountAmount = 0;
-        if (orderDTO.getDiscountCode() != null && !orderDTO.getDiscountCode().isEmpty()) {
-            discountAmount = calculateDiscount(orderDTO.getDiscountCode(), totalPrice, orderDTO.getUserId(), false);
-        }
-
-        double shippingPrice = orderDTO.getShippingPrice();
-
-        double finalPrice = totalPrice - discountAmount + shippingPrice;
-
-        // Tạo đơn hàng mới từ OrderDTO
-        Order order = Order.builder()
-                .orderId(generateOrderId())
-                .userId(new ObjectId(orderDTO.getUserId()))
-                .items(convertItemsToModel(orderDTO.getItems()))
-                .totalItems(totalItems)
-                .totalPrice(totalPrice)
-                .shippingPrice(shippingPrice)
-                .discountCode(orderDTO.getDiscountCode())
-                .discountAmount(discountAmount)
-                .finalPrice(finalPrice)
-                .phoneNumber(orderDTO.getPhoneNumber())
-                .shippingAddress(convertShippingAddressToModel(orderDTO.getShippingAddress()))
-                .paymentMethod(orderDTO.getPaymentMethod())
-                .shippingMethod(orderDTO.getShippingMethod())
-                .paymentStatus("Chưa thanh toán")
-                .orderStatus("Chờ xác nhận")
-                .isDeleted(false)
-                .orderNotes(orderDTO.getOrderNotes())
-                .createdAt(new Date())
-                .updatedAt(new Date())
-                .build();
-
-        // Lưu đơn hàng vào cơ sở dữ liệu
-        orderRepository.save(order);
-
-        // Cập nhật tồn kho sau khi đơn hàng được tạo
-        decreaseStockAfterOrder(orderDTO);
-
-        // Trả về OrderDTO đã được tạo
-        return convertToDTO(order);
-    }
-
-    private void decreaseStockAfterOrder(OrderDTO orderDTO) {
-        for (OrderDTO.ItemDTO itemDTO : orderDTO.getItems()) {
-            Optional<Product> optionalProduct = productRepository.findByIdAndIsDeletedFalse(itemDTO.getProductId());
-
-            // Kiểm tra nếu sản phẩm tồn tại
-            if (optionalProduct.isPresent()) {
-                Product product = optionalProduct.get();
-
-                // Tìm biến thể tương ứng với variantId
-                for (Product.Variant variant : product.getVariants()) {
-                    if (variant.getVariantId().toString().equals(itemDTO.getVariantId())) {
-                        int updatedStock = variant.getStock() - itemDTO.getQuantity();
-                        variant.setStock(updatedStock);
-
-                        // Lưu lại cập nhật vào cơ sở dữ liệu
-                        product.setTotalSold(product.getTotalSold() + itemDTO.getQuantity());
-                        productRepository.save(product);
-                        break;
-                    }
-                }
-
-            } else {
-                System.out.println("Sản phẩm không tìm thấy: " + itemDTO.getProductId());
+    // Các mã giảm giá áp dụng được cho đơn hàng sắp đặt, tính trên cùng tổng tiền như createOrder
+    public List<DiscountPreviewDTO> previewDiscounts(OrderDTO orderDTO) {
+        List<DiscountRuleIndex.PreviewLine> lines = new ArrayList<>();
+        if (orderDTO.getItems() != null) {
+            for (OrderDTO.ItemDTO itemDTO : orderDTO.getItems()) {
+                lines.add(new DiscountRuleIndex.PreviewLine(
+                        toPreviewId(itemDTO.getProductId()),
+                        toPreviewId(itemDTO.getCategoryId()),
+                        itemDTO.getDiscountPrice() * itemDTO.getQuantity()));
             }
         }
+        return discountRuleIndex.preview(lines);
     }
 
-    private double calculateDiscount(String discountCode, double totalPrice, String userId, boolean isUpdate) {
-        // Lấy mã giảm giá từ cơ sở dữ liệu
-        DiscountCode discount = discountCodeRepository.findByCodeAndIsActiveTrueAndIsDeletedFalseAndValidDateRange(discountCode, new Date())
-                .orElse(null);
-
-        // Nếu không tìm thấy mã giảm giá hợp lệ
-        if (discount == null) {
-            return 0;
+    // productId / categoryId sai định dạng là lỗi dữ liệu đầu vào (400), không phải lỗi máy chủ
+    private static ObjectId toPreviewId(String id) {
+        if (id == null) {
+            return null;
         }
-
-        // Nếu không phải là hành động cập nhật, kiểm tra xem người dùng đã sử dụng mã giảm giá chưa
-        if (!isUpdate) {
-            if (discount.getUsedByUsers() != null && discount.getUsedByUsers().contains(new ObjectId(userId))) {
-                throw new RuntimeException("Mã giảm giá này đã được sử dụng bởi bạn trước đó.");
-            }
-        }
-
-        // Kiểm tra nếu giá trị đơn hàng (totalPrice) nhỏ hơn số tiền mua tối thiểu để áp dụng mã giảm giá
-        if (discount.getMinimumPurchaseAmount() != null && totalPrice < discount.getMinimumPurchaseAmount()) {
-            return 0;
-        }
-
-        // Kiểm tra loại giảm giá và tính toán giảm giá phù hợp
-        double discountAmount = 0;
-        if ("percentage".equals(discount.getDiscountType())) {
-            discountAmount = totalPrice * (discount.getDiscountValue() / 100);
-        } else if ("fixed".equals(discount.getDiscountType())) {
-            discountAmount = discount.getDiscountValue();
+        if (!ObjectId.isValid(id)) {
+            throw new IllegalArgumentException("ID không hợp lệ: " + id);
         }
+        return new ObjectId(id);
+    }
 
-        discountAmount = Math.min(discountAmount, totalPrice);
-
-        // Cập nhật usageCount và thêm userId vào usedByUsers
-        discount.setUsageCount(discount.getUsageCount() + 1);
-        if (discount.getUsedByUsers() == null) {
-            discount.setUsedByUsers(new ArrayList<>());
-        }
-        discount.getUsedByUsers().add(new ObjectId(userId));
+    public OrderDTO createOrder(OrderDTO orderDTO) {
+        // Giữ hàng nguyên tử trước khi tạo đơn để không bán vượt tồn kho
+        List<StockReservationService.StockLine> stockLines = orderDTO.getItems().stream()
+                .map(itemDTO -> new StockReservationService.StockLine(
+                        new ObjectId(itemDTO.getProductId()), new ObjectId(itemDTO.getVariantId()), itemDTO.getQuantity()))
+                .collect(Collectors.toList());
+        stockReservationService.reserve(stockLines);
+
+        String orderId = generateOrderId();
+        boolean discountRedeemed = false;
+        try {
+            // Tính toán giá trị tổng quan của đơn hàng
+            double totalPrice = 0;
+            Set<ObjectId> uniqueVariantProductIds = new HashSet<>();
+            for (OrderDTO.ItemDTO itemDTO : orderDTO.getItems()) {
+                totalPrice += itemDTO.getDiscountPrice() * itemDTO.getQuantity();
+                uniqueVariantProductIds.add(new ObjectId(itemDTO.getVariantId()));
+            }
 
-        // Lưu lại mã giảm giá với các cập nhật
-        discountCodeRepository.save(discount);
+            // Tính số lượng loại sản phẩm (distinct product types)
+            int totalItems = uniqueVariantProductIds.size();
 
-        return discountAmount;
-    }
+            // Tính số tiền giảm giá (nếu có)
+            double discountAmount = 0;
+            if (orderDTO.getDiscountCode() != null && !orderDTO.getDiscountCode().isEmpty()) {
+                discountAmount = discountRedemptionService.redeem(orderDTO.getDiscountCode(), orderDTO.getUserId(), orderId, totalPrice);
+                discountRedeemed = true;
+            }
 
-    // Phương thức kiểm tra và cập nhật trạng thái đơn hàng mỗi 30 phút
-    @Scheduled(fixedRate = 1800000) // Chạy mỗi 30 phút (1800000 ms)
-    public void updateOrderStatusToWaitingForPickup() {
-        Date currentTime = new Date();
-        long thirtyMinutesAgo = currentTime.getTime() - (30 * 60 * 1000);
+            double shippingPrice = orderDTO.getShippingPrice();
+
+            double finalPrice = totalPrice - discountAmount + shippingPrice;
+
+            // Tạo đơn hàng mới từ OrderDTO
+            Order order = Order.builder()
+                    .orderId(orderId)
+                    .userId(new ObjectId(orderDTO.getUserId()))
+                    .items(convertItemsToModel(orderDTO.getItems()))
+                    .totalItems(totalItems)
+                    .totalPrice(totalPrice)
+                    .shippingPrice(shippingPrice)
+                    .discountCode(orderDTO.getDiscountCode())
+                    .discountAmount(discountAmount)
+                    .finalPrice(finalPrice)
+                    .phoneNumber(orderDTO.getPhoneNumber())
+                    .shippingAddress(convertShippingAddressToModel(orderDTO.getShippingAddress()))
+                    .paymentMethod(orderDTO.getPaymentMethod())
+                    .shippingMethod(orderDTO.getShippingMethod())
+                    .paymentStatus("Chưa thanh toán")
+                    .orderStatus(OrderLifecycleService.PENDING)
+                    .isDeleted(false)
+                    .orderNotes(orderDTO.getOrderNotes())
+                    .createdAt(new Date())
+                    .updatedAt(new Date())
+                    .build();
+
+            // Lưu đơn hàng vào cơ sở dữ liệu
+            orderRepository.save(order);
 
-        List<Order> orders = orderRepository.findByOrderStatusAndCreatedAtBefore("Chờ xác nhận", new Date(thirtyMinutesAgo));
-        for (Order order : orders) {
-            order.setOrderStatus("Chờ lấy hàng");
-            order.setUpdatedAt(new Date());
+            // Cộng dồn thống kê của ngày
+            eventPublisher.publishEvent(OrderStatisticsEvent.created(order));
 
-            orderRepository.save(order);
+            // Trả về OrderDTO đã được tạo
+            return convertToDTO(order);
+        } catch (RuntimeException e) {
+            // Hoàn lại tồn kho đã giữ và lượt dùng mã giảm giá nếu không tạo được đơn hàng
+            stockReservationService.release(stockLines);
+            if (discountRedeemed) {
+                discountRedemptionService.release(orderId, orderDTO.getDiscountCode());
+            }
+            throw e;
         }
     }
 
@@ -248,408 +220,365 @@ public class OrderService {
     }
 
     // Phương thức cập nhật thông tin đơn hàng
+    // Đọc lại đơn hàng ở mỗi lần thử khi xung đột version. Phần tồn kho giữ thêm và lượt dùng mã mới được hoàn lại
+    // nếu lần lưu thất bại; phần tồn kho giảm bớt và lượt của mã cũ chỉ được hoàn sau khi lưu thành công
     public OrderDTO updateOrder(String orderId, OrderDTO updatedOrderDTO) {
-        // Tìm đơn hàng theo orderId
-        Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
-                .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
-
-        // Kiểm tra trạng thái đơn hàng trước khi cập nhật
-        if ("Đã hủy".equals(order.getOrderStatus())) {
-            throw new RuntimeException("Đơn hàng đã bị hủy, không thể cập nhật.");
-        }
-
-        updateStockAndTotalSoldForUpdatedOrder(order, updatedOrderDTO);
-
-        if (updatedOrderDTO.getItems() != null) {
-            order.setItems(convertItemsToModel(updatedOrderDTO.getItems()));
-        }
+        return optimisticRetryExecutor.execute("OrderService.updateOrder", () -> {
+            // Tìm đơn hàng theo orderId
+            Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
+                    .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
+
+            // Kiểm tra trạng thái đơn hàng trước khi cập nhật
+            if (OrderLifecycleService.CANCELLED.equals(order.getOrderStatus())) {
+                throw new RuntimeException("Đơn hàng đã bị hủy, không thể cập nhật.");
+            }
 
-        if (updatedOrderDTO.getShippingAddress() != null) {
-            order.setShippingAddress(convertShippingAddressToModel(updatedOrderDTO.getShippingAddress()));
-        }
+            OrderStatisticsEvent.Snapshot before = OrderStatisticsEvent.Snapshot.of(order);
 
-        if (updatedOrderDTO.getPhoneNumber() != null) {
-            order.setPhoneNumber(updatedOrderDTO.getPhoneNumber());
-        }
+            StockChanges stockChanges = stockChangesForUpdatedOrder(order, updatedOrderDTO);
+            // Giữ thêm hàng trước (có thể thất bại), phần số lượng giảm được hoàn sau khi lưu đơn hàng
+            stockReservationService.reserve(stockChanges.toReserve());
 
-        if (updatedOrderDTO.getOrderStatus() != null) {
-            if ("Đã giao".equals(updatedOrderDTO.getOrderStatus()) || "Đã nhận hàng".equals(updatedOrderDTO.getOrderStatus())) {
-                throw new RuntimeException("Không thể thay đổi trạng thái khi đơn hàng đã giao hoặc đã nhận hàng.");
-            }
-            order.setOrderStatus(updatedOrderDTO.getOrderStatus());
-        }
+            String newCode = updatedOrderDTO.getDiscountCode();
+            String oldCode = order.getDiscountCode();
+            boolean hasNewCode = newCode != null && !newCode.isEmpty();
+            boolean codeChanged = !DiscountRuleIndex.sameCode(oldCode, newCode);
+            boolean newCodeRedeemed = false;
+            try {
+                if (updatedOrderDTO.getItems() != null) {
+                    order.setItems(convertItemsToModel(updatedOrderDTO.getItems()));
+                }
 
-        if (updatedOrderDTO.getPaymentMethod() != null) {
-            order.setPaymentMethod(updatedOrderDTO.getPaymentMethod());
-        }
+                if (updatedOrderDTO.getShippingAddress() != null) {
+                    order.setShippingAddress(convertShippingAddressToModel(updatedOrderDTO.getShippingAddress()));
+                }
 
-        if (updatedOrderDTO.getShippingMethod() != null) {
-            order.setShippingMethod(updatedOrderDTO.getShippingMethod());
-        }
+                if (updatedOrderDTO.getPhoneNumber() != null) {
+                    order.setPhoneNumber(updatedOrderDTO.getPhoneNumber());
+                }
 
-        if (updatedOrderDTO.getOrderNotes() != null) {
-            order.setOrderNotes(updatedOrderDTO.getOrderNotes());
-        }
+                if (updatedOrderDTO.getOrderStatus() != null) {
+                    if (OrderLifecycleService.DELIVERED.equals(updatedOrderDTO.getOrderStatus()) || OrderLifecycleService.RECEIVED.equals(updatedOrderDTO.getOrderStatus())) {
+                        throw new RuntimeException("Không thể thay đổi trạng thái khi đơn hàng đã giao hoặc đã nhận hàng.");
+                    }
+                    // Trạng thái vận chuyển trung gian do admin tự đặt nên chỉ ghi lịch sử, không ràng buộc theo máy trạng thái
+                    if (!updatedOrderDTO.getOrderStatus().equals(order.getOrderStatus())) {
+                        orderLifecycleService.apply(order, updatedOrderDTO.getOrderStatus(), OrderLifecycleService.SOURCE_API);
+                    }
+                }
 
-        // Tính toán lại tổng giá trị của đơn hàng sau khi cập nhật
-        double totalPrice = 0;
-        Set<ObjectId> uniqueVariantProductIds = new HashSet<>();
-        for (OrderDTO.ItemDTO itemDTO : updatedOrderDTO.getItems()) {
-            totalPrice += itemDTO.getDiscountPrice() * itemDTO.getQuantity();
-            uniqueVariantProductIds.add(new ObjectId(itemDTO.getVariantId()));
-        }
+                if (updatedOrderDTO.getPaymentMethod() != null) {
+                    order.setPaymentMethod(updatedOrderDTO.getPaymentMethod());
+                }
 
-        // Tính số lượng loại sản phẩm (distinct product types)
-        int totalItems = uniqueVariantProductIds.size();
+                if (updatedOrderDTO.getShippingMethod() != null) {
+                    order.setShippingMethod(updatedOrderDTO.getShippingMethod());
+                }
 
-        // Tính lại giá trị giảm giá (nếu có)
-        double discountAmount = 0;
-        if (updatedOrderDTO.getDiscountCode() != null && !updatedOrderDTO.getDiscountCode().isEmpty()) {
-            discountAmount = calculateDiscount(updatedOrderDTO.getDiscountCode(), totalPrice, updatedOrderDTO.getUserId(), true);
-        }
+                if (updatedOrderDTO.getOrderNotes() != null) {
+                    order.setOrderNotes(updatedOrderDTO.getOrderNotes());
+                }
 
-        double shippingPrice = updatedOrderDTO.getShippingPrice();
-        double finalPrice = totalPrice - discountAmount + shippingPrice;
+                // Tính toán lại tổng giá trị của đơn hàng sau khi cập nhật
+                double totalPrice = 0;
+                Set<ObjectId> uniqueVariantProductIds = new HashSet<>();
+                for (OrderDTO.ItemDTO itemDTO : updatedOrderDTO.getItems()) {
+                    totalPrice += itemDTO.getDiscountPrice() * itemDTO.getQuantity();
+                    uniqueVariantProductIds.add(new ObjectId(itemDTO.getVariantId()));
+                }
 
-        // Cập nhật các thông tin liên quan đến giá trị tổng quan đơn hàng
-        order.setTotalPrice(totalPrice);
-        order.setTotalItems(totalItems);
-        order.setDiscountCode(updatedOrderDTO.getDiscountCode());
-        order.setDiscountAmount(discountAmount);
-        order.setFinalPrice(finalPrice);
-        order.setShippingPrice(shippingPrice);
+                // Tính số lượng loại sản phẩm (distinct product types)
+                int totalItems = uniqueVariantProductIds.size();
+
+                // Tính lại giá trị giảm giá (nếu có)
+                // Giữ nguyên mã cũ: chỉ tính lại số tiền giảm; đổi sang mã khác: dùng mã mới, lưu đơn hàng rồi mới hoàn lượt của mã cũ
+                double discountAmount = 0;
+                if (hasNewCode) {
+                    if (!codeChanged) {
+                        discountAmount = discountRedemptionService.quote(newCode, totalPrice);
+                    } else {
+                        discountAmount = discountRedemptionService.redeem(newCode, updatedOrderDTO.getUserId(),
+                                order.getOrderId(), totalPrice);
+                        newCodeRedeemed = true;
+                    }
+                }
 
-        // Cập nhật thời gian cập nhật đơn hàng
-        order.setUpdatedAt(new Date());
+                double shippingPrice = updatedOrderDTO.getShippingPrice();
+                double finalPrice = totalPrice - discountAmount + shippingPrice;
+
+                // Cập nhật các thông tin liên quan đến giá trị tổng quan đơn hàng
+                order.setTotalPrice(totalPrice);
+                order.setTotalItems(totalItems);
+                order.setDiscountCode(newCode);
+                order.setDiscountAmount(discountAmount);
+                order.setFinalPrice(finalPrice);
+                order.setShippingPrice(shippingPrice);
+
+                // Cập nhật thời gian cập nhật đơn hàng
+                order.setUpdatedAt(new Date());
+
+                // Lưu lại đơn hàng đã được cập nhật vào cơ sở dữ liệu
+                order = orderRepository.save(order);
+            } catch (RuntimeException e) {
+                // Không lưu được đơn hàng: hoàn phần hàng vừa giữ thêm và lượt vừa dùng của mã mới,
+                // mã cũ vẫn thuộc về đơn hàng
+                stockReservationService.release(stockChanges.toReserve());
+                if (newCodeRedeemed) {
+                    discountRedemptionService.release(order.getOrderId(), newCode);
+                }
+                throw e;
+            }
+            stockReservationService.release(stockChanges.toRelease());
+            if (oldCode != null && !oldCode.isBlank() && codeChanged) {
+                discountRedemptionService.release(order.getOrderId(), oldCode);
+            }
+            eventPublisher.publishEvent(OrderStatisticsEvent.changed(before, order));
 
-        // Lưu lại đơn hàng đã được cập nhật vào cơ sở dữ liệu
-        orderRepository.save(order);
+            return convertToDTO(order);
+        });
+    }
 
-        return convertToDTO(order);
+    // Phần tồn kho cần giữ thêm (số lượng tăng) và cần hoàn lại (số lượng giảm) khi cập nhật đơn hàng
+    private record StockChanges(List<StockReservationService.StockLine> toReserve,
+                                List<StockReservationService.StockLine> toRelease) {
     }
 
-    public void updateStockAndTotalSoldForUpdatedOrder(Order oldOrder, OrderDTO updatedOrderDTO) {
+    private StockChanges stockChangesForUpdatedOrder(Order oldOrder, OrderDTO updatedOrderDTO) {
+        List<StockReservationService.StockLine> toReserve = new ArrayList<>();
+        List<StockReservationService.StockLine> toRelease = new ArrayList<>();
+
         // Duyệt qua các sản phẩm trong đơn hàng cũ và đơn hàng mới
         for (int i = 0; i < updatedOrderDTO.getItems().size(); i++) {
             OrderDTO.ItemDTO updatedItemDTO = updatedOrderDTO.getItems().get(i);
             Order.Item oldItem = oldOrder.getItems().get(i);
 
             // Kiểm tra sự thay đổi về số lượng
-            int oldQuantity = oldItem.getQuantity();
-            int newQuantity = updatedItemDTO.getQuantity();
-
-            if (oldQuantity != newQuantity) {
-                int quantityDifference = newQuantity - oldQuantity;
-
-                Optional<Product> optionalProduct = productRepository.findByIdAndIsDeletedFalse(oldItem.getProductId().toString());
-
-                if (optionalProduct.isPresent()) {
-                    Product product = optionalProduct.get();
-
-                    for (Product.Variant variant : product.getVariants()) {
-                        if (variant.getVariantId().toString().equals(updatedItemDTO.getVariantId())) {
-                            if (quantityDifference > 0) {
-                                variant.setStock(variant.getStock() - quantityDifference);
-                                product.setTotalSold(product.getTotalSold() + quantityDifference);
-                            }
-                            else {
-                                variant.setStock(variant.getStock() + Math.abs(quantityDifference));
-                                product.setTotalSold(product.getTotalSold() - Math.abs(quantityDifference));
-                            }
-
-                            productRepository.save(product);
-                            break;
-                        }
-                    }
-                }
+            int quantityDifference = updatedItemDTO.getQuantity() - oldItem.getQuantity();
+
+            if (quantityDifference > 0) {
+                toReserve.add(new StockReservationService.StockLine(
+                        oldItem.getProductId(), new ObjectId(updatedItemDTO.getVariantId()), quantityDifference));
+            } else if (quantityDifference < 0) {
+                toRelease.add(new StockReservationService.StockLine(
+                        oldItem.getProductId(), new ObjectId(updatedItemDTO.getVariantId()), -quantityDifference));
             }
         }
+        return new StockChanges(toReserve, toRelease);
     }
 
     // Phương thức hủy đơn hàng
     public OrderDTO cancelOrder(String orderId, String cancellationReason) {
-        // Tìm đơn hàng theo id
-        Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
-                .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
-
-        // Kiểm tra trạng thái đơn hàng trước khi hủy
-        if (!"Chờ xác nhận".equals(order.getOrderStatus())) {
-            throw new RuntimeException("Chỉ các đơn hàng ở trạng thái 'Chờ xác nhận' mới có thể hủy");
-        }
+        // Đọc lại đơn hàng ở mỗi lần thử; hoàn tồn kho sau khi lưu thành công để không hoàn hai lần khi thử lại
+        return optimisticRetryExecutor.execute("OrderService.cancelOrder", () -> {
+            // Tìm đơn hàng theo id
+            Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
+                    .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
+
+            // Kiểm tra trạng thái đơn hàng trước khi hủy
+            if (!orderLifecycleService.canTransition(order.getOrderStatus(), OrderLifecycleService.CANCELLED)) {
+                throw new RuntimeException("Chỉ các đơn hàng ở trạng thái 'Chờ xác nhận' mới có thể hủy");
+            }
 
-        // Cập nhật lại tồn kho (tăng lại số lượng khi đơn hàng bị hủy)
-        increaseStockForOrder(order);
+            OrderStatisticsEvent.Snapshot before = OrderStatisticsEvent.Snapshot.of(order);
+            orderLifecycleService.apply(order, OrderLifecycleService.CANCELLED, OrderLifecycleService.SOURCE_API);
+            order.setCancellationReason(cancellationReason);
 
-        order.setOrderStatus("Đã hủy");
-        order.setCancellationReason(cancellationReason);
-        order.setUpdatedAt(new Date());
+            // Lưu lại đơn hàng đã cập nhật
+            order = orderRepository.save(order);
 
-        // Lưu lại đơn hàng đã cập nhật
-        orderRepository.save(order);
-        return convertToDTO(order);
+            // Cập nhật lại tồn kho (tăng lại số lượng khi đơn hàng bị hủy)
+            increaseStockForOrder(order);
+            eventPublisher.publishEvent(OrderStatisticsEvent.changed(before, order));
+            return convertToDTO(order);
+        });
     }
 
     // Xử lý yêu cầu trả hàng và cập nhật trạng thái đơn hàng
     public OrderDTO requestReturn(String orderId, String returnReason) {
-        // Tìm đơn hàng theo orderId
-        Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
-                .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
-
-        // Kiểm tra trạng thái đơn hàng trước khi gửi yêu cầu trả hàng
-        if ("Đã hủy".equals(order.getOrderStatus())) {
-            throw new RuntimeException("Đơn hàng đã bị hủy, không thể yêu cầu trả hàng.");
-        }
+        return optimisticRetryExecutor.execute("OrderService.requestReturn", () -> {
+            // Tìm đơn hàng theo orderId
+            Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
+                    .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
+
+            // Kiểm tra trạng thái đơn hàng trước khi gửi yêu cầu trả hàng
+            if (OrderLifecycleService.CANCELLED.equals(order.getOrderStatus())) {
+                throw new RuntimeException("Đơn hàng đã bị hủy, không thể yêu cầu trả hàng.");
+            }
 
-        // Kiểm tra nếu đơn hàng chưa có trạng thái "Đã giao" thì không thể yêu cầu trả hàng
-        if (!"Đã giao".equals(order.getOrderStatus())) {
-            throw new RuntimeException("Đơn hàng phải có trạng thái 'Đã giao' mới có thể yêu cầu trả hàng.");
-        }
+            // Kiểm tra nếu đơn hàng chưa có trạng thái "Đã giao" thì không thể yêu cầu trả hàng
+            if (!orderLifecycleService.canTransition(order.getOrderStatus(), OrderLifecycleService.RETURN_REQUESTED)) {
+                throw new RuntimeException("Đơn hàng phải có trạng thái 'Đã giao' mới có thể yêu cầu trả hàng.");
+            }
 
-        // Cập nhật lý do trả hàng
-        order.setReturnReason(returnReason);
+            // Cập nhật lý do trả hàng
+            order.setReturnReason(returnReason);
 
-        // Cập nhật trạng thái đơn hàng thành "Yêu cầu trả hàng"
-        order.setOrderStatus("Yêu cầu trả hàng");
-        order.setUpdatedAt(new Date());
+            OrderStatisticsEvent.Snapshot before = OrderStatisticsEvent.Snapshot.of(order);
+            // Cập nhật trạng thái đơn hàng thành "Yêu cầu trả hàng"
+            orderLifecycleService.apply(order, OrderLifecycleService.RETURN_REQUESTED, OrderLifecycleService.SOURCE_API);
 
-        // Lưu lại đơn hàng đã cập nhật
-        orderRepository.save(order);
+            // Lưu lại đơn hàng đã cập nhật
+            order = orderRepository.save(order);
+            eventPublisher.publishEvent(OrderStatisticsEvent.changed(before, order));
 
-        return convertToDTO(order);
+            return convertToDTO(order);
+        });
     }
 
     // Xử lý hoàn tất trả hàng
     public OrderDTO completeReturn(String orderId) {
-        // Tìm đơn hàng theo orderId
-        Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
-                .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
-
-        // Kiểm tra trạng thái đơn hàng
-        if (!"Yêu cầu trả hàng".equals(order.getOrderStatus())) {
-            throw new RuntimeException("Đơn hàng không thể hoàn tất trả hàng vì chưa có yêu cầu trả hàng.");
-        }
+        // Hoàn tồn kho và gửi email sau khi lưu thành công để không lặp lại khi thử lại
+        return optimisticRetryExecutor.execute("OrderService.completeReturn", () -> {
+            // Tìm đơn hàng theo orderId
+            Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
+                    .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
+
+            // Kiểm tra trạng thái đơn hàng
+            if (!orderLifecycleService.canTransition(order.getOrderStatus(), OrderLifecycleService.RETURNED)) {
+                throw new RuntimeException("Đơn hàng không thể hoàn tất trả hàng vì chưa có yêu cầu trả hàng.");
+            }
 
-        // Cập nhật lại số lượng sản phẩm vào kho
-        increaseStockForOrder(order);
+            OrderStatisticsEvent.Snapshot before = OrderStatisticsEvent.Snapshot.of(order);
+            // Cập nhật trạng thái đơn hàng thành "Đã trả hàng"
+            orderLifecycleService.apply(order, OrderLifecycleService.RETURNED, OrderLifecycleService.SOURCE_API);
+            order.setReturnApproved(true);
 
-        // Cập nhật trạng thái đơn hàng thành "Đã trả hàng"
-        order.setOrderStatus("Đã trả hàng");
-        order.setReturnApproved(true);
-        order.setUpdatedAt(new Date());
+            // Lưu lại đơn hàng đã cập nhật
+            order = orderRepository.save(order);
 
-        // Lưu lại đơn hàng đã cập nhật
-        orderRepository.save(order);
+            // Cập nhật lại số lượng sản phẩm vào kho
+            increaseStockForOrder(order);
+            eventPublisher.publishEvent(OrderStatisticsEvent.changed(before, order));
 
-        // Gửi email thông báo cho người dùng
-        emailService.sendReturnCompletionEmail(order);
+            // Gửi email thông báo cho người dùng
+            emailService.sendReturnCompletionEmail(order);
 
-        return convertToDTO(order);
+            return convertToDTO(order);
+        });
     }
 
     public OrderDTO rejectReturn(String orderId, String rejectionReason) {
-        // Tìm đơn hàng theo orderId
-        Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
-                .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
-
-        // Kiểm tra trạng thái đơn hàng để xác nhận có yêu cầu trả hàng
-        if (!"Yêu cầu trả hàng".equals(order.getOrderStatus())) {
-            throw new RuntimeException("Đơn hàng không thể từ chối trả hàng vì chưa có yêu cầu trả hàng.");
-        }
+        return optimisticRetryExecutor.execute("OrderService.rejectReturn", () -> {
+            // Tìm đơn hàng theo orderId
+            Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
+                    .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
+
+            // Kiểm tra trạng thái đơn hàng để xác nhận có yêu cầu trả hàng
+            if (!OrderLifecycleService.RETURN_REQUESTED.equals(order.getOrderStatus())) {
+                throw new RuntimeException("Đơn hàng không thể từ chối trả hàng vì chưa có yêu cầu trả hàng.");
+            }
 
-        order.setOrderStatus("Đã giao");
-        order.setReturnRejectionReason(rejectionReason);
-        order.setUpdatedAt(new Date());
+            OrderStatisticsEvent.Snapshot before = OrderStatisticsEvent.Snapshot.of(order);
+            orderLifecycleService.apply(order, OrderLifecycleService.DELIVERED, OrderLifecycleService.SOURCE_API);
+            order.setReturnRejectionReason(rejectionReason);
 
-        // Lưu lại đơn hàng đã cập nhật
-        orderRepository.save(order);
+            // Lưu lại đơn hàng đã cập nhật
+            order = orderRepository.save(order);
+            eventPublisher.publishEvent(OrderStatisticsEvent.changed(before, order));
 
-        // Gửi email thông báo cho người dùng về việc từ chối trả hàng
-        emailService.sendReturnRejectionEmail(order);
+            // Gửi email thông báo cho người dùng về việc từ chối trả hàng
+            emailService.sendReturnRejectionEmail(order);
 
-        return convertToDTO(order);
+            return convertToDTO(order);
+        });
     }
 
     // Phương thức xóa đơn hàng
     public OrderDTO deleteOrder(String orderId) {
-        // Tìm đơn hàng theo id
-        Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
-                .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
-
-        // Kiểm tra trạng thái đơn hàng trước khi xóa
-        if ("Đã hủy".equals(order.getOrderStatus())) {
-            throw new RuntimeException("Đơn hàng đã bị hủy, không thể xóa.");
-        }
+        // Hoàn tồn kho sau khi lưu thành công để không hoàn hai lần khi thử lại
+        return optimisticRetryExecutor.execute("OrderService.deleteOrder", () -> {
+            // Tìm đơn hàng theo id
+            Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
+                    .orElseThrow(() -> new RuntimeException("Đơn hàng không tồn tại hoặc đã bị xóa"));
+
+            // Kiểm tra trạng thái đơn hàng trước khi xóa
+            if (OrderLifecycleService.CANCELLED.equals(order.getOrderStatus())) {
+                throw new RuntimeException("Đơn hàng đã bị hủy, không thể xóa.");
+            }
 
-        // Cập nhật lại tồn kho (tăng lại số lượng khi xóa đơn hàng)
-        increaseStockForOrder(order);
+            // Đánh dấu đơn hàng là đã xóa
+            order.setDeleted(true);
+            order.setUpdatedAt(new Date());
 
-        // Đánh dấu đơn hàng là đã xóa
-        order.setDeleted(true);
-        order.setUpdatedAt(new Date());
+            // Lưu lại đơn hàng đã được cập nhật
+            order = orderRepository.save(order);
 
-        // Lưu lại đơn hàng đã được cập nhật
-        orderRepository.save(order);
-        return convertToDTO(order);
+            // Cập nhật lại tồn kho (tăng lại số lượng khi xóa đơn hàng)
+            increaseStockForOrder(order);
+            return convertToDTO(order);
+        });
     }
 
     private void increaseStockForOrder(Order order) {
-        for (Order.Item item : order.getItems()) {
-            Optional<Product> optionalProduct = productRepository.findByIdAndIsDeletedFalse(item.getProductId().toString());
-            if (optionalProduct.isPresent()) {
-                Product product = optionalProduct.get();
-                for (Product.Variant variant : product.getVariants()) {
-                    if (variant.getVariantId().toString().equals(item.getVariantId().toString())) {
-                        variant.setStock(variant.getStock() + item.getQuantity());
-                        product.setTotalSold(product.getTotalSold() - item.getQuantity());
-                        productRepository.save(product);
-                        break;
-                    }
-                }
-            }
-        }
+        stockReservationService.release(order.getItems().stream()
+                .map(item -> new StockReservationService.StockLine(item.getProductId(), item.getVariantId(), item.getQuantity()))
+                .collect(Collectors.toList()));
     }
 
     public void updateOrderPaymentStatus(String orderId, String newStatus) {
-        Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng"));
-        order.setPaymentStatus(newStatus);
-        order.setUpdatedAt(new Date());
-        orderRepository.save(order);
+        optimisticRetryExecutor.execute("OrderService.updateOrderPaymentStatus", () -> {
+            Order order = orderRepository.findByIdAndIsDeletedFalse(orderId)
+                    .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng"));
+            order.setPaymentStatus(newStatus);
+            order.setUpdatedAt(new Date());
+            orderRepository.save(order);
+            return null;
+        });
     }
 
     // Xuất tất cả đơn hàng ra file Excel
-    public ByteArrayOutputStream exportOrdersToExcel(String paymentMethod, String paymentStatus, String orderStatus, String shippingMethod, String sortBy) throws IOException {
-        // Lấy tất cả đơn hàng từ repository (dữ liệu từ OrderDTO)
-        List<OrderDTO> orders = getAllOrders(paymentMethod, paymentStatus, orderStatus, shippingMethod, sortBy);
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Orders");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        Row headerRow = sheet.createRow(0);
+    public void exportOrdersToExcel(String paymentMethod, String paymentStatus, String orderStatus, String shippingMethod, String sortBy, OutputStream outputStream) throws IOException {
+        // Sắp xếp trong MongoDB thay vì sắp xếp danh sách trong bộ nhớ
+        Sort sort = "latest".equals(sortBy) ? Sort.by(Sort.Direction.DESC, "createdAt")
+                : "oldest".equals(sortBy) ? Sort.by(Sort.Direction.ASC, "createdAt")
+                : Sort.unsorted();
+
         String[] columns = {
                 "ID", "Mã đơn hàng", "Mã người dùng", "Tổng số sản phẩm", "Tổng giá trị",
                 "Giá vận chuyển", "Mã giảm giá", "Số tiền giảm giá", "Giá trị cuối", "Số điện thoại",
                 "Địa chỉ giao hàng", "Phương thức thanh toán", "Trạng thái thanh toán", "Trạng thái đơn hàng",
                 "Phương thức giao hàng", "Ngày tạo", "Ngày cập nhật", "Trạng thái xóa", "Ghi chú"
         };
-        for (int i = 0; i < columns.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
-        }
-
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu đơn hàng vào file Excel
-        int rowNum = 1;
-        for (OrderDTO order : orders) {
-            Row row = sheet.createRow(rowNum++);
-
-            // Cột ID
-            row.createCell(0).setCellValue(order.getId());
-            row.getCell(0).setCellStyle(dataStyle);
-
-            // Cột Mã đơn hàng
-            row.createCell(1).setCellValue(order.getOrderId());
-            row.getCell(1).setCellStyle(dataStyle);
-
-            // Cột Mã người dùng
-            row.createCell(2).setCellValue(order.getUserId());
-            row.getCell(2).setCellStyle(dataStyle);
-
-            // Cột Tổng số sản phẩm
-            row.createCell(3).setCellValue(order.getTotalItems());
-            row.getCell(3).setCellStyle(dataStyle);
-
-            // Cột Tổng giá trị
-            row.createCell(4).setCellValue(order.getTotalPrice());
-            row.getCell(4).setCellStyle(dataStyle);
-
-            // Cột Giá vận chuyển
-            row.createCell(5).setCellValue(order.getShippingPrice());
-            row.getCell(5).setCellStyle(dataStyle);
-
-            // Cột Mã giảm giá
-            row.createCell(6).setCellValue(order.getDiscountCode() != null ? order.getDiscountCode() : "N/A");
-            row.getCell(6).setCellStyle(dataStyle);
 
-            // Cột Số tiền giảm giá
-            row.createCell(7).setCellValue(order.getDiscountAmount());
-            row.getCell(7).setCellStyle(dataStyle);
-
-            // Cột Giá trị cuối
-            row.createCell(8).setCellValue(order.getFinalPrice());
-            row.getCell(8).setCellStyle(dataStyle);
-
-            // Cột Số điện thoại
-            row.createCell(9).setCellValue(order.getPhoneNumber());
-            row.getCell(9).setCellStyle(dataStyle);
-
-            // Cột Địa chỉ giao hàng
-            row.createCell(10).setCellValue(order.getShippingAddress() != null ? order.getShippingAddress().toString() : "N/A");
-            row.getCell(10).setCellStyle(dataStyle);
-
-            // Cột Phương thức thanh toán
-            row.createCell(11).setCellValue(order.getPaymentMethod());
-            row.getCell(11).setCellStyle(dataStyle);
-
-            // Cột Trạng thái thanh toán
-            row.createCell(12).setCellValue(order.getPaymentStatus());
-            row.getCell(12).setCellStyle(dataStyle);
-
-            // Cột Trạng thái đơn hàng
-            row.createCell(13).setCellValue(order.getOrderStatus());
-            row.getCell(13).setCellStyle(dataStyle);
-
-            // Cột Phương thức giao hàng
-            row.createCell(14).setCellValue(order.getShippingMethod());
-            row.getCell(14).setCellStyle(dataStyle);
-
-            // Cột Ngày tạo
-            row.createCell(15).setCellValue(order.getCreatedAt() != null ? order.getCreatedAt().toString() : "N/A");
-            row.getCell(15).setCellStyle(dataStyle);
-
-            // Cột Ngày cập nhật
-            row.createCell(16).setCellValue(order.getUpdatedAt() != null ? order.getUpdatedAt().toString() : "N/A");
-            row.getCell(16).setCellStyle(dataStyle);
-
-            // Cột Trạng thái xóa
-            row.createCell(17).setCellValue(order.isDeleted() ? "Đã xóa" : "Đang hiển thị");
-            row.getCell(17).setCellStyle(dataStyle);
-
-            // Cột Ghi chú
-            row.createCell(18).setCellValue(order.getOrderNotes() != null ? order.getOrderNotes() : "N/A");
-            row.getCell(18).setCellStyle(dataStyle);
+        // Đọc đơn hàng theo cursor (cùng tiêu chí lọc với getAllOrders) và ghi từng dòng vào file Excel
+        try (Stream<Order> orders = streamOrders(paymentMethod, paymentStatus, orderStatus, shippingMethod, sort);
+             ExcelStreamWriter writer = new ExcelStreamWriter("Orders", columns)) {
+            orders.map(this::convertToDTO).forEach(order -> writer.writeRow(
+                    order.getId(),
+                    order.getOrderId(),
+                    order.getUserId(),
+                    order.getTotalItems(),
+                    order.getTotalPrice(),
+                    order.getShippingPrice(),
+                    order.getDiscountCode() != null ? order.getDiscountCode() : "N/A",
+                    order.getDiscountAmount(),
+                    order.getFinalPrice(),
+                    order.getPhoneNumber(),
+                    order.getShippingAddress() != null ? order.getShippingAddress().toString() : "N/A",
+                    order.getPaymentMethod(),
+                    order.getPaymentStatus(),
+                    order.getOrderStatus(),
+                    order.getShippingMethod(),
+                    order.getCreatedAt() != null ? order.getCreatedAt().toString() : "N/A",
+                    order.getUpdatedAt() != null ? order.getUpdatedAt().toString() : "N/A",
+                    order.isDeleted() ? "Đã xóa" : "Đang hiển thị",
+                    order.getOrderNotes() != null ? order.getOrderNotes() : "N/A"));
+
+            writer.writeTo(outputStream);
         }
+    }
 
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
+    private Stream<Order> streamOrders(String paymentMethod, String paymentStatus, String orderStatus, String shippingMethod, Sort sort) {
+        if (paymentMethod != null) {
+            return orderRepository.streamByPaymentMethodAndIsDeletedFalse(paymentMethod, sort);
+        } else if (paymentStatus != null) {
+            return orderRepository.streamByPaymentStatusAndIsDeletedFalse(paymentStatus, sort);
+        } else if (orderStatus != null) {
+            return orderRepository.streamByOrderStatusAndIsDeletedFalse(orderStatus, sort);
+        } else if (shippingMethod != null) {
+            return orderRepository.streamByShippingMethodAndIsDeletedFalse(shippingMethod, sort);
         }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
+        return orderRepository.streamByIsDeletedFalse(sort);
     }
 
     // Chuyển đổi từ Order sang OrderDTO
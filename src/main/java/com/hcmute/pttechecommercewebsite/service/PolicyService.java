@@ -4,21 +4,20 @@ import com.hcmute.pttechecommercewebsite.dto.PolicyDTO;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.model.Policy;
 import com.hcmute.pttechecommercewebsite.repository.PolicyRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.*;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
+import com.hcmute.pttechecommercewebsite.util.ReferenceDataCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Validated
@@ -26,9 +25,15 @@ public class PolicyService {
 
     private final PolicyRepository policyRepository;
 
+    private final ReferenceDataCache referenceDataCache;
+
+    private final ScheduledActivationService scheduledActivationService;
+
     @Autowired
-    public PolicyService(PolicyRepository policyRepository) {
+    public PolicyService(PolicyRepository policyRepository, ReferenceDataCache referenceDataCache, ScheduledActivationService scheduledActivationService) {
         this.policyRepository = policyRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.scheduledActivationService = scheduledActivationService;
     }
 
     // Chuyển Entity thành DTO
@@ -57,10 +62,11 @@ public class PolicyService {
         }
 
         // Lấy danh sách các chính sách từ cơ sở dữ liệu với sắp xếp
-        List<Policy> policies = policyRepository.findByIsDeletedFalseAndIsActiveTrue(sort);
-        return policies.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        Sort finalSort = sort;
+        return referenceDataCache.get(ReferenceDataCache.POLICIES, "active:" + sort, () ->
+                policyRepository.findByIsDeletedFalseAndIsActiveTrue(finalSort).stream()
+                        .map(this::convertToDTO)
+                        .toList());
     }
 
     // Lấy tất cả chính sách không bị xóa
@@ -74,16 +80,17 @@ public class PolicyService {
         }
 
         // Lấy danh sách các chính sách từ cơ sở dữ liệu với sắp xếp
-        List<Policy> policies = policyRepository.findByIsDeletedFalse(sort);
-        return policies.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        Sort finalSort = sort;
+        return referenceDataCache.get(ReferenceDataCache.POLICIES, "all:" + sort, () ->
+                policyRepository.findByIsDeletedFalse(finalSort).stream()
+                        .map(this::convertToDTO)
+                        .toList());
     }
 
     // Lấy chính sách theo ID
     public Optional<PolicyDTO> getPolicyById(String id) {
-        Optional<Policy> policy = policyRepository.findById(id);
-        return policy.map(this::convertToDTO);
+        return referenceDataCache.get(ReferenceDataCache.POLICIES, "id:" + id, () ->
+                policyRepository.findById(id).map(this::convertToDTO));
     }
 
     // Tìm kiếm chính sách theo tiêu đề
@@ -110,6 +117,7 @@ public class PolicyService {
 
         // Lưu chính sách vào DB
         Policy savedPolicy = policyRepository.save(policy);
+        referenceDataCache.invalidate(ReferenceDataCache.POLICIES);
         return convertToDTO(savedPolicy);
     }
 
@@ -132,24 +140,11 @@ public class PolicyService {
                 .build();
 
         Policy savedPolicy = policyRepository.save(policy);
+        referenceDataCache.invalidate(ReferenceDataCache.POLICIES);
+        scheduledActivationService.schedule(Policy.class, savedPolicy.getId(), savedPolicy.getScheduledDate());
         return convertToDTO(savedPolicy);
     }
 
-    @Scheduled(fixedRate = 60000)
-    @Transactional
-    public void checkAndActivateScheduledPolicies() {
-        Date now = new Date();
-
-        List<Policy> scheduledPolicies = policyRepository.findByScheduledDateBeforeAndIsDeletedFalseAndIsActiveFalse(now);
-
-        for (Policy policy : scheduledPolicies) {
-            policy.setActive(true);
-            policy.setScheduledDate(null);
-            policy.setUpdatedAt(now);
-            policyRepository.save(policy);
-        }
-    }
-
     // Chỉnh sửa chính sách
     public PolicyDTO updatePolicy(String id, PolicyDTO policyDTO) {
         Optional<Policy> existingPolicy = policyRepository.findById(id);
@@ -164,6 +159,7 @@ public class PolicyService {
 
             // Lưu lại chính sách đã được chỉnh sửa
             Policy updatedPolicy = policyRepository.save(policy);
+            referenceDataCache.invalidate(ReferenceDataCache.POLICIES);
             return convertToDTO(updatedPolicy);
         } else {
             throw new ResourceNotFoundException("Chính sách với ID " + id + " không tồn tại");
@@ -181,6 +177,7 @@ public class PolicyService {
         policy.setActive(false);
         policy.setUpdatedAt(new Date());
         policy = policyRepository.save(policy);
+        referenceDataCache.invalidate(ReferenceDataCache.POLICIES);
         return convertToDTO(policy);
     }
 
@@ -195,6 +192,7 @@ public class PolicyService {
         policy.setActive(true);
         policy.setUpdatedAt(new Date());
         policy = policyRepository.save(policy);
+        referenceDataCache.invalidate(ReferenceDataCache.POLICIES);
         return convertToDTO(policy);
     }
 
@@ -209,90 +207,36 @@ public class PolicyService {
 
             // Lưu chính sách đã bị xóa
             policyRepository.save(policy);
+            referenceDataCache.invalidate(ReferenceDataCache.POLICIES);
         } else {
             throw new ResourceNotFoundException("Chính sách với ID " + id + " không tồn tại hoặc đã bị xóa");
         }
     }
 
     // Phương thức xuất tất cả chính sách ra file Excel
-    public ByteArrayOutputStream exportPoliciesToExcel(String sortBy, String sortOrder) throws IOException {
-        // Lấy danh sách các chính sách từ service với sắp xếp
-        List<PolicyDTO> policies = getAllPoliciesWithDeletedFalse(sortBy, sortOrder);
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Policies");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        Row headerRow = sheet.createRow(0);
-        String[] columns = {"ID", "Loại chính sách", "Tiêu đề", "Mô tả", "Nội dung", "Trạng thái hoạt động", "Trạng thái xóa"};
-        for (int i = 0; i < columns.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
+    public void exportPoliciesToExcel(String sortBy, String sortOrder, OutputStream outputStream) throws IOException {
+        Sort sort = Sort.by(Sort.Order.by(sortBy));
+        if ("desc".equalsIgnoreCase(sortOrder)) {
+            sort = sort.descending();
+        } else {
+            sort = sort.ascending();
         }
 
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu chính sách vào file Excel
-        int rowNum = 1;
-        for (PolicyDTO policy : policies) {
-            Row row = sheet.createRow(rowNum++);
-
-            // Cột ID
-            row.createCell(0).setCellValue(policy.getId());
-            row.getCell(0).setCellStyle(dataStyle);
-
-            // Cột Loại chính sách
-            row.createCell(1).setCellValue(policy.getType());
-            row.getCell(1).setCellStyle(dataStyle);
-
-            // Cột Tiêu đề
-            row.createCell(2).setCellValue(policy.getTitle());
-            row.getCell(2).setCellStyle(dataStyle);
-
-            // Cột Mô tả
-            row.createCell(3).setCellValue(policy.getDescription() != null ? policy.getDescription() : "Không có");
-            row.getCell(3).setCellStyle(dataStyle);
-
-            // Cột Nội dung
-            row.createCell(4).setCellValue(policy.getContent() != null ? policy.getContent() : "Không có");
-            row.getCell(4).setCellStyle(dataStyle);
-
-            // Cột Trạng thái hoạt động
-            row.createCell(5).setCellValue(policy.isActive() ? "Đang hoạt động" : "Không hoạt động");
-            row.getCell(5).setCellStyle(dataStyle);
-
-            // Cột Trạng thái xóa
-            row.createCell(6).setCellValue(policy.isDeleted() ? "Đã xóa" : "Đang hiển thị");
-            row.getCell(6).setCellStyle(dataStyle);
-        }
+        String[] columns = {"ID", "Loại chính sách", "Tiêu đề", "Mô tả", "Nội dung", "Trạng thái hoạt động", "Trạng thái xóa"};
 
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
+        // Đọc chính sách theo cursor và ghi từng dòng vào file Excel
+        try (Stream<Policy> policies = policyRepository.streamByIsDeletedFalse(sort);
+             ExcelStreamWriter writer = new ExcelStreamWriter("Policies", columns)) {
+            policies.map(this::convertToDTO).forEach(policy -> writer.writeRow(
+                    policy.getId(),
+                    policy.getType(),
+                    policy.getTitle(),
+                    policy.getDescription() != null ? policy.getDescription() : "Không có",
+                    policy.getContent() != null ? policy.getContent() : "Không có",
+                    policy.isActive() ? "Đang hoạt động" : "Không hoạt động",
+                    policy.isDeleted() ? "Đã xóa" : "Đang hiển thị"));
+
+            writer.writeTo(outputStream);
         }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
     }
 }
\ No newline at end of file
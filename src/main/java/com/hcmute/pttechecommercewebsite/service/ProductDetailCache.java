@@ -0,0 +1,189 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hcmute.pttechecommercewebsite.dto.CacheMetricsDTO;
+import com.hcmute.pttechecommercewebsite.dto.ProductDTO;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import org.bson.types.ObjectId;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Cache trang chi tiết sản phẩm: lưu sẵn JSON đã serialize của ProductDTO cùng ETag (hash nội dung)
+// - khóa theo id, kèm chỉ mục productId -> id cho API /by-product-id
+// - bị xóa khi sản phẩm được lưu / xóa (sự kiện MongoDB) hoặc khi tồn kho đổi qua update nguyên tử (StockReservationService)
+// - mỗi lần xóa tăng generation: bản được nạp trước đó sẽ không được ghi vào cache (tránh cache dữ liệu cũ)
+@Service
+public class ProductDetailCache {
+
+    private static final int MAX_ENTRIES = 5_000;
+    private static final long TTL_MS = 10 * 60 * 1000;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, ProductDetail> byId = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ProductDetail> eldest) {
+            if (size() > MAX_ENTRIES) {
+                unindex(eldest.getValue());
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<String, String> idByProductId = new HashMap<>();
+    private long generation = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    // json: nội dung response đã serialize sẵn; etag: hash của json (đổi khi nội dung đổi)
+    public record ProductDetail(String id, String productId, boolean deleted, byte[] json, String etag, long expiresAt) {
+    }
+
+    public ProductDetailCache(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public Optional<ProductDetail> getById(String id, Supplier<Optional<ProductDTO>> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            ProductDetail detail = byId.get(id);
+            if (isFresh(detail)) {
+                hits.increment();
+                return Optional.of(detail);
+            }
+            misses.increment();
+            loadGeneration = generation;
+        }
+        return loader.get().map(product -> store(product, loadGeneration));
+    }
+
+    // Chỉ trả về sản phẩm chưa bị xóa (giống findByProductIdAndIsDeletedFalse)
+    public Optional<ProductDetail> getByProductId(String productId, Supplier<Optional<ProductDTO>> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            String id = idByProductId.get(productId);
+            ProductDetail detail = id != null ? byId.get(id) : null;
+            if (isFresh(detail) && !detail.deleted()) {
+                hits.increment();
+                return Optional.of(detail);
+            }
+            misses.increment();
+            loadGeneration = generation;
+        }
+        return loader.get().map(product -> store(product, loadGeneration));
+    }
+
+    public synchronized void invalidate(String id) {
+        generation++;
+        invalidations.increment();
+        ProductDetail removed = byId.remove(id);
+        if (removed != null) {
+            unindex(removed);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidations.increment();
+        byId.clear();
+        idByProductId.clear();
+    }
+
+    // Mọi lần productRepository.save(...) (cập nhật, đổi giá, ảnh / video, tồn kho, đánh giá, kích hoạt theo lịch...)
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        if (event.getSource() instanceof Product product && product.getId() != null) {
+            invalidate(product.getId());
+        }
+    }
+
+    @EventListener
+    public void onAfterDelete(AfterDeleteEvent<?> event) {
+        if (event.getType() != Product.class) {
+            return;
+        }
+        Object id = event.getDocument() != null ? event.getDocument().get("_id") : null;
+        if (id instanceof String || id instanceof ObjectId) {
+            invalidate(id.toString());
+        } else {
+            invalidateAll();
+        }
+    }
+
+    public CacheMetricsDTO getMetrics() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        int size;
+        synchronized (this) {
+            size = byId.size();
+        }
+        return CacheMetricsDTO.builder()
+                .region("productDetails")
+                .size(size)
+                .hits(hitCount)
+                .misses(missCount)
+                .hitRatio(hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0)
+                .evictions(evictions.sum())
+                .invalidations(invalidations.sum())
+                .build();
+    }
+
+    // Serialize ngoài khóa; chỉ ghi vào cache nếu không có lần xóa nào xảy ra trong lúc nạp
+    private ProductDetail store(ProductDTO product, long loadGeneration) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(product);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Lỗi khi chuyển sản phẩm sang JSON", e);
+        }
+        ProductDetail detail = new ProductDetail(product.getId(), product.getProductId(), product.isDeleted(), json,
+                "\"" + DigestUtils.md5DigestAsHex(json) + "\"", System.currentTimeMillis() + TTL_MS);
+
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                ProductDetail previous = byId.put(detail.id(), detail);
+                if (previous != null) {
+                    unindex(previous);
+                }
+                if (!detail.deleted() && detail.productId() != null) {
+                    idByProductId.put(detail.productId(), detail.id());
+                }
+            }
+        }
+        return detail;
+    }
+
+    private boolean isFresh(ProductDetail detail) {
+        if (detail == null) {
+            return false;
+        }
+        if (detail.expiresAt() > System.currentTimeMillis()) {
+            return true;
+        }
+        byId.remove(detail.id());
+        unindex(detail);
+        evictions.increment();
+        return false;
+    }
+
+    private void unindex(ProductDetail detail) {
+        if (detail.productId() != null) {
+            idByProductId.remove(detail.productId(), detail.id());
+        }
+    }
+}
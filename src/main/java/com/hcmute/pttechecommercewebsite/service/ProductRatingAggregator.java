@@ -0,0 +1,185 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.event.ProductRatingChangedEvent;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.model.Review;
+import com.hcmute.pttechecommercewebsite.util.BatchJobRunner;
+import com.hcmute.pttechecommercewebsite.util.CollectionVersionTracker;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+// Tổng hợp điểm đánh giá sản phẩm bằng update nguyên tử thay vì đọc - tính lại - lưu cả sản phẩm:
+// - ratings.sum, ratings.totalReviews và ratings.histogram (số lượt theo 1 - 5 sao) được cộng dồn
+//   trong một lệnh update dạng pipeline; bước thứ hai của pipeline tính ratings.average = sum / totalReviews
+// - các đánh giá đồng thời trên cùng sản phẩm không ghi đè lẫn nhau và điểm trung bình không bị lệch dần
+// - sản phẩm cũ chưa có ratings.sum lấy average * totalReviews làm giá trị ban đầu;
+//   khi khởi động, ratings của mọi sản phẩm được đối chiếu và tính lại từ collection Reviews
+@Service
+public class ProductRatingAggregator {
+
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BatchJobRunner batchJobRunner;
+    private final ProductDetailCache productDetailCache;
+    private final CollectionVersionTracker collectionVersionTracker;
+
+    public ProductRatingAggregator(MongoTemplate mongoTemplate, ApplicationEventPublisher eventPublisher,
+                                   BatchJobRunner batchJobRunner, ProductDetailCache productDetailCache,
+                                   CollectionVersionTracker collectionVersionTracker) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.batchJobRunner = batchJobRunner;
+        this.productDetailCache = productDetailCache;
+        this.collectionVersionTracker = collectionVersionTracker;
+    }
+
+    // Số sao (1 - 5) dùng làm khóa histogram cho một điểm đánh giá
+    public static String star(double rating) {
+        long star = Math.round(rating);
+        return String.valueOf(Math.max(1, Math.min(5, star)));
+    }
+
+    // Ghi nhận thay đổi đánh giá của sản phẩm: addedRating / removedRating là null nếu không có
+    // (thêm đánh giá: chỉ addedRating; xóa: chỉ removedRating; sửa điểm: cả hai)
+    public void apply(ObjectId productId, Double addedRating, Double removedRating) {
+        double sumDelta = 0;
+        int countDelta = 0;
+        Map<String, Integer> histogramDelta = new TreeMap<>();
+        if (addedRating != null) {
+            sumDelta += addedRating;
+            countDelta++;
+            histogramDelta.merge(star(addedRating), 1, Integer::sum);
+        }
+        if (removedRating != null) {
+            sumDelta -= removedRating;
+            countDelta--;
+            histogramDelta.merge(star(removedRating), -1, Integer::sum);
+        }
+        histogramDelta.values().removeIf(delta -> delta == 0);
+        if (sumDelta == 0 && countDelta == 0 && histogramDelta.isEmpty()) {
+            return;
+        }
+
+        Document counters = new Document()
+                .append("ratings.sum", new Document("$add", List.of(new Document("$ifNull", List.of("$ratings.sum",
+                        new Document("$multiply", List.of(ifNullZero("$ratings.average"), ifNullZero("$ratings.totalReviews"))))),
+                        sumDelta)))
+                .append("ratings.totalReviews", new Document("$max", List.of(0,
+                        new Document("$add", List.of(ifNullZero("$ratings.totalReviews"), countDelta)))))
+                .append("version", new Document("$add", List.of(ifNullZero("$version"), 1)));
+        histogramDelta.forEach((star, delta) -> counters.append("ratings.histogram." + star,
+                new Document("$max", List.of(0, new Document("$add", List.of(ifNullZero("$ratings.histogram." + star), delta))))));
+        Document average = new Document("ratings.average", new Document("$cond", List.of(
+                new Document("$gt", List.of("$ratings.totalReviews", 0)),
+                new Document("$divide", List.of("$ratings.sum", "$ratings.totalReviews")),
+                0)));
+
+        AggregationUpdate update = AggregationUpdate.from(List.of(stage("$set", counters), stage("$set", average)));
+        Product updated = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(productId)), update,
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+        notifyChanged(updated);
+    }
+
+    // Tính lại ratings của mọi sản phẩm từ Reviews khi khởi động (idempotent: chạy lại không ghi gì nếu đã khớp).
+    // Chỉ ghi khi ratings khác kết quả tính và version chưa đổi: nếu apply() chạy xen giữa lúc tính
+    // thì bỏ qua sản phẩm đó để không ghi đè lượt đánh giá mới, lần khởi động sau sẽ tính lại
+    @EventListener(ApplicationReadyEvent.class)
+    public void recomputeFromReviews() {
+        batchJobRunner.run("ProductRatingAggregator.recomputeFromReviews", () -> {
+            Query current = new Query();
+            current.fields().include("_id").include("ratings").include("version");
+            List<Product> products = mongoTemplate.find(current, Product.class);
+            if (products.isEmpty()) {
+                return 0;
+            }
+
+            // Nhóm theo (sản phẩm, điểm) rồi quy về số sao bằng cùng hàm star() với apply()
+            Aggregation byRating = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("isDeleted").is(false)),
+                    Aggregation.group("productId", "rating").count().as("count"));
+            Map<ObjectId, Product.Ratings> totals = new HashMap<>();
+            for (Document row : mongoTemplate.aggregate(byRating, Review.class, Document.class)) {
+                Document id = row.get("_id", Document.class);
+                double rating = ((Number) id.get("rating")).doubleValue();
+                int count = ((Number) row.get("count")).intValue();
+                Product.Ratings ratings = totals.computeIfAbsent(id.getObjectId("productId"), productId -> emptyRatings());
+                ratings.setSum(ratings.getSum() + rating * count);
+                ratings.setTotalReviews(ratings.getTotalReviews() + count);
+                ratings.getHistogram().merge(star(rating), count, Integer::sum);
+            }
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+            List<ObjectId> candidates = new ArrayList<>();
+            for (Product product : products) {
+                ObjectId productId = new ObjectId(product.getId());
+                Product.Ratings ratings = totals.getOrDefault(productId, emptyRatings());
+                ratings.setAverage(ratings.getTotalReviews() > 0 ? ratings.getSum() / ratings.getTotalReviews() : 0);
+                if (sameRatings(product.getRatings(), ratings)) {
+                    continue;
+                }
+                candidates.add(productId);
+                bulk.updateOne(new Query(Criteria.where("_id").is(productId).and("version").is(product.getVersion())),
+                        new Update().set("ratings", ratings).inc("version", 1));
+            }
+            if (candidates.isEmpty()) {
+                return 0;
+            }
+            long changed = bulk.execute().getModifiedCount();
+            for (Product product : mongoTemplate.find(new Query(Criteria.where("_id").in(candidates)), Product.class)) {
+                notifyChanged(product);
+            }
+            return changed;
+        });
+    }
+
+    // Ratings đã lưu có khớp với kết quả tính từ Reviews không (sum so sánh có sai số do cộng số thực)
+    private static boolean sameRatings(Product.Ratings stored, Product.Ratings computed) {
+        if (stored == null || stored.getSum() == null || stored.getHistogram() == null) {
+            return false;
+        }
+        Map<String, Integer> histogram = new TreeMap<>(stored.getHistogram());
+        histogram.values().removeIf(count -> count == null || count == 0);
+        return stored.getTotalReviews() == computed.getTotalReviews()
+                && Math.abs(stored.getSum() - computed.getSum()) < 1e-6
+                && Math.abs(stored.getAverage() - computed.getAverage()) < 1e-6
+                && histogram.equals(computed.getHistogram());
+    }
+
+    private static Product.Ratings emptyRatings() {
+        return Product.Ratings.builder().sum(0.0).histogram(new TreeMap<>()).build();
+    }
+
+    // findAndModify / bulk không phát AfterSaveEvent nên phải tự xóa cache chi tiết sản phẩm, tăng phiên bản collection
+    // (ETag) và phát ProductRatingChangedEvent cho các chỉ mục dùng điểm đánh giá (gợi ý tìm kiếm)
+    private void notifyChanged(Product product) {
+        if (product == null) {
+            return;
+        }
+        productDetailCache.invalidate(product.getId());
+        collectionVersionTracker.touch(Product.class);
+        eventPublisher.publishEvent(new ProductRatingChangedEvent(product));
+    }
+
+    private static Document ifNullZero(String field) {
+        return new Document("$ifNull", List.of(field, 0));
+    }
+
+    private static AggregationOperation stage(String operator, Document body) {
+        return context -> new Document(operator, body);
+    }
+}
@@ -0,0 +1,327 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.model.Brand;
+import com.hcmute.pttechecommercewebsite.model.Category;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.util.VietnameseTextNormalizer;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+// Chỉ mục tìm kiếm sản phẩm trong bộ nhớ (inverted index):
+// - đánh chỉ mục tên, tags, tên thương hiệu / danh mục và giá trị thông số kỹ thuật (đã bỏ dấu tiếng Việt)
+// - xếp hạng theo BM25 có trọng số theo trường, hỗ trợ tìm theo tiền tố và sai 1 ký tự
+// - cập nhật theo sự kiện lưu / xóa của MongoDB (CatalogIndex) nên không phải quét collection Products khi tìm kiếm
+@Service
+public class ProductSearchIndex extends CatalogIndex<ProductSearchIndex.IndexState> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    // Trọng số của từng trường khi tính tần suất từ
+    private static final float NAME_WEIGHT = 3f;
+    private static final float TAG_WEIGHT = 2f;
+    private static final float BRAND_CATEGORY_WEIGHT = 1.5f;
+    private static final float SPECIFICATION_WEIGHT = 1f;
+
+    // Tham số BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Hệ số điểm cho từ khớp theo tiền tố / sai chính tả so với từ khớp chính xác
+    private static final double PREFIX_FACTOR = 0.7;
+    private static final double TYPO_FACTOR = 0.5;
+
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MAX_PREFIX_EXPANSIONS = 50;
+    private static final int MIN_TYPO_LENGTH = 4;
+
+    private volatile boolean ready = false;
+
+    // Tài liệu đã đánh chỉ mục: các trường nguồn (để đánh lại khi đổi tên thương hiệu / danh mục) và tần suất từ
+    private record IndexedDocument(Product source, Map<String, Float> termWeights, float length) {
+    }
+
+    // Một phần tử trong posting list: trọng số của từ trong sản phẩm và độ dài tài liệu (tránh tra cứu thêm khi chấm điểm)
+    private record Posting(float weight, float length) {
+    }
+
+    static class IndexState {
+        private final TreeMap<String, Map<String, Posting>> postings = new TreeMap<>();
+        // Biến thể xóa 1 ký tự -> các từ sinh ra nó (tìm từ gần đúng mà không phải duyệt toàn bộ từ điển)
+        private final Map<String, Set<String>> deletions = new HashMap<>();
+        private final Map<String, IndexedDocument> documents = new HashMap<>();
+        private final Map<String, String> brandNames = new HashMap<>();
+        private final Map<String, String> categoryNames = new HashMap<>();
+        private double totalLength = 0;
+    }
+
+    public ProductSearchIndex() {
+        super(new IndexState());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Trả về danh sách ID sản phẩm theo thứ tự liên quan giảm dần
+    public List<String> search(String keyword, int limit) {
+        List<String> tokens = VietnameseTextNormalizer.tokenize(keyword);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Double> scores = read(state -> {
+            Map<String, Double> result = new HashMap<>();
+            int documentCount = state.documents.size();
+            if (documentCount == 0) {
+                return result;
+            }
+            double averageLength = state.totalLength / documentCount;
+
+            String lastToken = tokens.get(tokens.size() - 1);
+            for (String token : new LinkedHashSet<>(tokens)) {
+                // Mỗi từ khóa chỉ lấy điểm cao nhất trong các từ mở rộng của nó cho từng sản phẩm
+                Map<String, Double> tokenScores = new HashMap<>();
+                expand(state, token, token.equals(lastToken)).forEach((term, factor) -> {
+                    Map<String, Posting> postingList = state.postings.get(term);
+                    double idf = Math.log(1 + (documentCount - postingList.size() + 0.5) / (postingList.size() + 0.5));
+                    postingList.forEach((productId, posting) -> {
+                        double tf = posting.weight() * (K1 + 1)
+                                / (posting.weight() + K1 * (1 - B + B * posting.length() / averageLength));
+                        tokenScores.merge(productId, factor * idf * tf, Math::max);
+                    });
+                });
+                tokenScores.forEach((productId, score) -> result.merge(productId, score, Double::sum));
+            }
+            return result;
+        });
+
+        // Giữ limit kết quả tốt nhất bằng heap thay vì sắp xếp toàn bộ
+        Comparator<Map.Entry<String, Double>> ranking = Map.Entry.<String, Double>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+        PriorityQueue<Map.Entry<String, Double>> top = new PriorityQueue<>(ranking);
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            if (top.size() < limit) {
+                top.add(entry);
+            } else if (ranking.compare(entry, top.peek()) > 0) {
+                top.poll();
+                top.add(entry);
+            }
+        }
+        List<String> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(top.poll().getKey());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    // Dựng lại toàn bộ chỉ mục khi khởi động và định kỳ mỗi đêm (phòng các cập nhật không phát sự kiện)
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void rebuild() {
+        super.rebuild();
+    }
+
+    @Override
+    protected IndexState newState() {
+        return new IndexState();
+    }
+
+    @Override
+    protected void onRebuilt(IndexState rebuilt, long elapsedMs) {
+        ready = true;
+        logger.info("Đã dựng chỉ mục tìm kiếm cho {} sản phẩm trong {} ms", rebuilt.documents.size(), elapsedMs);
+    }
+
+    @Override
+    protected void applyProduct(IndexState target, Product product) {
+        removeDocument(target, product.getId());
+        if (!product.isDeleted()) {
+            addDocument(target, product);
+        }
+    }
+
+    @Override
+    protected void removeProduct(IndexState target, String productId) {
+        removeDocument(target, productId);
+    }
+
+    @Override
+    protected void applyBrand(IndexState target, Brand brand) {
+        renameReference(target, brand.getId(), brand.getName(), true);
+    }
+
+    @Override
+    protected void applyCategory(IndexState target, Category category) {
+        renameReference(target, category.getId(), category.getName(), false);
+    }
+
+    // Đổi tên thương hiệu / danh mục: đánh chỉ mục lại các sản phẩm tham chiếu tới nó
+    private static void renameReference(IndexState target, String id, String name, boolean brand) {
+        Map<String, String> names = brand ? target.brandNames : target.categoryNames;
+        if (Objects.equals(names.put(id, name), name)) {
+            return;
+        }
+        List<Product> affected = target.documents.values().stream()
+                .map(IndexedDocument::source)
+                .filter(product -> {
+                    ObjectId reference = brand ? product.getBrandId() : product.getCategoryId();
+                    return reference != null && reference.toHexString().equals(id);
+                })
+                .toList();
+        for (Product product : affected) {
+            removeDocument(target, product.getId());
+            addDocument(target, product);
+        }
+    }
+
+    // Các từ trong chỉ mục ứng với một từ khóa: khớp chính xác, theo tiền tố (chỉ từ cuối, người dùng đang gõ), hoặc sai 1 ký tự
+    private static Map<String, Double> expand(IndexState state, String token, boolean allowPrefix) {
+        Map<String, Double> terms = new HashMap<>();
+        boolean exact = state.postings.containsKey(token);
+        if (exact) {
+            terms.put(token, 1.0);
+        }
+
+        if (allowPrefix && token.length() >= MIN_PREFIX_LENGTH) {
+            state.postings.subMap(token, false, token + Character.MAX_VALUE, false).keySet().stream()
+                    .limit(MAX_PREFIX_EXPANSIONS)
+                    .forEach(term -> terms.putIfAbsent(term, PREFIX_FACTOR));
+        }
+
+        if (!exact && isTypoCandidate(token)) {
+            Set<String> candidates = new HashSet<>(state.deletions.getOrDefault(token, Set.of()));
+            for (String deletion : deletions(token)) {
+                if (state.postings.containsKey(deletion)) {
+                    candidates.add(deletion);
+                }
+                candidates.addAll(state.deletions.getOrDefault(deletion, Set.of()));
+            }
+            for (String candidate : candidates) {
+                if (withinOneEdit(token, candidate)) {
+                    terms.putIfAbsent(candidate, TYPO_FACTOR);
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static void addDocument(IndexState target, Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        Map<String, Float> termWeights = new HashMap<>();
+        addField(termWeights, product.getName(), NAME_WEIGHT);
+        if (product.getTags() != null) {
+            product.getTags().forEach(tag -> addField(termWeights, tag, TAG_WEIGHT));
+        }
+        if (product.getBrandId() != null) {
+            addField(termWeights, target.brandNames.get(product.getBrandId().toHexString()), BRAND_CATEGORY_WEIGHT);
+        }
+        if (product.getCategoryId() != null) {
+            addField(termWeights, target.categoryNames.get(product.getCategoryId().toHexString()), BRAND_CATEGORY_WEIGHT);
+        }
+        if (product.getSpecifications() != null) {
+            product.getSpecifications().values().forEach(value -> addField(termWeights, value, SPECIFICATION_WEIGHT));
+        }
+
+        float length = 0;
+        for (float weight : termWeights.values()) {
+            length += weight;
+        }
+        for (Map.Entry<String, Float> entry : termWeights.entrySet()) {
+            String term = entry.getKey();
+            Map<String, Posting> postingList = target.postings.get(term);
+            if (postingList == null) {
+                postingList = new HashMap<>();
+                target.postings.put(term, postingList);
+                if (isTypoCandidate(term)) {
+                    deletions(term).forEach(deletion -> target.deletions.computeIfAbsent(deletion, key -> new HashSet<>()).add(term));
+                }
+            }
+            postingList.put(product.getId(), new Posting(entry.getValue(), length));
+        }
+        target.documents.put(product.getId(), new IndexedDocument(product, termWeights, length));
+        target.totalLength += length;
+    }
+
+    private static void removeDocument(IndexState target, String productId) {
+        IndexedDocument document = target.documents.remove(productId);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.termWeights().keySet()) {
+            Map<String, Posting> postingList = target.postings.get(term);
+            postingList.remove(productId);
+            if (postingList.isEmpty()) {
+                target.postings.remove(term);
+                if (isTypoCandidate(term)) {
+                    for (String deletion : deletions(term)) {
+                        Set<String> terms = target.deletions.get(deletion);
+                        terms.remove(term);
+                        if (terms.isEmpty()) {
+                            target.deletions.remove(deletion);
+                        }
+                    }
+                }
+            }
+        }
+        target.totalLength -= document.length();
+    }
+
+    private static void addField(Map<String, Float> termWeights, String text, float weight) {
+        if (text == null) {
+            return;
+        }
+        for (String token : VietnameseTextNormalizer.tokenize(text)) {
+            termWeights.merge(token, weight, Float::sum);
+        }
+    }
+
+    // Chỉ sửa lỗi chính tả cho từ đủ dài và không chứa chữ số (tránh "128" khớp "256", "2023" khớp "2024")
+    private static boolean isTypoCandidate(String term) {
+        return term.length() >= MIN_TYPO_LENGTH && term.chars().noneMatch(Character::isDigit);
+    }
+
+    private static Set<String> deletions(String term) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < term.length(); i++) {
+            result.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return result;
+    }
+
+    // Khoảng cách Damerau-Levenshtein (thêm / xóa / thay / đổi chỗ 2 ký tự liền kề) không quá 1
+    private static boolean withinOneEdit(String a, String b) {
+        if (a.equals(b)) {
+            return true;
+        }
+        int lengthDiff = a.length() - b.length();
+        if (Math.abs(lengthDiff) > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < Math.min(a.length(), b.length()) && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (lengthDiff > 0) {
+            return a.substring(i + 1).equals(b.substring(i));
+        }
+        if (lengthDiff < 0) {
+            return a.substring(i).equals(b.substring(i + 1));
+        }
+        if (a.substring(i + 1).equals(b.substring(i + 1))) {
+            return true;
+        }
+        return i + 1 < a.length() && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                && a.substring(i + 2).equals(b.substring(i + 2));
+    }
+}
@@ -1,5 +1,6 @@
 package com.hcmute.pttechecommercewebsite.service;
 
+import com.hcmute.pttechecommercewebsite.dto.BatchJobResultDTO;
 import com.hcmute.pttechecommercewebsite.dto.ProductDTO;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
 import com.hcmute.pttechecommercewebsite.model.Brand;
@@ -8,19 +9,23 @@ import com.hcmute.pttechecommercewebsite.model.Product;
 import com.hcmute.pttechecommercewebsite.repository.BrandRepository;
 import com.hcmute.pttechecommercewebsite.repository.CategoryRepository;
 import com.hcmute.pttechecommercewebsite.repository.ProductRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.*;
+import com.hcmute.pttechecommercewebsite.util.BatchJobRunner;
+import com.hcmute.pttechecommercewebsite.util.CollectionVersionTracker;
+import com.hcmute.pttechecommercewebsite.util.OptimisticRetryExecutor;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -34,6 +39,26 @@ public class ProductService {
     private final ProductRepository productRepository;
     private final BrandRepository brandRepository;
     private final CategoryRepository categoryRepository;
+    private final OptimisticRetryExecutor optimisticRetryExecutor;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductDetailCache productDetailCache;
+    private final ScheduledActivationService scheduledActivationService;
+    private final CollectionVersionTracker collectionVersionTracker;
+    private final BatchJobRunner batchJobRunner;
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_RESULTS = 100;
+
+    // Các mức hiển thị theo số lượng đã bán, từ cao xuống thấp (minSold = null: phần còn lại)
+    private record VisibilityTier(Integer minSold, String visibilityType) {
+    }
+
+    private static final List<VisibilityTier> VISIBILITY_TIERS = List.of(
+            new VisibilityTier(200, "Bán Chạy"),
+            new VisibilityTier(100, "Yêu Thích"),
+            new VisibilityTier(50, "Nổi Bật"),
+            new VisibilityTier(20, "Phổ Biến"),
+            new VisibilityTier(null, "Mới"));
 
     private String uploadDir = "upload-images/products";
     private String uploadUrl = "http://localhost:8081/images/products";
@@ -45,11 +70,23 @@ public class ProductService {
     public ProductService(
             ProductRepository productRepository,
             BrandRepository brandRepository,
-            CategoryRepository categoryRepository
+            CategoryRepository categoryRepository,
+            OptimisticRetryExecutor optimisticRetryExecutor,
+            ProductSearchIndex productSearchIndex,
+            ProductDetailCache productDetailCache,
+            ScheduledActivationService scheduledActivationService,
+            CollectionVersionTracker collectionVersionTracker,
+            BatchJobRunner batchJobRunner
     ) {
         this.productRepository = productRepository;
         this.brandRepository = brandRepository;
         this.categoryRepository = categoryRepository;
+        this.optimisticRetryExecutor = optimisticRetryExecutor;
+        this.productSearchIndex = productSearchIndex;
+        this.productDetailCache = productDetailCache;
+        this.scheduledActivationService = scheduledActivationService;
+        this.collectionVersionTracker = collectionVersionTracker;
+        this.batchJobRunner = batchJobRunner;
     }
 
     // Chuyển Entity thành DTO
@@ -118,6 +155,7 @@ public class ProductService {
         return ProductDTO.RatingsDTO.builder()
                 .average(ratings.getAverage())
                 .totalReviews(ratings.getTotalReviews())
+                .histogram(ratings.getHistogram())
                 .build();
     }
 
@@ -145,61 +183,71 @@ public class ProductService {
             List<String> brandNames, List<String> categoryNames,
             List<String> visibilityTypes, Double minPrice, Double maxPrice) {
 
-        Sort sort = Sort.by(Sort.Order.by(sortBy != null ? sortBy : "createdAt"));
-        if ("desc".equalsIgnoreCase(sortOrder)) {
-            sort = sort.descending();
+        Pageable pageable = Pageable.unpaged(resolveActiveProductSort(sortBy, sortOrder));
+        return findActiveProducts(brandNames, categoryNames, visibilityTypes, minPrice, maxPrice, pageable)
+                .getContent();
+    }
+
+    // Lấy sản phẩm đang hoạt động theo trang, toàn bộ việc lọc/sắp xếp/phân trang được thực hiện trên MongoDB
+    public Page<ProductDTO> getActiveProductsPage(
+            String sortBy, String sortOrder,
+            List<String> brandNames, List<String> categoryNames,
+            List<String> visibilityTypes, Double minPrice, Double maxPrice,
+            int page, int size) {
+
+        if (page < 0) {
+            throw new IllegalArgumentException("Số trang không được nhỏ hơn 0.");
         }
+        if (size <= 0) {
+            throw new IllegalArgumentException("Kích thước trang phải lớn hơn 0.");
+        }
+
+        Pageable pageable = PageRequest.of(page, Math.min(size, MAX_PAGE_SIZE), resolveActiveProductSort(sortBy, sortOrder));
+        return findActiveProducts(brandNames, categoryNames, visibilityTypes, minPrice, maxPrice, pageable);
+    }
 
-        List<Product> products = productRepository.findByIsDeletedFalseAndStatusNot("inactive", sort);
-        Stream<Product> stream = products.stream();
+    private Page<ProductDTO> findActiveProducts(
+            List<String> brandNames, List<String> categoryNames,
+            List<String> visibilityTypes, Double minPrice, Double maxPrice,
+            Pageable pageable) {
 
+        List<ObjectId> brandIds = null;
         if (brandNames != null && !brandNames.isEmpty()) {
-            List<ObjectId> brandIds = brandRepository.findByNameInIgnoreCase(brandNames)
+            brandIds = brandRepository.findByNameInIgnoreCase(brandNames)
                     .stream().map(brand -> new ObjectId(brand.getId())).collect(Collectors.toList());
-            if (!brandIds.isEmpty()) {
-                stream = stream.filter(p -> brandIds.contains(p.getBrandId()));
-            } else {
-                return Collections.emptyList();
+            if (brandIds.isEmpty()) {
+                return Page.empty(pageable);
             }
         }
 
+        List<ObjectId> categoryIds = null;
         if (categoryNames != null && !categoryNames.isEmpty()) {
-            List<ObjectId> categoryIds = categoryRepository.findByNameInIgnoreCase(categoryNames)
+            categoryIds = categoryRepository.findByNameInIgnoreCase(categoryNames)
                     .stream().map(category -> new ObjectId(category.getId())).collect(Collectors.toList());
-            if (!categoryIds.isEmpty()) {
-                stream = stream.filter(p -> categoryIds.contains(p.getCategoryId()));
-            } else {
-                return Collections.emptyList();
+            if (categoryIds.isEmpty()) {
+                return Page.empty(pageable);
             }
         }
 
-        if (visibilityTypes != null && !visibilityTypes.isEmpty()) {
-            stream = stream.filter(p -> visibilityTypes.contains(p.getVisibilityType()));
-        }
+        return productRepository
+                .findActiveProducts(brandIds, categoryIds, visibilityTypes, minPrice, maxPrice, pageable)
+                .map(this::convertToDTO);
+    }
 
-        if (minPrice != null) {
-            stream = stream.filter(p -> p.getPricing() != null && p.getPricing().getCurrent() >= minPrice);
+    // Chuyển tham số sắp xếp của storefront thành Sort (price_asc/price_desc sắp xếp theo giá hiện tại)
+    private Sort resolveActiveProductSort(String sortBy, String sortOrder) {
+        if ("price_asc".equalsIgnoreCase(sortBy)) {
+            return Sort.by(Sort.Direction.ASC, "pricing.current");
         }
-
-        if (maxPrice != null) {
-            stream = stream.filter(p -> p.getPricing() != null && p.getPricing().getCurrent() <= maxPrice);
+        if ("price_desc".equalsIgnoreCase(sortBy)) {
+            return Sort.by(Sort.Direction.DESC, "pricing.current");
         }
 
-        if ("price_asc".equalsIgnoreCase(sortBy)) {
-            stream = stream.sorted((p1, p2) -> {
-                double price1 = p1.getPricing() != null ? p1.getPricing().getCurrent() : Double.MAX_VALUE;
-                double price2 = p2.getPricing() != null ? p2.getPricing().getCurrent() : Double.MAX_VALUE;
-                return Double.compare(price1, price2);
-            });
-        } else if ("price_desc".equalsIgnoreCase(sortBy)) {
-            stream = stream.sorted((p1, p2) -> {
-                double price1 = p1.getPricing() != null ? p1.getPricing().getCurrent() : Double.MIN_VALUE;
-                double price2 = p2.getPricing() != null ? p2.getPricing().getCurrent() : Double.MIN_VALUE;
-                return Double.compare(price2, price1);
-            });
+        Sort sort = Sort.by(Sort.Order.by(sortBy != null ? sortBy : "createdAt"));
+        if ("desc".equalsIgnoreCase(sortOrder)) {
+            sort = sort.descending();
         }
-
-        return stream.map(this::convertToDTO).collect(Collectors.toList());
+        return sort;
     }
 
     // Lấy tất cả sản phẩm không bị xóa và không hiển thị
@@ -268,21 +316,32 @@ public class ProductService {
         return products.stream().map(this::convertToDTO).collect(Collectors.toList());
     }
 
-    // Lấy sản phẩm theo ID
-    public Optional<ProductDTO> getProductById(String id) {
-        Optional<Product> product = productRepository.findById(id);
-        return product.map(this::convertToDTO);
+    // Lấy chi tiết sản phẩm theo ID (JSON đã serialize sẵn + ETag, đọc từ cache nếu có)
+    public Optional<ProductDetailCache.ProductDetail> getProductById(String id) {
+        return productDetailCache.getById(id, () -> productRepository.findById(id).map(this::convertToDTO));
     }
 
-    public Optional<ProductDTO> getProductByProductId(String productId) {
-        Optional<Product> product = productRepository.findByProductIdAndIsDeletedFalse(productId);
-        return product.map(this::convertToDTO);
+    public Optional<ProductDetailCache.ProductDetail> getProductByProductId(String productId) {
+        return productDetailCache.getByProductId(productId,
+                () -> productRepository.findByProductIdAndIsDeletedFalse(productId).map(this::convertToDTO));
     }
 
-    // Tìm kiếm sản phẩm theo tên
+    // Tìm kiếm sản phẩm (tên, tags, thương hiệu, danh mục, thông số) qua chỉ mục trong bộ nhớ, xếp theo độ liên quan
     public List<ProductDTO> searchProductsByName(String keyword) {
-        List<Product> products = productRepository.findByNameContaining(keyword);
-        return products.stream().map(this::convertToDTO).collect(Collectors.toList());
+        if (!productSearchIndex.isReady()) {
+            // Chỉ mục chưa dựng xong (ngay sau khi khởi động): tìm theo tên như cũ
+            List<Product> products = productRepository.findByNameContaining(keyword);
+            return products.stream().map(this::convertToDTO).collect(Collectors.toList());
+        }
+
+        List<String> productIds = productSearchIndex.search(keyword, MAX_SEARCH_RESULTS);
+        Map<String, Product> productsById = new HashMap<>();
+        productRepository.findAllById(productIds).forEach(product -> productsById.put(product.getId(), product));
+        return productIds.stream()
+                .map(productsById::get)
+                .filter(Objects::nonNull)
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
     }
 
     // Thêm mới sản phẩm
@@ -300,7 +359,7 @@ public class ProductService {
                 .images(productDTO.getImages())
                 .videos(productDTO.getVideos())
                 .blog(convertBlogFromDTO(productDTO.getBlog()))
-                .ratings(productDTO.getRatings() != null ? convertRatingsFromDTO(productDTO.getRatings()) : new Product.Ratings(0, 0))
+                .ratings(productDTO.getRatings() != null ? convertRatingsFromDTO(productDTO.getRatings()) : Product.Ratings.builder().sum(0.0).histogram(new HashMap<>()).build())
                 .warranty(convertWarrantyFromDTO(productDTO.getWarranty()))
                 .totalSold(0)
                 .status(productDTO.getStatus())
@@ -354,6 +413,8 @@ public class ProductService {
         return Product.Ratings.builder()
                 .average(ratingsDTO.getAverage())
                 .totalReviews(ratingsDTO.getTotalReviews())
+                .sum(ratingsDTO.getAverage() * ratingsDTO.getTotalReviews())
+                .histogram(ratingsDTO.getHistogram())
                 .build();
     }
 
@@ -385,7 +446,7 @@ public class ProductService {
                 .images(productDTO.getImages())
                 .videos(productDTO.getVideos())
                 .blog(convertBlogFromDTO(productDTO.getBlog()))
-                .ratings(productDTO.getRatings() != null ? convertRatingsFromDTO(productDTO.getRatings()) : new Product.Ratings(0, 0))
+                .ratings(productDTO.getRatings() != null ? convertRatingsFromDTO(productDTO.getRatings()) : Product.Ratings.builder().sum(0.0).histogram(new HashMap<>()).build())
                 .warranty(convertWarrantyFromDTO(productDTO.getWarranty()))
                 .totalSold(0)
                 .status("inactive")
@@ -397,59 +458,31 @@ public class ProductService {
                 .build();
 
         productRepository.save(newProduct);
+        scheduledActivationService.schedule(Product.class, newProduct.getId(), newProduct.getScheduledDate());
         return convertToDTO(newProduct);
     }
 
-    // Kiểm tra và kích hoạt sản phẩm khi đến thời gian lên lịch
-    @Scheduled(fixedRate = 60000)
-    @Transactional
-    public void checkAndActivateScheduledProducts() {
-        Date now = new Date();
-        List<Product> scheduledProducts = productRepository.findByScheduledDateBeforeAndIsDeletedFalse(now);
-
-        for (Product product : scheduledProducts) {
-            product.setStatus("active");
-            product.setScheduledDate(null);
-            product.setUpdatedAt(now);
-            productRepository.save(product);
-        }
-    }
-
     // Phương thức sẽ tự động chạy mỗi ngày vào lúc 00:00
+    // Mỗi mức totalSold là một lệnh updateMany phía server, chỉ chạm vào sản phẩm có visibilityType khác
+    // (không tải sản phẩm về ứng dụng)
     @Scheduled(cron = "0 0 0 * * *")
-    @Transactional
-    public void updateVisibilityTypeForAllProducts() {
-        Date now = new Date();
-
-        List<Product> products = productRepository.findByIsDeletedFalse();
-
-        for (Product product : products) {
-            int totalSold = product.getTotalSold();
-            updateVisibilityTypeBasedOnSales(product, totalSold, now);
-        }
-    }
-
-    private void updateVisibilityTypeBasedOnSales(Product product, int totalSold, Date now) {
-        if (totalSold >= 200) {
-            product.setVisibilityType("Bán Chạy");
-        }
-        else if (totalSold >= 100) {
-            product.setVisibilityType("Yêu Thích");
-        }
-        else if (totalSold >= 50) {
-            product.setVisibilityType("Nổi Bật");
-        }
-        else if (totalSold >= 20) {
-            product.setVisibilityType("Phổ Biến");
-        }
-        else if (totalSold < 20) {
-            product.setVisibilityType("Mới");
-        } else {
-            product.setVisibilityType("Bình Thường");
-        }
+    public BatchJobResultDTO updateVisibilityTypeForAllProducts() {
+        return batchJobRunner.run("ProductService.updateVisibilityTypeForAllProducts", () -> {
+            Date now = new Date();
+            long changed = 0;
+            Integer upperBound = null;
+            for (VisibilityTier tier : VISIBILITY_TIERS) {
+                changed += productRepository.updateVisibilityType(tier.minSold(), upperBound, tier.visibilityType(), now);
+                upperBound = tier.minSold();
+            }
 
-        product.setUpdatedAt(now);
-        productRepository.save(product);
+            // updateMany không phát sự kiện lưu: tự xóa cache chi tiết sản phẩm và đổi ETag danh sách
+            if (changed > 0) {
+                productDetailCache.invalidateAll();
+                collectionVersionTracker.touch(Product.class);
+            }
+            return changed;
+        });
     }
 
     // Tạo một tên tệp duy nhất cho ảnh và lưu vào thư mục
@@ -467,26 +500,29 @@ public class ProductService {
 
     // Xóa ảnh của sản phẩm
     public void deleteProductImage(String productId, String imageUrl) throws IOException {
-        // Lấy sản phẩm từ database
-        Optional<Product> optionalProduct = productRepository.findByIdAndIsDeletedFalse(productId);
-        if (!optionalProduct.isPresent()) {
-            throw new ResourceNotFoundException("Không tìm thấy sản phẩm với ID: " + productId);
-        }
+        // Đọc lại và thử lại nếu sản phẩm bị cập nhật đồng thời; tệp ảnh chỉ bị xóa sau khi lưu thành công
+        optimisticRetryExecutor.execute("ProductService.deleteProductImage", () -> {
+            // Lấy sản phẩm từ database
+            Optional<Product> optionalProduct = productRepository.findByIdAndIsDeletedFalse(productId);
+            if (!optionalProduct.isPresent()) {
+                throw new ResourceNotFoundException("Không tìm thấy sản phẩm với ID: " + productId);
+            }
 
-        Product product = optionalProduct.get();
+            Product product = optionalProduct.get();
 
-        // Kiểm tra và xóa ảnh trong danh sách images của sản phẩm
-        List<String> images = product.getImages();
-        if (!images.contains(imageUrl)) {
-            throw new ResourceNotFoundException("Hình ảnh không tồn tại trong danh sách sản phẩm");
-        }
+            // Kiểm tra và xóa ảnh trong danh sách images của sản phẩm
+            List<String> images = product.getImages();
+            if (!images.contains(imageUrl)) {
+                throw new ResourceNotFoundException("Hình ảnh không tồn tại trong danh sách sản phẩm");
+            }
 
-        // Xóa ảnh khỏi danh sách
-        images.remove(imageUrl);
-        product.setImages(images);
+            // Xóa ảnh khỏi danh sách
+            images.remove(imageUrl);
+            product.setImages(images);
 
-        // Lưu lại sản phẩm sau khi xóa hình ảnh
-        productRepository.save(product);
+            // Lưu lại sản phẩm sau khi xóa hình ảnh
+            return productRepository.save(product);
+        });
 
         // Xóa tệp ảnh khỏi hệ thống
         String imageFileName = imageUrl.substring(imageUrl.lastIndexOf("/") + 1);
@@ -513,152 +549,151 @@ public class ProductService {
 
     // Phương thức xóa video của sản phẩm
     public void deleteProductVideo(String productId, String videoUrl) throws IOException {
-        Optional<Product> optionalProduct = productRepository.findByIdAndIsDeletedFalse(productId);
-        if (!optionalProduct.isPresent()) {
-            throw new ResourceNotFoundException("Không tìm thấy sản phẩm với ID: " + productId);
-        }
+        // Đọc lại và thử lại nếu sản phẩm bị cập nhật đồng thời; tệp video chỉ bị xóa sau khi lưu thành công
+        optimisticRetryExecutor.execute("ProductService.deleteProductVideo", () -> {
+            Optional<Product> optionalProduct = productRepository.findByIdAndIsDeletedFalse(productId);
+            if (!optionalProduct.isPresent()) {
+                throw new ResourceNotFoundException("Không tìm thấy sản phẩm với ID: " + productId);
+            }
 
-        Product product = optionalProduct.get();
+            Product product = optionalProduct.get();
 
-        List<String> videos = product.getVideos();
-        if (videos.contains(videoUrl)) {
+            List<String> videos = product.getVideos();
+            if (!videos.contains(videoUrl)) {
+                throw new ResourceNotFoundException("Video không tồn tại trong danh sách sản phẩm");
+            }
             videos.remove(videoUrl);
             product.setVideos(videos);
-            productRepository.save(product);
+            return productRepository.save(product);
+        });
 
-            String videoFileName = videoUrl.substring(videoUrl.lastIndexOf("/") + 1);
-            Path videoFilePath = Paths.get(uploadVideoDir + File.separator + productId + File.separator + videoFileName);
-            File videoFile = videoFilePath.toFile();
-            if (videoFile.exists() && !videoFile.delete()) {
-                throw new IOException("Không thể xóa video: " + videoUrl);
-            }
-        } else {
-            throw new ResourceNotFoundException("Video không tồn tại trong danh sách sản phẩm");
+        String videoFileName = videoUrl.substring(videoUrl.lastIndexOf("/") + 1);
+        Path videoFilePath = Paths.get(uploadVideoDir + File.separator + productId + File.separator + videoFileName);
+        File videoFile = videoFilePath.toFile();
+        if (videoFile.exists() && !videoFile.delete()) {
+            throw new IOException("Không thể xóa video: " + videoUrl);
         }
     }
 
     // Chỉnh sửa sản phẩm
     public ProductDTO updateProduct(String id, ProductDTO productDTO) {
-        Optional<Product> existingProduct = productRepository.findById(id);
-        if (existingProduct.isPresent()) {
-            Product product = existingProduct.get();
-            product.setName(productDTO.getName());
-            product.setDescription(productDTO.getDescription());
-            product.setBrandId(productDTO.getBrandId() != null ? new ObjectId(productDTO.getBrandId()) : null);
-            product.setCategoryId(productDTO.getCategoryId() != null ? new ObjectId(productDTO.getCategoryId()) : null);
-            product.setPricing(convertPricingFromDTO(productDTO.getPricing()));
-            product.setSpecifications(productDTO.getSpecifications());
-            product.setVariants(productDTO.getVariants().stream().map(this::convertVariantFromDTO).collect(Collectors.toList()));
-            product.setTags(productDTO.getTags());
-            product.setImages(productDTO.getImages());
-            product.setVideos(productDTO.getVideos());
-            product.setBlog(convertBlogFromDTO(productDTO.getBlog()));
-            product.setRatings(convertRatingsFromDTO(productDTO.getRatings()));
-            product.setWarranty(convertWarrantyFromDTO(productDTO.getWarranty()));
-            product.setTotalSold(productDTO.getTotalSold());
-            product.setStatus(productDTO.getStatus());
-            product.setVisibilityType(productDTO.getVisibilityType());
-            product.setUpdatedAt(new Date());
-
-            Product updatedProduct = productRepository.save(product);
-            return convertToDTO(updatedProduct);
-        } else {
-            throw new ResourceNotFoundException("Sản phẩm không tồn tại.");
-        }
+        return optimisticRetryExecutor.execute("ProductService.updateProduct", () -> {
+            Optional<Product> existingProduct = productRepository.findById(id);
+            if (existingProduct.isPresent()) {
+                Product product = existingProduct.get();
+                product.setName(productDTO.getName());
+                product.setDescription(productDTO.getDescription());
+                product.setBrandId(productDTO.getBrandId() != null ? new ObjectId(productDTO.getBrandId()) : null);
+                product.setCategoryId(productDTO.getCategoryId() != null ? new ObjectId(productDTO.getCategoryId()) : null);
+                product.setPricing(convertPricingFromDTO(productDTO.getPricing()));
+                product.setSpecifications(productDTO.getSpecifications());
+                product.setVariants(productDTO.getVariants().stream().map(this::convertVariantFromDTO).collect(Collectors.toList()));
+                product.setTags(productDTO.getTags());
+                product.setImages(productDTO.getImages());
+                product.setVideos(productDTO.getVideos());
+                product.setBlog(convertBlogFromDTO(productDTO.getBlog()));
+                // ratings do ProductRatingAggregator cập nhật nguyên tử từ đánh giá, không ghi đè từ DTO
+                product.setWarranty(convertWarrantyFromDTO(productDTO.getWarranty()));
+                product.setTotalSold(productDTO.getTotalSold());
+                product.setStatus(productDTO.getStatus());
+                product.setVisibilityType(productDTO.getVisibilityType());
+                product.setUpdatedAt(new Date());
+
+                Product updatedProduct = productRepository.save(product);
+                return convertToDTO(updatedProduct);
+            } else {
+                throw new ResourceNotFoundException("Sản phẩm không tồn tại.");
+            }
+        });
     }
 
     // Cập nhật giá và lưu lại lịch sử giá
     public ProductDTO updateProductPrice(String productId, double newPrice) {
-        Optional<Product> productOpt = productRepository.findById(productId);
+        return optimisticRetryExecutor.execute("ProductService.updateProductPrice", () -> {
+            Optional<Product> productOpt = productRepository.findById(productId);
 
-        if (productOpt.isEmpty()) {
-            throw new ResourceNotFoundException("Sản phẩm không tồn tại");
-        }
+            if (productOpt.isEmpty()) {
+                throw new ResourceNotFoundException("Sản phẩm không tồn tại");
+            }
 
-        Product product = productOpt.get();
-        double previousPrice = product.getPricing().getCurrent();
-        product.getPricing().setCurrent(newPrice);
+            Product product = productOpt.get();
+            double previousPrice = product.getPricing().getCurrent();
+            product.getPricing().setCurrent(newPrice);
 
-        // Lưu lại lịch sử thay đổi giá
-        Product.Pricing.PriceHistory priceHistory = new Product.Pricing.PriceHistory();
-        priceHistory.setPreviousPrice(previousPrice);
-        priceHistory.setNewPrice(newPrice);
-        priceHistory.setChangedAt(new Date());
+            // Lưu lại lịch sử thay đổi giá
+            Product.Pricing.PriceHistory priceHistory = new Product.Pricing.PriceHistory();
+            priceHistory.setPreviousPrice(previousPrice);
+            priceHistory.setNewPrice(newPrice);
+            priceHistory.setChangedAt(new Date());
 
-        // Thêm lịch sử giá vào danh sách lịch sử giá
-        if (product.getPricing().getHistory() == null) {
-            product.getPricing().setHistory(new ArrayList<>());
-        }
-        product.getPricing().getHistory().add(priceHistory);
+            // Thêm lịch sử giá vào danh sách lịch sử giá
+            if (product.getPricing().getHistory() == null) {
+                product.getPricing().setHistory(new ArrayList<>());
+            }
+            product.getPricing().getHistory().add(priceHistory);
 
-        // Cập nhật sản phẩm với giá mới và lịch sử
-        product.setUpdatedAt(new Date());
-        productRepository.save(product);
-        return convertToDTO(product);
+            // Cập nhật sản phẩm với giá mới và lịch sử
+            product.setUpdatedAt(new Date());
+            productRepository.save(product);
+            return convertToDTO(product);
+        });
     }
 
     // Ẩn sản phẩm
     public void hideProduct(String id) {
-        Optional<Product> existingProduct = productRepository.findById(id);
-        if (existingProduct.isPresent()) {
-            Product product = existingProduct.get();
-            product.setStatus("inactive");
-            product.setUpdatedAt(new Date());
-            productRepository.save(product);
-        } else {
-            throw new ResourceNotFoundException("Sản phẩm không tồn tại.");
-        }
+        optimisticRetryExecutor.execute("ProductService.hideProduct", () -> {
+            Optional<Product> existingProduct = productRepository.findById(id);
+            if (existingProduct.isPresent()) {
+                Product product = existingProduct.get();
+                product.setStatus("inactive");
+                product.setUpdatedAt(new Date());
+                productRepository.save(product);
+            } else {
+                throw new ResourceNotFoundException("Sản phẩm không tồn tại.");
+            }
+            return null;
+        });
     }
 
     // Hiện sản phẩm
     public void showProduct(String id) {
-        Optional<Product> existingProduct = productRepository.findById(id);
-        if (existingProduct.isPresent()) {
-            Product product = existingProduct.get();
-            product.setStatus("active");
-            product.setUpdatedAt(new Date());
-            productRepository.save(product);
-        } else {
-            throw new ResourceNotFoundException("Sản phẩm không tồn tại.");
-        }
+        optimisticRetryExecutor.execute("ProductService.showProduct", () -> {
+            Optional<Product> existingProduct = productRepository.findById(id);
+            if (existingProduct.isPresent()) {
+                Product product = existingProduct.get();
+                product.setStatus("active");
+                product.setUpdatedAt(new Date());
+                productRepository.save(product);
+            } else {
+                throw new ResourceNotFoundException("Sản phẩm không tồn tại.");
+            }
+            return null;
+        });
     }
 
     // Xóa sản phẩm
     public void deleteProduct(String id) {
-        Optional<Product> existingProduct = productRepository.findById(id);
-        if (existingProduct.isPresent()) {
-            Product product = existingProduct.get();
-            product.setDeleted(true);
-            product.setUpdatedAt(new Date());
-            productRepository.save(product);
-        } else {
-            throw new ResourceNotFoundException("Sản phẩm không tồn tại.");
-        }
+        optimisticRetryExecutor.execute("ProductService.deleteProduct", () -> {
+            Optional<Product> existingProduct = productRepository.findById(id);
+            if (existingProduct.isPresent()) {
+                Product product = existingProduct.get();
+                product.setDeleted(true);
+                product.setUpdatedAt(new Date());
+                productRepository.save(product);
+            } else {
+                throw new ResourceNotFoundException("Sản phẩm không tồn tại.");
+            }
+            return null;
+        });
     }
 
     // Xuất tất cả sản phẩm ra file Excel
-    public ByteArrayOutputStream exportProductsToExcel(String sortBy, String sortOrder) throws IOException {
-        // Lấy tất cả sản phẩm từ repository (dữ liệu từ ProductDTO)
-        List<ProductDTO> products = getAllInactiveProducts(sortBy, sortOrder);
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Products");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        Row headerRow = sheet.createRow(0);
+    public void exportProductsToExcel(String sortBy, String sortOrder, OutputStream outputStream) throws IOException {
+        Sort sort = Sort.by(Sort.Order.by(sortBy));
+        if ("desc".equalsIgnoreCase(sortOrder)) {
+            sort = sort.descending();
+        }
+
         String[] columns = {
                 "ID", "Mã sản phẩm", "Tên sản phẩm", "Mô tả", "Giá gốc", "Giá hiện tại",
                 "Thương hiệu", "Danh mục", "Thông số kỹ thuật", "Biến thể", "Tags",
@@ -666,125 +701,36 @@ public class ProductService {
                 "Tổng số lượt đánh giá", "Bảo hành", "Tổng số lượng đã bán","Trạng thái", "Loại hiển thị", "Trạng thái xóa",
                 "Thời gian lên lịch"
         };
-        for (int i = 0; i < columns.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
-        }
-
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu sản phẩm vào file Excel
-        int rowNum = 1;
-        for (ProductDTO product : products) {
-            Row row = sheet.createRow(rowNum++);
-
-            // Cột ID
-            row.createCell(0).setCellValue(product.getId());
-            row.getCell(0).setCellStyle(dataStyle);
-
-            // Cột Mã sản phẩm
-            row.createCell(1).setCellValue(product.getProductId());
-            row.getCell(1).setCellStyle(dataStyle);
-
-            // Cột Tên sản phẩm
-            row.createCell(2).setCellValue(product.getName());
-            row.getCell(2).setCellStyle(dataStyle);
-
-            // Cột Mô tả
-            row.createCell(3).setCellValue(product.getDescription());
-            row.getCell(3).setCellStyle(dataStyle);
-
-            // Cột Giá gốc
-            row.createCell(4).setCellValue(product.getPricing().getOriginal());
-            row.getCell(4).setCellStyle(dataStyle);
-
-            // Cột Giá hiện tại
-            row.createCell(5).setCellValue(product.getPricing().getCurrent());
-            row.getCell(5).setCellStyle(dataStyle);
-
-            // Cột Thương hiệu
-            row.createCell(6).setCellValue(product.getBrandId());
-            row.getCell(6).setCellStyle(dataStyle);
-
-            // Cột Danh mục
-            row.createCell(7).setCellValue(product.getCategoryId());
-            row.getCell(7).setCellStyle(dataStyle);
-
-            // Cột Thông số kỹ thuật
-            row.createCell(8).setCellValue(product.getSpecifications().toString());
-            row.getCell(8).setCellStyle(dataStyle);
-
-            // Cột Biến thể
-            row.createCell(9).setCellValue(product.getVariants().toString());
-            row.getCell(9).setCellStyle(dataStyle);
-
-            // Cột Tags
-            row.createCell(10).setCellValue(String.join(", ", product.getTags()));
-            row.getCell(10).setCellStyle(dataStyle);
-
-            // Cột Videos
-            row.createCell(11).setCellValue(String.join(", ", product.getVideos()));
-            row.getCell(11).setCellStyle(dataStyle);
 
-            // Cột Blog Tiêu đề
-            row.createCell(12).setCellValue(product.getBlog() != null ? product.getBlog().getTitle() : "N/A");
-            row.getCell(12).setCellStyle(dataStyle);
-
-            // Cột Blog Mô tả
-            row.createCell(13).setCellValue(product.getBlog() != null ? product.getBlog().getDescription() : "N/A");
-            row.getCell(13).setCellStyle(dataStyle);
-
-            // Cột Blog Nội dung
-            row.createCell(14).setCellValue(product.getBlog() != null ? product.getBlog().getContent() : "N/A");
-            row.getCell(14).setCellStyle(dataStyle);
-
-            // Cột Đánh giá trung bình
-            row.createCell(15).setCellValue(product.getRatings() != null ? product.getRatings().getAverage() : 0.0);
-            row.getCell(15).setCellStyle(dataStyle);
-
-            // Cột Tổng số lượt đánh giá
-            row.createCell(16).setCellValue(product.getRatings() != null ? product.getRatings().getTotalReviews() : 0);
-            row.getCell(16).setCellStyle(dataStyle);
-
-            // Cột Bảo hành
-            row.createCell(17).setCellValue(product.getWarranty() != null ? product.getWarranty().getDuration() : "N/A");
-            row.getCell(17).setCellStyle(dataStyle);
-
-            // Cột Tổng số lượng đã bán
-            row.createCell(18).setCellValue(product.getTotalSold());
-            row.getCell(18).setCellStyle(dataStyle);
-
-            // Cột Trạng thái
-            row.createCell(19).setCellValue(product.getStatus());
-            row.getCell(19).setCellStyle(dataStyle);
-
-            // Cột Loại hiển thị
-            row.createCell(20).setCellValue(product.getVisibilityType());
-            row.getCell(20).setCellStyle(dataStyle);
-
-            // Cột Trạng thái xóa
-            row.createCell(21).setCellValue(product.isDeleted() ? "Đã xóa" : "Đang hiển thị");
-            row.getCell(21).setCellStyle(dataStyle);
-
-            // Cột Thời gian lên lịch
-            row.createCell(22).setCellValue(product.getScheduledDate() != null ? product.getScheduledDate().toString() : "N/A");
-            row.getCell(22).setCellStyle(dataStyle);
+        // Đọc sản phẩm theo cursor và ghi từng dòng, không giữ toàn bộ danh sách trong bộ nhớ
+        try (Stream<Product> products = productRepository.streamByIsDeletedFalseAndStatus("inactive", sort);
+             ExcelStreamWriter writer = new ExcelStreamWriter("Products", columns)) {
+            products.map(this::convertToDTO).forEach(product -> writer.writeRow(
+                    product.getId(),
+                    product.getProductId(),
+                    product.getName(),
+                    product.getDescription(),
+                    product.getPricing().getOriginal(),
+                    product.getPricing().getCurrent(),
+                    product.getBrandId(),
+                    product.getCategoryId(),
+                    product.getSpecifications().toString(),
+                    product.getVariants().toString(),
+                    String.join(", ", product.getTags()),
+                    String.join(", ", product.getVideos()),
+                    product.getBlog() != null ? product.getBlog().getTitle() : "N/A",
+                    product.getBlog() != null ? product.getBlog().getDescription() : "N/A",
+                    product.getBlog() != null ? product.getBlog().getContent() : "N/A",
+                    product.getRatings() != null ? product.getRatings().getAverage() : 0.0,
+                    product.getRatings() != null ? product.getRatings().getTotalReviews() : 0,
+                    product.getWarranty() != null ? product.getWarranty().getDuration() : "N/A",
+                    product.getTotalSold(),
+                    product.getStatus(),
+                    product.getVisibilityType(),
+                    product.isDeleted() ? "Đã xóa" : "Đang hiển thị",
+                    product.getScheduledDate() != null ? product.getScheduledDate().toString() : "N/A"));
+
+            writer.writeTo(outputStream);
         }
-
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
-        }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
     }
 }
\ No newline at end of file
@@ -1,12 +1,14 @@
 package com.hcmute.pttechecommercewebsite.service;
 
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
 import com.hcmute.pttechecommercewebsite.dto.QADTO;
 import com.hcmute.pttechecommercewebsite.model.QA;
 import com.hcmute.pttechecommercewebsite.repository.QARepository;
+import com.hcmute.pttechecommercewebsite.util.CursorPaginator;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
@@ -19,19 +21,16 @@ public class QAService {
     @Autowired
     private QARepository qaRepository;
 
-    // Lấy tất cả QA và sắp xếp theo ngày tạo (mới nhất hoặc cũ nhất)
-    public List<QADTO> getAllQAsSorted(String sortOrder) {
-        List<QA> qas;
-
-        if ("asc".equalsIgnoreCase(sortOrder)) {
-            // Sắp xếp từ cũ nhất
-            qas = qaRepository.findAll(PageRequest.of(0, Integer.MAX_VALUE, Sort.by(Sort.Order.asc("createdAt")))).getContent();
-        } else {
-            // Mặc định là sắp xếp mới nhất
-            qas = qaRepository.findAll(PageRequest.of(0, Integer.MAX_VALUE, Sort.by(Sort.Order.desc("createdAt")))).getContent();
-        }
+    @Autowired
+    private CursorPaginator cursorPaginator;
 
-        return qas.stream().map(this::convertToDTO).collect(Collectors.toList());
+    // Lấy tất cả QA và sắp xếp theo ngày tạo (mới nhất hoặc cũ nhất)
+    public CursorPageDTO<QADTO> getAllQAsSorted(String sortOrder, String cursor, Integer limit) {
+        // "asc": từ cũ nhất, mặc định là mới nhất
+        Sort.Direction direction = "asc".equalsIgnoreCase(sortOrder) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        return cursorPaginator.page(QA.class, new Criteria(),
+                new CursorPaginator.CursorSort<>("createdAt", direction, QA::getCreatedAt, QA::getId),
+                cursor, limit, this::convertToDTO);
     }
 
     // Lấy tất cả QA theo userId
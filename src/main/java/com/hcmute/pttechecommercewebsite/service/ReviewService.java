@@ -1,16 +1,20 @@
 package com.hcmute.pttechecommercewebsite.service;
 
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
 import com.hcmute.pttechecommercewebsite.dto.ReviewDTO;
-import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.event.ReviewStatisticsEvent;
 import com.hcmute.pttechecommercewebsite.model.Review;
 import com.hcmute.pttechecommercewebsite.model.User;
-import com.hcmute.pttechecommercewebsite.repository.ProductRepository;
 import com.hcmute.pttechecommercewebsite.repository.ReviewRepository;
 import com.hcmute.pttechecommercewebsite.repository.UserRepository;
+import com.hcmute.pttechecommercewebsite.util.CursorPaginator;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
@@ -27,10 +31,10 @@ public class ReviewService {
     private ReviewRepository reviewRepository;
 
     @Autowired
-    private ProductRepository productRepository;
+    private UserRepository userRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private CursorPaginator cursorPaginator;
 
     @Autowired
     private JavaMailSender mailSender;
@@ -38,6 +42,12 @@ public class ReviewService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private ProductRatingAggregator productRatingAggregator;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // Chuyển đổi từ Review model sang ReviewDTO
     private ReviewDTO convertToDTO(Review review) {
         ReviewDTO.ReplyDTO replyDTO = null;
@@ -63,9 +73,10 @@ public class ReviewService {
     }
 
     // Xem tất cả đánh giá chưa bị xóa
-    public List<ReviewDTO> getAllReviews() {
-        List<Review> reviews = reviewRepository.findByIsDeletedFalse();
-        return reviews.stream().map(this::convertToDTO).collect(Collectors.toList());
+    public CursorPageDTO<ReviewDTO> getAllReviews(String cursor, Integer limit) {
+        return cursorPaginator.page(Review.class, Criteria.where("isDeleted").is(false),
+                new CursorPaginator.CursorSort<>("createdAt", Sort.Direction.DESC, Review::getCreatedAt, Review::getId),
+                cursor, limit, this::convertToDTO);
     }
 
     // Xem đánh giá theo ID
@@ -99,9 +110,9 @@ public class ReviewService {
         review.setUpdatedAt(new Date());
 
         Review savedReview = reviewRepository.save(review);
-        String productId = savedReview.getProductId().toString();
         double newRating = savedReview.getRating();
-        updateProductRatings(productId, newRating, 0);
+        productRatingAggregator.apply(savedReview.getProductId(), newRating, null);
+        eventPublisher.publishEvent(new ReviewStatisticsEvent(savedReview.getCreatedAt(), null, newRating));
 
         // Gửi email cảm ơn sau khi đánh giá thành công
         emailService.sendThankYouEmail(savedReview);
@@ -109,31 +120,6 @@ public class ReviewService {
         return convertToDTO(savedReview);
     }
 
-    // Cập nhật ratings cho sản phẩm sau khi có đánh giá mới
-    private void updateProductRatings(String productId, double newRating, double oldRating) {
-        Optional<Product> productOpt = productRepository.findById(productId);
-        if (productOpt.isPresent()) {
-            Product product = productOpt.get();
-
-            int totalReviews = product.getRatings().getTotalReviews();
-            double averageRating = product.getRatings().getAverage();
-
-            if (oldRating == 0) {
-                totalReviews += 1;
-                averageRating = (averageRating * (totalReviews - 1) + newRating) / totalReviews;
-            } else if (newRating == 0) {
-                totalReviews -= 1;
-                averageRating = (averageRating * (totalReviews + 1) - oldRating) / totalReviews;
-            } else {
-                averageRating = (averageRating * totalReviews - oldRating + newRating) / totalReviews;
-            }
-
-            product.getRatings().setAverage(averageRating);
-            product.getRatings().setTotalReviews(totalReviews);
-            productRepository.save(product);
-        }
-    }
-
     // Gửi email cảm ơn
     private void sendThankYouEmail(Review review) {
         Optional<User> userOpt = userRepository.findById(review.getUserId().toString());
@@ -206,7 +192,8 @@ public class ReviewService {
             Review updatedReview = reviewRepository.save(review);
 
             if (oldRating != newRating) {
-                updateProductRatings(updatedReview.getProductId().toString(), newRating, oldRating);
+                productRatingAggregator.apply(updatedReview.getProductId(), newRating, oldRating);
+                eventPublisher.publishEvent(new ReviewStatisticsEvent(oldReview.getCreatedAt(), oldRating, newRating));
             }
 
             return Optional.of(convertToDTO(updatedReview));
@@ -221,13 +208,12 @@ public class ReviewService {
             Review existingReview = review.get();
 
             double oldRating = existingReview.getRating();
-            String productId = existingReview.getProductId().toString();
 
             existingReview.setDeleted(true);
             existingReview.setUpdatedAt(new Date());
             reviewRepository.save(existingReview);
 
-            updateProductRatings(productId, 0, oldRating);
+            productRatingAggregator.apply(existingReview.getProductId(), null, oldRating);
 
             return true;
         }
@@ -0,0 +1,204 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.model.AdImage;
+import com.hcmute.pttechecommercewebsite.model.Brand;
+import com.hcmute.pttechecommercewebsite.model.Category;
+import com.hcmute.pttechecommercewebsite.model.Contact;
+import com.hcmute.pttechecommercewebsite.model.DiscountCode;
+import com.hcmute.pttechecommercewebsite.model.Policy;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.util.ReferenceDataCache;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+
+// Kích hoạt theo lịch cho sản phẩm, mã giảm giá, thương hiệu, danh mục, chính sách, liên hệ và ảnh quảng cáo:
+// - các lần kích hoạt sắp tới nằm trong hàng đợi ưu tiên (theo scheduledDate) trong bộ nhớ,
+//   nạp khi khởi động và được thêm bởi các phương thức scheduleCreate*
+// - chỉ một tác vụ hẹn giờ cho lần kích hoạt gần nhất, chạy đúng thời điểm thay vì truy vấn MongoDB mỗi phút
+// - các document đến hạn được kích hoạt bằng một lệnh updateMulti cho mỗi loại
+@Service
+public class ScheduledActivationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduledActivationService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final TaskScheduler taskScheduler;
+    private final ReferenceDataCache referenceDataCache;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // pending: điều kiện "đang chờ kích hoạt" (khớp partial index scheduledDate của từng collection);
+    // field / value: trường được bật khi kích hoạt; cacheRegion: vùng ReferenceDataCache cần xóa (null nếu không có)
+    private record ActivationTarget(Criteria pending, String field, Object value, String cacheRegion) {
+    }
+
+    private record PendingActivation(Class<?> entityClass, String id, long fireAt) {
+    }
+
+    private final Map<Class<?>, ActivationTarget> targets = new LinkedHashMap<>();
+
+    private final PriorityQueue<PendingActivation> queue = new PriorityQueue<>(Comparator.comparingLong(PendingActivation::fireAt));
+
+    // Thời điểm kích hoạt mới nhất của mỗi document; các phần tử cũ trong hàng đợi (đã lên lịch lại) bị bỏ qua
+    private final Map<String, Long> fireTimes = new HashMap<>();
+
+    private ScheduledFuture<?> nextRun;
+    private long nextRunAt = Long.MAX_VALUE;
+
+    public ScheduledActivationService(MongoTemplate mongoTemplate, TaskScheduler taskScheduler,
+                                      ReferenceDataCache referenceDataCache, ApplicationEventPublisher eventPublisher) {
+        this.mongoTemplate = mongoTemplate;
+        this.taskScheduler = taskScheduler;
+        this.referenceDataCache = referenceDataCache;
+        this.eventPublisher = eventPublisher;
+
+        targets.put(Product.class, new ActivationTarget(Criteria.where("isDeleted").is(false), "status", "active", null));
+        targets.put(DiscountCode.class, new ActivationTarget(scheduledInactive(), "isActive", true, null));
+        targets.put(Brand.class, new ActivationTarget(scheduledInactive(), "isActive", true, ReferenceDataCache.BRANDS));
+        targets.put(Category.class, new ActivationTarget(scheduledInactive(), "isActive", true, ReferenceDataCache.CATEGORIES));
+        targets.put(Policy.class, new ActivationTarget(scheduledInactive(), "isActive", true, ReferenceDataCache.POLICIES));
+        targets.put(Contact.class, new ActivationTarget(scheduledInactive(), "isActive", true, ReferenceDataCache.CONTACTS));
+        targets.put(AdImage.class, new ActivationTarget(scheduledInactive(), "isActive", true, ReferenceDataCache.AD_IMAGES));
+    }
+
+    private static Criteria scheduledInactive() {
+        return Criteria.where("isDeleted").is(false).and("isActive").is(false);
+    }
+
+    // Gọi sau khi lưu một document có scheduledDate (scheduleCreate*)
+    public synchronized void schedule(Class<?> entityClass, String id, Date scheduledDate) {
+        if (id == null || scheduledDate == null || !targets.containsKey(entityClass)) {
+            return;
+        }
+        long fireAt = scheduledDate.getTime();
+        Long previous = fireTimes.put(key(entityClass, id), fireAt);
+        if (previous != null && previous == fireAt) {
+            return;
+        }
+        queue.add(new PendingActivation(entityClass, id, fireAt));
+        armTimer();
+    }
+
+    // Nạp các lần kích hoạt đang chờ khi khởi động; chạy lại mỗi giờ để bắt các thay đổi ghi trực tiếp vào MongoDB
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 0 * * * *")
+    public void loadPendingActivations() {
+        int count = 0;
+        for (Map.Entry<Class<?>, ActivationTarget> entry : targets.entrySet()) {
+            Query query = new Query(new Criteria().andOperator(entry.getValue().pending(), Criteria.where("scheduledDate").ne(null)));
+            query.fields().include("_id").include("scheduledDate");
+            List<Document> pending = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(entry.getKey()));
+            for (Document document : pending) {
+                schedule(entry.getKey(), document.get("_id").toString(), document.getDate("scheduledDate"));
+            }
+            count += pending.size();
+        }
+        logger.info("Đã nạp {} lần kích hoạt theo lịch đang chờ", count);
+    }
+
+    // Kích hoạt tất cả document đã đến hạn rồi hẹn giờ cho lần kế tiếp
+    private void fireDueActivations() {
+        Map<Class<?>, List<String>> due = new LinkedHashMap<>();
+        synchronized (this) {
+            nextRun = null;
+            nextRunAt = Long.MAX_VALUE;
+            long now = System.currentTimeMillis();
+            while (!queue.isEmpty() && queue.peek().fireAt() <= now) {
+                PendingActivation activation = queue.poll();
+                String key = key(activation.entityClass(), activation.id());
+                if (Objects.equals(fireTimes.get(key), activation.fireAt())) {
+                    fireTimes.remove(key);
+                    due.computeIfAbsent(activation.entityClass(), entityClass -> new ArrayList<>()).add(activation.id());
+                }
+            }
+        }
+
+        try {
+            due.forEach((entityClass, ids) -> {
+                try {
+                    activate(entityClass, ids);
+                } catch (RuntimeException e) {
+                    // Lần đồng bộ tiếp theo (loadPendingActivations) sẽ nạp lại các document chưa được kích hoạt
+                    logger.error("Lỗi khi kích hoạt {} theo lịch", entityClass.getSimpleName(), e);
+                }
+            });
+        } finally {
+            synchronized (this) {
+                armTimer();
+            }
+        }
+    }
+
+    private void activate(Class<?> entityClass, List<String> ids) {
+        ActivationTarget target = targets.get(entityClass);
+        Date now = new Date();
+
+        // scheduledDate <= now: bỏ qua document đã bị đổi lịch, đã xóa hoặc đã được kích hoạt thủ công
+        Query query = new Query(new Criteria().andOperator(target.pending(),
+                Criteria.where("_id").in(ids), Criteria.where("scheduledDate").lte(now)));
+        Update update = new Update()
+                .set(target.field(), target.value())
+                .set("scheduledDate", null)
+                .set("updatedAt", now);
+        if (mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(entityClass).hasVersionProperty()) {
+            update.inc("version", 1);
+        }
+        UpdateResult result = mongoTemplate.updateMulti(query, update, entityClass);
+        if (result.getModifiedCount() == 0) {
+            return;
+        }
+
+        if (target.cacheRegion() != null) {
+            referenceDataCache.invalidate(target.cacheRegion());
+        }
+        // updateMulti không phát sự kiện: đọc lại các document vừa kích hoạt và phát AfterSaveEvent
+        // để chỉ mục tìm kiếm, gợi ý, cache chi tiết sản phẩm và ETag được cập nhật như khi save()
+        String collectionName = mongoTemplate.getCollectionName(entityClass);
+        List<?> activated = mongoTemplate.find(new Query(Criteria.where("_id").in(ids).and("updatedAt").is(now)), entityClass);
+        for (Object entity : activated) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(entity, document);
+            eventPublisher.publishEvent(new AfterSaveEvent<>(entity, document, collectionName));
+        }
+        logger.info("Đã kích hoạt {} {} theo lịch", result.getModifiedCount(), collectionName);
+    }
+
+    // Hẹn giờ cho phần tử sớm nhất trong hàng đợi (chỉ giữ một tác vụ hẹn giờ)
+    private void armTimer() {
+        while (!queue.isEmpty() && !Objects.equals(fireTimes.get(key(queue.peek().entityClass(), queue.peek().id())), queue.peek().fireAt())) {
+            queue.poll();
+        }
+        if (queue.isEmpty()) {
+            return;
+        }
+        long fireAt = queue.peek().fireAt();
+        if (nextRun != null && nextRunAt <= fireAt) {
+            return;
+        }
+        if (nextRun != null) {
+            nextRun.cancel(false);
+        }
+        nextRunAt = fireAt;
+        nextRun = taskScheduler.schedule(this::fireDueActivations, Instant.ofEpochMilli(fireAt));
+    }
+
+    private static String key(Class<?> entityClass, String id) {
+        return entityClass.getSimpleName() + ":" + id;
+    }
+}
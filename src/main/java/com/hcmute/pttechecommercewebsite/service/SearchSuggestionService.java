@@ -0,0 +1,355 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.dto.SearchSuggestionDTO;
+import com.hcmute.pttechecommercewebsite.model.Brand;
+import com.hcmute.pttechecommercewebsite.model.Category;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.util.VietnameseTextNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+// Gợi ý tìm kiếm (type-ahead) từ cây tiền tố (trie) trong bộ nhớ:
+// - chứa tên sản phẩm, thương hiệu, danh mục và tag phổ biến (đã bỏ dấu), khớp từ đầu của bất kỳ từ nào trong cụm
+// - mỗi nút lưu sẵn top gợi ý theo trọng số (số lượng đã bán, điểm đánh giá) nên truy vấn không phải duyệt cây con
+// - cập nhật từng phần theo sự kiện lưu / xóa của MongoDB (CatalogIndex), không truy vấn MongoDB khi gợi ý
+@Service
+public class SearchSuggestionService extends CatalogIndex<SearchSuggestionService.SuggestionState> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchSuggestionService.class);
+
+    // Số gợi ý tối đa lưu ở mỗi nút (cũng là giới hạn limit của API)
+    public static final int MAX_SUGGESTIONS = 10;
+
+    // Chỉ đánh chỉ mục từ đầu của tối đa ngần này từ trong một cụm
+    private static final int MAX_INDEXED_WORDS = 6;
+
+    // Tag phải xuất hiện ở ít nhất ngần này sản phẩm mới được gợi ý
+    private static final int MIN_TAG_PRODUCTS = 2;
+
+    private static final double RATING_WEIGHT = 0.5;
+
+    // Thương hiệu / danh mục được ưu tiên hơn một sản phẩm có cùng số lượng bán
+    private static final double GROUP_BOOST = 1.0;
+
+    private static final String INACTIVE_STATUS = "inactive";
+
+    private record Suggestion(String key, String text, String type, String id, double weight, List<String> indexKeys) {
+    }
+
+    // Phần đóng góp của một sản phẩm vào trọng số thương hiệu / danh mục / tag
+    private record ProductContribution(String brandId, String categoryId, Map<String, String> tags, int totalSold) {
+    }
+
+    private record GroupInfo(String name, boolean active) {
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final List<Suggestion> terminals = new ArrayList<>(1);
+        private List<Suggestion> top = List.of();
+    }
+
+    static class SuggestionState {
+        private final Node root = new Node();
+        private final Map<String, Suggestion> suggestions = new HashMap<>();
+        private final Map<String, ProductContribution> products = new HashMap<>();
+        private final Map<String, GroupInfo> brands = new HashMap<>();
+        private final Map<String, GroupInfo> categories = new HashMap<>();
+        private final Map<String, Long> brandSold = new HashMap<>();
+        private final Map<String, Long> categorySold = new HashMap<>();
+        private final Map<String, Long> tagSold = new HashMap<>();
+        private final Map<String, Integer> tagProducts = new HashMap<>();
+        private final Map<String, String> tagTexts = new HashMap<>();
+        // Khi dựng lại toàn bộ: chỉ thêm vào cây, tính top một lần ở cuối
+        private boolean bulkLoading = false;
+    }
+
+    private static final Comparator<Suggestion> BY_WEIGHT = Comparator.comparingDouble(Suggestion::weight).reversed()
+            .thenComparing(Suggestion::text);
+
+    public SearchSuggestionService() {
+        super(new SuggestionState());
+    }
+
+    public List<SearchSuggestionDTO> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+
+        List<Suggestion> top = read(state -> {
+            Node node = state.root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+            }
+            return node != null ? node.top : List.of();
+        });
+
+        return top.stream()
+                .limit(Math.min(limit, MAX_SUGGESTIONS))
+                .map(suggestion -> new SearchSuggestionDTO(suggestion.text(), suggestion.type(), suggestion.id()))
+                .toList();
+    }
+
+    // Dựng lại toàn bộ khi khởi động và định kỳ mỗi đêm (phòng các cập nhật không phát sự kiện)
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 40 3 * * ?")
+    public void rebuild() {
+        super.rebuild();
+    }
+
+    // Khi dựng lại toàn bộ: chỉ thêm vào cây, tính top một lần ở cuối
+    @Override
+    protected SuggestionState newState() {
+        SuggestionState built = new SuggestionState();
+        built.bulkLoading = true;
+        return built;
+    }
+
+    @Override
+    protected void completeBuild(SuggestionState built) {
+        recomputeAll(built.root);
+        built.bulkLoading = false;
+    }
+
+    @Override
+    protected void onRebuilt(SuggestionState rebuilt, long elapsedMs) {
+        logger.info("Đã dựng cây gợi ý tìm kiếm với {} mục trong {} ms", rebuilt.suggestions.size(), elapsedMs);
+    }
+
+    @Override
+    protected void applyProduct(SuggestionState target, Product product) {
+        if (product.isDeleted() || INACTIVE_STATUS.equals(product.getStatus()) || product.getName() == null) {
+            removeProduct(target, product.getId());
+            return;
+        }
+
+        Map<String, String> tags = new HashMap<>();
+        if (product.getTags() != null) {
+            for (String tag : product.getTags()) {
+                String tagKey = normalize(tag);
+                if (!tagKey.isEmpty()) {
+                    tags.putIfAbsent(tagKey, tag);
+                }
+            }
+        }
+        ProductContribution contribution = new ProductContribution(
+                product.getBrandId() != null ? product.getBrandId().toHexString() : null,
+                product.getCategoryId() != null ? product.getCategoryId().toHexString() : null,
+                tags,
+                product.getTotalSold());
+        double rating = product.getRatings() != null ? product.getRatings().getAverage() : 0;
+        upsert(target, suggestion("product:" + product.getId(), product.getName(), "product", product.getId(),
+                Math.log1p(Math.max(product.getTotalSold(), 0)) + RATING_WEIGHT * rating));
+
+        // Phần lớn các lần lưu sản phẩm không đổi thương hiệu / danh mục / tag / số lượng bán:
+        // khi đó không cần tính lại các gợi ý nhóm
+        ProductContribution old = target.products.put(product.getId(), contribution);
+        if (contribution.equals(old)) {
+            return;
+        }
+        if (old != null) {
+            applyContribution(target, old, -1);
+        }
+        applyContribution(target, contribution, 1);
+    }
+
+    @Override
+    protected void removeProduct(SuggestionState target, String productId) {
+        ProductContribution old = target.products.remove(productId);
+        if (old != null) {
+            remove(target, "product:" + productId);
+            applyContribution(target, old, -1);
+        }
+    }
+
+    // Cộng (sign = 1) hoặc trừ (sign = -1) phần đóng góp của sản phẩm rồi cập nhật gợi ý liên quan
+    private static void applyContribution(SuggestionState target, ProductContribution contribution, int sign) {
+        long sold = (long) sign * Math.max(contribution.totalSold(), 0);
+        if (contribution.brandId() != null) {
+            target.brandSold.merge(contribution.brandId(), sold, Long::sum);
+            refreshGroup(target, "brand", contribution.brandId());
+        }
+        if (contribution.categoryId() != null) {
+            target.categorySold.merge(contribution.categoryId(), sold, Long::sum);
+            refreshGroup(target, "category", contribution.categoryId());
+        }
+        contribution.tags().forEach((tagKey, text) -> {
+            target.tagSold.merge(tagKey, sold, Long::sum);
+            int count = target.tagProducts.merge(tagKey, sign, Integer::sum);
+            if (count <= 0) {
+                target.tagProducts.remove(tagKey);
+                target.tagSold.remove(tagKey);
+                target.tagTexts.remove(tagKey);
+            } else {
+                target.tagTexts.putIfAbsent(tagKey, text);
+            }
+            refreshTag(target, tagKey);
+        });
+    }
+
+    @Override
+    protected void applyBrand(SuggestionState target, Brand brand) {
+        target.brands.put(brand.getId(), new GroupInfo(brand.getName(), !brand.isDeleted() && brand.isActive()));
+        refreshGroup(target, "brand", brand.getId());
+    }
+
+    @Override
+    protected void applyCategory(SuggestionState target, Category category) {
+        target.categories.put(category.getId(), new GroupInfo(category.getName(), !category.isDeleted() && category.isActive()));
+        refreshGroup(target, "category", category.getId());
+    }
+
+    private static void refreshGroup(SuggestionState target, String type, String id) {
+        boolean brand = "brand".equals(type);
+        GroupInfo info = (brand ? target.brands : target.categories).get(id);
+        String key = type + ":" + id;
+        if (info == null || !info.active() || info.name() == null) {
+            remove(target, key);
+            return;
+        }
+        long sold = (brand ? target.brandSold : target.categorySold).getOrDefault(id, 0L);
+        upsert(target, suggestion(key, info.name(), type, id, GROUP_BOOST + Math.log1p(Math.max(sold, 0))));
+    }
+
+    private static void refreshTag(SuggestionState target, String tagKey) {
+        String key = "tag:" + tagKey;
+        if (target.tagProducts.getOrDefault(tagKey, 0) < MIN_TAG_PRODUCTS) {
+            remove(target, key);
+            return;
+        }
+        long sold = target.tagSold.getOrDefault(tagKey, 0L);
+        upsert(target, suggestion(key, target.tagTexts.get(tagKey), "tag", null, Math.log1p(Math.max(sold, 0))));
+    }
+
+    private static Suggestion suggestion(String key, String text, String type, String id, double weight) {
+        // Khớp tiền tố từ đầu của mỗi từ: "dien thoai samsung" khớp cả "sam..." và "thoai..."
+        List<String> words = VietnameseTextNormalizer.tokenize(text);
+        List<String> indexKeys = new ArrayList<>();
+        for (int i = 0; i < words.size() && i < MAX_INDEXED_WORDS; i++) {
+            indexKeys.add(String.join(" ", words.subList(i, words.size())));
+        }
+        return new Suggestion(key, text, type, id, weight, indexKeys);
+    }
+
+    private static void upsert(SuggestionState target, Suggestion suggestion) {
+        Suggestion old = target.suggestions.get(suggestion.key());
+        if (suggestion.equals(old)) {
+            return;
+        }
+        remove(target, suggestion.key());
+        target.suggestions.put(suggestion.key(), suggestion);
+        for (String indexKey : suggestion.indexKeys()) {
+            List<Node> path = new ArrayList<>(indexKey.length() + 1);
+            Node node = target.root;
+            path.add(node);
+            for (int i = 0; i < indexKey.length(); i++) {
+                node = node.children.computeIfAbsent(indexKey.charAt(i), c -> new Node());
+                path.add(node);
+            }
+            node.terminals.add(suggestion);
+            recomputePath(target, path);
+        }
+    }
+
+    private static void remove(SuggestionState target, String key) {
+        Suggestion old = target.suggestions.remove(key);
+        if (old == null) {
+            return;
+        }
+        for (String indexKey : old.indexKeys()) {
+            List<Node> path = new ArrayList<>(indexKey.length() + 1);
+            Node node = target.root;
+            path.add(node);
+            for (int i = 0; i < indexKey.length() && node != null; i++) {
+                node = node.children.get(indexKey.charAt(i));
+                path.add(node);
+            }
+            if (node == null) {
+                continue;
+            }
+            node.terminals.removeIf(suggestion -> suggestion.key().equals(key));
+            // Cắt các nút không còn gợi ý nào
+            for (int i = path.size() - 1; i > 0; i--) {
+                Node current = path.get(i);
+                if (!current.children.isEmpty() || !current.terminals.isEmpty()) {
+                    break;
+                }
+                path.get(i - 1).children.remove(indexKey.charAt(i - 1));
+                path.remove(i);
+            }
+            recomputePath(target, path);
+        }
+    }
+
+    // Tính lại top gợi ý từ nút sâu nhất lên gốc; dừng khi top của một nút không đổi (các nút cha cũng không đổi)
+    private static void recomputePath(SuggestionState target, List<Node> path) {
+        if (target.bulkLoading) {
+            return;
+        }
+        for (int i = path.size() - 1; i >= 0; i--) {
+            if (!recompute(path.get(i))) {
+                break;
+            }
+        }
+    }
+
+    // Tính top cho toàn bộ cây (duyệt hậu thứ tự) sau khi dựng lại
+    private static void recomputeAll(Node node) {
+        node.children.values().forEach(SearchSuggestionService::recomputeAll);
+        recompute(node);
+    }
+
+    // Top của nút = gợi ý kết thúc tại nút + top của các nút con (trộn các danh sách đã sắp xếp);
+    // trả về true nếu top thay đổi
+    private static boolean recompute(Node node) {
+        List<List<Suggestion>> sources = new ArrayList<>(node.children.size() + 1);
+        if (!node.terminals.isEmpty()) {
+            List<Suggestion> terminals = new ArrayList<>(node.terminals);
+            terminals.sort(BY_WEIGHT);
+            sources.add(terminals);
+        }
+        for (Node child : node.children.values()) {
+            if (!child.top.isEmpty()) {
+                sources.add(child.top);
+            }
+        }
+
+        int[] positions = new int[sources.size()];
+        List<Suggestion> top = new ArrayList<>(MAX_SUGGESTIONS);
+        while (top.size() < MAX_SUGGESTIONS) {
+            int best = -1;
+            for (int i = 0; i < sources.size(); i++) {
+                if (positions[i] < sources.get(i).size() && (best < 0
+                        || BY_WEIGHT.compare(sources.get(i).get(positions[i]), sources.get(best).get(positions[best])) < 0)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            Suggestion candidate = sources.get(best).get(positions[best]++);
+            // Một gợi ý có thể đến từ nhiều nhánh (vd. "galaxy galaxy"), chỉ giữ một lần
+            if (top.stream().noneMatch(existing -> existing.key().equals(candidate.key()))) {
+                top.add(candidate);
+            }
+        }
+
+        if (top.equals(node.top)) {
+            return false;
+        }
+        node.top = List.copyOf(top);
+        return true;
+    }
+
+    private static String normalize(String text) {
+        return String.join(" ", VietnameseTextNormalizer.tokenize(text));
+    }
+}
@@ -0,0 +1,397 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.event.OrderStatisticsEvent;
+import com.hcmute.pttechecommercewebsite.event.OrderStatusTransitionEvent;
+import com.hcmute.pttechecommercewebsite.event.ReviewStatisticsEvent;
+import com.hcmute.pttechecommercewebsite.model.Order;
+import com.hcmute.pttechecommercewebsite.model.Review;
+import com.hcmute.pttechecommercewebsite.model.Statistics;
+import com.hcmute.pttechecommercewebsite.repository.OrderRepository;
+import com.hcmute.pttechecommercewebsite.repository.ReviewRepository;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+// Cập nhật thống kê theo ngày bằng cách cộng dồn (delta) khi đơn hàng / đánh giá thay đổi,
+// kèm job đối soát định kỳ tính lại toàn bộ một ngày để sửa sai lệch nếu có.
+@Service
+public class StatisticsAggregationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsAggregationService.class);
+
+    private static final DateTimeFormatter DAY_KEY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private static final String RETURNED_STATUS = "Đã trả hàng";
+
+    private static final String UNKNOWN_KEY = "Không xác định";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    // Áp dụng delta của đơn hàng vào document thống kê của ngày tạo đơn
+    @EventListener
+    public void onOrderChanged(OrderStatisticsEvent event) {
+        try {
+            applyOrderDelta(event);
+        } catch (RuntimeException e) {
+            // Không làm hỏng luồng đặt hàng; job đối soát sẽ bù lại
+            logger.warn("Không thể cập nhật thống kê cho đơn hàng: {}", e.getMessage());
+        }
+    }
+
+    // Chuyển trạng thái hàng loạt: chỉ dời bộ đếm totalOrdersByStatus của từng ngày tạo đơn
+    @EventListener
+    public void onOrderStatusTransition(OrderStatusTransitionEvent event) {
+        event.ordersByDay().forEach((day, count) -> {
+            try {
+                upsertDay(day, new Update()
+                        .inc("totalOrdersByStatus." + mapKey(event.fromStatus()), -count)
+                        .inc("totalOrdersByStatus." + mapKey(event.toStatus()), count));
+            } catch (RuntimeException e) {
+                logger.warn("Không thể cập nhật thống kê chuyển trạng thái đơn hàng: {}", e.getMessage());
+            }
+        });
+    }
+
+    // Áp dụng delta của đánh giá vào document thống kê của ngày tạo đánh giá
+    @EventListener
+    public void onReviewChanged(ReviewStatisticsEvent event) {
+        try {
+            applyReviewDelta(event);
+        } catch (RuntimeException e) {
+            logger.warn("Không thể cập nhật thống kê cho đánh giá: {}", e.getMessage());
+        }
+    }
+
+    // Đối soát thống kê hôm nay mỗi giờ
+    @Scheduled(cron = "0 15 * * * ?")
+    public void reconcileToday() {
+        reconcileDay(LocalDate.now());
+    }
+
+    // Chốt lại thống kê của ngày hôm qua sau nửa đêm
+    @Scheduled(cron = "0 5 0 * * ?")
+    public void reconcileYesterday() {
+        reconcileDay(LocalDate.now().minusDays(1));
+    }
+
+    // Gán dayKey cho các document cũ rồi đối soát ngày hiện tại khi khởi động
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillDayKeys() {
+        try {
+            Query legacy = new Query(Criteria.where("dayKey").exists(false));
+            for (Statistics statistics : mongoTemplate.find(legacy, Statistics.class)) {
+                if (statistics.getDate() == null) {
+                    continue;
+                }
+                String dayKey = dayKey(toLocalDate(statistics.getDate()));
+                if (mongoTemplate.exists(new Query(Criteria.where("dayKey").is(dayKey)), Statistics.class)) {
+                    logger.warn("Bỏ qua thống kê {} vì ngày {} đã có document khác", statistics.getId(), dayKey);
+                    continue;
+                }
+                mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(statistics.getId())),
+                        new Update().set("dayKey", dayKey), Statistics.class);
+            }
+            reconcileToday();
+        } catch (RuntimeException e) {
+            logger.warn("Không thể chuẩn hóa thống kê khi khởi động: {}", e.getMessage());
+        }
+    }
+
+    private void applyOrderDelta(OrderStatisticsEvent event) {
+        OrderStatisticsEvent.Snapshot before = event.before();
+        OrderStatisticsEvent.Snapshot after = event.after();
+
+        Map<String, Number> deltas = new LinkedHashMap<>();
+        contributeOrder(deltas, after, 1);
+        if (before != null) {
+            contributeOrder(deltas, before, -1);
+        }
+
+        Update update = new Update();
+        deltas.forEach((field, value) -> {
+            if (value.doubleValue() != 0) {
+                update.inc(field, value);
+            }
+        });
+
+        if (before == null) {
+            // Khách quay lại nếu đã có đơn hàng trước đơn này
+            boolean returning = after.userId() != null && after.createdAt() != null
+                    && orderRepository.existsByUserIdAndCreatedAtBeforeAndIsDeletedFalse(after.userId(), after.createdAt());
+            update.inc(returning ? "returningCustomers" : "newCustomers", 1);
+            update.inc("totalCustomers", 1);
+        }
+        update.max("highestOrderValue", after.finalPrice());
+        update.min("lowestOrderValue", after.finalPrice());
+
+        for (OrderStatisticsEvent.ItemLine item : after.items()) {
+            if (item.productId() == null) {
+                continue;
+            }
+            String prefix = "productSales." + item.productId().toHexString();
+            update.set(prefix + ".productId", item.productId());
+            if (item.productName() != null) {
+                update.set(prefix + ".productName", item.productName());
+            }
+        }
+
+        upsertDay(toLocalDate(after.createdAt()), update);
+    }
+
+    // Cộng (sign = 1) hoặc trừ (sign = -1) đóng góp của một đơn hàng vào các bộ đếm
+    private void contributeOrder(Map<String, Number> deltas, OrderStatisticsEvent.Snapshot order, int sign) {
+        addInt(deltas, "totalOrders", sign);
+        addInt(deltas, "totalItemsSold", sign * order.totalItems());
+        addDouble(deltas, "totalRevenue", sign * order.finalPrice());
+        addDouble(deltas, "totalPaymentAmount", sign * order.finalPrice());
+        addDouble(deltas, "totalPaymentFees", sign * order.finalPrice());
+        addDouble(deltas, "totalDiscounts", sign * order.discountAmount());
+        addDouble(deltas, "totalShippingCosts", sign * order.shippingPrice());
+
+        addInt(deltas, "totalOrdersByPaymentMethod." + mapKey(order.paymentMethod()), sign);
+        addInt(deltas, "totalOrdersByStatus." + mapKey(order.orderStatus()), sign);
+        addInt(deltas, "totalOrdersByShippingMethod." + mapKey(order.shippingMethod()), sign);
+
+        if (RETURNED_STATUS.equals(order.orderStatus())) {
+            addInt(deltas, "totalReturnedItems", sign * order.totalItems());
+            addDouble(deltas, "totalRevenueFromReturns", sign * order.finalPrice());
+        }
+
+        for (OrderStatisticsEvent.ItemLine item : order.items()) {
+            if (item.productId() == null) {
+                continue;
+            }
+            String prefix = "productSales." + item.productId().toHexString();
+            addInt(deltas, prefix + ".quantitySold", sign * item.quantity());
+            addDouble(deltas, prefix + ".revenueFromProduct", sign * item.revenue());
+        }
+    }
+
+    private void applyReviewDelta(ReviewStatisticsEvent event) {
+        Map<String, Number> deltas = new LinkedHashMap<>();
+        if (event.oldRating() == null) {
+            addInt(deltas, "customerFeedback.totalReviews", 1);
+        } else {
+            contributeRating(deltas, event.oldRating(), -1);
+        }
+        if (event.newRating() != null) {
+            contributeRating(deltas, event.newRating(), 1);
+        }
+
+        Update update = new Update();
+        deltas.forEach((field, value) -> {
+            if (value.doubleValue() != 0) {
+                update.inc(field, value);
+            }
+        });
+        if (update.getUpdateObject().isEmpty()) {
+            return;
+        }
+
+        upsertDay(toLocalDate(event.createdAt()), update);
+    }
+
+    private void contributeRating(Map<String, Number> deltas, double rating, int sign) {
+        addDouble(deltas, "customerFeedback.totalRating", sign * rating);
+        if (rating >= 4) {
+            addInt(deltas, "customerFeedback.positiveReviews", sign);
+        } else if (rating <= 2) {
+            addInt(deltas, "customerFeedback.negativeReviews", sign);
+        }
+    }
+
+    // Tính lại toàn bộ thống kê của một ngày từ Orders và Reviews rồi ghi đè các bộ đếm
+    public void reconcileDay(LocalDate day) {
+        Date startOfDay = Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Date endOfDay = new Date(Date.from(day.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant()).getTime() - 1);
+
+        List<Order> orders = new ArrayList<>(orderRepository.findByCreatedAtBetween(startOfDay, endOfDay));
+        orders.sort(Comparator.comparing(Order::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        // Lấy một lần danh sách khách đã có đơn trước ngày này thay vì truy vấn theo từng đơn
+        Set<ObjectId> userIds = new HashSet<>();
+        for (Order order : orders) {
+            if (order.getUserId() != null) {
+                userIds.add(order.getUserId());
+            }
+        }
+        Set<ObjectId> knownCustomers = new HashSet<>();
+        if (!userIds.isEmpty()) {
+            Query priorOrders = new Query(Criteria.where("userId").in(userIds)
+                    .and("createdAt").lt(startOfDay)
+                    .and("isDeleted").is(false));
+            knownCustomers.addAll(mongoTemplate.findDistinct(priorOrders, "userId", Order.class, ObjectId.class));
+        }
+
+        int totalItemsSold = 0;
+        double totalRevenue = 0;
+        double totalDiscounts = 0;
+        double totalShippingCosts = 0;
+        int newCustomers = 0;
+        int returningCustomers = 0;
+        int totalReturnedItems = 0;
+        double totalRevenueFromReturns = 0;
+        double highestOrderValue = 0;
+        double lowestOrderValue = 0;
+        Map<String, Integer> byPaymentMethod = new HashMap<>();
+        Map<String, Integer> byStatus = new HashMap<>();
+        Map<String, Integer> byShippingMethod = new HashMap<>();
+        Map<String, Statistics.ProductSales> productSales = new HashMap<>();
+
+        for (Order order : orders) {
+            totalItemsSold += order.getTotalItems();
+            totalRevenue += order.getFinalPrice();
+            totalDiscounts += order.getDiscountAmount();
+            totalShippingCosts += order.getShippingPrice();
+
+            if (order == orders.get(0)) {
+                highestOrderValue = order.getFinalPrice();
+                lowestOrderValue = order.getFinalPrice();
+            } else {
+                highestOrderValue = Math.max(highestOrderValue, order.getFinalPrice());
+                lowestOrderValue = Math.min(lowestOrderValue, order.getFinalPrice());
+            }
+
+            byPaymentMethod.merge(mapKey(order.getPaymentMethod()), 1, Integer::sum);
+            byStatus.merge(mapKey(order.getOrderStatus()), 1, Integer::sum);
+            byShippingMethod.merge(mapKey(order.getShippingMethod()), 1, Integer::sum);
+
+            if (order.getItems() != null) {
+                for (Order.Item item : order.getItems()) {
+                    if (item.getProductId() == null) {
+                        continue;
+                    }
+                    Statistics.ProductSales sales = productSales.computeIfAbsent(item.getProductId().toHexString(),
+                            key -> new Statistics.ProductSales(item.getProductId(), item.getProductName(), 0, 0));
+                    sales.setQuantitySold(sales.getQuantitySold() + item.getQuantity());
+                    sales.setRevenueFromProduct(sales.getRevenueFromProduct() + item.getDiscountPrice() * item.getQuantity());
+                }
+            }
+
+            // Khách quay lại nếu đã có đơn (chưa xóa) trước đơn này
+            if (order.getUserId() != null && knownCustomers.contains(order.getUserId())) {
+                returningCustomers++;
+            } else {
+                newCustomers++;
+            }
+            if (order.getUserId() != null && !order.isDeleted()) {
+                knownCustomers.add(order.getUserId());
+            }
+
+            if (RETURNED_STATUS.equals(order.getOrderStatus())) {
+                totalReturnedItems += order.getTotalItems();
+                totalRevenueFromReturns += order.getFinalPrice();
+            }
+        }
+
+        int totalReviews = 0;
+        int positiveReviews = 0;
+        int negativeReviews = 0;
+        double totalRating = 0;
+        for (Review review : reviewRepository.findByCreatedAtBetween(startOfDay, endOfDay)) {
+            totalReviews++;
+            totalRating += review.getRating();
+            if (review.getRating() >= 4) {
+                positiveReviews++;
+            } else if (review.getRating() <= 2) {
+                negativeReviews++;
+            }
+        }
+
+        int totalOrders = orders.size();
+        Update update = new Update()
+                .set("totalOrders", totalOrders)
+                .set("totalItemsSold", totalItemsSold)
+                .set("totalRevenue", totalRevenue)
+                .set("totalDiscounts", totalDiscounts)
+                .set("totalPaymentAmount", totalRevenue)
+                .set("totalShippingCosts", totalShippingCosts)
+                .set("totalPaymentFees", totalRevenue)
+                .set("productSales", productSales)
+                .unset("topSellingProducts")
+                .set("newCustomers", newCustomers)
+                .set("returningCustomers", returningCustomers)
+                .set("totalCustomers", newCustomers + returningCustomers)
+                .set("customerFeedback", new Statistics.CustomerFeedback(
+                        totalReviews > 0 ? totalRating / totalReviews : 0,
+                        totalReviews, positiveReviews, negativeReviews, totalRating))
+                .set("averageOrderValue", totalOrders > 0 ? totalRevenue / totalOrders : 0)
+                .set("totalOrdersByPaymentMethod", byPaymentMethod)
+                .set("totalOrdersByStatus", byStatus)
+                .set("totalOrdersByShippingMethod", byShippingMethod)
+                .set("totalReturnedItems", totalReturnedItems)
+                .set("totalRevenueFromReturns", totalRevenueFromReturns);
+        if (totalOrders > 0) {
+            update.set("highestOrderValue", highestOrderValue)
+                    .set("lowestOrderValue", lowestOrderValue);
+        } else {
+            // Ngày chưa có đơn: bỏ trường thay vì ghi 0, để $min / $max của đơn đầu tiên đặt đúng giá trị
+            update.unset("highestOrderValue")
+                    .unset("lowestOrderValue");
+        }
+
+        upsertDay(day, update);
+    }
+
+    // Upsert document thống kê của ngày theo dayKey (có unique index)
+    private void upsertDay(LocalDate day, Update update) {
+        Date now = new Date();
+        update.setOnInsert("date", Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant()))
+                .setOnInsert("createdAt", now)
+                .set("updatedAt", now);
+        Query query = new Query(Criteria.where("dayKey").is(dayKey(day)));
+        try {
+            mongoTemplate.upsert(query, update, Statistics.class);
+        } catch (DuplicateKeyException e) {
+            // Hai upsert cùng tạo document của ngày mới: lần thử lại sẽ cập nhật document vừa tạo
+            mongoTemplate.upsert(query, update, Statistics.class);
+        }
+    }
+
+    private static void addInt(Map<String, Number> deltas, String field, int value) {
+        deltas.merge(field, value, (a, b) -> a.intValue() + b.intValue());
+    }
+
+    private static void addDouble(Map<String, Number> deltas, String field, double value) {
+        deltas.merge(field, value, (a, b) -> a.doubleValue() + b.doubleValue());
+    }
+
+    // Key của map trong MongoDB không được chứa dấu chấm hoặc bắt đầu bằng $
+    private static String mapKey(String value) {
+        if (value == null || value.isBlank()) {
+            return UNKNOWN_KEY;
+        }
+        String key = value.replace('.', '_');
+        return key.startsWith("$") ? "_" + key.substring(1) : key;
+    }
+
+    private static String dayKey(LocalDate day) {
+        return day.format(DAY_KEY_FORMAT);
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return (date != null ? date : new Date()).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
@@ -0,0 +1,245 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.dto.StatisticsDTO;
+import com.hcmute.pttechecommercewebsite.dto.StatisticsReportDTO;
+import com.hcmute.pttechecommercewebsite.model.Order;
+import com.hcmute.pttechecommercewebsite.model.Review;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.aggregation.FacetOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+// Tính báo cáo thống kê theo tuần / tháng / năm / khoảng tùy chọn bằng aggregation pipeline trong MongoDB,
+// chỉ trả về kết quả đã gộp thay vì tải từng đơn hàng về ứng dụng.
+@Service
+public class StatisticsReportService {
+
+    private static final String RETURNED_STATUS = "Đã trả hàng";
+
+    private static final int DEFAULT_TOP_LIMIT = 10;
+    private static final int MAX_TOP_LIMIT = 100;
+
+    // Định dạng $dateToString cho từng độ chia thời gian
+    private static final Map<String, String> BUCKET_FORMATS = Map.of(
+            "hour", "%Y-%m-%dT%H:00",
+            "day", "%Y-%m-%d",
+            "week", "%G-W%V",
+            "month", "%Y-%m"
+    );
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    public StatisticsReportDTO getReport(String period, LocalDate fromDate, LocalDate toDate, String granularity, Integer topLimit) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate[] range = resolveRange(period, fromDate, toDate);
+        Date from = Date.from(range[0].atStartOfDay(zone).toInstant());
+        Date to = Date.from(range[1].atStartOfDay(zone).toInstant());
+
+        if (granularity != null && !BUCKET_FORMATS.containsKey(granularity)) {
+            throw new IllegalArgumentException("Độ chia thời gian không hợp lệ: " + granularity);
+        }
+        int limit = topLimit == null ? DEFAULT_TOP_LIMIT : topLimit;
+        if (limit < 1 || limit > MAX_TOP_LIMIT) {
+            throw new IllegalArgumentException("Số sản phẩm bán chạy phải trong khoảng 1 - " + MAX_TOP_LIMIT);
+        }
+
+        Document orderFacets = aggregateOrders(from, to, granularity, limit, zone);
+        Document totals = first(orderFacets, "totals");
+
+        int totalOrders = intValue(totals, "totalOrders");
+        double totalRevenue = doubleValue(totals, "totalRevenue");
+
+        return StatisticsReportDTO.builder()
+                .from(from)
+                .to(to)
+                .granularity(granularity)
+                .totalOrders(totalOrders)
+                .totalItemsSold(intValue(totals, "totalItemsSold"))
+                .totalRevenue(totalRevenue)
+                .totalDiscounts(doubleValue(totals, "totalDiscounts"))
+                .totalShippingCosts(doubleValue(totals, "totalShippingCosts"))
+                .averageOrderValue(totalOrders > 0 ? totalRevenue / totalOrders : 0)
+                .highestOrderValue(doubleValue(totals, "highestOrderValue"))
+                .lowestOrderValue(doubleValue(totals, "lowestOrderValue"))
+                .totalReturnedItems(intValue(totals, "totalReturnedItems"))
+                .totalRevenueFromReturns(doubleValue(totals, "totalRevenueFromReturns"))
+                .totalOrdersByPaymentMethod(toCountMap(orderFacets.getList("byPaymentMethod", Document.class)))
+                .totalOrdersByStatus(toCountMap(orderFacets.getList("byStatus", Document.class)))
+                .totalOrdersByShippingMethod(toCountMap(orderFacets.getList("byShippingMethod", Document.class)))
+                .topSellingProducts(toProductSales(orderFacets.getList("topProducts", Document.class)))
+                .customerFeedback(aggregateReviews(from, to))
+                .buckets(granularity == null ? null : toBuckets(orderFacets.getList("buckets", Document.class)))
+                .build();
+    }
+
+    // Xác định khoảng [from, to) theo period hoặc khoảng ngày tùy chọn (toDate tính cả ngày cuối)
+    private LocalDate[] resolveRange(String period, LocalDate fromDate, LocalDate toDate) {
+        LocalDate today = LocalDate.now();
+        if (fromDate != null || toDate != null) {
+            LocalDate start = fromDate != null ? fromDate : LocalDate.of(1970, 1, 1);
+            LocalDate end = (toDate != null ? toDate : today).plusDays(1);
+            if (!start.isBefore(end)) {
+                throw new IllegalArgumentException("Ngày bắt đầu phải trước hoặc bằng ngày kết thúc");
+            }
+            return new LocalDate[]{start, end};
+        }
+
+        String resolved = period != null ? period : "month";
+        LocalDate start = switch (resolved) {
+            case "week" -> today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case "month" -> today.withDayOfMonth(1);
+            case "year" -> today.withDayOfYear(1);
+            default -> throw new IllegalArgumentException("Khoảng thời gian không hợp lệ: " + resolved);
+        };
+        return new LocalDate[]{start, today.plusDays(1)};
+    }
+
+    // Một lần aggregate với $facet: tổng, các bảng phân loại, top sản phẩm và (tùy chọn) số liệu theo thời gian
+    private Document aggregateOrders(Date from, Date to, String granularity, int limit, ZoneId zone) {
+        FacetOperation facet = facet(group()
+                        .count().as("totalOrders")
+                        .sum("totalItems").as("totalItemsSold")
+                        .sum("finalPrice").as("totalRevenue")
+                        .sum("discountAmount").as("totalDiscounts")
+                        .sum("shippingPrice").as("totalShippingCosts")
+                        .max("finalPrice").as("highestOrderValue")
+                        .min("finalPrice").as("lowestOrderValue")
+                        .sum(ConditionalOperators.when(Criteria.where("orderStatus").is(RETURNED_STATUS))
+                                .thenValueOf("totalItems").otherwise(0)).as("totalReturnedItems")
+                        .sum(ConditionalOperators.when(Criteria.where("orderStatus").is(RETURNED_STATUS))
+                                .thenValueOf("finalPrice").otherwise(0)).as("totalRevenueFromReturns"))
+                .as("totals")
+                .and(group("paymentMethod").count().as("count")).as("byPaymentMethod")
+                .and(group("orderStatus").count().as("count")).as("byStatus")
+                .and(group("shippingMethod").count().as("count")).as("byShippingMethod")
+                .and(unwind("items"),
+                        group("items.productId")
+                                .first("items.productName").as("productName")
+                                .sum("items.quantity").as("quantitySold")
+                                .sum(ArithmeticOperators.Multiply.valueOf("items.discountPrice").multiplyBy("items.quantity"))
+                                .as("revenueFromProduct"),
+                        sort(Sort.Direction.DESC, "quantitySold").and(Sort.Direction.ASC, "_id"),
+                        limit(limit))
+                .as("topProducts");
+
+        if (granularity != null) {
+            facet = facet.and(
+                            project("totalItems", "finalPrice")
+                                    .and(DateOperators.dateOf("createdAt")
+                                            .withTimezone(DateOperators.Timezone.valueOf(zone.getId()))
+                                            .toString(BUCKET_FORMATS.get(granularity)))
+                                    .as("bucket"),
+                            group("bucket")
+                                    .count().as("totalOrders")
+                                    .sum("totalItems").as("totalItemsSold")
+                                    .sum("finalPrice").as("totalRevenue"),
+                            sort(Sort.Direction.ASC, "_id"))
+                    .as("buckets");
+        }
+
+        // Cùng phạm vi với thống kê theo ngày: mọi đơn hàng được tạo trong khoảng (dùng index orders_createdAt)
+        Aggregation aggregation = newAggregation(
+                match(Criteria.where("createdAt").gte(from).lt(to)),
+                facet
+        );
+        Document result = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Order.class), Document.class)
+                .getUniqueMappedResult();
+        return result != null ? result : new Document();
+    }
+
+    private StatisticsDTO.CustomerFeedbackDTO aggregateReviews(Date from, Date to) {
+        Aggregation aggregation = newAggregation(
+                match(Criteria.where("createdAt").gte(from).lt(to)),
+                group()
+                        .count().as("totalReviews")
+                        .avg("rating").as("averageRating")
+                        .sum(ConditionalOperators.when(Criteria.where("rating").gte(4)).then(1).otherwise(0)).as("positiveReviews")
+                        .sum(ConditionalOperators.when(Criteria.where("rating").lte(2)).then(1).otherwise(0)).as("negativeReviews")
+        );
+        Document result = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Review.class), Document.class)
+                .getUniqueMappedResult();
+        if (result == null) {
+            return new StatisticsDTO.CustomerFeedbackDTO(0, 0, 0, 0);
+        }
+        return StatisticsDTO.CustomerFeedbackDTO.builder()
+                .averageRating(doubleValue(result, "averageRating"))
+                .totalReviews(intValue(result, "totalReviews"))
+                .positiveReviews(intValue(result, "positiveReviews"))
+                .negativeReviews(intValue(result, "negativeReviews"))
+                .build();
+    }
+
+    private Map<String, Integer> toCountMap(List<Document> groups) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        if (groups != null) {
+            for (Document group : groups) {
+                Object key = group.get("_id");
+                counts.put(key != null ? key.toString() : "Không xác định", intValue(group, "count"));
+            }
+        }
+        return counts;
+    }
+
+    private List<StatisticsDTO.ProductSalesDTO> toProductSales(List<Document> groups) {
+        List<StatisticsDTO.ProductSalesDTO> products = new ArrayList<>();
+        if (groups != null) {
+            for (Document group : groups) {
+                Object productId = group.get("_id");
+                products.add(new StatisticsDTO.ProductSalesDTO(
+                        productId != null ? productId.toString() : null,
+                        group.getString("productName"),
+                        intValue(group, "quantitySold"),
+                        doubleValue(group, "revenueFromProduct")));
+            }
+        }
+        return products;
+    }
+
+    private List<StatisticsReportDTO.BucketDTO> toBuckets(List<Document> groups) {
+        List<StatisticsReportDTO.BucketDTO> buckets = new ArrayList<>();
+        if (groups != null) {
+            for (Document group : groups) {
+                int totalOrders = intValue(group, "totalOrders");
+                double totalRevenue = doubleValue(group, "totalRevenue");
+                buckets.add(new StatisticsReportDTO.BucketDTO(
+                        group.getString("_id"),
+                        totalOrders,
+                        intValue(group, "totalItemsSold"),
+                        totalRevenue,
+                        totalOrders > 0 ? totalRevenue / totalOrders : 0));
+            }
+        }
+        return buckets;
+    }
+
+    private static Document first(Document facets, String name) {
+        List<Document> values = facets.getList(name, Document.class);
+        return values == null || values.isEmpty() ? new Document() : values.get(0);
+    }
+
+    private static int intValue(Document document, String field) {
+        Object value = document.get(field);
+        return value instanceof Number number ? number.intValue() : 0;
+    }
+
+    private static double doubleValue(Document document, String field) {
+        Object value = document.get(field);
+        return value instanceof Number number ? number.doubleValue() : 0;
+    }
+}
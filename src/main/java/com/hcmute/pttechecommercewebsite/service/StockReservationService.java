@@ -0,0 +1,103 @@
+package com.hcmute.pttechecommercewebsite.service;
+
+import com.hcmute.pttechecommercewebsite.exception.InsufficientStockException;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.util.CollectionVersionTracker;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class StockReservationService {
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductDetailCache productDetailCache;
+    private final CollectionVersionTracker collectionVersionTracker;
+
+    @Autowired
+    public StockReservationService(MongoTemplate mongoTemplate, ProductDetailCache productDetailCache,
+                                   CollectionVersionTracker collectionVersionTracker) {
+        this.mongoTemplate = mongoTemplate;
+        this.productDetailCache = productDetailCache;
+        this.collectionVersionTracker = collectionVersionTracker;
+    }
+
+    // Một dòng giữ hàng: biến thể của sản phẩm và số lượng cần trừ/hoàn
+    public record StockLine(ObjectId productId, ObjectId variantId, int quantity) {
+    }
+
+    // Giữ hàng cho tất cả các dòng; nếu một dòng thất bại thì hoàn lại các dòng đã trừ trước đó
+    public void reserve(List<StockLine> lines) {
+        List<StockLine> reserved = new ArrayList<>();
+
+        for (StockLine line : mergeLines(lines)) {
+            if (!tryReserve(line)) {
+                release(reserved);
+                throw new InsufficientStockException("Sản phẩm " + line.productId()
+                        + " (biến thể " + line.variantId() + ") không đủ tồn kho cho số lượng " + line.quantity());
+            }
+            reserved.add(line);
+        }
+    }
+
+    // Hoàn lại tồn kho (hủy đơn, trả hàng, xóa đơn hoặc bù trừ khi giữ hàng thất bại)
+    public void release(List<StockLine> lines) {
+        for (StockLine line : mergeLines(lines)) {
+            Query query = new Query(Criteria.where("_id").is(line.productId())
+                    .and("isDeleted").is(false)
+                    .and("variants.variantId").is(line.variantId()));
+            Update update = new Update()
+                    .inc("variants.$.stock", line.quantity())
+                    .inc("totalSold", -line.quantity())
+                    .inc("version", 1);
+            mongoTemplate.updateFirst(query, update, Product.class);
+            // updateFirst không phát sự kiện AfterSave nên phải tự xóa cache chi tiết sản phẩm và tăng phiên bản collection
+            productDetailCache.invalidate(line.productId().toHexString());
+            collectionVersionTracker.touch(Product.class);
+        }
+    }
+
+    // Trừ tồn kho nguyên tử: chỉ cập nhật khi biến thể còn đủ stock (stock >= quantity).
+    // Tăng version để các lần save() từ bản Product cũ bị phát hiện xung đột thay vì ghi đè tồn kho.
+    private boolean tryReserve(StockLine line) {
+        Query query = new Query(Criteria.where("_id").is(line.productId())
+                .and("isDeleted").is(false)
+                .and("variants").elemMatch(Criteria.where("variantId").is(line.variantId())
+                        .and("stock").gte(line.quantity())));
+        Update update = new Update()
+                .inc("variants.$.stock", -line.quantity())
+                .inc("totalSold", line.quantity())
+                .inc("version", 1);
+
+        UpdateResult result = mongoTemplate.updateFirst(query, update, Product.class);
+        if (result.getModifiedCount() > 0) {
+            productDetailCache.invalidate(line.productId().toHexString());
+            collectionVersionTracker.touch(Product.class);
+            return true;
+        }
+        return false;
+    }
+
+    // Gộp các dòng trùng biến thể để điều kiện stock >= quantity được kiểm tra trên tổng số lượng
+    private List<StockLine> mergeLines(List<StockLine> lines) {
+        Map<String, StockLine> merged = new LinkedHashMap<>();
+        for (StockLine line : lines) {
+            if (line.quantity() <= 0) {
+                continue;
+            }
+            merged.merge(line.productId() + ":" + line.variantId(), line,
+                    (a, b) -> new StockLine(a.productId(), a.variantId(), a.quantity() + b.quantity()));
+        }
+        return new ArrayList<>(merged.values());
+    }
+}
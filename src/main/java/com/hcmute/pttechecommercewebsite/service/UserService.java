@@ -1,13 +1,18 @@
 package com.hcmute.pttechecommercewebsite.service;
 
+import com.hcmute.pttechecommercewebsite.dto.BatchJobResultDTO;
+import com.hcmute.pttechecommercewebsite.config.UserSearchFieldSync;
 import com.hcmute.pttechecommercewebsite.dto.CartDTO;
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
 import com.hcmute.pttechecommercewebsite.dto.UserDTO;
 import com.hcmute.pttechecommercewebsite.exception.ResourceNotFoundException;
+import com.hcmute.pttechecommercewebsite.model.EmailCampaign;
 import com.hcmute.pttechecommercewebsite.model.User;
 import com.hcmute.pttechecommercewebsite.repository.UserRepository;
+import com.hcmute.pttechecommercewebsite.util.BatchJobRunner;
+import com.hcmute.pttechecommercewebsite.util.CursorPaginator;
 import com.hcmute.pttechecommercewebsite.util.JwtUtil;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.hcmute.pttechecommercewebsite.util.ExcelStreamWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -15,15 +20,18 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class UserService {
@@ -40,6 +48,9 @@ public class UserService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private EmailCampaignService emailCampaignService;
+
     @Autowired
     private GoogleAuthService googleAuthService;
 
@@ -49,6 +60,12 @@ public class UserService {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private BatchJobRunner batchJobRunner;
+
+    @Autowired
+    private CursorPaginator cursorPaginator;
+
     // Thư mục lưu trữ hình ảnh người dùng
     private String uploadDir = "upload-images/users";
 
@@ -81,28 +98,60 @@ public class UserService {
             throw new RuntimeException("Không có người dùng nào để gửi thông báo.");
         }
 
-        // Duyệt qua từng người dùng
-        int emailSentCount = 0;
-        for (User user : users) {
-            // Kiểm tra nếu người dùng đã đăng ký nhận thông báo
-            if (user.isSubscribedToEmails()) {
-                try {
-                    emailService.sendNotificationEmail(subject, content, user.getEmail());
-                    emailSentCount++;
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    throw new RuntimeException("Có lỗi xảy ra khi gửi email tới người dùng: " + user.getEmail());
-                }
-            }
+        // Chỉ gửi cho người dùng đã đăng ký nhận thông báo
+        List<User> recipients = users.stream()
+                .filter(User::isSubscribedToEmails)
+                .collect(Collectors.toList());
+
+        // Tạo chiến dịch rồi xếp hàng từng email; worker gửi và thử lại riêng cho từng người nhận
+        EmailCampaign campaign = emailCampaignService.createCampaign(subject, recipients.size());
+        for (User user : recipients) {
+            emailService.sendNotificationEmail(subject, content, user.getEmail(), campaign.getId());
         }
 
-        return "Đã gửi email thông báo tới " + emailSentCount + " người dùng đã đăng ký nhận thông báo.";
+        return "Đã xếp hàng gửi email thông báo tới " + recipients.size()
+                + " người dùng đã đăng ký nhận thông báo. Mã chiến dịch: " + campaign.getId();
     }
 
     // Lấy tất cả người dùng
-    public List<UserDTO> getAllUsers() {
-        List<User> users = userRepository.findAllByIsDeletedFalse();
-        return users.stream().map(this::convertToDTO).collect(Collectors.toList());
+    // Danh bạ người dùng cho admin: tìm theo tiền tố username / email (không phân biệt hoa thường, username bỏ dấu),
+    // lọc theo vai trò, trạng thái chặn, xác thực và phân trang bằng cursor
+    public CursorPageDTO<UserDTO> getAllUsers(String keyword, String searchBy, String role, Boolean blocked,
+                                              Boolean verified, String cursor, Integer limit) {
+        Criteria criteria = Criteria.where("isDeleted").is(false);
+        CursorPaginator.CursorSort<User> sort = CursorPaginator.CursorSort.byId(Sort.Direction.DESC, User::getId);
+
+        if (keyword != null && !keyword.isBlank()) {
+            boolean byEmail = "email".equalsIgnoreCase(searchBy);
+            String prefix = byEmail ? UserSearchFieldSync.normalizeEmail(keyword) : UserSearchFieldSync.normalizeUsername(keyword);
+            String field = byEmail ? "emailSearch" : "usernameSearch";
+            // Regex neo đầu chuỗi, phân biệt hoa thường trên trường đã chuẩn hóa => quét đúng một khoảng của index
+            criteria.and(field).regex("^" + escapeRegex(prefix));
+            sort = new CursorPaginator.CursorSort<>(field, Sort.Direction.ASC,
+                    byEmail ? User::getEmailSearch : User::getUsernameSearch, User::getId);
+        }
+        if (role != null && !role.isBlank()) {
+            criteria.and("roles.roleName").is(role);
+        }
+        if (blocked != null) {
+            criteria.and("isBlocked").is(blocked);
+        }
+        if (verified != null) {
+            criteria.and("isVerified").is(verified);
+        }
+
+        return cursorPaginator.page(User.class, criteria, sort, cursor, limit, this::convertToDTO);
+    }
+
+    private static String escapeRegex(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if ("\\.^$|?*+()[]{}".indexOf(c) >= 0) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
     }
 
     // Lấy người dùng theo ID
@@ -111,12 +160,9 @@ public class UserService {
         return user.map(this::convertToDTO);
     }
 
-    // Tìm kiếm người dùng theo tên (username)
-    public List<UserDTO> searchUsersByUsername(String username) {
-        List<User> users = userRepository.findAll().stream()
-                .filter(user -> user.getUsername().contains(username))
-                .collect(Collectors.toList());
-        return users.stream().map(this::convertToDTO).collect(Collectors.toList());
+    // Tìm kiếm người dùng theo tên (username), theo tiền tố trên index
+    public CursorPageDTO<UserDTO> searchUsersByUsername(String username, String cursor, Integer limit) {
+        return getAllUsers(username, "username", null, null, null, cursor, limit);
     }
 
     // Thêm mới người dùng
@@ -302,16 +348,11 @@ public class UserService {
     }
 
     // Phương thức để tự động kiểm tra và xóa user không xác thực sau mỗi ngày
+    // Chỉ chạm vào các user đã hết hạn (một lệnh deleteMany có index), không tải toàn bộ user
     @Scheduled(cron = "0 0 0 * * ?")  // Chạy mỗi ngày lúc 00:00 (midnight)
-    public void removeExpiredUsers() {
-        List<User> users = userRepository.findAll();
-
-        for (User user : users) {
-            if (user.getVerificationToken() != null && user.getVerificationExpiry() != null
-                    && user.getVerificationExpiry().before(new Date()) && !user.isVerified()) {
-                userRepository.delete(user);
-            }
-        }
+    public BatchJobResultDTO removeExpiredUsers() {
+        return batchJobRunner.run("UserService.removeExpiredUsers",
+                () -> userRepository.deleteExpiredUnverifiedUsers(new Date()));
     }
 
     public String sendPasswordResetEmail(String email, boolean isAdmin, boolean isMobile) {
@@ -677,114 +718,36 @@ public class UserService {
         }
     }
 
-    public ByteArrayOutputStream exportUsersToExcel(String sortBy, String sortOrder) throws IOException {
-        List<UserDTO> users = getAllUsers();
-
-        // Tạo workbook Excel
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Users");
-
-        // Định dạng chung cho workbook
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerFont.setFontHeightInPoints((short) 12);
-        headerFont.setColor(IndexedColors.WHITE.getIndex());
-        headerStyle.setFont(headerFont);
-        headerStyle.setAlignment(HorizontalAlignment.CENTER);
-        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Tạo dòng tiêu đề
-        Row headerRow = sheet.createRow(0);
+    public void exportUsersToExcel(String sortBy, String sortOrder, OutputStream outputStream) throws IOException {
         String[] columns = {
                 "ID", "Tên người dùng", "Email", "Số điện thoại", "Địa chỉ", "Thành phố", "Quận/Huyện", "Xã/Phường",
                 "Quốc gia", "Trạng thái tài khoản", "Vai trò", "Trạng thái xác thực", "Trạng thái xóa", "Trạng thái chặn"
         };
-        for (int i = 0; i < columns.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(columns[i]);
-            cell.setCellStyle(headerStyle);
-        }
 
-        // Định dạng cho dữ liệu
-        CellStyle dataStyle = workbook.createCellStyle();
-        dataStyle.setAlignment(HorizontalAlignment.CENTER);
-        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-
-        // Thêm dữ liệu người dùng vào file Excel
-        int rowNum = 1;
-        for (UserDTO user : users) {
-            Row row = sheet.createRow(rowNum++);
-
-            // Cột ID
-            row.createCell(0).setCellValue(user.getId());
-            row.getCell(0).setCellStyle(dataStyle);
-
-            // Cột Tên người dùng
-            row.createCell(1).setCellValue(user.getUsername());
-            row.getCell(1).setCellStyle(dataStyle);
-
-            // Cột Email
-            row.createCell(2).setCellValue(user.getEmail());
-            row.getCell(2).setCellStyle(dataStyle);
-
-            // Cột Số điện thoại
-            row.createCell(3).setCellValue(user.getPhoneNumber());
-            row.getCell(3).setCellStyle(dataStyle);
-
-            // Cột Địa chỉ
-            row.createCell(4).setCellValue(user.getAddress() != null ? user.getAddress().getStreet() : "N/A");
-            row.getCell(4).setCellStyle(dataStyle);
-
-            // Cột Thành phố
-            row.createCell(5).setCellValue(user.getAddress() != null ? user.getAddress().getCity() : "N/A");
-            row.getCell(5).setCellStyle(dataStyle);
-
-            // Cột Quận/Huyện
-            row.createCell(6).setCellValue(user.getAddress() != null ? user.getAddress().getDistrict() : "N/A");
-            row.getCell(6).setCellStyle(dataStyle);
-
-            // Cột Xã/Phường
-            row.createCell(7).setCellValue(user.getAddress() != null ? user.getAddress().getCommunes() : "N/A");
-            row.getCell(7).setCellStyle(dataStyle);
-
-            // Cột Quốc gia
-            row.createCell(8).setCellValue(user.getAddress() != null ? user.getAddress().getCountry() : "N/A");
-            row.getCell(8).setCellStyle(dataStyle);
-
-            // Cột Trạng thái tài khoản
-            row.createCell(10).setCellValue(user.isVerified() ? "Đã xác thực" : "Chưa xác thực");
-            row.getCell(10).setCellStyle(dataStyle);
-
-            // Cột Vai trò
-            row.createCell(11).setCellValue(user.getRoles() != null ?
-                    user.getRoles().stream()
-                            .map(role -> role.getRoleName())
-                            .collect(Collectors.joining(", ")) : "N/A");
-            row.getCell(11).setCellStyle(dataStyle);
-
-            // Cột Trạng thái xóa
-            row.createCell(12).setCellValue(user.isDeleted() ? "Đã xóa" : "Chưa xóa");
-            row.getCell(12).setCellStyle(dataStyle);
-
-            // Cột Trạng thái chặn
-            row.createCell(13).setCellValue(user.isBlocked() ? "Đã chặn" : "Chưa chặn");
-            row.getCell(13).setCellStyle(dataStyle);
+        // Đọc người dùng theo cursor và ghi từng dòng vào file Excel
+        try (Stream<User> users = userRepository.streamAllByIsDeletedFalse();
+             ExcelStreamWriter writer = new ExcelStreamWriter("Users", columns)) {
+            users.map(this::convertToDTO).forEach(user -> writer.writeRow(
+                    user.getId(),
+                    user.getUsername(),
+                    user.getEmail(),
+                    user.getPhoneNumber(),
+                    user.getAddress() != null ? user.getAddress().getStreet() : "N/A",
+                    user.getAddress() != null ? user.getAddress().getCity() : "N/A",
+                    user.getAddress() != null ? user.getAddress().getDistrict() : "N/A",
+                    user.getAddress() != null ? user.getAddress().getCommunes() : "N/A",
+                    user.getAddress() != null ? user.getAddress().getCountry() : "N/A",
+                    null,
+                    user.isVerified() ? "Đã xác thực" : "Chưa xác thực",
+                    user.getRoles() != null ?
+                            user.getRoles().stream()
+                                    .map(role -> role.getRoleName())
+                                    .collect(Collectors.joining(", ")) : "N/A",
+                    user.isDeleted() ? "Đã xóa" : "Chưa xóa",
+                    user.isBlocked() ? "Đã chặn" : "Chưa chặn"));
+
+            writer.writeTo(outputStream);
         }
-
-        // Tự động điều chỉnh độ rộng cột theo nội dung
-        for (int i = 0; i < columns.length; i++) {
-            sheet.autoSizeColumn(i);
-        }
-
-        // Tạo OutputStream và ghi workbook vào đó
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-
-        return outputStream;
     }
 
     // Chuyển đổi từ User model sang UserDTO
@@ -0,0 +1,58 @@
+package com.hcmute.pttechecommercewebsite.util;
+
+import com.hcmute.pttechecommercewebsite.dto.BatchJobResultDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+// Chạy các job xử lý hàng loạt (cập nhật nhiều document phía server), ghi log và lưu kết quả lần chạy gần nhất
+// (số document thay đổi, thời gian chạy) để xem qua API monitoring
+@Component
+public class BatchJobRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchJobRunner.class);
+
+    private final Map<String, BatchJobResultDTO> lastResults = new ConcurrentHashMap<>();
+
+    // job trả về số document đã thay đổi
+    public BatchJobResultDTO run(String jobName, LongSupplier job) {
+        Date startedAt = new Date();
+        long start = System.nanoTime();
+        BatchJobResultDTO.BatchJobResultDTOBuilder result = BatchJobResultDTO.builder()
+                .jobName(jobName)
+                .startedAt(startedAt);
+        try {
+            long changed = job.getAsLong();
+            BatchJobResultDTO finished = result.documentsChanged(changed).success(true)
+                    .totalDocumentsChanged(previousTotal(jobName) + changed)
+                    .durationMs((System.nanoTime() - start) / 1_000_000).build();
+            lastResults.put(jobName, finished);
+            logger.info("Job {}: {} document thay đổi trong {} ms", jobName, changed, finished.getDurationMs());
+            return finished;
+        } catch (RuntimeException e) {
+            lastResults.put(jobName, result.success(false).error(e.getMessage())
+                    .totalDocumentsChanged(previousTotal(jobName))
+                    .durationMs((System.nanoTime() - start) / 1_000_000).build());
+            logger.error("Job {} thất bại", jobName, e);
+            throw e;
+        }
+    }
+
+    private long previousTotal(String jobName) {
+        BatchJobResultDTO previous = lastResults.get(jobName);
+        return previous != null ? previous.getTotalDocumentsChanged() : 0;
+    }
+
+    public List<BatchJobResultDTO> getLastResults() {
+        return lastResults.values().stream()
+                .sorted(Comparator.comparing(BatchJobResultDTO::getJobName))
+                .toList();
+    }
+}
@@ -0,0 +1,61 @@
+package com.hcmute.pttechecommercewebsite.util;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Theo dõi phiên bản (số lần thay đổi) và thời điểm thay đổi cuối của từng collection trong bộ nhớ,
+// dùng làm ETag / Last-Modified cho các API GET mà không cần truy vấn MongoDB.
+// Mọi save / delete qua repository đều phát sự kiện; update trực tiếp bằng MongoTemplate phải tự gọi touch().
+@Component
+public class CollectionVersionTracker {
+
+    // Phân biệt các lần khởi động: bộ đếm bắt đầu lại từ 0 nên ETag cũ không được trùng
+    private final long startedAt = System.currentTimeMillis();
+
+    private final Map<Class<?>, Version> versions = new ConcurrentHashMap<>();
+
+    public record Version(long counter, long lastModified) {
+    }
+
+    public void touch(Class<?> entityClass) {
+        versions.compute(entityClass, (key, current) -> new Version(
+                current != null ? current.counter() + 1 : 1,
+                Math.max(System.currentTimeMillis(), current != null ? current.lastModified() : startedAt)));
+    }
+
+    public Version current(Class<?> entityClass) {
+        return versions.getOrDefault(entityClass, new Version(0, startedAt));
+    }
+
+    // ETag yếu ghép từ phiên bản của các collection mà response phụ thuộc
+    public String etag(Class<?>... entityClasses) {
+        StringBuilder etag = new StringBuilder("W/\"").append(Long.toString(startedAt, 36));
+        for (Class<?> entityClass : entityClasses) {
+            etag.append('-').append(current(entityClass).counter());
+        }
+        return etag.append('"').toString();
+    }
+
+    public long lastModified(Class<?>... entityClasses) {
+        long lastModified = startedAt;
+        for (Class<?> entityClass : entityClasses) {
+            lastModified = Math.max(lastModified, current(entityClass).lastModified());
+        }
+        return lastModified;
+    }
+
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        touch(event.getSource().getClass());
+    }
+
+    @EventListener
+    public void onAfterDelete(AfterDeleteEvent<?> event) {
+        touch(event.getType());
+    }
+}
@@ -0,0 +1,145 @@
+package com.hcmute.pttechecommercewebsite.util;
+
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
+import com.hcmute.pttechecommercewebsite.exception.InvalidCursorException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+// Phân trang keyset (cursor) cho MongoDB: sắp xếp theo (sortField, _id) và lấy các document "sau" cursor,
+// nên thời gian truy vấn không phụ thuộc vào vị trí trang như skip/limit.
+// Cursor là chuỗi base64 mờ chứa giá trị sortField và _id của phần tử cuối trang trước.
+@Component
+public class CursorPaginator {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+
+    private final MongoTemplate mongoTemplate;
+
+    public CursorPaginator(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // field: tên thuộc tính sắp xếp ("id" nếu chỉ sắp xếp theo _id); value / id: đọc giá trị tương ứng từ entity
+    public record CursorSort<T>(String field, Sort.Direction direction, Function<T, Object> value, Function<T, String> id) {
+
+        public static <T> CursorSort<T> byId(Sort.Direction direction, Function<T, String> id) {
+            return new CursorSort<>("id", direction, entity -> null, id);
+        }
+
+        private boolean idOnly() {
+            return "id".equals(field);
+        }
+
+        private Sort toSort() {
+            return idOnly() ? Sort.by(direction, "id") : Sort.by(direction, field).and(Sort.by(direction, "id"));
+        }
+    }
+
+    private record Cursor(Object value, String id) {
+    }
+
+    public <T, D> CursorPageDTO<D> page(Class<T> entityClass, Criteria filter, CursorSort<T> sort,
+                                        String cursor, Integer limit, Function<T, D> mapper) {
+        int pageSize = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        Criteria criteria = filter;
+        if (cursor != null && !cursor.isBlank()) {
+            criteria = new Criteria().andOperator(filter, after(sort, decode(cursor)));
+        }
+        // Lấy dư một phần tử để biết còn trang kế tiếp hay không
+        Query query = new Query(criteria).with(sort.toSort()).limit(pageSize + 1);
+        List<T> entities = mongoTemplate.find(query, entityClass);
+
+        boolean hasMore = entities.size() > pageSize;
+        if (hasMore) {
+            entities = entities.subList(0, pageSize);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            T last = entities.get(entities.size() - 1);
+            nextCursor = encode(sort.idOnly() ? null : sort.value().apply(last), sort.id().apply(last));
+        }
+
+        List<D> items = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            items.add(mapper.apply(entity));
+        }
+        return CursorPageDTO.<D>builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .limit(pageSize)
+                .build();
+    }
+
+    // (field, _id) đứng sau cursor theo chiều sắp xếp.
+    // MongoDB xếp null (hoặc thiếu trường) trước mọi giá trị khi tăng dần và sau cùng khi giảm dần,
+    // nhưng $gt / $lt không bao giờ khớp null nên phải xét riêng nhánh null.
+    private static Criteria after(CursorSort<?> sort, Cursor cursor) {
+        boolean ascending = sort.direction().isAscending();
+        Criteria idAfter = ascending ? Criteria.where("id").gt(cursor.id()) : Criteria.where("id").lt(cursor.id());
+        if (sort.idOnly()) {
+            return idAfter;
+        }
+        String field = sort.field();
+        Criteria sameValue = new Criteria().andOperator(Criteria.where(field).is(cursor.value()), idAfter);
+        if (cursor.value() == null) {
+            return ascending ? new Criteria().orOperator(sameValue, Criteria.where(field).ne(null)) : sameValue;
+        }
+        Criteria valueAfter = ascending ? Criteria.where(field).gt(cursor.value()) : Criteria.where(field).lt(cursor.value());
+        return ascending
+                ? new Criteria().orOperator(valueAfter, sameValue)
+                : new Criteria().orOperator(valueAfter, sameValue, Criteria.where(field).is(null));
+    }
+
+    // Định dạng trước khi mã hóa base64: "<kiểu>:<giá trị>|<id>" (s: chuỗi, d: ngày, n: số thực, l: số nguyên, -: không có)
+    static String encode(Object value, String id) {
+        String typed;
+        if (value == null) {
+            typed = "-:";
+        } else if (value instanceof Date date) {
+            typed = "d:" + date.getTime();
+        } else if (value instanceof Integer || value instanceof Long) {
+            typed = "l:" + value;
+        } else if (value instanceof Number number) {
+            typed = "n:" + number.doubleValue();
+        } else {
+            typed = "s:" + value;
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((typed + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Cursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 2 || raw.charAt(1) != ':' || separator == raw.length() - 1) {
+                throw new IllegalArgumentException(raw);
+            }
+            String value = raw.substring(2, separator);
+            String id = raw.substring(separator + 1);
+            return switch (raw.charAt(0)) {
+                case '-' -> new Cursor(null, id);
+                case 'd' -> new Cursor(new Date(Long.parseLong(value)), id);
+                case 'l' -> new Cursor(Long.parseLong(value), id);
+                case 'n' -> new Cursor(Double.parseDouble(value), id);
+                case 's' -> new Cursor(value, id);
+                default -> throw new IllegalArgumentException(raw);
+            };
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Cursor phân trang không hợp lệ.");
+        }
+    }
+}
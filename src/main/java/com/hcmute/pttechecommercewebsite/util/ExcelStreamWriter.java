@@ -0,0 +1,101 @@
+package com.hcmute.pttechecommercewebsite.util;
+
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Ghi file Excel theo kiểu streaming (SXSSF): chỉ giữ ROW_WINDOW dòng trong bộ nhớ,
+// các dòng cũ được đẩy ra file tạm nên bộ nhớ không tăng theo số dòng xuất.
+public class ExcelStreamWriter implements Closeable {
+
+    public static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private static final int ROW_WINDOW = 100;
+
+    // Giới hạn độ rộng cột (số ký tự) để các cột mô tả dài không chiếm cả trang
+    private static final int MAX_COLUMN_CHARS = 60;
+
+    private final SXSSFWorkbook workbook;
+    private final SXSSFSheet sheet;
+    private final CellStyle dataStyle;
+    private final int[] columnChars;
+    private int rowNum = 0;
+
+    public ExcelStreamWriter(String sheetName, String[] columns) {
+        workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        sheet = workbook.createSheet(sheetName);
+        columnChars = new int[columns.length];
+
+        // Định dạng tiêu đề
+        CellStyle headerStyle = workbook.createCellStyle();
+        Font headerFont = workbook.createFont();
+        headerFont.setBold(true);
+        headerFont.setFontHeightInPoints((short) 12);
+        headerFont.setColor(IndexedColors.WHITE.getIndex());
+        headerStyle.setFont(headerFont);
+        headerStyle.setAlignment(HorizontalAlignment.CENTER);
+        headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
+        headerStyle.setFillForegroundColor(IndexedColors.GREY_50_PERCENT.getIndex());
+        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+        // Định dạng cho dữ liệu
+        dataStyle = workbook.createCellStyle();
+        dataStyle.setAlignment(HorizontalAlignment.CENTER);
+        dataStyle.setVerticalAlignment(VerticalAlignment.CENTER);
+
+        // Tạo dòng tiêu đề
+        Row headerRow = sheet.createRow(rowNum++);
+        for (int i = 0; i < columns.length; i++) {
+            Cell cell = headerRow.createCell(i);
+            cell.setCellValue(columns[i]);
+            cell.setCellStyle(headerStyle);
+            trackWidth(i, columns[i]);
+        }
+    }
+
+    // Thêm một dòng dữ liệu theo thứ tự cột; số được ghi dạng số, null để trống ô
+    public void writeRow(Object... values) {
+        Row row = sheet.createRow(rowNum++);
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            Cell cell = row.createCell(i);
+            if (value instanceof Number number) {
+                cell.setCellValue(number.doubleValue());
+            } else {
+                cell.setCellValue(value.toString());
+            }
+            cell.setCellStyle(dataStyle);
+            trackWidth(i, value.toString());
+        }
+    }
+
+    // Ghi workbook ra output (response); file tạm được xóa khi close()
+    public void writeTo(OutputStream outputStream) throws IOException {
+        // Độ rộng cột tính từ độ dài nội dung đã ghi (autoSizeColumn không dùng được khi các dòng đã được đẩy ra file tạm)
+        for (int i = 0; i < columnChars.length; i++) {
+            sheet.setColumnWidth(i, (Math.min(columnChars[i], MAX_COLUMN_CHARS) + 2) * 256);
+        }
+        workbook.write(outputStream);
+        outputStream.flush();
+    }
+
+    // SXSSFWorkbook.close() xóa luôn file tạm (dispose() đã deprecated)
+    @Override
+    public void close() throws IOException {
+        workbook.close();
+    }
+
+    private void trackWidth(int column, String text) {
+        if (column < columnChars.length && text != null) {
+            columnChars[column] = Math.max(columnChars[column], text.length());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.hcmute.pttechecommercewebsite.util;
+
+import java.util.Date;
+import java.util.List;
+
+// Thông tin đã xác thực của một JWT (chỉ parse và kiểm tra chữ ký một lần)
+// roles = null với refresh token (không chứa vai trò)
+public record JwtClaims(String userId, String username, List<String> roles, Date issuedAt, Date expiration) {
+
+    public boolean isExpired() {
+        return expiration != null && expiration.before(new Date());
+    }
+}
@@ -5,8 +5,10 @@ import io.jsonwebtoken.security.Keys;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
-import java.util.Date;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 
 @Component
 public class JwtUtil {
@@ -14,6 +16,19 @@ public class JwtUtil {
     private final SecretKey SECRET_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS512);
     private final long EXPIRATION_TIME = 3600000;
     private final long REFRESH_TOKEN_EXPIRATION_TIME = 604800000; // 7 days
+    private static final int MAX_CACHED_TOKENS = 10_000;
+
+    // JwtParser không thay đổi sau khi build nên dùng chung an toàn giữa các thread
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(SECRET_KEY).build();
+
+    // Cache LRU có giới hạn các token đã xác thực (key = hash của token)
+    private final Map<String, JwtClaims> verifiedTokens = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, JwtClaims> eldest) {
+                    return size() > MAX_CACHED_TOKENS;
+                }
+            });
 
     // Generate token with roles for a user
     public String generateToken(String userId, String username, List<String> roles) {
@@ -38,65 +53,67 @@ public class JwtUtil {
                 .compact();
     }
 
-    // Extract username from token
-    public String extractUsername(String token) {
+    // Parse một lần và dùng chung kết quả cho mọi thông tin cần lấy từ token.
+    // Token hợp lệ được cache theo hash SHA-256 tới khi hết hạn.
+    public Optional<JwtClaims> parseToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String cacheKey = hashToken(token);
+        JwtClaims cached = verifiedTokens.get(cacheKey);
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                return Optional.of(cached);
+            }
+            verifiedTokens.remove(cacheKey);
+            return Optional.empty();
+        }
+
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody()
-                    .getSubject();
-        } catch (JwtException e) {
-            return null;
+            Claims body = parser.parseClaimsJws(token).getBody();
+            @SuppressWarnings("unchecked")
+            List<String> roles = body.get("roles", List.class);
+            JwtClaims claims = new JwtClaims(body.get("id", String.class), body.getSubject(),
+                    roles != null ? List.copyOf(roles) : null, body.getIssuedAt(), body.getExpiration());
+            if (claims.isExpired()) {
+                return Optional.empty();
+            }
+            // Chỉ cache token đã kiểm tra chữ ký thành công
+            verifiedTokens.put(cacheKey, claims);
+            return Optional.of(claims);
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
         }
     }
 
+    // Extract username from token
+    public String extractUsername(String token) {
+        return parseToken(token).map(JwtClaims::username).orElse(null);
+    }
+
     // Extract userId from token
     public String extractUserId(String token) {
-        try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody()
-                    .get("id", String.class);
-        } catch (JwtException e) {
-            return null; // Token không hợp lệ
-        }
+        return parseToken(token).map(JwtClaims::userId).orElse(null); // null nếu token không hợp lệ
     }
 
     // Extract roles from token
     public List<String> extractRoles(String token) {
-        try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody()
-                    .get("roles", List.class); // Lấy danh sách vai trò từ token
-        } catch (JwtException e) {
-            return null; // Token không hợp lệ
-        }
+        return parseToken(token).map(JwtClaims::roles).orElse(null); // null nếu token không hợp lệ
     }
 
     // Check if the token is valid
     public boolean isTokenValid(String token) {
-        try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(SECRET_KEY)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-            return !isTokenExpired(claims);
-        } catch (JwtException e) {
-            return false;
-        }
+        return parseToken(token).isPresent();
     }
 
-    // Check if the token is expired
-    private boolean isTokenExpired(Claims claims) {
-        Date expiration = claims.getExpiration();
-        return expiration.before(new Date());
+    // Hash SHA-256 của token làm khóa cache (không giữ token gốc trong bộ nhớ)
+    private static String hashToken(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
-}
\ No newline at end of file
+}
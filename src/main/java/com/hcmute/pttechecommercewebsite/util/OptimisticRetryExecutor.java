@@ -0,0 +1,70 @@
+package com.hcmute.pttechecommercewebsite.util;
+
+import com.hcmute.pttechecommercewebsite.dto.ConflictMetricsDTO;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Thực thi lại các thao tác read-modify-write khi gặp xung đột version (@Version) và ghi nhận số lần xung đột
+@Component
+public class OptimisticRetryExecutor {
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MS = 10;
+
+    private final Map<String, OperationStats> stats = new ConcurrentHashMap<>();
+
+    private static class OperationStats {
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder conflicts = new LongAdder();
+        private final LongAdder exhausted = new LongAdder();
+    }
+
+    // action phải tự đọc lại document ở mỗi lần thử để áp dụng thay đổi lên phiên bản mới nhất
+    public <T> T execute(String operation, Supplier<T> action) {
+        OperationStats operationStats = stats.computeIfAbsent(operation, key -> new OperationStats());
+        operationStats.invocations.increment();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (OptimisticLockingFailureException e) {
+                operationStats.conflicts.increment();
+                if (attempt >= MAX_ATTEMPTS) {
+                    operationStats.exhausted.increment();
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    // Backoff theo cấp số nhân có jitter để các luồng tranh chấp không va chạm lại cùng lúc
+    private void backoff(int attempt) {
+        long maxDelay = BASE_BACKOFF_MS << (attempt - 1);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, maxDelay + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bị gián đoạn khi chờ thử lại thao tác", e);
+        }
+    }
+
+    public List<ConflictMetricsDTO> getMetrics() {
+        return stats.entrySet().stream()
+                .map(entry -> ConflictMetricsDTO.builder()
+                        .operation(entry.getKey())
+                        .invocations(entry.getValue().invocations.sum())
+                        .conflicts(entry.getValue().conflicts.sum())
+                        .exhausted(entry.getValue().exhausted.sum())
+                        .build())
+                .sorted((a, b) -> Long.compare(b.getConflicts(), a.getConflicts()))
+                .toList();
+    }
+}
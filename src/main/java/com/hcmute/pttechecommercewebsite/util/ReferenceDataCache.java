@@ -0,0 +1,119 @@
+package com.hcmute.pttechecommercewebsite.util;
+
+import com.hcmute.pttechecommercewebsite.dto.CacheMetricsDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Cache đọc-xuyên (read-through) cho dữ liệu danh mục ít thay đổi (thương hiệu, danh mục, chính sách, liên hệ, ảnh quảng cáo):
+// - mỗi vùng (region) là một LRU có giới hạn số mục và thời gian sống (TTL)
+// - service gọi invalidate(region) sau mỗi lần ghi; TTL chỉ là lưới an toàn cho các thay đổi ngoài ứng dụng
+// - ghi nhận hit / miss / eviction theo vùng để theo dõi hiệu quả cache
+@Component
+public class ReferenceDataCache {
+
+    public static final String BRANDS = "brands";
+    public static final String CATEGORIES = "categories";
+    public static final String POLICIES = "policies";
+    public static final String CONTACTS = "contacts";
+    public static final String AD_IMAGES = "adImages";
+
+    private static final int MAX_ENTRIES_PER_REGION = 256;
+    private static final long TTL_MS = 10 * 60 * 1000;
+
+    private final Map<String, Region> regions = new ConcurrentHashMap<>();
+
+    private record Entry(Object value, long expiresAt) {
+    }
+
+    private static class Region {
+        private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > MAX_ENTRIES_PER_REGION) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        // Tăng mỗi lần invalidate: giá trị được nạp trước khi invalidate sẽ không được ghi vào cache
+        private long generation = 0;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder invalidations = new LongAdder();
+    }
+
+    // Trả về giá trị trong cache nếu còn hạn, ngược lại gọi loader (truy vấn MongoDB) và lưu kết quả.
+    // Giá trị được chia sẻ giữa các request nên loader phải trả về dữ liệu không bị sửa sau đó (ví dụ List.copyOf)
+    @SuppressWarnings("unchecked")
+    public <T> T get(String region, String key, Supplier<T> loader) {
+        Region cache = regions.computeIfAbsent(region, name -> new Region());
+        long generation;
+        synchronized (cache) {
+            Entry entry = cache.entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt() > System.currentTimeMillis()) {
+                    cache.hits.increment();
+                    return (T) entry.value();
+                }
+                cache.entries.remove(key);
+                cache.evictions.increment();
+            }
+            cache.misses.increment();
+            generation = cache.generation;
+        }
+
+        // Nạp ngoài khóa để một truy vấn chậm không chặn các lần đọc khác
+        T value = loader.get();
+        if (value != null) {
+            synchronized (cache) {
+                if (cache.generation == generation) {
+                    cache.entries.put(key, new Entry(value, System.currentTimeMillis() + TTL_MS));
+                }
+            }
+        }
+        return value;
+    }
+
+    // Xóa toàn bộ một vùng sau khi dữ liệu của nó thay đổi
+    public void invalidate(String region) {
+        Region cache = regions.computeIfAbsent(region, name -> new Region());
+        synchronized (cache) {
+            cache.entries.clear();
+            cache.generation++;
+            cache.invalidations.increment();
+        }
+    }
+
+    public List<CacheMetricsDTO> getMetrics() {
+        return regions.entrySet().stream()
+                .map(entry -> {
+                    Region cache = entry.getValue();
+                    long hits = cache.hits.sum();
+                    long misses = cache.misses.sum();
+                    int size;
+                    synchronized (cache) {
+                        size = cache.entries.size();
+                    }
+                    return CacheMetricsDTO.builder()
+                            .region(entry.getKey())
+                            .size(size)
+                            .hits(hits)
+                            .misses(misses)
+                            .hitRatio(hits + misses > 0 ? (double) hits / (hits + misses) : 0)
+                            .evictions(cache.evictions.sum())
+                            .invalidations(cache.invalidations.sum())
+                            .build();
+                })
+                .sorted(Comparator.comparing(CacheMetricsDTO::getRegion))
+                .toList();
+    }
+}
@@ -0,0 +1,39 @@
+package com.hcmute.pttechecommercewebsite.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Chuẩn hóa văn bản tiếng Việt cho tìm kiếm: bỏ dấu ("điện thoại" -> "dien thoai"), chữ thường, tách từ
+public final class VietnameseTextNormalizer {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]+");
+
+    private VietnameseTextNormalizer() {
+    }
+
+    // Bỏ dấu và chuyển về chữ thường; "đ" không phải dấu tổ hợp nên phải thay riêng
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("")
+                .replace('đ', 'd')
+                .replace('Đ', 'D')
+                .toLowerCase();
+    }
+
+    // Tách văn bản đã bỏ dấu thành các từ (chữ cái / chữ số)
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_ALPHANUMERIC.split(fold(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
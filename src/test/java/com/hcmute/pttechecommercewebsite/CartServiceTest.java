@@ -0,0 +1,209 @@
+package com.hcmute.pttechecommercewebsite;
+
+import com.hcmute.pttechecommercewebsite.dto.CartDTO;
+import com.hcmute.pttechecommercewebsite.model.Cart;
+import com.hcmute.pttechecommercewebsite.repository.CartRepository;
+import com.hcmute.pttechecommercewebsite.service.CartService;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CartServiceTest {
+
+    private static final String CART_ID = "64b000000000000000000001";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private CartRepository cartRepository;
+
+    @InjectMocks
+    private CartService cartService;
+
+    private MappingMongoConverter converter;
+
+    // Giỏ hàng "trong MongoDB": findAndModify chạy pipeline trên document này
+    private Document stored;
+
+    private final ObjectId productA = new ObjectId();
+    private final ObjectId variantA = new ObjectId();
+
+    @BeforeEach
+    void setUp() {
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+        lenient().when(mongoTemplate.getConverter()).thenReturn(converter);
+
+        List<Document> items = new ArrayList<>();
+        items.add(item(productA, variantA, 2, 100.0));
+        stored = new Document("_id", new ObjectId(CART_ID))
+                .append("userId", new ObjectId())
+                .append("items", items)
+                .append("totalItems", 1)
+                .append("totalPrice", 200.0)
+                .append("isDeleted", false)
+                .append("version", 3L);
+
+        lenient().when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Cart.class))).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            if (!matches(query)) {
+                return null;
+            }
+            stored = PipelineEvaluator.apply(invocation.getArgument(1), stored);
+            return converter.read(Cart.class, stored);
+        });
+    }
+
+    private static Document item(ObjectId productId, ObjectId variantId, int quantity, double discountPrice) {
+        return new Document("productId", productId)
+                .append("variantId", variantId)
+                .append("brandId", new ObjectId())
+                .append("categoryId", new ObjectId())
+                .append("quantity", quantity)
+                .append("discountPrice", discountPrice)
+                .append("totalPrice", quantity * discountPrice);
+    }
+
+    // Điều kiện items.$elemMatch (productId, variantId) của query
+    @SuppressWarnings("unchecked")
+    private boolean matches(Query query) {
+        Document elemMatch = (Document) ((Document) query.getQueryObject().getOrDefault("items", new Document()))
+                .get("$elemMatch");
+        if (elemMatch == null) {
+            return true;
+        }
+        return ((List<Document>) stored.get("items")).stream().anyMatch(line ->
+                line.get("productId").equals(elemMatch.get("productId"))
+                        && line.get("variantId").equals(elemMatch.get("variantId")));
+    }
+
+    private CartDTO.ItemDTO itemDTO(ObjectId productId, ObjectId variantId, int quantity, double discountPrice) {
+        return CartDTO.ItemDTO.builder()
+                .productId(productId.toHexString())
+                .variantId(variantId.toHexString())
+                .brandId(new ObjectId().toHexString())
+                .categoryId(new ObjectId().toHexString())
+                .quantity(quantity)
+                .discountPrice(discountPrice)
+                .productName("$Tên bắt đầu bằng dấu đô la")
+                .build();
+    }
+
+    @Test
+    @DisplayName("Thêm sản phẩm mới: dòng mới có totalPrice = số lượng x giá và tổng giỏ hàng được cộng đúng")
+    void addNewItemComputesLineAndCartTotals() {
+        ObjectId productB = new ObjectId();
+        ObjectId variantB = new ObjectId();
+
+        CartDTO cart = cartService.addItemToCart(CART_ID, itemDTO(productB, variantB, 3, 50.0));
+
+        assertEquals(2, cart.getItems().size());
+        CartDTO.ItemDTO added = cart.getItems().get(1);
+        assertEquals(productB.toHexString(), added.getProductId());
+        assertEquals(3, added.getQuantity());
+        assertEquals(150.0, added.getTotalPrice());
+        // Chuỗi bắt đầu bằng "$" được ghi nguyên văn, không bị hiểu là biểu thức
+        assertEquals("$Tên bắt đầu bằng dấu đô la", added.getProductName());
+        assertEquals(2, cart.getTotalItems());
+        assertEquals(350.0, cart.getTotalPrice());
+        assertEquals(4L, ((Number) stored.get("version")).longValue());
+    }
+
+    @Test
+    @DisplayName("Thêm sản phẩm đã có: cộng dồn số lượng, không thêm dòng mới")
+    void addExistingItemIncrementsQuantity() {
+        CartDTO cart = cartService.addItemToCart(CART_ID, itemDTO(productA, variantA, 3, 100.0));
+
+        assertEquals(1, cart.getItems().size());
+        assertEquals(5, cart.getItems().get(0).getQuantity());
+        assertEquals(500.0, cart.getItems().get(0).getTotalPrice());
+        assertEquals(500.0, cart.getTotalPrice());
+    }
+
+    @Test
+    @DisplayName("Tăng / giảm số lượng: tính lại tổng trên server, không giảm dưới 1")
+    void increaseAndDecreaseQuantity() {
+        CartDTO increased = cartService.increaseItemQuantity(CART_ID, productA.toHexString(), variantA.toHexString());
+        assertEquals(3, increased.getItems().get(0).getQuantity());
+        assertEquals(300.0, increased.getTotalPrice());
+
+        cartService.decreaseItemQuantity(CART_ID, productA.toHexString(), variantA.toHexString());
+        cartService.decreaseItemQuantity(CART_ID, productA.toHexString(), variantA.toHexString());
+        CartDTO decreased = cartService.decreaseItemQuantity(CART_ID, productA.toHexString(), variantA.toHexString());
+        assertEquals(1, decreased.getItems().get(0).getQuantity());
+        assertEquals(100.0, decreased.getTotalPrice());
+    }
+
+    @Test
+    @DisplayName("Xóa sản phẩm: dòng bị loại bỏ và tổng giỏ hàng về 0")
+    void removeItem() {
+        CartDTO cart = cartService.removeItemFromCart(CART_ID, productA.toHexString(), variantA.toHexString());
+
+        assertTrue(cart.getItems().isEmpty());
+        assertEquals(0, cart.getTotalItems());
+        assertEquals(0.0, cart.getTotalPrice());
+    }
+
+    @Test
+    @DisplayName("Đổi biến thể: chỉ variantId của dòng khớp thay đổi")
+    void changeVariant() {
+        ObjectId newVariant = new ObjectId();
+
+        CartDTO cart = cartService.changeItemVariant(CART_ID, productA.toHexString(), variantA.toHexString(), newVariant.toHexString());
+
+        assertEquals(newVariant.toHexString(), cart.getItems().get(0).getVariantId());
+        assertEquals(2, cart.getItems().get(0).getQuantity());
+    }
+
+    @Test
+    @DisplayName("Sản phẩm không có trong giỏ hàng: báo lỗi, không ghi gì")
+    void missingItemReportsError() {
+        when(cartRepository.findByIdAndIsDeletedFalse(CART_ID)).thenReturn(Optional.of(new Cart()));
+        Document before = stored;
+
+        RuntimeException error = assertThrows(RuntimeException.class, () ->
+                cartService.increaseItemQuantity(CART_ID, new ObjectId().toHexString(), variantA.toHexString()));
+
+        assertEquals("Sản phẩm không tồn tại trong giỏ hàng.", error.getMessage());
+        assertSame(before, stored);
+    }
+
+    @Test
+    @DisplayName("Giỏ hàng không tồn tại: báo lỗi giỏ hàng")
+    void missingCartReportsError() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(AggregationUpdate.class),
+                any(FindAndModifyOptions.class), eq(Cart.class))).thenReturn(null);
+        when(cartRepository.findByIdAndIsDeletedFalse(CART_ID)).thenReturn(Optional.empty());
+
+        RuntimeException error = assertThrows(RuntimeException.class, () ->
+                cartService.removeItemFromCart(CART_ID, productA.toHexString(), variantA.toHexString()));
+
+        assertEquals("Giỏ hàng không tồn tại hoặc đã bị xóa.", error.getMessage());
+    }
+}
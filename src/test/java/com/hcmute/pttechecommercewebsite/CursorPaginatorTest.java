@@ -0,0 +1,126 @@
+package com.hcmute.pttechecommercewebsite;
+
+import com.hcmute.pttechecommercewebsite.dto.CursorPageDTO;
+import com.hcmute.pttechecommercewebsite.exception.InvalidCursorException;
+import com.hcmute.pttechecommercewebsite.model.Cart;
+import com.hcmute.pttechecommercewebsite.util.CursorPaginator;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CursorPaginatorTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private CursorPaginator cursorPaginator;
+
+    private static final CursorPaginator.CursorSort<Cart> BY_CREATED_AT_DESC =
+            new CursorPaginator.CursorSort<>("createdAt", Sort.Direction.DESC, Cart::getCreatedAt, Cart::getId);
+
+    private static Cart cart(String id, long createdAt) {
+        return Cart.builder().id(id).createdAt(new Date(createdAt)).build();
+    }
+
+    private CursorPageDTO<String> page(CursorPaginator.CursorSort<Cart> sort, String cursor, Integer limit) {
+        return cursorPaginator.page(Cart.class, Criteria.where("isDeleted").is(false), sort, cursor, limit, Cart::getId);
+    }
+
+    private Query lastQuery() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, atLeastOnce()).find(query.capture(), eq(Cart.class));
+        return query.getValue();
+    }
+
+    @Test
+    @DisplayName("Giới hạn trang: mặc định 20, tối đa 100, tối thiểu 1; truy vấn lấy dư một phần tử")
+    void limitIsClamped() {
+        when(mongoTemplate.find(any(Query.class), eq(Cart.class))).thenReturn(List.of());
+
+        assertEquals(CursorPaginator.DEFAULT_LIMIT, page(BY_CREATED_AT_DESC, null, null).getLimit());
+        assertEquals(21, lastQuery().getLimit());
+        assertEquals(CursorPaginator.MAX_LIMIT, page(BY_CREATED_AT_DESC, null, 500).getLimit());
+        assertEquals(101, lastQuery().getLimit());
+        assertEquals(1, page(BY_CREATED_AT_DESC, null, 0).getLimit());
+        assertEquals(1, page(BY_CREATED_AT_DESC, null, -5).getLimit());
+        assertEquals(2, lastQuery().getLimit());
+    }
+
+    @Test
+    @DisplayName("Còn trang kế tiếp: cắt phần tử dư, cursor chứa giá trị sắp xếp và id của phần tử cuối")
+    void nextCursorRoundTrip() {
+        when(mongoTemplate.find(any(Query.class), eq(Cart.class)))
+                .thenReturn(List.of(cart("c3", 3_000), cart("c2", 2_000), cart("c1", 1_000)));
+
+        CursorPageDTO<String> first = page(BY_CREATED_AT_DESC, null, 2);
+
+        assertEquals(List.of("c3", "c2"), first.getItems());
+        assertTrue(first.isHasMore());
+        assertNotNull(first.getNextCursor());
+        assertEquals(new Document("createdAt", -1).append("id", -1), lastQuery().getSortObject());
+
+        page(BY_CREATED_AT_DESC, first.getNextCursor(), 2);
+
+        // Trang sau: (createdAt < 2000) hoặc (createdAt = 2000 và id < "c2") hoặc createdAt null
+        String after = lastQuery().getQueryObject().toJson();
+        assertTrue(after.contains("\"$lt\": {\"$date\": \"1970-01-01T00:00:02Z\"}"), after);
+        assertTrue(after.contains("\"id\": {\"$lt\": \"c2\"}"), after);
+        assertTrue(after.contains("\"createdAt\": null"), after);
+    }
+
+    @Test
+    @DisplayName("Trang cuối: không có cursor kế tiếp")
+    void lastPageHasNoCursor() {
+        when(mongoTemplate.find(any(Query.class), eq(Cart.class))).thenReturn(List.of(cart("c1", 1_000)));
+
+        CursorPageDTO<String> page = page(BY_CREATED_AT_DESC, null, 2);
+
+        assertEquals(List.of("c1"), page.getItems());
+        assertFalse(page.isHasMore());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("Sắp xếp chỉ theo id: cursor không mang giá trị sắp xếp")
+    void idOnlyCursor() {
+        CursorPaginator.CursorSort<Cart> byId = CursorPaginator.CursorSort.byId(Sort.Direction.ASC, Cart::getId);
+        when(mongoTemplate.find(any(Query.class), eq(Cart.class)))
+                .thenReturn(List.of(cart("a", 0), cart("b", 0)));
+
+        CursorPageDTO<String> first = page(byId, null, 1);
+        page(byId, first.getNextCursor(), 1);
+
+        String after = lastQuery().getQueryObject().toJson();
+        assertTrue(after.contains("\"id\": {\"$gt\": \"a\"}"), after);
+        assertFalse(after.contains("createdAt"), after);
+    }
+
+    @Test
+    @DisplayName("Cursor không hợp lệ: báo InvalidCursorException, không truy vấn MongoDB")
+    void invalidCursorIsRejected() {
+        assertThrows(InvalidCursorException.class, () -> page(BY_CREATED_AT_DESC, "không-phải-base64!", 10));
+        assertThrows(InvalidCursorException.class, () -> page(BY_CREATED_AT_DESC, "eDoxfGlk", 10));
+        assertThrows(InvalidCursorException.class, () -> page(BY_CREATED_AT_DESC, "ZDphYmN8aWQ", 10));
+
+        verifyNoInteractions(mongoTemplate);
+    }
+}
@@ -0,0 +1,168 @@
+package com.hcmute.pttechecommercewebsite;
+
+import com.hcmute.pttechecommercewebsite.model.DiscountCode;
+import com.hcmute.pttechecommercewebsite.model.DiscountRedemption;
+import com.hcmute.pttechecommercewebsite.repository.DiscountCodeRepository;
+import com.hcmute.pttechecommercewebsite.repository.DiscountRedemptionRepository;
+import com.hcmute.pttechecommercewebsite.service.DiscountRedemptionService;
+import com.hcmute.pttechecommercewebsite.service.DiscountRuleIndex;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DiscountRedemptionServiceTest {
+
+    private static final String DISCOUNT_ID = "64c000000000000000000001";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private DiscountCodeRepository discountCodeRepository;
+
+    @Mock
+    private DiscountRedemptionRepository discountRedemptionRepository;
+
+    @Mock
+    private DiscountRuleIndex discountRuleIndex;
+
+    @InjectMocks
+    private DiscountRedemptionService discountRedemptionService;
+
+    private DiscountCode discount;
+
+    // usageCount "trong MongoDB": findAndModify chỉ tăng khi usageCount < usageLimit
+    private int usageCount;
+
+    @BeforeEach
+    void setUp() {
+        long now = System.currentTimeMillis();
+        discount = DiscountCode.builder()
+                .id(DISCOUNT_ID)
+                .code("SALE10")
+                .discountType("percentage")
+                .discountValue(10.0)
+                .minimumPurchaseAmount(100.0)
+                .usageLimit(1)
+                .usageCount(0)
+                .isActive(true)
+                .startDate(new Date(now - 60_000))
+                .endDate(new Date(now + 60_000))
+                .build();
+        usageCount = 0;
+
+        DiscountRuleIndex.DiscountRule rule = new DiscountRuleIndex.DiscountRule(discount, Set.of(), Set.of(),
+                false, 100.0, discount.getStartDate().getTime(), discount.getEndDate().getTime());
+        lenient().when(discountRuleIndex.find(anyString(), any(Date.class))).thenAnswer(invocation ->
+                DiscountRuleIndex.sameCode(invocation.getArgument(0), discount.getCode()) ? Optional.of(rule) : Optional.empty());
+        lenient().when(discountRedemptionRepository.insert(any(DiscountRedemption.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(DiscountCode.class))).thenAnswer(invocation -> {
+            Update update = invocation.getArgument(1);
+            int delta = ((Number) update.getUpdateObject().get("$inc", Document.class).get("usageCount")).intValue();
+            if (delta > 0 && usageCount >= discount.getUsageLimit()) {
+                return null;
+            }
+            usageCount += delta;
+            return DiscountCode.builder().id(DISCOUNT_ID).code(discount.getCode()).usageCount(usageCount).build();
+        });
+    }
+
+    @Test
+    @DisplayName("Dùng mã hợp lệ: ghi lượt sử dụng, tăng usageCount và trả về số tiền giảm")
+    void redeemRecordsLedgerAndIncrementsUsage() {
+        String userId = new ObjectId().toHexString();
+
+        double discountAmount = discountRedemptionService.redeem(" sale10 ", userId, "ORD-1", 500.0);
+
+        assertEquals(50.0, discountAmount);
+        assertEquals(1, usageCount);
+        verify(discountRedemptionRepository).insert(argThat((DiscountRedemption redemption) ->
+                "SALE10".equals(redemption.getCode())
+                        && "ORD-1".equals(redemption.getOrderId())
+                        && redemption.getUserId().toHexString().equals(userId)
+                        && redemption.getDiscountAmount() == 50.0));
+        verify(discountRuleIndex).refresh(argThat(updated -> updated.getUsageCount() == 1));
+    }
+
+    @Test
+    @DisplayName("Hết lượt sử dụng: lượt thứ hai bị từ chối và bản ghi vừa thêm được xóa")
+    void usageLimitRejectsSecondRedemption() {
+        discountRedemptionService.redeem("SALE10", new ObjectId().toHexString(), "ORD-1", 500.0);
+        when(discountCodeRepository.findById(DISCOUNT_ID)).thenReturn(Optional.of(discount));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () ->
+                discountRedemptionService.redeem("SALE10", new ObjectId().toHexString(), "ORD-2", 500.0));
+
+        assertEquals("Mã giảm giá đã hết lượt sử dụng hoặc không còn hiệu lực.", error.getMessage());
+        assertEquals(1, usageCount);
+        verify(discountRedemptionRepository).delete(argThat((DiscountRedemption redemption) ->
+                "ORD-2".equals(redemption.getOrderId())));
+    }
+
+    @Test
+    @DisplayName("Người dùng đã dùng mã: unique index chặn, không tăng usageCount")
+    void duplicateRedemptionIsRejected() {
+        when(discountRedemptionRepository.insert(any(DiscountRedemption.class)))
+                .thenThrow(new DuplicateKeyException("discountCodeId_userId"));
+
+        RuntimeException error = assertThrows(RuntimeException.class, () ->
+                discountRedemptionService.redeem("SALE10", new ObjectId().toHexString(), "ORD-1", 500.0));
+
+        assertEquals("Mã giảm giá này đã được sử dụng bởi bạn trước đó.", error.getMessage());
+        assertEquals(0, usageCount);
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(DiscountCode.class));
+    }
+
+    @Test
+    @DisplayName("Chưa đạt mức mua tối thiểu hoặc mã không tồn tại: không giảm, không ghi lượt sử dụng")
+    void belowMinimumOrUnknownCodeRedeemsNothing() {
+        assertEquals(0.0, discountRedemptionService.redeem("SALE10", new ObjectId().toHexString(), "ORD-1", 99.0));
+        assertEquals(0.0, discountRedemptionService.redeem("KHONGCO", new ObjectId().toHexString(), "ORD-1", 500.0));
+
+        verify(discountRedemptionRepository, never()).insert(any(DiscountRedemption.class));
+        assertEquals(0, usageCount);
+    }
+
+    @Test
+    @DisplayName("Hoàn lượt sử dụng: chỉ hoàn mã khớp sau khi chuẩn hóa và giảm usageCount")
+    void releaseMatchesNormalizedCode() {
+        usageCount = 1;
+        DiscountRedemption matching = DiscountRedemption.builder()
+                .id("r1").code("SALE10").orderId("ORD-1").discountCodeId(new ObjectId(DISCOUNT_ID)).build();
+        DiscountRedemption other = DiscountRedemption.builder()
+                .id("r2").code("FREESHIP").orderId("ORD-1").discountCodeId(new ObjectId()).build();
+        when(discountRedemptionRepository.findByOrderId("ORD-1")).thenReturn(List.of(matching, other));
+
+        discountRedemptionService.release("ORD-1", " Sale10");
+
+        verify(discountRedemptionRepository).delete(matching);
+        verify(discountRedemptionRepository, never()).delete(other);
+        assertEquals(0, usageCount);
+        verify(discountRuleIndex).refresh(argThat(updated -> updated.getUsageCount() == 0));
+    }
+}
@@ -0,0 +1,136 @@
+package com.hcmute.pttechecommercewebsite;
+
+import com.hcmute.pttechecommercewebsite.dto.DiscountPreviewDTO;
+import com.hcmute.pttechecommercewebsite.model.DiscountCode;
+import com.hcmute.pttechecommercewebsite.service.DiscountRuleIndex;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class DiscountRuleIndexTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private TaskScheduler taskScheduler;
+
+    @InjectMocks
+    private DiscountRuleIndex discountRuleIndex;
+
+    private final ObjectId laptop = new ObjectId();
+    private final ObjectId laptopCategory = new ObjectId();
+    private final ObjectId phoneCategory = new ObjectId();
+
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        now = System.currentTimeMillis();
+    }
+
+    private DiscountCode.DiscountCodeBuilder discount(String code) {
+        return DiscountCode.builder()
+                .id(new ObjectId().toHexString())
+                .code(code)
+                .discountType("fixed")
+                .discountValue(10.0)
+                .usageCount(0)
+                .isActive(true)
+                .startDate(new Date(now - 60_000))
+                .endDate(new Date(now + 3_600_000));
+    }
+
+    private List<String> previewCodes(List<DiscountRuleIndex.PreviewLine> lines) {
+        return discountRuleIndex.preview(lines).stream().map(DiscountPreviewDTO::getCode).toList();
+    }
+
+    @Test
+    @DisplayName("Chuẩn hóa mã: bỏ khoảng trắng, không phân biệt hoa thường, mã rỗng coi như không có mã")
+    void normalizeAndSameCode() {
+        assertEquals("SALE10", DiscountRuleIndex.normalize("  sale10 "));
+        assertTrue(DiscountRuleIndex.sameCode("Sale10", " SALE10"));
+        assertTrue(DiscountRuleIndex.sameCode("", null));
+        assertTrue(DiscountRuleIndex.sameCode("  ", null));
+        assertFalse(DiscountRuleIndex.sameCode("SALE10", "SALE20"));
+        assertFalse(DiscountRuleIndex.sameCode("SALE10", null));
+    }
+
+    @Test
+    @DisplayName("Tra mã: chỉ trả về mã đang hiệu lực, khớp sau khi chuẩn hóa")
+    void findOnlyReturnsValidCodes() {
+        discountRuleIndex.refresh(discount("SALE10").build());
+        discountRuleIndex.refresh(discount("SAPTOI").startDate(new Date(now + 60_000)).build());
+
+        assertTrue(discountRuleIndex.find(" sale10", new Date(now)).isPresent());
+        assertTrue(discountRuleIndex.find("SAPTOI", new Date(now)).isEmpty());
+        assertTrue(discountRuleIndex.find("SAPTOI", new Date(now + 120_000)).isPresent());
+        assertTrue(discountRuleIndex.find("KHONGCO", new Date(now)).isEmpty());
+        assertTrue(discountRuleIndex.find(null, new Date(now)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Ẩn hoặc xóa mã: refresh loại mã khỏi chỉ mục; mã đã hết hạn không được thêm")
+    void refreshRemovesInactiveAndSkipsExpired() {
+        DiscountCode sale = discount("SALE10").build();
+        discountRuleIndex.refresh(sale);
+        discountRuleIndex.refresh(discount("HETHAN").endDate(new Date(now - 1)).build());
+        assertEquals(1, discountRuleIndex.size());
+
+        sale.setActive(false);
+        discountRuleIndex.refresh(sale);
+
+        assertEquals(0, discountRuleIndex.size());
+        assertTrue(discountRuleIndex.find("SALE10", new Date(now)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Xem trước: bỏ mã chưa hiệu lực, hết lượt, chưa đạt mức mua tối thiểu hoặc không áp dụng cho sản phẩm")
+    void previewFiltersByConditions() {
+        discountRuleIndex.refresh(discount("TATCA").build());
+        discountRuleIndex.refresh(discount("SAPTOI").startDate(new Date(now + 60_000)).build());
+        discountRuleIndex.refresh(discount("HETLUOT").usageLimit(5).usageCount(5).build());
+        discountRuleIndex.refresh(discount("TOITHIEU").minimumPurchaseAmount(1_000.0).build());
+        discountRuleIndex.refresh(discount("DIENTHOAI").applicableCategories(List.of(phoneCategory)).build());
+        discountRuleIndex.refresh(discount("LAPTOP").applicableProducts(List.of(laptop)).build());
+        discountRuleIndex.refresh(discount("DANHMUC").applicableCategories(List.of(laptopCategory)).build());
+        discountRuleIndex.refresh(discount("VANCHUYEN").appliesTo("shipping")
+                .applicableCategories(List.of(phoneCategory)).build());
+
+        List<String> codes = previewCodes(List.of(new DiscountRuleIndex.PreviewLine(laptop, laptopCategory, 500.0)));
+
+        assertEquals(4, codes.size());
+        assertTrue(codes.containsAll(List.of("TATCA", "LAPTOP", "DANHMUC", "VANCHUYEN")));
+    }
+
+    @Test
+    @DisplayName("Xem trước: sắp theo số tiền giảm giảm dần, mức giảm không vượt quá giá trị đơn hàng")
+    void previewSortsByDiscountAmount() {
+        discountRuleIndex.refresh(discount("GIAM10").build());
+        discountRuleIndex.refresh(discount("GIAM20PT").discountType("percentage").discountValue(20.0).build());
+        discountRuleIndex.refresh(discount("GIAM1000").discountValue(1_000.0).build());
+
+        List<DiscountPreviewDTO> previews = discountRuleIndex.preview(List.of(
+                new DiscountRuleIndex.PreviewLine(laptop, laptopCategory, 300.0),
+                new DiscountRuleIndex.PreviewLine(new ObjectId(), phoneCategory, 200.0)));
+
+        assertEquals(List.of("GIAM1000", "GIAM20PT", "GIAM10"),
+                previews.stream().map(DiscountPreviewDTO::getCode).toList());
+        assertEquals(500.0, previews.get(0).getDiscountAmount());
+        assertEquals(100.0, previews.get(1).getDiscountAmount());
+        assertEquals(10.0, previews.get(2).getDiscountAmount());
+    }
+}
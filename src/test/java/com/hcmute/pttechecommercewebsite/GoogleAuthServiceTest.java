@@ -0,0 +1,138 @@
+package com.hcmute.pttechecommercewebsite;
+
+import com.hcmute.pttechecommercewebsite.service.GoogleAuthService;
+import com.hcmute.pttechecommercewebsite.service.GoogleJwksKeyProvider;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GoogleAuthServiceTest {
+
+    private static final String CLIENT_ID = "pttech-web.apps.googleusercontent.com";
+    private static final String ISSUER = "https://accounts.google.com";
+
+    private HttpServer jwksServer;
+
+    // Số lần endpoint JWKS giả bị gọi
+    private final AtomicInteger jwksRequests = new AtomicInteger();
+
+    private RSAKey signingKey;
+
+    private GoogleAuthService googleAuthService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        signingKey = new RSAKeyGenerator(2048).keyID("google-key-1").generate();
+        byte[] jwks = new JWKSet(signingKey.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8);
+
+        jwksServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        jwksServer.createContext("/oauth2/v3/certs", exchange -> {
+            jwksRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Cache-Control", "public, max-age=3600");
+            exchange.sendResponseHeaders(200, jwks.length);
+            exchange.getResponseBody().write(jwks);
+            exchange.close();
+        });
+        jwksServer.start();
+
+        String jwkSetUri = "http://localhost:" + jwksServer.getAddress().getPort() + "/oauth2/v3/certs";
+        googleAuthService = new GoogleAuthService(new GoogleJwksKeyProvider(jwkSetUri), CLIENT_ID,
+                new String[]{ISSUER, "accounts.google.com"});
+    }
+
+    @AfterEach
+    void tearDown() {
+        jwksServer.stop(0);
+    }
+
+    private JWTClaimsSet.Builder claims() {
+        return new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .audience(CLIENT_ID)
+                .subject("110169484474386276334")
+                .claim("email", "khachhang@gmail.com")
+                .expirationTime(new Date(System.currentTimeMillis() + 600_000));
+    }
+
+    private String token(JWTClaimsSet claims, RSAKey key) throws Exception {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+
+    private void assertRejected(String token, String message) {
+        Exception error = assertThrows(Exception.class, () -> googleAuthService.getUserInfoFromToken(token));
+        assertTrue(error.getMessage().contains(message), error.getMessage());
+    }
+
+    @Test
+    @DisplayName("Token hợp lệ: trả về claims, JWKS chỉ tải một lần cho nhiều lần đăng nhập")
+    void validTokenReturnsClaims() throws Exception {
+        Map<String, Object> userInfo = googleAuthService.getUserInfoFromToken(token(claims().build(), signingKey));
+        googleAuthService.getUserInfoFromToken(token(claims().issuer("accounts.google.com").build(), signingKey));
+
+        assertEquals("khachhang@gmail.com", userInfo.get("email"));
+        assertEquals(1, jwksRequests.get());
+    }
+
+    @Test
+    @DisplayName("Token cấp cho ứng dụng khác (aud sai) bị từ chối")
+    void wrongAudienceIsRejected() throws Exception {
+        assertRejected(token(claims().audience("ung-dung-khac.apps.googleusercontent.com").build(), signingKey),
+                "không được cấp cho ứng dụng này");
+        assertRejected(token(claims().audience((String) null).build(), signingKey),
+                "không được cấp cho ứng dụng này");
+    }
+
+    @Test
+    @DisplayName("Nhiều aud: azp phải là client id của ứng dụng")
+    void multipleAudiencesRequireAuthorizedParty() throws Exception {
+        JWTClaimsSet.Builder shared = claims().audience(List.of(CLIENT_ID, "ung-dung-khac.apps.googleusercontent.com"));
+
+        assertRejected(token(shared.claim("azp", "ung-dung-khac.apps.googleusercontent.com").build(), signingKey),
+                "không được cấp cho ứng dụng này");
+        assertNotNull(googleAuthService.getUserInfoFromToken(token(shared.claim("azp", CLIENT_ID).build(), signingKey)));
+    }
+
+    @Test
+    @DisplayName("Token không do Google cấp (iss sai hoặc thiếu) bị từ chối")
+    void wrongIssuerIsRejected() throws Exception {
+        assertRejected(token(claims().issuer("https://gia-mao.example.com").build(), signingKey), "không do Google cấp");
+        assertRejected(token(claims().issuer(null).build(), signingKey), "không do Google cấp");
+    }
+
+    @Test
+    @DisplayName("Chữ ký sai, kid lạ hoặc token hết hạn bị từ chối")
+    void invalidSignatureOrExpiredTokenIsRejected() throws Exception {
+        RSAKey forged = new RSAKeyGenerator(2048).keyID(signingKey.getKeyID()).generate();
+        assertRejected(token(claims().build(), forged), "Chữ ký token Google không hợp lệ");
+
+        RSAKey unknown = new RSAKeyGenerator(2048).keyID("google-key-khac").generate();
+        assertRejected(token(claims().build(), unknown), "Không tìm thấy key");
+
+        assertRejected(token(claims().expirationTime(new Date(System.currentTimeMillis() - 1_000)).build(), signingKey),
+                "đã hết hạn");
+        assertRejected(token(claims().expirationTime(null).build(), signingKey), "đã hết hạn");
+    }
+}
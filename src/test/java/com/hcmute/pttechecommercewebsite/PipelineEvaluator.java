@@ -0,0 +1,194 @@
+package com.hcmute.pttechecommercewebsite;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+
+import java.util.*;
+
+// Chạy các update dạng pipeline ($set) trên một Document trong bộ nhớ để test hành vi mà không cần MongoDB.
+// Chỉ hỗ trợ các toán tử mà service đang dùng.
+public final class PipelineEvaluator {
+
+    private PipelineEvaluator() {
+    }
+
+    public static Document apply(AggregationUpdate update, Document input) {
+        Document current = deepCopy(input);
+        for (Document stage : update.toPipeline(Aggregation.DEFAULT_CONTEXT)) {
+            Document set = (Document) stage.get("$set");
+            if (set == null) {
+                throw new IllegalArgumentException("Chỉ hỗ trợ stage $set: " + stage);
+            }
+            Document next = deepCopy(current);
+            for (Map.Entry<String, Object> field : set.entrySet()) {
+                setPath(next, field.getKey(), eval(field.getValue(), current, Map.of()));
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object eval(Object expr, Document root, Map<String, Object> vars) {
+        if (expr instanceof String text && text.startsWith("$$")) {
+            String[] parts = text.substring(2).split("\\.", 2);
+            Object value = vars.get(parts[0]);
+            return parts.length == 1 ? value : getPath(value, parts[1]);
+        }
+        if (expr instanceof String text && text.startsWith("$")) {
+            return getPath(root, text.substring(1));
+        }
+        if (expr instanceof List<?> list) {
+            List<Object> values = new ArrayList<>();
+            for (Object item : list) {
+                values.add(eval(item, root, vars));
+            }
+            return values;
+        }
+        if (!(expr instanceof Document document)) {
+            return expr;
+        }
+        if (document.size() != 1 || !document.keySet().iterator().next().startsWith("$")) {
+            Document result = new Document();
+            document.forEach((key, value) -> result.append(key, eval(value, root, vars)));
+            return result;
+        }
+
+        String operator = document.keySet().iterator().next();
+        Object argument = document.get(operator);
+        if ("$literal".equals(operator)) {
+            return deepCopy(argument);
+        }
+        if ("$map".equals(operator) || "$filter".equals(operator)) {
+            Document spec = (Document) argument;
+            List<Object> input = (List<Object>) eval(spec.get("input"), root, vars);
+            String as = spec.getString("as");
+            List<Object> result = new ArrayList<>();
+            for (Object item : input) {
+                Map<String, Object> scope = new HashMap<>(vars);
+                scope.put(as, item);
+                if ("$map".equals(operator)) {
+                    result.add(eval(spec.get("in"), root, scope));
+                } else if (Boolean.TRUE.equals(eval(spec.get("cond"), root, scope))) {
+                    result.add(item);
+                }
+            }
+            return result;
+        }
+        if ("$cond".equals(operator)) {
+            List<Object> branches = (List<Object>) argument;
+            return Boolean.TRUE.equals(eval(branches.get(0), root, vars))
+                    ? eval(branches.get(1), root, vars) : eval(branches.get(2), root, vars);
+        }
+        if ("$ifNull".equals(operator)) {
+            for (Object candidate : (List<Object>) argument) {
+                Object value = eval(candidate, root, vars);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        Object evaluated = eval(argument, root, vars);
+        // Mảng tham số ([a, b]) hoặc một biểu thức duy nhất (như "$items" của $size)
+        List<Object> args = argument instanceof List<?> ? (List<Object>) evaluated : Collections.singletonList(evaluated);
+        switch (operator) {
+            case "$and":
+                return args.stream().allMatch(Boolean.TRUE::equals);
+            case "$not":
+                return !Boolean.TRUE.equals(args.get(0));
+            case "$eq":
+                return Objects.equals(normalize(args.get(0)), normalize(args.get(1)));
+            case "$gt":
+                return number(args.get(0)) > number(args.get(1));
+            case "$anyElementTrue":
+                return ((List<Object>) args.get(0)).stream().anyMatch(Boolean.TRUE::equals);
+            case "$add":
+                return args.stream().mapToDouble(PipelineEvaluator::number).sum();
+            case "$subtract":
+                return number(args.get(0)) - number(args.get(1));
+            case "$multiply":
+                return args.stream().mapToDouble(PipelineEvaluator::number).reduce(1, (a, b) -> a * b);
+            case "$divide":
+                return number(args.get(0)) / number(args.get(1));
+            case "$max":
+                return args.stream().mapToDouble(PipelineEvaluator::number).max().orElse(0);
+            case "$size":
+                return ((List<Object>) args.get(0)).size();
+            case "$sum":
+                Object values = args.size() == 1 ? args.get(0) : args;
+                return values instanceof List<?> list
+                        ? list.stream().filter(Number.class::isInstance).mapToDouble(PipelineEvaluator::number).sum()
+                        : values instanceof Number ? number(values) : 0.0;
+            case "$concatArrays": {
+                List<Object> result = new ArrayList<>();
+                args.forEach(part -> result.addAll((List<Object>) part));
+                return result;
+            }
+            case "$mergeObjects": {
+                Document result = new Document();
+                args.forEach(part -> result.putAll((Document) part));
+                return result;
+            }
+            default:
+                throw new IllegalArgumentException("Toán tử chưa được hỗ trợ: " + operator);
+        }
+    }
+
+    private static Object normalize(Object value) {
+        return value instanceof Number number ? number.doubleValue() : value;
+    }
+
+    private static double number(Object value) {
+        return value == null ? 0 : ((Number) value).doubleValue();
+    }
+
+    // Đường dẫn a.b.c; đi qua mảng thì trả về danh sách giá trị của từng phần tử (như "$items.totalPrice")
+    private static Object getPath(Object value, String path) {
+        for (String part : path.split("\\.")) {
+            if (value instanceof Document document) {
+                value = document.get(part);
+            } else if (value instanceof List<?> list) {
+                List<Object> values = new ArrayList<>();
+                for (Object item : list) {
+                    values.add(item instanceof Document document ? document.get(part) : null);
+                }
+                value = values;
+            } else {
+                return null;
+            }
+        }
+        return value;
+    }
+
+    private static void setPath(Document document, String path, Object value) {
+        String[] parts = path.split("\\.");
+        Document current = document;
+        for (int i = 0; i < parts.length - 1; i++) {
+            Object child = current.get(parts[i]);
+            if (!(child instanceof Document)) {
+                child = new Document();
+                current.put(parts[i], child);
+            }
+            current = (Document) child;
+        }
+        current.put(parts[parts.length - 1], value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T deepCopy(T value) {
+        if (value instanceof Document document) {
+            Document copy = new Document();
+            document.forEach((key, item) -> copy.put(key, deepCopy(item)));
+            return (T) copy;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>();
+            list.forEach(item -> copy.add(deepCopy(item)));
+            return (T) copy;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,102 @@
+package com.hcmute.pttechecommercewebsite;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hcmute.pttechecommercewebsite.controller.ProductController;
+import com.hcmute.pttechecommercewebsite.dto.ProductDTO;
+import com.hcmute.pttechecommercewebsite.service.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.web.config.EnableSpringDataWebSupport;
+import org.springframework.data.web.config.SpringDataJacksonConfiguration;
+import org.springframework.data.web.config.SpringDataWebSettings;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+public class ProductControllerTest {
+
+    private MockMvc mockMvc;
+
+    @Mock
+    private ProductService productService;
+
+    @InjectMocks
+    private ProductController productController;
+
+    @BeforeEach
+    void setUp() {
+        // Page được trả về theo dạng PagedModel như WebConfig (PageSerializationMode.VIA_DTO)
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .modulesToInstall(new SpringDataJacksonConfiguration.PageModule(
+                        new SpringDataWebSettings(EnableSpringDataWebSupport.PageSerializationMode.VIA_DTO)))
+                .build();
+        mockMvc = MockMvcBuilders.standaloneSetup(productController)
+                .setMessageConverters(new MappingJackson2HttpMessageConverter(objectMapper))
+                .build();
+    }
+
+    // Lấy sản phẩm hoạt động theo trang
+    @Test
+    @DisplayName("Kiểm tra lấy sản phẩm hoạt động theo trang")
+    void testGetActiveProductsPage_whenDataExists() throws Exception {
+        List<ProductDTO> products = List.of(
+                ProductDTO.builder().id("1").name("iPhone 15").build(),
+                ProductDTO.builder().id("2").name("Galaxy S24").build()
+        );
+        when(productService.getActiveProductsPage("price_asc", null, List.of("Apple"), null, null, 1000.0, null, 0, 2))
+                .thenReturn(new PageImpl<>(products, PageRequest.of(0, 2), 5));
+
+        mockMvc.perform(get("/api/products/active/page")
+                        .param("sortBy", "price_asc")
+                        .param("brandName", "Apple")
+                        .param("minPrice", "1000")
+                        .param("page", "0")
+                        .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(2)))
+                .andExpect(jsonPath("$.content[0].name", is("iPhone 15")))
+                .andExpect(jsonPath("$.content[1].name", is("Galaxy S24")))
+                .andExpect(jsonPath("$.page.totalElements", is(5)))
+                .andExpect(jsonPath("$.page.totalPages", is(3)))
+                .andExpect(jsonPath("$.page.number", is(0)))
+                .andExpect(jsonPath("$.page.size", is(2)));
+
+        verify(productService, times(1))
+                .getActiveProductsPage("price_asc", null, List.of("Apple"), null, null, 1000.0, null, 0, 2);
+    }
+
+    // Tham số trang không hợp lệ
+    @Test
+    @DisplayName("Kiểm tra lấy sản phẩm hoạt động theo trang với tham số không hợp lệ")
+    void testGetActiveProductsPage_whenPageInvalid() throws Exception {
+        when(productService.getActiveProductsPage(any(), any(), any(), any(), any(), any(), any(), eq(-1), anyInt()))
+                .thenThrow(new IllegalArgumentException("Số trang không được nhỏ hơn 0."));
+
+        mockMvc.perform(get("/api/products/active/page")
+                        .param("page", "-1"))
+                .andExpect(status().isBadRequest());
+
+        verify(productService, times(1))
+                .getActiveProductsPage(null, null, null, null, null, null, null, -1, 20);
+    }
+}
@@ -0,0 +1,200 @@
+package com.hcmute.pttechecommercewebsite;
+
+import com.hcmute.pttechecommercewebsite.event.ProductRatingChangedEvent;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.model.Review;
+import com.hcmute.pttechecommercewebsite.service.ProductDetailCache;
+import com.hcmute.pttechecommercewebsite.service.ProductRatingAggregator;
+import com.hcmute.pttechecommercewebsite.util.BatchJobRunner;
+import com.hcmute.pttechecommercewebsite.util.CollectionVersionTracker;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductRatingAggregatorTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private BatchJobRunner batchJobRunner;
+
+    @Mock
+    private ProductDetailCache productDetailCache;
+
+    @Mock
+    private CollectionVersionTracker collectionVersionTracker;
+
+    @InjectMocks
+    private ProductRatingAggregator productRatingAggregator;
+
+    private MappingMongoConverter converter;
+
+    private final ObjectId productId = new ObjectId();
+
+    // Sản phẩm "trong MongoDB" có dữ liệu cũ: chưa có ratings.sum và histogram
+    private Document stored;
+
+    @BeforeEach
+    void setUp() {
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        stored = new Document("_id", productId)
+                .append("name", "Laptop")
+                .append("ratings", new Document("average", 4.0).append("totalReviews", 2))
+                .append("version", 7L);
+
+        lenient().when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Product.class))).thenAnswer(invocation -> {
+            stored = PipelineEvaluator.apply(invocation.getArgument(1), stored);
+            return converter.read(Product.class, stored);
+        });
+        lenient().when(batchJobRunner.run(anyString(), any(LongSupplier.class))).thenAnswer(invocation -> {
+            ((LongSupplier) invocation.getArgument(1)).getAsLong();
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> histogram() {
+        return (Map<String, Object>) ((Document) stored.get("ratings")).get("histogram");
+    }
+
+    private double ratingsValue(String field) {
+        return ((Number) ((Document) stored.get("ratings")).get(field)).doubleValue();
+    }
+
+    @Test
+    @DisplayName("Số sao của histogram: làm tròn điểm và giới hạn trong 1 - 5")
+    void starRoundsAndClamps() {
+        assertEquals("4", ProductRatingAggregator.star(4.4));
+        assertEquals("5", ProductRatingAggregator.star(4.5));
+        assertEquals("1", ProductRatingAggregator.star(0));
+        assertEquals("5", ProductRatingAggregator.star(7));
+    }
+
+    @Test
+    @DisplayName("Thêm đánh giá: sum khởi tạo từ average * totalReviews, cộng histogram và tính lại điểm trung bình")
+    void addRatingUpdatesHistogramAndAverage() {
+        productRatingAggregator.apply(productId, 5.0, null);
+
+        assertEquals(13.0, ratingsValue("sum"));
+        assertEquals(3.0, ratingsValue("totalReviews"));
+        assertEquals(13.0 / 3, ratingsValue("average"), 1e-9);
+        assertEquals(1.0, ((Number) histogram().get("5")).doubleValue());
+        assertEquals(8L, ((Number) stored.get("version")).longValue());
+
+        verify(productDetailCache).invalidate(productId.toHexString());
+        verify(collectionVersionTracker).touch(Product.class);
+        verify(eventPublisher).publishEvent(argThat((Object event) -> event instanceof ProductRatingChangedEvent changed
+                && productId.toHexString().equals(changed.product().getId())));
+    }
+
+    @Test
+    @DisplayName("Sửa và xóa đánh giá: chuyển lượt giữa các mức sao, không âm và về 0 khi hết đánh giá")
+    void changeAndRemoveRating() {
+        stored.put("ratings", new Document("sum", 0.0).append("totalReviews", 0).append("average", 0.0));
+
+        productRatingAggregator.apply(productId, 5.0, null);
+        productRatingAggregator.apply(productId, 2.0, 5.0);
+        assertEquals(0.0, ((Number) histogram().get("5")).doubleValue());
+        assertEquals(1.0, ((Number) histogram().get("2")).doubleValue());
+        assertEquals(2.0, ratingsValue("average"));
+
+        productRatingAggregator.apply(productId, null, 2.0);
+        productRatingAggregator.apply(productId, null, 2.0);
+        assertEquals(0.0, ((Number) histogram().get("2")).doubleValue());
+        assertEquals(0.0, ratingsValue("totalReviews"));
+        assertEquals(0.0, ratingsValue("average"));
+    }
+
+    @Test
+    @DisplayName("Cùng điểm khi sửa đánh giá: không ghi gì vào MongoDB")
+    void unchangedRatingSkipsUpdate() {
+        productRatingAggregator.apply(productId, 4.0, 4.0);
+
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Product.class));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    @DisplayName("Tính lại từ Reviews: chỉ ghi sản phẩm lệch, có điều kiện version; chạy lại không ghi gì")
+    void recomputeOnlyWritesMismatchedProducts() {
+        ObjectId inSyncId = new ObjectId();
+        Product drifted = Product.builder().id(productId.toHexString()).version(7L)
+                .ratings(Product.Ratings.builder().average(4.0).totalReviews(2).build()).build();
+        Product inSync = Product.builder().id(inSyncId.toHexString()).version(3L)
+                .ratings(Product.Ratings.builder().average(3.0).totalReviews(1).sum(3.0)
+                        .histogram(new TreeMap<>(Map.of("3", 1, "5", 0))).build()).build();
+        List<Document> rows = List.of(
+                new Document("_id", new Document("productId", productId).append("rating", 5.0)).append("count", 2),
+                new Document("_id", new Document("productId", productId).append("rating", 2.0)).append("count", 1),
+                new Document("_id", new Document("productId", inSyncId).append("rating", 3.0)).append("count", 1));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Review.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(rows, new Document()));
+        BulkOperations bulk = mock(BulkOperations.class);
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class)).thenReturn(bulk);
+        when(bulk.execute()).thenReturn(result);
+        when(result.getModifiedCount()).thenReturn(1);
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(drifted, inSync), List.of(drifted));
+
+        productRatingAggregator.recomputeFromReviews();
+
+        verify(bulk, times(1)).updateOne(argThat((Query query) ->
+                        productId.equals(query.getQueryObject().get("_id"))
+                                && Long.valueOf(7L).equals(query.getQueryObject().get("version"))),
+                argThat((Update update) -> {
+                    Product.Ratings ratings = (Product.Ratings) update.getUpdateObject()
+                            .get("$set", Document.class).get("ratings");
+                    return ratings.getTotalReviews() == 3 && ratings.getSum() == 12.0 && ratings.getAverage() == 4.0
+                            && ratings.getHistogram().equals(Map.of("5", 2, "2", 1));
+                }));
+        verify(productDetailCache).invalidate(productId.toHexString());
+        verify(productDetailCache, never()).invalidate(inSyncId.toHexString());
+
+        // Lần chạy sau: dữ liệu đã khớp nên không tạo lệnh ghi nào
+        drifted.setRatings(Product.Ratings.builder().average(4.0).totalReviews(3).sum(12.0)
+                .histogram(new TreeMap<>(Map.of("5", 2, "2", 1))).build());
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(drifted, inSync));
+        productRatingAggregator.recomputeFromReviews();
+
+        verify(bulk, times(1)).updateOne(any(Query.class), any(Update.class));
+        verify(bulk, times(1)).execute();
+    }
+}
@@ -0,0 +1,91 @@
+package com.hcmute.pttechecommercewebsite;
+
+import com.hcmute.pttechecommercewebsite.model.Order;
+import com.hcmute.pttechecommercewebsite.model.Statistics;
+import com.hcmute.pttechecommercewebsite.repository.OrderRepository;
+import com.hcmute.pttechecommercewebsite.repository.ReviewRepository;
+import com.hcmute.pttechecommercewebsite.service.StatisticsAggregationService;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StatisticsAggregationServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private ReviewRepository reviewRepository;
+
+    @InjectMocks
+    private StatisticsAggregationService statisticsAggregationService;
+
+    private final LocalDate day = LocalDate.of(2024, 5, 1);
+
+    private Order order(double finalPrice, int hour) {
+        return Order.builder()
+                .finalPrice(finalPrice)
+                .totalItems(1)
+                .createdAt(Date.from(day.atTime(hour, 0).atZone(ZoneId.systemDefault()).toInstant()))
+                .build();
+    }
+
+    private Document reconcile(List<Order> orders) {
+        when(orderRepository.findByCreatedAtBetween(any(Date.class), any(Date.class))).thenReturn(orders);
+        when(reviewRepository.findByCreatedAtBetween(any(Date.class), any(Date.class))).thenReturn(List.of());
+
+        statisticsAggregationService.reconcileDay(day);
+
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).upsert(any(Query.class), update.capture(), eq(Statistics.class));
+        return ((Update) update.getValue()).getUpdateObject();
+    }
+
+    @Test
+    @DisplayName("Đối soát ngày có đơn: ghi giá trị đơn cao nhất và thấp nhất")
+    void reconcileSetsOrderValueRange() {
+        Document update = reconcile(List.of(order(300.0, 9), order(120.0, 10), order(450.0, 11)));
+
+        Document set = update.get("$set", Document.class);
+        assertEquals(450.0, set.get("highestOrderValue"));
+        assertEquals(120.0, set.get("lowestOrderValue"));
+        assertFalse(update.get("$unset", Document.class).containsKey("lowestOrderValue"));
+    }
+
+    @Test
+    @DisplayName("Đối soát ngày không có đơn: bỏ giá trị đơn thấp nhất / cao nhất thay vì ghi 0 để $min của đơn sau vẫn đúng")
+    void reconcileWithoutOrdersUnsetsOrderValueRange() {
+        Document update = reconcile(List.of());
+
+        Document set = update.get("$set", Document.class);
+        assertEquals(0, set.get("totalOrders"));
+        assertFalse(set.containsKey("lowestOrderValue"));
+        assertFalse(set.containsKey("highestOrderValue"));
+        Document unset = update.get("$unset", Document.class);
+        assertTrue(unset.containsKey("lowestOrderValue"));
+        assertTrue(unset.containsKey("highestOrderValue"));
+    }
+}
@@ -0,0 +1,132 @@
+package com.hcmute.pttechecommercewebsite;
+
+import com.hcmute.pttechecommercewebsite.exception.InsufficientStockException;
+import com.hcmute.pttechecommercewebsite.model.Product;
+import com.hcmute.pttechecommercewebsite.service.ProductDetailCache;
+import com.hcmute.pttechecommercewebsite.service.StockReservationService;
+import com.hcmute.pttechecommercewebsite.service.StockReservationService.StockLine;
+import com.hcmute.pttechecommercewebsite.util.CollectionVersionTracker;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockReservationServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ProductDetailCache productDetailCache;
+
+    @Mock
+    private CollectionVersionTracker collectionVersionTracker;
+
+    @InjectMocks
+    private StockReservationService stockReservationService;
+
+    private final ObjectId laptop = new ObjectId();
+    private final ObjectId laptop16Gb = new ObjectId();
+    private final ObjectId mouse = new ObjectId();
+    private final ObjectId mouseBlack = new ObjectId();
+
+    // Tồn kho "trong MongoDB" theo variantId; updateFirst áp dụng điều kiện stock >= quantity như MongoDB
+    private final Map<ObjectId, Integer> stock = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        stock.put(laptop16Gb, 5);
+        stock.put(mouseBlack, 1);
+
+        lenient().when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Product.class)))
+                .thenAnswer(invocation -> {
+                    Document query = ((Query) invocation.getArgument(0)).getQueryObject();
+                    int delta = ((Number) ((Update) invocation.getArgument(1)).getUpdateObject()
+                            .get("$inc", Document.class).get("variants.$.stock")).intValue();
+                    Document elemMatch = query.get("variants", Document.class) != null
+                            ? query.get("variants", Document.class).get("$elemMatch", Document.class) : null;
+                    ObjectId variantId = elemMatch != null ? elemMatch.getObjectId("variantId")
+                            : (ObjectId) query.get("variants.variantId");
+                    Integer current = stock.get(variantId);
+                    if (current == null) {
+                        return UpdateResult.acknowledged(0, 0L, null);
+                    }
+                    if (elemMatch != null) {
+                        int required = ((Number) elemMatch.get("stock", Document.class).get("$gte")).intValue();
+                        if (current < required) {
+                            return UpdateResult.acknowledged(0, 0L, null);
+                        }
+                    }
+                    stock.put(variantId, current + delta);
+                    return UpdateResult.acknowledged(1, 1L, null);
+                });
+    }
+
+    @Test
+    @DisplayName("Giữ hàng đủ tồn kho: trừ stock từng biến thể và xóa cache chi tiết sản phẩm")
+    void reserveDeductsStock() {
+        stockReservationService.reserve(List.of(new StockLine(laptop, laptop16Gb, 2), new StockLine(mouse, mouseBlack, 1)));
+
+        assertEquals(3, stock.get(laptop16Gb));
+        assertEquals(0, stock.get(mouseBlack));
+        verify(productDetailCache).invalidate(laptop.toHexString());
+        verify(productDetailCache).invalidate(mouse.toHexString());
+        verify(collectionVersionTracker, times(2)).touch(Product.class);
+    }
+
+    @Test
+    @DisplayName("Một dòng không đủ hàng: hoàn lại các dòng đã trừ và báo InsufficientStockException")
+    void reserveCompensatesOnFailure() {
+        InsufficientStockException error = assertThrows(InsufficientStockException.class, () ->
+                stockReservationService.reserve(List.of(new StockLine(laptop, laptop16Gb, 2), new StockLine(mouse, mouseBlack, 2))));
+
+        assertTrue(error.getMessage().contains(mouseBlack.toString()));
+        assertEquals(5, stock.get(laptop16Gb));
+        assertEquals(1, stock.get(mouseBlack));
+    }
+
+    @Test
+    @DisplayName("Dòng trùng biến thể được gộp: kiểm tra stock trên tổng số lượng")
+    void duplicateLinesAreMergedBeforeChecking() {
+        assertThrows(InsufficientStockException.class, () ->
+                stockReservationService.reserve(List.of(new StockLine(laptop, laptop16Gb, 3), new StockLine(laptop, laptop16Gb, 3))));
+        assertEquals(5, stock.get(laptop16Gb));
+
+        stockReservationService.reserve(List.of(new StockLine(laptop, laptop16Gb, 2), new StockLine(laptop, laptop16Gb, 3),
+                new StockLine(mouse, mouseBlack, 0)));
+        assertEquals(0, stock.get(laptop16Gb));
+        assertEquals(1, stock.get(mouseBlack));
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Product.class));
+    }
+
+    @Test
+    @DisplayName("Hoàn tồn kho: cộng lại stock và xóa cache chi tiết sản phẩm")
+    void releaseRestoresStock() {
+        stockReservationService.reserve(List.of(new StockLine(laptop, laptop16Gb, 4)));
+
+        stockReservationService.release(List.of(new StockLine(laptop, laptop16Gb, 4)));
+
+        assertEquals(5, stock.get(laptop16Gb));
+        verify(productDetailCache, times(2)).invalidate(laptop.toHexString());
+    }
+}